@@ -31,6 +31,13 @@ class MeteredDomainEventPublisherIT extends Specification {
             countedEvents("domain_events", "name", "TestEvent") == 2.0
     }
 
+    def "should time publishing per event type"() {
+        when:
+            publisher.publish(new TestEvent())
+        then:
+            meterRegistry.get("domain_events_publish").tag("name", "TestEvent").timer().count() >= 1
+    }
+
     def countedEvents(String metricName, String key, String tag) {
         meterRegistry.counter(metricName, key, tag).count()
     }
@@ -0,0 +1,130 @@
+package io.pillopl.library.commons.commands.idempotency
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.sharding.Shards
+import io.pillopl.library.lending.LendingTestContext
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.CompletableFuture
+import java.util.function.Supplier
+
+import static java.util.concurrent.CompletableFuture.completedFuture
+
+@SpringBootTest(classes = LendingTestContext.class)
+class IdempotentCommandsIT extends Specification {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    Instant current = Instant.now()
+
+    Clock clock = Stub(Clock) {
+        instant() >> { current }
+        getZone() >> ZoneOffset.UTC
+    }
+
+    UUID patronId = UUID.randomUUID()
+
+    int runs = 0
+
+    def 'should run a command once per key and replay its status'() {
+        given:
+            IdempotentCommands commands = idempotentCommands(10)
+        when:
+            IdempotentCommands.Outcome first = commands.execute(patronId, 'key', 'place-hold', command(200)).join()
+            IdempotentCommands.Outcome retry = commands.execute(patronId, 'key', 'place-hold', command(200)).join()
+        then:
+            runs == 1
+            first == new IdempotentCommands.Outcome(200, false)
+            retry == new IdempotentCommands.Outcome(200, true)
+            lookups('memory_hit') == 1
+    }
+
+    def 'should find a key in the table once it was evicted from memory'() {
+        given:
+            IdempotentCommands commands = idempotentCommands(1)
+        when:
+            commands.execute(patronId, 'first', 'place-hold', command(200)).join()
+            commands.execute(patronId, 'second', 'place-hold', command(200)).join()
+            IdempotentCommands.Outcome retry = commands.execute(patronId, 'first', 'place-hold', command(200)).join()
+        then:
+            runs == 2
+            retry.replayed
+            lookups('table_hit') == 1
+    }
+
+    def 'should run the command again once the key expired'() {
+        given:
+            IdempotentCommands commands = idempotentCommands(10)
+        when:
+            commands.execute(patronId, 'key', 'place-hold', command(200)).join()
+            current = current.plus(Duration.ofHours(2))
+            commands.removeExpired()
+            IdempotentCommands.Outcome retry = commands.execute(patronId, 'key', 'place-hold', command(200)).join()
+        then:
+            runs == 2
+            !retry.replayed
+    }
+
+    def 'should not keep failures on our side'() {
+        given:
+            IdempotentCommands commands = idempotentCommands(10)
+        when:
+            commands.execute(patronId, 'key', 'place-hold', command(500)).join()
+            commands.execute(patronId, 'key', 'place-hold', command(200)).join()
+        then:
+            runs == 2
+    }
+
+    def 'should reject a key reused for a different request'() {
+        given:
+            IdempotentCommands commands = idempotentCommands(10)
+        and:
+            commands.execute(patronId, 'key', 'place-hold', command(200)).join()
+        when:
+            commands.execute(patronId, 'key', 'cancel-hold', command(204)).join()
+        then:
+            thrown(IdempotencyKeyReused)
+            lookups('conflict') == 1
+    }
+
+    def 'should make a retry wait for the run still in flight'() {
+        given:
+            IdempotentCommands commands = idempotentCommands(10)
+        and:
+            CompletableFuture<Integer> running = new CompletableFuture<>()
+        when:
+            CompletableFuture<IdempotentCommands.Outcome> first = commands.execute(patronId, 'key', 'place-hold', { running } as Supplier)
+            CompletableFuture<IdempotentCommands.Outcome> retry = commands.execute(patronId, 'key', 'place-hold', command(200))
+            running.complete(201)
+        then:
+            first.join() == new IdempotentCommands.Outcome(201, false)
+            retry.join() == new IdempotentCommands.Outcome(201, true)
+            runs == 0
+            lookups('in_flight') == 1
+    }
+
+    private IdempotentCommands idempotentCommands(int capacity) {
+        new IdempotentCommands(jdbcTemplate, Shards.SINGLE, clock, Duration.ofHours(1), capacity, meterRegistry)
+    }
+
+    private Supplier<CompletableFuture<Integer>> command(int status) {
+        return {
+            runs++
+            completedFuture(status)
+        } as Supplier
+    }
+
+    private double lookups(String result) {
+        meterRegistry.counter('idempotency_key_lookups', 'result', result).count()
+    }
+}
@@ -0,0 +1,125 @@
+package io.pillopl.library.commons.events.dedup
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.sharding.Shards
+import io.pillopl.library.lending.LendingTestContext
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+@SpringBootTest(classes = LendingTestContext.class)
+class ProcessedEventsIT extends Specification {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    Instant current = Instant.now()
+
+    Clock clock = Stub(Clock) {
+        instant() >> { current }
+        getZone() >> ZoneOffset.UTC
+    }
+
+    String projection = 'test_' + UUID.randomUUID()
+
+    UUID eventId = UUID.randomUUID()
+
+    int writes = 0
+
+    def 'should apply an event once and drop its redelivery from memory'() {
+        given:
+            ProcessedEvents processedEvents = processedEvents(10)
+        when:
+            boolean first = processedEvents.processOnce(eventId, { writes++ })
+            boolean redelivered = processedEvents.processOnce(eventId, { writes++ })
+        then:
+            first
+            !redelivered
+            writes == 1
+            lookups('miss') == 1
+            lookups('recent_hit') == 1
+    }
+
+    def 'should drop a redelivery remembered only by the table'() {
+        given:
+            processedEvents(10).processOnce(eventId, { writes++ })
+        and:
+            ProcessedEvents restarted = processedEvents(10)
+            restarted.warmUp()
+        when:
+            boolean redelivered = restarted.processOnce(eventId, { writes++ })
+        then:
+            !redelivered
+            writes == 1
+            lookups('table_hit') == 1
+    }
+
+    def 'should not remember an event whose write failed'() {
+        given:
+            ProcessedEvents processedEvents = processedEvents(10)
+        when:
+            processedEvents.processOnce(eventId, { throw new IllegalStateException('write failed') })
+        then:
+            thrown(IllegalStateException)
+        when:
+            boolean retried = processedEvents.processOnce(eventId, { writes++ })
+        then:
+            retried
+            writes == 1
+            lookups('miss') == 2
+    }
+
+    def 'should apply a redelivered event again when the transaction around the first delivery rolled back'() {
+        given:
+            ProcessedEvents processedEvents = processedEvents(10)
+            TransactionTemplate outer = new TransactionTemplate(transactionManager)
+        when:
+            outer.execute { status ->
+                processedEvents.processOnce(eventId, { writes++ })
+                status.setRollbackOnly()
+            }
+        and:
+            boolean redelivered = processedEvents.processOnce(eventId, { writes++ })
+        then:
+            redelivered
+            writes == 2
+            lookups('recent_hit') == 0
+        and:
+            !processedEvents.processOnce(eventId, { writes++ })
+            lookups('recent_hit') == 1
+    }
+
+    def 'should forget events past the retention'() {
+        given:
+            ProcessedEvents processedEvents = processedEvents(1)
+            processedEvents.processOnce(eventId, { writes++ })
+            processedEvents.processOnce(UUID.randomUUID(), { writes++ })
+        when:
+            current = current.plus(Duration.ofHours(2))
+            processedEvents.removeExpired()
+        then:
+            processedEvents.processOnce(eventId, { writes++ })
+            writes == 3
+    }
+
+    private ProcessedEvents processedEvents(int recentCapacity) {
+        new ProcessedEvents(projection, jdbcTemplate, transactionManager, Shards.SINGLE, clock, Duration.ofHours(1), 1000, 0.01, recentCapacity, meterRegistry)
+    }
+
+    private double lookups(String result) {
+        meterRegistry.counter('processed_events_lookups', 'projection', projection, 'result', result).count()
+    }
+}
@@ -0,0 +1,90 @@
+package io.pillopl.library.commons.groupcommit
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.lending.LendingTestContext
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+@SpringBootTest(classes = LendingTestContext.class)
+class GroupCommitIT extends Specification {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    GroupCommit groupCommit = null
+
+    def cleanup() {
+        groupCommit?.shutdown()
+    }
+
+    def 'should commit writes arriving within the window together'() {
+        given:
+            groupCommit = new GroupCommit(transactionManager, Duration.ofMillis(200), 10, meterRegistry)
+            List<UUID> books = (1..3).collect { UUID.randomUUID() }
+        when:
+            List<CompletableFuture<Integer>> writes = books.collect { groupCommit.submit(insert(it)) }
+        then:
+            writes.every { it.get(5, TimeUnit.SECONDS) == 1 }
+            books.every { isbnOf(it) == 'isbn' }
+            meterRegistry.counter('group_commit_commits').count() == 1
+            meterRegistry.summary('group_commit_size').max() == 3
+    }
+
+    def 'should fail only the conflicting write of a group'() {
+        given:
+            groupCommit = new GroupCommit(transactionManager, Duration.ofMillis(200), 10, meterRegistry)
+            UUID existing = UUID.randomUUID()
+            UUID fresh = UUID.randomUUID()
+            groupCommit.execute(insert(existing))
+        when:
+            CompletableFuture<Integer> conflicting = groupCommit.submit(insert(existing))
+            CompletableFuture<Integer> other = groupCommit.submit(insert(fresh))
+        then:
+            other.get(5, TimeUnit.SECONDS) == 1
+            isbnOf(fresh) == 'isbn'
+        when:
+            conflicting.get(5, TimeUnit.SECONDS)
+        then:
+            ExecutionException e = thrown()
+            e.cause instanceof DuplicateKeyException
+            meterRegistry.counter('group_commit_rolled_back_members').count() == 1
+    }
+
+    def 'should run a write submitted by the writer itself inside the current group'() {
+        given:
+            groupCommit = new GroupCommit(transactionManager, Duration.ofMillis(1), 10, meterRegistry)
+            UUID book = UUID.randomUUID()
+            UUID follower = UUID.randomUUID()
+        when:
+            groupCommit.execute({
+                insert(book).get()
+                groupCommit.execute(insert(follower))
+            } as Supplier)
+        then:
+            isbnOf(book) == 'isbn'
+            isbnOf(follower) == 'isbn'
+    }
+
+    private Supplier<Integer> insert(UUID bookId) {
+        return { jdbcTemplate.update('INSERT INTO book_isbn (book_id, isbn) VALUES (?, ?)', bookId, 'isbn') } as Supplier
+    }
+
+    private String isbnOf(UUID bookId) {
+        jdbcTemplate.queryForObject('SELECT isbn FROM book_isbn WHERE book_id = ?', String, bookId)
+    }
+}
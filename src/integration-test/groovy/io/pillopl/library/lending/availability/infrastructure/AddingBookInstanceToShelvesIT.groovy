@@ -0,0 +1,42 @@
+package io.pillopl.library.lending.availability.infrastructure
+
+import io.pillopl.library.catalogue.BookInstanceAddedToCatalogue
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.vavr.control.Option
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+
+@SpringBootTest(classes = LendingTestContext.class)
+class AddingBookInstanceToShelvesIT extends Specification {
+
+    UUID bookId = UUID.randomUUID()
+
+    @Autowired
+    ApplicationEventPublisher publisher
+
+    @Autowired
+    AvailabilityBitmaps bitmaps
+
+    @Autowired
+    DataSource dataSource
+
+    def 'should shelve a book instance as soon as it is added to the catalogue'() {
+        when:
+            publisher.publishEvent(new BookInstanceAddedToCatalogue(UUID.randomUUID().toString(), Circulating, bookId))
+        then:
+            bitmaps.count(shelfOfBook(), Option.none()) == 1
+    }
+
+    LibraryBranchId shelfOfBook() {
+        return new LibraryBranchId(new JdbcTemplate(dataSource).queryForObject(
+                "SELECT available_at_branch FROM book_database_entity WHERE book_id = ?", UUID, bookId))
+    }
+}
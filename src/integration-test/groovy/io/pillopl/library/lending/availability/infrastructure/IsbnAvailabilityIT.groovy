@@ -0,0 +1,102 @@
+package io.pillopl.library.lending.availability.infrastructure
+
+import io.pillopl.library.catalogue.BookInstanceAddedToCatalogue
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.availability.model.IsbnAvailability
+import io.pillopl.library.lending.availability.model.IsbnAvailability.BranchCopies
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.pillopl.library.lending.patron.model.PatronEvent
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.time.Instant
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+
+@SpringBootTest(classes = LendingTestContext.class)
+class IsbnAvailabilityIT extends Specification {
+
+    String isbn = UUID.randomUUID().toString()
+    UUID branch = UUID.randomUUID()
+    UUID anotherBranch = UUID.randomUUID()
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    ApplicationEventPublisher publisher
+
+    @Autowired
+    IsbnAvailability isbnAvailability
+
+    IsbnAvailabilityProjection projection
+
+    def setup() {
+        projection = new IsbnAvailabilityProjection(new JdbcTemplate(dataSource))
+    }
+
+    def 'should count copies per branch from lending books with a known ISBN'() {
+        given:
+            availableCopy(branch)
+            availableCopy(branch)
+            availableCopy(anotherBranch)
+        when:
+            projection.rebuild()
+        then:
+            projection.copiesOf(isbn).get().available() == 3
+            copiesAt(branch) == new BranchCopies(2, 0, 0)
+            copiesAt(anotherBranch) == new BranchCopies(1, 0, 0)
+    }
+
+    def 'should move copies between states as books are placed on hold and returned'() {
+        given:
+            UUID book = availableCopy(branch)
+            projection.rebuild()
+        when:
+            projection.handle(placedOnHold(book))
+        then:
+            copiesAt(branch) == new BranchCopies(0, 1, 0)
+        when:
+            projection.handle(returned(book, anotherBranch))
+        then:
+            copiesAt(branch) == new BranchCopies(0, 0, 0)
+            copiesAt(anotherBranch) == new BranchCopies(1, 0, 0)
+    }
+
+    def 'should count a copy as available as soon as it is added to the catalogue'() {
+        when:
+            publisher.publishEvent(new BookInstanceAddedToCatalogue(isbn, Circulating, UUID.randomUUID()))
+        then:
+            isbnAvailability.copiesOf(isbn).get().available() == 1
+    }
+
+    def 'should know nothing about an unknown ISBN'() {
+        expect:
+            projection.copiesOf('unknown').isEmpty()
+    }
+
+    UUID availableCopy(UUID branchId) {
+        UUID bookId = UUID.randomUUID()
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource)
+        jdbcTemplate.update("INSERT INTO book_database_entity (id, book_id, book_type, book_state, available_at_branch, version) " +
+                "VALUES (book_database_entity_seq.nextval, ?, 'Circulating', 'Available', ?, 0)", bookId, branchId)
+        jdbcTemplate.update("INSERT INTO book_isbn (book_id, isbn) VALUES (?, ?)", bookId, isbn)
+        return bookId
+    }
+
+    BranchCopies copiesAt(UUID branchId) {
+        return projection.copiesOf(isbn).get().branches.get(new LibraryBranchId(branchId)).get()
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold(UUID bookId) {
+        return new PatronEvent.BookPlacedOnHold(Instant.now(), UUID.randomUUID(), bookId, Circulating, branch, Instant.now(), null)
+    }
+
+    PatronEvent.BookReturned returned(UUID bookId, UUID branchId) {
+        return new PatronEvent.BookReturned(Instant.now(), UUID.randomUUID(), bookId, Circulating, branchId)
+    }
+}
@@ -0,0 +1,102 @@
+package io.pillopl.library.lending.dailysheet.infrastructure
+
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.PatronId
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.time.Duration
+import java.time.Instant
+
+import static io.pillopl.library.catalogue.BookType.Restricted
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static java.time.Clock.fixed
+import static java.time.ZoneOffset.UTC
+
+@SpringBootTest(classes = LendingTestContext.class)
+class ArchivingFinishedSheetRowsIT extends Specification {
+
+    UUID patronId = anyPatronId().patronId
+    UUID bookId = UUID.randomUUID()
+    UUID branchId = UUID.randomUUID()
+    Instant placedAt = Instant.now()
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    SheetsHistory sheetsHistory
+
+    SheetsReadModel readModel
+    SheetsArchiver archiver
+
+    def setup() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource)
+        readModel = new SheetsReadModel(jdbcTemplate, fixed(placedAt, UTC))
+        archiver = new SheetsArchiver(
+                jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                new SheetsWriteGate(),
+                fixed(placedAt.plus(Duration.ofDays(60)), UTC),
+                Duration.ofDays(30),
+                2,
+                100)
+    }
+
+    def 'should move finished holds older than retention into archive'() {
+        given:
+            readModel.handle(placedOnHold())
+            readModel.handle(holdCanceled())
+        when:
+            archiver.archive()
+        then:
+            sheetsHistory.holdsOf(anyPatron(), SheetsHistory.Scope.ActiveTableOnly).isEmpty()
+        and:
+            sheetsHistory.holdsOf(anyPatron(), SheetsHistory.Scope.IncludingArchives).map { it.status }.toJavaList() == ['CANCELED']
+    }
+
+    def 'should keep active holds in the active table'() {
+        given:
+            readModel.handle(placedOnHold())
+        when:
+            archiver.archive()
+        then:
+            sheetsHistory.holdsOf(anyPatron(), SheetsHistory.Scope.ActiveTableOnly).map { it.status }.toJavaList() == ['ACTIVE']
+    }
+
+    def 'should archive a hold projected again from a redelivered event only once'() {
+        given:
+            PatronEvent.BookPlacedOnHold placed = placedOnHold()
+            PatronEvent.BookHoldCanceled canceled = holdCanceled()
+            readModel.handle(placed)
+            readModel.handle(canceled)
+            archiver.archive()
+        and:
+            readModel.handle(placed)
+            readModel.handle(canceled)
+        when:
+            archiver.archive()
+        then:
+            sheetsHistory.holdsOf(anyPatron(), SheetsHistory.Scope.ActiveTableOnly).isEmpty()
+            sheetsHistory.holdsOf(anyPatron(), SheetsHistory.Scope.IncludingArchives).map { it.status }.toJavaList() == ['CANCELED']
+    }
+
+    PatronId anyPatron() {
+        return new PatronId(patronId)
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold() {
+        return new PatronEvent.BookPlacedOnHold(placedAt, patronId, bookId, Restricted, branchId, placedAt, placedAt.plus(Duration.ofDays(3)))
+    }
+
+    PatronEvent.BookHoldCanceled holdCanceled() {
+        return new PatronEvent.BookHoldCanceled(placedAt, patronId, bookId, branchId)
+    }
+}
@@ -0,0 +1,252 @@
+package io.pillopl.library.lending.dailysheet.infrastructure
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.sharding.Shards
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.dailysheet.model.SheetsFlushed
+import io.pillopl.library.lending.patron.model.PatronEvent
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static io.pillopl.library.catalogue.BookType.Restricted
+import static java.time.Instant.now
+
+@SpringBootTest(classes = LendingTestContext.class)
+class BatchingSheetsProjectorIT extends Specification {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    ApplicationEventPublisher publisher = Mock()
+
+    UUID patronId = UUID.randomUUID()
+    UUID bookId = UUID.randomUUID()
+    UUID libraryBranchId = UUID.randomUUID()
+
+    BatchingSheetsProjector projector
+
+    def setup() {
+        projector = new BatchingSheetsProjector(
+                jdbcTemplate,
+                new TransactionTemplate(transactionManager),
+                new SheetsWriteGate(),
+                Shards.SINGLE,
+                publisher,
+                100,
+                3,
+                Duration.ofHours(1),
+                meterRegistry)
+    }
+
+    def cleanup() {
+        projector.shutdown()
+    }
+
+    def 'should insert a hold changed within the same batch only once, already changed'() {
+        when:
+            projector.add(placedOnHold())
+            projector.add(holdCanceled())
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'CANCELED', CANCELED: true]]
+            meterRegistry.counter('sheets_projector_collapsed_events').count() == 1
+    }
+
+    def 'should keep the order of changes to the same hold'() {
+        when:
+            projector.add(placedOnHold())
+            projector.add(holdCanceled())
+            projector.add(placedOnHold())
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'CANCELED', CANCELED: true], [STATUS: 'ACTIVE', CANCELED: false]]
+    }
+
+    def 'should apply changes to a hold stored by an earlier batch'() {
+        given:
+            projector.add(placedOnHold())
+            projector.flush()
+        when:
+            projector.add(holdExpired())
+            projector.add(holdCanceled())
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'CANCELED', CANCELED: true]]
+    }
+
+    def 'should not change anything when an event is replayed'() {
+        given:
+            PatronEvent.BookPlacedOnHold placedOnHold = placedOnHold()
+            projector.add(placedOnHold)
+            projector.flush()
+        when:
+            projector.add(placedOnHold)
+            projector.add(placedOnHold)
+            projector.add(holdCanceled())
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'CANCELED', CANCELED: true]]
+    }
+
+    def 'should insert a checkout returned within the same batch as returned'() {
+        when:
+            projector.add(placedOnHold())
+            projector.add(bookCheckedOut())
+            projector.add(bookReturned())
+            projector.flush()
+        then:
+            checkoutStatuses() == ['RETURNED']
+            holds() == [[STATUS: 'CHECKEDOUT', CANCELED: false]]
+    }
+
+    def 'should store a return whose checkout is missing'() {
+        when:
+            projector.add(bookReturned())
+            projector.flush()
+        then:
+            checkoutStatuses() == ['CHECKEDOUT']
+    }
+
+    def 'should announce the patrons once their rows were flushed'() {
+        when:
+            projector.add(placedOnHold())
+            projector.flush()
+        then:
+            1 * publisher.publishEvent(new SheetsFlushed([patronId] as Set))
+        and:
+            meterRegistry.summary('sheets_projector_batch_size').max() == 1
+            meterRegistry.timer('sheets_projector_batch_latency').count() == 1
+    }
+
+    def 'should drop an event that keeps failing without holding back the others'() {
+        given:
+            UUID poisonedBookId = UUID.randomUUID()
+            JdbcTemplate failingForPoisonedBook = new JdbcTemplate(jdbcTemplate.dataSource) {
+                @Override
+                int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                    if (batchArgs.any { args -> args.contains(poisonedBookId) }) {
+                        throw new DataIntegrityViolationException('poisoned')
+                    }
+                    return super.batchUpdate(sql, batchArgs)
+                }
+            }
+            projector.shutdown()
+            projector = new BatchingSheetsProjector(failingForPoisonedBook, new TransactionTemplate(transactionManager),
+                    new SheetsWriteGate(), Shards.SINGLE, publisher, 100, 3, Duration.ofHours(1), meterRegistry)
+        when:
+            projector.add(new PatronEvent.BookPlacedOnHold(now(), patronId, poisonedBookId, Restricted, libraryBranchId, now(), now().plus(Duration.ofDays(1))))
+            projector.add(placedOnHold())
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'ACTIVE', CANCELED: false]]
+            meterRegistry.counter('sheets_projector_dead_letters').count() == 0
+        when:
+            2.times { projector.flush() }
+        then:
+            meterRegistry.counter('sheets_projector_dead_letters').count() == 1
+        when:
+            projector.add(holdCanceled())
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'CANCELED', CANCELED: true]]
+            meterRegistry.counter('sheets_projector_dead_letters').count() == 1
+    }
+
+    def 'should hold back a cancel behind its failed hold until the hold gets in'() {
+        given:
+            AtomicBoolean failing = new AtomicBoolean(true)
+            JdbcTemplate failingHolds = new JdbcTemplate(jdbcTemplate.dataSource) {
+                @Override
+                int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                    if (failing.get() && sql.startsWith('INSERT INTO holds_sheet') && batchArgs.any { args -> args.contains(bookId) }) {
+                        throw new DataIntegrityViolationException('hold rejected')
+                    }
+                    return super.batchUpdate(sql, batchArgs)
+                }
+            }
+            projector.shutdown()
+            projector = new BatchingSheetsProjector(failingHolds, new TransactionTemplate(transactionManager),
+                    new SheetsWriteGate(), Shards.SINGLE, publisher, 100, 3, Duration.ofHours(1), meterRegistry)
+        when:
+            projector.add(placedOnHold())
+            projector.add(holdCanceled())
+            projector.flush()
+        then:
+            holds() == []
+        when:
+            failing.set(false)
+            projector.flush()
+        then:
+            holds() == [[STATUS: 'CANCELED', CANCELED: true]]
+            meterRegistry.counter('sheets_projector_dead_letters').count() == 0
+    }
+
+    def 'should drop the later events of a row along with its dropped event'() {
+        given:
+            JdbcTemplate failingHolds = new JdbcTemplate(jdbcTemplate.dataSource) {
+                @Override
+                int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                    if (sql.startsWith('INSERT INTO holds_sheet') && batchArgs.any { args -> args.contains(bookId) }) {
+                        throw new DataIntegrityViolationException('hold rejected')
+                    }
+                    return super.batchUpdate(sql, batchArgs)
+                }
+            }
+            projector.shutdown()
+            projector = new BatchingSheetsProjector(failingHolds, new TransactionTemplate(transactionManager),
+                    new SheetsWriteGate(), Shards.SINGLE, publisher, 100, 3, Duration.ofHours(1), meterRegistry)
+        when:
+            projector.add(placedOnHold())
+            projector.add(holdCanceled())
+            3.times { projector.flush() }
+        then:
+            holds() == []
+            meterRegistry.counter('sheets_projector_dead_letters').count() == 2
+    }
+
+    private List<Map<String, Object>> holds() {
+        jdbcTemplate.queryForList(
+                'SELECT h.status, h.canceled_at IS NOT NULL AS canceled FROM holds_sheet h WHERE h.book_id = ? AND h.hold_by_patron_id = ? ORDER BY h.id',
+                bookId, patronId)
+    }
+
+    private List<String> checkoutStatuses() {
+        jdbcTemplate.queryForList(
+                'SELECT c.status FROM checkouts_sheet c WHERE c.book_id = ? AND c.checked_out_by_patron_id = ? ORDER BY c.id',
+                String, bookId, patronId)
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold() {
+        new PatronEvent.BookPlacedOnHold(now(), patronId, bookId, Restricted, libraryBranchId, now(), now().plus(Duration.ofDays(1)))
+    }
+
+    PatronEvent.BookHoldCanceled holdCanceled() {
+        new PatronEvent.BookHoldCanceled(now(), patronId, bookId, libraryBranchId)
+    }
+
+    PatronEvent.BookHoldExpired holdExpired() {
+        new PatronEvent.BookHoldExpired(now(), patronId, bookId, libraryBranchId)
+    }
+
+    PatronEvent.BookCheckedOut bookCheckedOut() {
+        new PatronEvent.BookCheckedOut(now(), patronId, bookId, Restricted, libraryBranchId, now().plus(Duration.ofDays(1)))
+    }
+
+    PatronEvent.BookReturned bookReturned() {
+        new PatronEvent.BookReturned(now(), patronId, bookId, Restricted, libraryBranchId)
+    }
+}
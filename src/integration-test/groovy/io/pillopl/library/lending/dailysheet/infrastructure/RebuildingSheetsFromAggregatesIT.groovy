@@ -0,0 +1,227 @@
+package io.pillopl.library.lending.dailysheet.infrastructure
+
+import io.pillopl.library.commons.sharding.Shards
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.patron.model.PatronEvent
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Timestamp
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+import static io.pillopl.library.catalogue.BookType.Restricted
+import static io.pillopl.library.lending.patron.model.CheckoutDuration.MAX_CHECKOUT_DURATION
+import static java.time.Instant.now
+
+@SpringBootTest(classes = LendingTestContext.class)
+class RebuildingSheetsFromAggregatesIT extends Specification {
+
+    UUID patronId = UUID.randomUUID()
+    UUID branchId = UUID.randomUUID()
+    UUID heldBookId = UUID.randomUUID()
+    UUID checkedOutBookId = UUID.randomUUID()
+    Instant till = now().plusSeconds(3600)
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    SheetsRebuild sheetsRebuild
+
+    @Autowired
+    SheetsReadModel sheetsReadModel
+
+    JdbcTemplate jdbcTemplate
+
+    def setup() {
+        jdbcTemplate = new JdbcTemplate(dataSource)
+    }
+
+    def 'should rebuild current holds and checkouts from aggregates'() {
+        given:
+            patronHolds(heldBookId)
+        and:
+            bookCheckedOutBy(checkedOutBookId)
+        when:
+            SheetsRebuildStatus status = sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        then:
+            status.state == SheetsRebuildStatus.State.Done
+        and:
+            activeHolds(heldBookId) == 1
+            activeCheckouts(checkedOutBookId) == 1
+    }
+
+    def 'rebuilt checkouts should keep their till and still be registered as overdue'() {
+        given:
+            bookCheckedOutBy(checkedOutBookId)
+        and:
+            sheetsReadModel.handle(checkedOut(checkedOutBookId, now().minus(Duration.ofDays(1))))
+        when:
+            sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        then:
+            activeCheckouts(checkedOutBookId) == 1
+            overdue().contains(checkedOutBookId)
+    }
+
+    def 'rebuilt checkouts without a live row should be due at the latest possible till'() {
+        given:
+            bookCheckedOutBy(checkedOutBookId)
+        and:
+            checkedOutEventStored(checkedOutBookId, now().minus(Duration.ofDays(MAX_CHECKOUT_DURATION + 1)))
+        when:
+            sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        then:
+            overdue().contains(checkedOutBookId)
+    }
+
+    def 'should keep finished holds and checkouts'() {
+        given:
+            sheetsReadModel.handle(placedOnHold(heldBookId))
+            sheetsReadModel.handle(new PatronEvent.BookHoldCanceled(now(), patronId, heldBookId, branchId))
+        and:
+            sheetsReadModel.handle(checkedOut(checkedOutBookId, till))
+            sheetsReadModel.handle(new PatronEvent.BookReturned(now(), patronId, checkedOutBookId, Restricted, branchId))
+        when:
+            sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        then:
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM holds_sheet WHERE book_id = ? AND hold_by_patron_id = ? AND status = 'CANCELED'",
+                    Integer, heldBookId, patronId) == 1
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM checkouts_sheet WHERE book_id = ? AND checked_out_by_patron_id = ? AND status = 'RETURNED'",
+                    Integer, checkedOutBookId, patronId) == 1
+    }
+
+    def 'should not keep a finished row of a hold the aggregates say is still active'() {
+        given:
+            sheetsReadModel.handle(placedOnHold(heldBookId))
+            sheetsReadModel.handle(new PatronEvent.BookHoldCanceled(now().minus(Duration.ofHours(1)), patronId, heldBookId, branchId))
+        and:
+            patronHolds(heldBookId)
+        when:
+            sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        then:
+            activeHolds(heldBookId) == 1
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM holds_sheet WHERE book_id = ? AND hold_by_patron_id = ? AND status = 'CANCELED'",
+                    Integer, heldBookId, patronId) == 0
+    }
+
+    def 'should rebuild holds and checkouts of event-sourced patrons from their streams'() {
+        given:
+            SheetsRebuild fromStreams = new SheetsRebuild(jdbcTemplate, sheetsReadModel, new SheetsWriteGate(), 2, 100,
+                    Clock.systemDefaultZone(), Shards.SINGLE, SheetsRebuild.Source.PATRON_EVENTS)
+        and:
+            UUID canceledBookId = UUID.randomUUID()
+            UUID heldThenCheckedOutBookId = UUID.randomUUID()
+            UUID returnedBookId = UUID.randomUUID()
+            streamed(1, 2, heldBookId)
+            streamed(2, 2, canceledBookId)
+            streamed(3, 3, canceledBookId)
+            streamed(4, 2, heldThenCheckedOutBookId)
+            streamed(5, 5, heldThenCheckedOutBookId)
+            streamed(6, 5, returnedBookId)
+            streamed(7, 7, returnedBookId)
+        when:
+            SheetsRebuildStatus status = fromStreams.start().get(30, TimeUnit.SECONDS)
+        then:
+            status.state == SheetsRebuildStatus.State.Done
+        and:
+            holdStatuses(heldBookId) == ['ACTIVE']
+            holdStatuses(canceledBookId) == ['CANCELED']
+            holdStatuses(heldThenCheckedOutBookId) == ['CHECKEDOUT']
+            checkoutStatuses(heldThenCheckedOutBookId) == ['CHECKEDOUT']
+            checkoutStatuses(returnedBookId) == ['RETURNED']
+        cleanup:
+            fromStreams.shutdown()
+    }
+
+    def 'catching up an event already reflected by the rebuild should not duplicate rows'() {
+        given:
+            patronHolds(heldBookId)
+        and:
+            sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        when:
+            sheetsReadModel.catchUp(placedOnHold(heldBookId))
+        then:
+            activeHolds(heldBookId) == 1
+    }
+
+    def 'catching up an event the rebuild missed should apply it'() {
+        given:
+            sheetsRebuild.start().get(30, TimeUnit.SECONDS)
+        when:
+            sheetsReadModel.catchUp(placedOnHold(heldBookId))
+        then:
+            activeHolds(heldBookId) == 1
+    }
+
+    void patronHolds(UUID bookId) {
+        jdbcTemplate.update("INSERT INTO patron_database_entity (patron_type, patron_id) VALUES ('Regular', ?)", patronId)
+        Integer patron = jdbcTemplate.queryForObject("SELECT id FROM patron_database_entity WHERE patron_id = ?", Integer, patronId)
+        jdbcTemplate.update("INSERT INTO hold_database_entity (book_id, patron_id, library_branch_id, patron_database_entity, till) VALUES (?, ?, ?, ?, ?)",
+                bookId, patronId, branchId, patron, Timestamp.from(till))
+    }
+
+    void bookCheckedOutBy(UUID bookId) {
+        jdbcTemplate.update("INSERT INTO book_database_entity (id, book_id, book_type, book_state, checked_out_at_branch, checked_out_by_patron, version) " +
+                "VALUES (book_database_entity_seq.nextval, ?, 'Restricted', 'CheckedOut', ?, ?, 0)",
+                bookId, branchId, patronId)
+    }
+
+    void checkedOutEventStored(UUID bookId, Instant at) {
+        jdbcTemplate.update("INSERT INTO patron_events (patron_id, sequence, event_type, event_id, occurred_at, book_id, library_branch_id) " +
+                "VALUES (?, 1, 5, ?, ?, ?, ?)", patronId, UUID.randomUUID(), Timestamp.from(at), bookId, branchId)
+    }
+
+    void streamed(long sequence, int type, UUID bookId) {
+        jdbcTemplate.update("INSERT INTO patron_events (patron_id, sequence, event_type, event_id, occurred_at, book_id, library_branch_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)", patronId, sequence, type, UUID.randomUUID(), Timestamp.from(now().minusSeconds(100 - sequence)), bookId, branchId)
+    }
+
+    List<String> holdStatuses(UUID bookId) {
+        return jdbcTemplate.queryForList("SELECT status FROM holds_sheet WHERE book_id = ? AND hold_by_patron_id = ?", String, bookId, patronId)
+    }
+
+    List<String> checkoutStatuses(UUID bookId) {
+        return jdbcTemplate.queryForList("SELECT status FROM checkouts_sheet WHERE book_id = ? AND checked_out_by_patron_id = ?", String, bookId, patronId)
+    }
+
+    List<UUID> overdue() {
+        return sheetsReadModel.queryForCheckoutsToOverdue().toStreamOfEvents().map { it.bookId }.toJavaList()
+    }
+
+    int activeHolds(UUID bookId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM holds_sheet WHERE book_id = ? AND hold_by_patron_id = ? AND status = 'ACTIVE'",
+                Integer, bookId, patronId)
+    }
+
+    int activeCheckouts(UUID bookId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM checkouts_sheet WHERE book_id = ? AND checked_out_by_patron_id = ? AND status = 'CHECKEDOUT'",
+                Integer, bookId, patronId)
+    }
+
+    PatronEvent.BookCheckedOut checkedOut(UUID bookId, Instant till) {
+        return new PatronEvent.BookCheckedOut(
+                now(),
+                patronId,
+                bookId,
+                Restricted,
+                branchId,
+                till)
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold(UUID bookId) {
+        return new PatronEvent.BookPlacedOnHold(
+                now(),
+                patronId,
+                bookId,
+                Restricted,
+                branchId,
+                now(),
+                till)
+    }
+}
@@ -0,0 +1,143 @@
+package io.pillopl.library.lending.dailysheet.infrastructure
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.groupcommit.GroupCommit
+import io.pillopl.library.commons.replication.ReplicatedReads
+import io.pillopl.library.commons.sharding.Shards
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.PatronId
+import io.pillopl.library.lending.patronprofile.model.PatronProfileVersions
+import io.pillopl.library.lending.patronprofile.model.PatronProfiles
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionSynchronizationAdapter
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import javax.sql.DataSource
+import java.sql.SQLException
+import java.time.Clock
+import java.time.Duration
+import java.util.function.Supplier
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static java.time.Instant.now
+
+@SpringBootTest(classes = LendingTestContext.class, properties = 'lending.read-replica.enabled=true')
+class ReplicatingSheetsIT extends Specification {
+
+    PatronId patronId = anyPatronId()
+
+    @Autowired
+    SheetsReadModel sheetsReadModel
+
+    @Autowired
+    SheetsReplicator sheetsReplicator
+
+    @Autowired
+    ReplicatedReads replicatedReads
+
+    @Autowired
+    PatronProfiles patronProfiles
+
+    @Autowired
+    PatronProfileVersions patronProfileVersions
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    PollingConditions pollingConditions = new PollingConditions(timeout: 6)
+
+    def 'should apply sheet writes to the replica in the background'() {
+        given:
+            PatronEvent.BookPlacedOnHold placedOnHold = placedOnHold()
+        when:
+            sheetsReadModel.handle(placedOnHold)
+            sheetsReplicator.handle(placedOnHold)
+        then:
+            patronProfiles.fetchFor(patronId).holdsView.currentHolds.size() == 1
+        and:
+            pollingConditions.eventually {
+                assert holdsOnReplica() == 1
+                assert replicatedReads.lag() == Duration.ZERO
+                assert replicatedReads.forKey(patronId.patronId).is(replicatedReads.replica())
+            }
+    }
+
+    def 'should read a patron from the primary once the replica failed to apply their write'() {
+        given:
+            JdbcTemplate unreachable = new JdbcTemplate(Stub(DataSource) {
+                getConnection() >> { throw new SQLException('replica down') }
+            })
+        and:
+            ReplicatedReads reads = new ReplicatedReads(replicatedReads.primary(), unreachable, Duration.ofMinutes(1))
+            SheetsReplicator failing = new SheetsReplicator(
+                    new SheetsReadModel(unreachable, Clock.systemDefaultZone(), new SheetsWriteGate(), Shards.SINGLE),
+                    unreachable, reads, Clock.systemDefaultZone(), Duration.ofDays(30), Shards.SINGLE)
+        when:
+            failing.handle(placedOnHold())
+        then:
+            pollingConditions.eventually {
+                assert reads.lag() == Duration.ZERO
+                assert reads.forKey(patronId.patronId).is(reads.primary())
+            }
+        cleanup:
+            failing.shutdown()
+    }
+
+    def 'should neither replicate nor bump the profile version of a write whose group rolled back'() {
+        given:
+            GroupCommit groupCommit = new GroupCommit(transactionManager, Duration.ofMillis(1), 10, new SimpleMeterRegistry())
+            PatronEvent.BookPlacedOnHold placedOnHold = placedOnHold()
+            String eTag = patronProfileVersions.currentVersionOf(patronId).token()
+        when:
+            groupCommit.execute({
+                sheetsReadModel.handle(placedOnHold)
+                sheetsReplicator.handle(placedOnHold)
+                patronProfileVersions.handle(placedOnHold)
+                failGroupCommit()
+            } as Supplier)
+        then:
+            thrown(IllegalStateException)
+        and:
+            patronProfileVersions.currentVersionOf(patronId).token() == eTag
+            replicatedReads.forKey(patronId.patronId).is(replicatedReads.replica())
+            holdsOnReplica() == 0
+            patronProfiles.fetchFor(patronId).holdsView.currentHolds.isEmpty()
+        cleanup:
+            groupCommit.shutdown()
+    }
+
+    private static Object failGroupCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            void beforeCommit(boolean readOnly) {
+                throw new IllegalStateException('commit failed')
+            }
+        })
+        return null
+    }
+
+    private int holdsOnReplica() {
+        replicatedReads.replica().queryForObject(
+                'SELECT COUNT(*) FROM holds_sheet h WHERE h.hold_by_patron_id = ?', Integer, patronId.patronId)
+    }
+
+    private PatronEvent.BookPlacedOnHold placedOnHold() {
+        new PatronEvent.BookPlacedOnHold(
+                now(),
+                patronId.patronId,
+                anyBookId().bookId,
+                Circulating,
+                anyBranch().libraryBranchId,
+                now(),
+                now().plus(Duration.ofDays(1)))
+    }
+}
@@ -0,0 +1,110 @@
+package io.pillopl.library.lending.dailysheet.infrastructure
+
+import io.pillopl.library.catalogue.BookId
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.dailysheet.model.SheetsExport
+import io.pillopl.library.lending.dailysheet.model.SheetsExport.Filter
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.PatronId
+import io.vavr.control.Option
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.time.Duration
+import java.time.Instant
+
+import static io.pillopl.library.catalogue.BookType.Restricted
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static java.time.Clock.systemDefaultZone
+import static java.time.Instant.now
+
+@SpringBootTest(classes = LendingTestContext.class)
+class StreamingSheetsExportIT extends Specification {
+
+    static final Instant DAY = Instant.parse("2100-01-01T00:00:00Z")
+
+    PatronId patronId = anyPatronId()
+    LibraryBranchId branch = anyBranch()
+    LibraryBranchId otherBranch = anyBranch()
+
+    @Autowired
+    DataSource dataSource
+
+    SheetsReadModel readModel
+    SheetsExport export
+
+    def setup() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource)
+        readModel = new SheetsReadModel(jdbcTemplate, systemDefaultZone())
+        export = new SheetsExportReadModel(jdbcTemplate, 2)
+    }
+
+    def 'should stream holds to expire of a branch within the range, earliest first'() {
+        given:
+            BookId later = anyBookId()
+            BookId earlier = anyBookId()
+            readModel.handle(placedOnHold(later, branch, DAY.plus(Duration.ofHours(5))))
+            readModel.handle(placedOnHold(earlier, branch, DAY.plus(Duration.ofHours(1))))
+            readModel.handle(placedOnHold(anyBookId(), branch, DAY.plus(Duration.ofDays(1))))
+            readModel.handle(placedOnHold(anyBookId(), otherBranch, DAY.plus(Duration.ofHours(2))))
+        when:
+            List<SheetsExport.Row> rows = []
+            export.streamHoldsToExpire(new Filter(Option.of(branch), DAY, DAY.plus(Duration.ofDays(1))), { rows << it })
+        then:
+            rows*.book == [earlier, later]
+            rows.every { it.patron == patronId && it.branch == branch }
+    }
+
+    def 'should stream checkouts to overdue of all branches within the range'() {
+        given:
+            BookId atBranch = anyBookId()
+            BookId atOtherBranch = anyBookId()
+            BookId returned = anyBookId()
+            readModel.handle(checkedOut(atBranch, branch, DAY.plus(Duration.ofDays(10)).plus(Duration.ofHours(1))))
+            readModel.handle(checkedOut(atOtherBranch, otherBranch, DAY.plus(Duration.ofDays(10)).plus(Duration.ofHours(2))))
+            readModel.handle(checkedOut(returned, branch, DAY.plus(Duration.ofDays(10)).plus(Duration.ofHours(3))))
+            readModel.handle(bookReturned(returned, branch))
+        when:
+            List<SheetsExport.Row> rows = []
+            export.streamCheckoutsToOverdue(new Filter(Option.none(), DAY.plus(Duration.ofDays(10)), DAY.plus(Duration.ofDays(11))), { rows << it })
+        then:
+            rows*.book == [atBranch, atOtherBranch]
+            rows*.branch == [branch, otherBranch]
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold(BookId bookId, LibraryBranchId branchId, Instant till) {
+        return new PatronEvent.BookPlacedOnHold(
+                now(),
+                patronId.getPatronId(),
+                bookId.getBookId(),
+                Restricted,
+                branchId.getLibraryBranchId(),
+                now(),
+                till)
+    }
+
+    PatronEvent.BookCheckedOut checkedOut(BookId bookId, LibraryBranchId branchId, Instant till) {
+        return new PatronEvent.BookCheckedOut(
+                now(),
+                patronId.getPatronId(),
+                bookId.getBookId(),
+                Restricted,
+                branchId.getLibraryBranchId(),
+                till)
+    }
+
+    PatronEvent.BookReturned bookReturned(BookId bookId, LibraryBranchId branchId) {
+        return new PatronEvent.BookReturned(
+                now(),
+                patronId.getPatronId(),
+                bookId.getBookId(),
+                Restricted,
+                branchId.getLibraryBranchId())
+    }
+}
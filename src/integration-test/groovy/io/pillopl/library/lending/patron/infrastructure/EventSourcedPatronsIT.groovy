@@ -0,0 +1,116 @@
+package io.pillopl.library.lending.patron.infrastructure
+
+import io.pillopl.library.commons.aggregates.AggregateRootIsStale
+import io.pillopl.library.commons.commands.CommandProfiler
+import io.pillopl.library.commons.events.DomainEvents
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.pillopl.library.lending.patron.model.HoldDuration
+import io.pillopl.library.lending.patron.model.Patron
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.PatronFactory
+import io.pillopl.library.lending.patron.model.PatronId
+import io.pillopl.library.catalogue.BookId
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled.holdCanceledNow
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold.bookPlacedOnHoldNow
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHoldEvents.events
+import static io.pillopl.library.lending.patron.model.PatronEvent.OverdueCheckoutRegistered
+import static io.pillopl.library.lending.patron.model.PatronEvent.PatronCreated
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static io.pillopl.library.lending.patron.model.PatronFixture.regularPatron
+import static io.pillopl.library.lending.patron.model.PatronType.Regular
+
+@SpringBootTest(classes = LendingTestContext.class)
+class EventSourcedPatronsIT extends Specification {
+
+    static final int SNAPSHOT_EVERY = 3
+
+    PatronId patronId = anyPatronId()
+    LibraryBranchId libraryBranchId = anyBranch()
+
+    @Autowired
+    DataSource dataSource
+
+    DomainEvents domainEvents = Mock()
+
+    EventSourcedPatrons patrons
+
+    def setup() {
+        patrons = new EventSourcedPatrons(new JdbcTemplate(dataSource), new PatronFactory(), domainEvents, SNAPSHOT_EVERY, CommandProfiler.NONE)
+    }
+
+    def 'should rebuild patron from its stream and snapshots'() {
+        given:
+            BookId first = anyBookId()
+            BookId second = anyBookId()
+        when:
+            patrons.publish(PatronCreated.now(patronId, Regular))
+            patrons.publish(placedOnHold(first))
+            patrons.publish(placedOnHold(second))
+            patrons.publish(holdCanceledNow(first, libraryBranchId, patronId))
+            patrons.publish(OverdueCheckoutRegistered.now(patronId, anyBookId(), libraryBranchId))
+        then:
+            Patron patron = patrons.findBy(patronId).get()
+            patron == regularPatron(patronId)
+            patron.numberOfHolds() == 1
+            patron.overdueCheckoutsAt(libraryBranchId) == 1
+        and:
+            snapshotSequence() == 3
+    }
+
+    def 'should not find patron without stream'() {
+        expect:
+            patrons.findBy(anyPatronId()).isEmpty()
+    }
+
+    def 'should publish events after appending them'() {
+        when:
+            patrons.publish(PatronCreated.now(patronId, Regular))
+        then:
+            1 * domainEvents.publish(_)
+    }
+
+    def 'should reject append when someone else appended the same sequence'() {
+        given:
+            patrons.publish(PatronCreated.now(patronId, Regular))
+        and:
+            EventSourcedPatrons racing = new EventSourcedPatrons(competingWriter(), new PatronFactory(), domainEvents, SNAPSHOT_EVERY, CommandProfiler.NONE)
+        when:
+            racing.publish(placedOnHold(anyBookId()))
+        then:
+            thrown(AggregateRootIsStale)
+    }
+
+    PatronEvent placedOnHold(BookId bookId) {
+        return events(bookPlacedOnHoldNow(bookId, Circulating, libraryBranchId, patronId, HoldDuration.closeEnded(5)))
+    }
+
+    Long snapshotSequence() {
+        return new JdbcTemplate(dataSource).queryForObject(
+                "SELECT sequence FROM patron_snapshots WHERE patron_id = ?", Long, patronId.patronId)
+    }
+
+    JdbcTemplate competingWriter() {
+        return new JdbcTemplate(dataSource) {
+            @Override
+            int update(String sql, Object... args) {
+                if (sql.startsWith("INSERT INTO patron_events")) {
+                    Object[] competing = args.clone()
+                    competing[3] = UUID.randomUUID()
+                    super.update(sql, competing)
+                }
+                return super.update(sql, args)
+            }
+        }
+    }
+}
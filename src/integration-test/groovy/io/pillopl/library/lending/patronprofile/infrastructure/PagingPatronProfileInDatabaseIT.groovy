@@ -0,0 +1,84 @@
+package io.pillopl.library.lending.patronprofile.infrastructure
+
+import io.pillopl.library.lending.LendingTestContext
+import io.pillopl.library.lending.dailysheet.model.DailySheet
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.PatronId
+import io.pillopl.library.lending.patronprofile.model.Hold
+import io.pillopl.library.lending.patronprofile.model.PatronProfilePages
+import io.pillopl.library.lending.patronprofile.model.ProfilePage
+import io.vavr.control.Option
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.time.Duration
+import java.time.Instant
+
+import static io.pillopl.library.catalogue.BookType.Restricted
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static java.time.Instant.now
+
+@SpringBootTest(classes = LendingTestContext.class)
+class PagingPatronProfileInDatabaseIT extends Specification {
+
+    PatronId patronId = anyPatronId()
+    LibraryBranchId libraryBranchId = anyBranch()
+
+    static final Instant TOMORROW = now().plus(Duration.ofDays(1))
+
+    @Autowired
+    DataSource dataSource
+
+    @Autowired
+    DailySheet dailySheet
+
+    PatronProfilePages pages
+
+    def setup() {
+        pages = new PatronProfileCursorReadModel(new JdbcTemplate(dataSource), 10)
+    }
+
+    def 'should walk through current holds page by page'() {
+        given:
+            List<PatronEvent.BookPlacedOnHold> holds = (1..5).collect { placedOnHold() }
+            holds.each { dailySheet.handle(it) }
+        when:
+            ProfilePage<Hold> first = pages.holdsOf(patronId, Option.none(), 2)
+            ProfilePage<Hold> second = pages.holdsOf(patronId, first.next, 2)
+            ProfilePage<Hold> last = pages.holdsOf(patronId, second.next, 2)
+        then:
+            (first.items + second.items + last.items).map { it.book.bookId }.toJavaList() == holds.collect { it.bookId }
+            first.next.isDefined()
+            second.next.isDefined()
+            last.next.isEmpty()
+    }
+
+    def 'should stream all current holds'() {
+        given:
+            List<PatronEvent.BookPlacedOnHold> holds = (1..3).collect { placedOnHold() }
+            holds.each { dailySheet.handle(it) }
+        and:
+            List<Hold> streamed = []
+        when:
+            pages.streamHoldsOf(patronId, { streamed << it })
+        then:
+            streamed.collect { it.book.bookId } == holds.collect { it.bookId }
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold() {
+        return new PatronEvent.BookPlacedOnHold(
+                now(),
+                patronId.getPatronId(),
+                anyBookId().getBookId(),
+                Restricted,
+                libraryBranchId.getLibraryBranchId(),
+                now().minusSeconds(60000),
+                TOMORROW)
+    }
+}
@@ -0,0 +1,47 @@
+package io.pillopl.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time until all three contexts are up, in a fresh JVM every time: each fork starts the application exactly once,
+ * with or without the {@code fast-startup} profile. To see what the class-data-sharing archive adds on top, build it
+ * with {@code -Pcds} and run again with {@code -jvmArgsAppend -XX:SharedArchiveFile=target/cds/library.jsa}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Param({"false", "true"})
+    boolean fastStartup;
+
+    LibraryApplication.Library library;
+
+    @Benchmark
+    public void timeToReady() {
+        library = fastStartup
+                ? LibraryApplication.start("--server.port=0", "--spring.profiles.include=fast-startup")
+                : LibraryApplication.start("--server.port=0");
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        library.close();
+    }
+}
@@ -0,0 +1,102 @@
+package io.pillopl.library.commons.events.journal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.events.DomainEvent;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.HoldDuration;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.vavr.collection.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static io.pillopl.library.catalogue.BookType.Circulating;
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold.bookPlacedOnHoldNow;
+
+/**
+ * {@link JournalEventsStorage} under each {@link FsyncPolicy}. {@code appendAndForward} has three threads appending
+ * while a fourth forwards, as {@code StoreAndForwardDomainEventPublisher} does, which reports append throughput and
+ * keeps retention deleting what was forwarded. {@code tailRead} samples one event appended and read back from the
+ * tail of the journal.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventJournalBenchmark {
+
+    @Param({"NEVER", "INTERVAL", "ALWAYS"})
+    FsyncPolicy fsync;
+
+    Path directory;
+    JournalEventsStorage journal;
+    DomainEvent event;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("events-journal");
+        journal = new JournalEventsStorage(directory, 16 * 1024 * 1024, fsync, Duration.ofMillis(100), Duration.ZERO, 1000, new SimpleMeterRegistry());
+        event = bookPlacedOnHoldNow(
+                new BookId(UUID.randomUUID()),
+                Circulating,
+                new LibraryBranchId(UUID.randomUUID()),
+                new PatronId(UUID.randomUUID()),
+                HoldDuration.closeEnded(3));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        Files.walk(directory)
+                .sorted((first, second) -> second.compareTo(first))
+                .forEach(path -> path.toFile().delete());
+    }
+
+    @Benchmark
+    @Group("appendAndForward")
+    @GroupThreads(3)
+    @BenchmarkMode(Mode.Throughput)
+    public void append() {
+        journal.save(event);
+    }
+
+    @Benchmark
+    @Group("appendAndForward")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.Throughput)
+    public int forward() {
+        List<DomainEvent> events = journal.toPublish();
+        journal.published(events);
+        return events.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public int tailRead() {
+        journal.save(event);
+        List<DomainEvent> events = journal.toPublish();
+        journal.published(events);
+        return events.size();
+    }
+}
@@ -0,0 +1,59 @@
+package io.pillopl.library.lending;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.commons.aggregates.Version;
+import io.pillopl.library.lending.book.model.AvailableBook;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.Patron;
+import io.pillopl.library.lending.patron.model.PatronFactory;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patron.model.PatronType;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Patrons shaped like the ones we see in production: regular patrons one hold short of the limit and
+ * researchers holding hundreds of books.
+ */
+public final class LendingBenchmarkFixtures {
+
+    public static final int REGULAR_PATRON_HOLDS = 4;
+    public static final int RESEARCHER_HOLDS = 500;
+
+    private LendingBenchmarkFixtures() {
+    }
+
+    public static Patron regularPatronWithHolds(int holds) {
+        return patron(PatronType.Regular, holds);
+    }
+
+    public static Patron researcherWithHolds(int holds) {
+        return patron(PatronType.Researcher, holds);
+    }
+
+    public static AvailableBook circulatingBook() {
+        return new AvailableBook(new BookId(UUID.randomUUID()), BookType.Circulating, new LibraryBranchId(UUID.randomUUID()), new Version(0));
+    }
+
+    public static AvailableBook restrictedBook() {
+        return new AvailableBook(new BookId(UUID.randomUUID()), BookType.Restricted, new LibraryBranchId(UUID.randomUUID()), new Version(0));
+    }
+
+    public static Set<Tuple2<BookId, LibraryBranchId>> holds(int holds) {
+        Set<Tuple2<BookId, LibraryBranchId>> result = new HashSet<>();
+        for (int i = 0; i < holds; i++) {
+            result.add(Tuple.of(new BookId(UUID.randomUUID()), new LibraryBranchId(UUID.randomUUID())));
+        }
+        return result;
+    }
+
+    private static Patron patron(PatronType type, int holds) {
+        return new PatronFactory().create(type, new PatronId(UUID.randomUUID()), holds(holds), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,73 @@
+package io.pillopl.library.lending.book.infrastructure;
+
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.lending.book.model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static io.pillopl.library.lending.book.infrastructure.BookDatabaseEntity.BookState.Available;
+import static io.pillopl.library.lending.book.infrastructure.BookDatabaseEntity.BookState.CheckedOut;
+import static io.pillopl.library.lending.book.infrastructure.BookDatabaseEntity.BookState.OnHold;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookDatabaseEntityBenchmark {
+
+    BookDatabaseEntity available;
+    BookDatabaseEntity onHold;
+    BookDatabaseEntity checkedOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        available = entity(Available);
+        available.available_at_branch = UUID.randomUUID();
+        onHold = entity(OnHold);
+        onHold.on_hold_at_branch = UUID.randomUUID();
+        onHold.on_hold_by_patron = UUID.randomUUID();
+        onHold.on_hold_till = Instant.now();
+        checkedOut = entity(CheckedOut);
+        checkedOut.checked_out_at_branch = UUID.randomUUID();
+        checkedOut.checked_out_by_patron = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public Book availableBook() {
+        return available.toDomainModel();
+    }
+
+    @Benchmark
+    public Book bookOnHold() {
+        return onHold.toDomainModel();
+    }
+
+    @Benchmark
+    public Book checkedOutBook() {
+        return checkedOut.toDomainModel();
+    }
+
+    private static BookDatabaseEntity entity(BookDatabaseEntity.BookState state) {
+        BookDatabaseEntity entity = new BookDatabaseEntity();
+        entity.book_id = UUID.randomUUID();
+        entity.book_type = BookType.Circulating;
+        entity.book_state = state;
+        entity.version = 1;
+        return entity;
+    }
+}
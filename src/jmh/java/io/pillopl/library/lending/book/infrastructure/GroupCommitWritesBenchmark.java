@@ -0,0 +1,91 @@
+package io.pillopl.library.lending.book.infrastructure;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pillopl.library.commons.groupcommit.GroupCommit;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.circulatingBook;
+
+/**
+ * New books written concurrently through {@link BookDatabaseRepository}, each in its own commit
+ * ({@code windowMicros = -1}) or handed to a {@link GroupCommit} collecting writes for {@code windowMicros}. The
+ * database is a file one, so every commit pays for a log write as it would outside of tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class GroupCommitWritesBenchmark {
+
+    @Param({"-1", "0", "100", "500", "2000"})
+    long windowMicros;
+
+    Path directory;
+    JdbcConnectionPool pool;
+    BookDatabaseRepository bookRepository;
+    GroupCommit groupCommit;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("group-commit");
+        pool = JdbcConnectionPool.create("jdbc:h2:file:" + directory.resolve("lending"), "sa", "");
+        pool.setMaxConnections(32);
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("create_lending_book_db.sql")), pool);
+        bookRepository = new BookDatabaseRepository(new JdbcTemplate(pool));
+        if (windowMicros >= 0) {
+            groupCommit = new GroupCommit(new DataSourceTransactionManager(pool), Duration.of(windowMicros, ChronoUnit.MICROS), 256, new SimpleMeterRegistry());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (groupCommit != null) {
+            groupCommit.shutdown();
+        }
+        pool.dispose();
+        Files.walk(directory)
+                .sorted((first, second) -> second.compareTo(first))
+                .forEach(path -> path.toFile().delete());
+    }
+
+    @Benchmark
+    public void saveNewBook() {
+        if (groupCommit == null) {
+            bookRepository.save(circulatingBook());
+        } else {
+            groupCommit.execute(() -> {
+                bookRepository.save(circulatingBook());
+                return null;
+            });
+        }
+    }
+}
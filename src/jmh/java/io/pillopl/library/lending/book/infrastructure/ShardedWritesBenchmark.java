@@ -0,0 +1,66 @@
+package io.pillopl.library.lending.book.infrastructure;
+
+import io.pillopl.library.commons.sharding.ShardRoutingDataSource;
+import io.pillopl.library.commons.sharding.Shards;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.circulatingBook;
+
+/**
+ * New books written concurrently through {@link BookDatabaseRepository} with the lending database split into
+ * {@code numberOfShards} embedded databases behind a {@link ShardRoutingDataSource}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ShardedWritesBenchmark {
+
+    @Param({"1", "2", "4"})
+    int numberOfShards;
+
+    BookDatabaseRepository bookRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<DataSource> databases = new ArrayList<>(numberOfShards);
+        for (int shard = 0; shard < numberOfShards; shard++) {
+            databases.add(new EmbeddedDatabaseBuilder()
+                    .generateUniqueName(true)
+                    .setType(EmbeddedDatabaseType.H2)
+                    .addScript("create_lending_book_db.sql")
+                    .build());
+        }
+        bookRepository = new BookDatabaseRepository(
+                new JdbcTemplate(ShardRoutingDataSource.over(databases)),
+                new Shards(numberOfShards));
+    }
+
+    @Benchmark
+    public void saveNewBook() {
+        bookRepository.save(circulatingBook());
+    }
+}
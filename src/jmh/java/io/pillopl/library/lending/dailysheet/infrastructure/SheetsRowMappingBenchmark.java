@@ -0,0 +1,81 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.lending.dailysheet.model.ExpiredHold;
+import io.pillopl.library.lending.dailysheet.model.OverdueCheckout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of the rows {@link org.springframework.jdbc.core.ColumnMapRowMapper} hands to {@link SheetsReadModel},
+ * without the database round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SheetsRowMappingBenchmark {
+
+    @Param({"100", "10000"})
+    int numberOfRows;
+
+    SheetsReadModel sheetsReadModel;
+    List<Map<String, Object>> holdRows;
+    List<Map<String, Object>> checkoutRows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sheetsReadModel = new SheetsReadModel(null, Clock.systemUTC());
+        holdRows = new ArrayList<>(numberOfRows);
+        checkoutRows = new ArrayList<>(numberOfRows);
+        for (int i = 0; i < numberOfRows; i++) {
+            holdRows.add(row("BOOK_ID", "HOLD_BY_PATRON_ID", "HOLD_AT_BRANCH"));
+            checkoutRows.add(row("BOOK_ID", "CHECKED_OUT_BY_PATRON_ID", "CHECKED_OUT_AT_BRANCH"));
+        }
+    }
+
+    @Benchmark
+    public List<ExpiredHold> holdsToExpire() {
+        List<ExpiredHold> result = new ArrayList<>(holdRows.size());
+        for (Map<String, Object> row : holdRows) {
+            result.add(sheetsReadModel.toExpiredHold(row));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<OverdueCheckout> checkoutsToOverdue() {
+        List<OverdueCheckout> result = new ArrayList<>(checkoutRows.size());
+        for (Map<String, Object> row : checkoutRows) {
+            result.add(sheetsReadModel.toOverdueCheckout(row));
+        }
+        return result;
+    }
+
+    private static Map<String, Object> row(String... columns) {
+        Map<String, Object> row = new LinkedCaseInsensitiveMap<>(columns.length);
+        for (String column : columns) {
+            row.put(column, UUID.randomUUID());
+        }
+        return row;
+    }
+}
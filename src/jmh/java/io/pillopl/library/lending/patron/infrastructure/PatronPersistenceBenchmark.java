@@ -0,0 +1,84 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.lending.patron.model.Patron;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronFactory;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patron.model.PatronType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The patron aggregate round trip outside of the database: rebuilding the domain model from the entity and
+ * applying events to the entity before it is saved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatronPersistenceBenchmark {
+
+    @Param({"4", "500"})
+    int numberOfHolds;
+
+    DomainModelMapper domainModelMapper;
+    PatronDatabaseEntity entity;
+    BookPlacedOnHold placedOnHold;
+    BookHoldCanceled holdCanceled;
+    BookHoldCanceled unknownHoldCanceled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        domainModelMapper = new DomainModelMapper(new PatronFactory());
+        PatronId patronId = new PatronId(UUID.randomUUID());
+        PatronType type = numberOfHolds > 4 ? PatronType.Researcher : PatronType.Regular;
+        entity = new PatronDatabaseEntity(patronId, type);
+        Instant now = Instant.now();
+        for (int i = 0; i < numberOfHolds; i++) {
+            entity.handle(placedOnHold(patronId, UUID.randomUUID(), UUID.randomUUID(), now));
+        }
+        UUID bookId = UUID.randomUUID();
+        UUID branchId = UUID.randomUUID();
+        placedOnHold = placedOnHold(patronId, bookId, branchId, now);
+        holdCanceled = new BookHoldCanceled(now, patronId.getPatronId(), bookId, branchId);
+        unknownHoldCanceled = new BookHoldCanceled(now, patronId.getPatronId(), UUID.randomUUID(), branchId);
+    }
+
+    @Benchmark
+    public Patron mapToDomainModel() {
+        return domainModelMapper.map(entity);
+    }
+
+    @Benchmark
+    public PatronDatabaseEntity placeOnHoldAndCancel() {
+        return entity.handle(placedOnHold).handle(holdCanceled);
+    }
+
+    @Benchmark
+    public PatronDatabaseEntity cancelHoldThatIsNotThere() {
+        return entity.handle(unknownHoldCanceled);
+    }
+
+    private static BookPlacedOnHold placedOnHold(PatronId patronId, UUID bookId, UUID branchId, Instant now) {
+        return new BookPlacedOnHold(now, patronId.getPatronId(), bookId, BookType.Circulating, branchId, now, now.plus(3, ChronoUnit.DAYS));
+    }
+}
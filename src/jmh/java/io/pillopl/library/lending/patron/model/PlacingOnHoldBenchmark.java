@@ -0,0 +1,67 @@
+package io.pillopl.library.lending.patron.model;
+
+import io.pillopl.library.lending.book.model.AvailableBook;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldFailed;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHoldEvents;
+import io.vavr.control.Either;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.REGULAR_PATRON_HOLDS;
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.RESEARCHER_HOLDS;
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.circulatingBook;
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.regularPatronWithHolds;
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.researcherWithHolds;
+import static io.pillopl.library.lending.LendingBenchmarkFixtures.restrictedBook;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacingOnHoldBenchmark {
+
+    Patron regularPatron;
+    Patron researcher;
+    AvailableBook circulatingBook;
+    AvailableBook restrictedBook;
+    HoldDuration closeEnded;
+    HoldDuration openEnded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        regularPatron = regularPatronWithHolds(REGULAR_PATRON_HOLDS);
+        researcher = researcherWithHolds(RESEARCHER_HOLDS);
+        circulatingBook = circulatingBook();
+        restrictedBook = restrictedBook();
+        closeEnded = HoldDuration.closeEnded(3);
+        openEnded = HoldDuration.openEnded();
+    }
+
+    @Benchmark
+    public Either<BookHoldFailed, BookPlacedOnHoldEvents> regularPatronReachingMaximumHolds() {
+        return regularPatron.placeOnHold(circulatingBook, closeEnded);
+    }
+
+    @Benchmark
+    public Either<BookHoldFailed, BookPlacedOnHoldEvents> regularPatronRejectedForRestrictedBook() {
+        return regularPatron.placeOnHold(restrictedBook, closeEnded);
+    }
+
+    @Benchmark
+    public Either<BookHoldFailed, BookPlacedOnHoldEvents> researcherPlacingOpenEndedHold() {
+        return researcher.placeOnHold(restrictedBook, openEnded);
+    }
+}
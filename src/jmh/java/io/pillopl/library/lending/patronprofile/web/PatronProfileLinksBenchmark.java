@@ -0,0 +1,83 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.afford;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatronProfileLinksBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int numberOfHolds;
+
+    UUID patronId;
+    List<UUID> bookIds;
+    PatronProfileLinks patronProfileLinks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/profiles");
+        request.setServerName("library.local");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        patronId = UUID.randomUUID();
+        bookIds = new ArrayList<>(numberOfHolds);
+        for (int i = 0; i < numberOfHolds; i++) {
+            bookIds.add(UUID.randomUUID());
+        }
+        patronProfileLinks = new PatronProfileLinks();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public List<Link> methodOnProxies() {
+        List<Link> links = new ArrayList<>(bookIds.size());
+        for (UUID bookId : bookIds) {
+            links.add(linkTo(methodOn(PatronProfileController.class).findHold(patronId, bookId, null))
+                    .withSelfRel()
+                    .andAffordance(afford(methodOn(PatronProfileController.class).cancelHold(patronId, bookId))));
+        }
+        return links;
+    }
+
+    @Benchmark
+    public List<Link> precompiledTemplates() {
+        PatronProfileLinks.ForPatron forPatron = patronProfileLinks.forCurrentRequest(patronId);
+        List<Link> links = new ArrayList<>(bookIds.size());
+        for (UUID bookId : bookIds) {
+            links.add(forPatron.holdWithCancelAffordance(bookId));
+        }
+        return links;
+    }
+}
@@ -2,21 +2,103 @@ package io.pillopl.library;
 
 import io.pillopl.library.catalogue.CatalogueConfiguration;
 import io.pillopl.library.lending.LendingConfig;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootConfiguration
 @EnableAutoConfiguration(exclude = DataSourceAutoConfiguration.class)
+@Slf4j
 public class LibraryApplication {
 
     public static void main(String[] args) {
-        new SpringApplicationBuilder()
-                .parent(LibraryApplication.class)
-                .child(LendingConfig.class).web(WebApplicationType.SERVLET)
-                .sibling(CatalogueConfiguration.class).web(WebApplicationType.NONE)
+        Library library = start(args);
+        if (library.parent.getEnvironment().getProperty("library.startup.exit-after-ready", Boolean.class, false)) {
+            library.close();
+        }
+    }
+
+    /**
+     * Starts the parent context, then lending and catalogue as its children. The two children share nothing but the
+     * parent, so with {@code library.startup.parallel} they are started side by side.
+     */
+    static Library start(String... args) {
+        long started = System.nanoTime();
+        ConfigurableApplicationContext parent = new SpringApplicationBuilder(LibraryApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+        boolean parallel = parent.getEnvironment().getProperty("library.startup.parallel", Boolean.class, false);
+        List<ConfigurableApplicationContext> children;
+        try {
+            children = parallel ? startInParallel(parent, args) : List.of(lending(parent, args), catalogue(parent, args));
+        } catch (RuntimeException e) {
+            parent.close();
+            throw e;
+        }
+        log.info("Library ready in {} ms, {} ms since the JVM started",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+                ManagementFactory.getRuntimeMXBean().getUptime());
+        return new Library(parent, children);
+    }
+
+    private static List<ConfigurableApplicationContext> startInParallel(ConfigurableApplicationContext parent, String... args) {
+        //a thread of our own rather than a pool one, so it inherits the class loader of the executable jar
+        ExecutorService startup = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("lending-startup-"));
+        try {
+            CompletableFuture<ConfigurableApplicationContext> lending = CompletableFuture.supplyAsync(() -> lending(parent, args), startup);
+            ConfigurableApplicationContext catalogue;
+            try {
+                catalogue = catalogue(parent, args);
+            } catch (RuntimeException e) {
+                lending.thenAccept(ConfigurableApplicationContext::close);
+                throw e;
+            }
+            return List.of(lending.join(), catalogue);
+        } finally {
+            startup.shutdown();
+        }
+    }
+
+    private static ConfigurableApplicationContext lending(ConfigurableApplicationContext parent, String... args) {
+        return new SpringApplicationBuilder(LendingConfig.class)
+                .parent(parent)
+                .web(WebApplicationType.SERVLET)
                 .run(args);
     }
+
+    private static ConfigurableApplicationContext catalogue(ConfigurableApplicationContext parent, String... args) {
+        return new SpringApplicationBuilder(CatalogueConfiguration.class)
+                .parent(parent)
+                .web(WebApplicationType.NONE)
+                .run(args);
+    }
+
+    static class Library implements AutoCloseable {
+
+        private final ConfigurableApplicationContext parent;
+        private final List<ConfigurableApplicationContext> children;
+
+        private Library(ConfigurableApplicationContext parent, List<ConfigurableApplicationContext> children) {
+            this.parent = parent;
+            this.children = children;
+        }
+
+        @Override
+        public void close() {
+            children.forEach(ConfigurableApplicationContext::close);
+            parent.close();
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package io.pillopl.library.commons.commands;
+
+import java.util.function.Supplier;
+
+/**
+ * Splits the time of a command into named phases. Phases are attributed to the command running on the current
+ * thread, so code further down the call stack (repositories, publishers) can add phases without being handed the
+ * command explicitly. A phase started while another one runs is recorded as {@code outer/inner}.
+ */
+public interface CommandProfiler {
+
+    CommandProfiler NONE = new CommandProfiler() {
+
+        @Override
+        public <T> T command(String name, Supplier<T> command) {
+            return command.get();
+        }
+
+        @Override
+        public <T> T phase(String name, Supplier<T> phase) {
+            return phase.get();
+        }
+
+        @Override
+        public <T> Supplier<T> onBehalfOfCurrent(Supplier<T> work) {
+            return work;
+        }
+    };
+
+    <T> T command(String name, Supplier<T> command);
+
+    <T> T phase(String name, Supplier<T> phase);
+
+    /**
+     * Wraps work the current command hands to another thread, so the phases it records there still count towards
+     * the command. The command has to wait for the work before it finishes.
+     */
+    <T> Supplier<T> onBehalfOfCurrent(Supplier<T> work);
+
+    default void phase(String name, Runnable phase) {
+        phase(name, () -> {
+            phase.run();
+            return null;
+        });
+    }
+}
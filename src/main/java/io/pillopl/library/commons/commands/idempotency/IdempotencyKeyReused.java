@@ -0,0 +1,8 @@
+package io.pillopl.library.commons.commands.idempotency;
+
+public class IdempotencyKeyReused extends RuntimeException {
+
+    public IdempotencyKeyReused(String msg) {
+        super(msg);
+    }
+}
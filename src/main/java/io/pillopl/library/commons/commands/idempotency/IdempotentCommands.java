@@ -0,0 +1,212 @@
+package io.pillopl.library.commons.commands.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.sharding.Shards;
+import io.vavr.control.Option;
+import lombok.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Runs a command at most once per idempotency key. The outcome of the first run is kept for {@code ttl}, in a bounded
+ * in-memory map of the most recent keys and in the {@code idempotency_keys} table behind it, and every retry with the
+ * same key gets that outcome back without running the command again. A retry that arrives while the first run is
+ * still going waits for it instead.
+ * <p>
+ * Only outcomes below 500 are kept: a command that failed on our side is run again on retry. Reusing a key for a
+ * different request is rejected with {@link IdempotencyKeyReused}.
+ */
+public class IdempotentCommands {
+
+    private static final String LOOKUPS = "idempotency_key_lookups";
+    private static final String TAG_RESULT = "result";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Shards shards;
+    private final Clock clock;
+    private final Duration ttl;
+    private final Map<Key, Stored> recent;
+    private final Map<Key, CompletableFuture<Stored>> inFlight = new ConcurrentHashMap<>();
+    private final Counter memoryHits;
+    private final Counter tableHits;
+    private final Counter inFlightHits;
+    private final Counter misses;
+    private final Counter conflicts;
+
+    public IdempotentCommands(JdbcTemplate jdbcTemplate, Shards shards, Clock clock, Duration ttl, int capacity, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.clock = clock;
+        this.ttl = ttl;
+        this.recent = new LinkedHashMap<Key, Stored>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Stored> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.memoryHits = meterRegistry.counter(LOOKUPS, TAG_RESULT, "memory_hit");
+        this.tableHits = meterRegistry.counter(LOOKUPS, TAG_RESULT, "table_hit");
+        this.inFlightHits = meterRegistry.counter(LOOKUPS, TAG_RESULT, "in_flight");
+        this.misses = meterRegistry.counter(LOOKUPS, TAG_RESULT, "miss");
+        this.conflicts = meterRegistry.counter(LOOKUPS, TAG_RESULT, "conflict");
+    }
+
+    /**
+     * @param scope       whose key it is; keys of different scopes never collide
+     * @param fingerprint what the request was, to tell a retry from a different request reusing the key
+     * @param command     runs the command and completes with the status to remember
+     */
+    public CompletableFuture<Outcome> execute(UUID scope, String key, String fingerprint, Supplier<CompletableFuture<Integer>> command) {
+        Key id = new Key(scope, key);
+        Option<Stored> stored = lookup(id);
+        if (stored.isDefined()) {
+            return completedFuture(replay(stored.get(), fingerprint));
+        }
+        CompletableFuture<Stored> mine = new CompletableFuture<>();
+        CompletableFuture<Stored> running = inFlight.putIfAbsent(id, mine);
+        if (running != null) {
+            inFlightHits.increment();
+            return running.thenApply(result -> replay(result, fingerprint));
+        }
+        Option<Stored> justStored = fromMemory(id);
+        if (justStored.isDefined()) {
+            inFlight.remove(id, mine);
+            memoryHits.increment();
+            return completedFuture(replay(justStored.get(), fingerprint));
+        }
+        misses.increment();
+        run(command).whenComplete((status, failure) -> {
+            try {
+                if (failure != null) {
+                    mine.completeExceptionally(failure);
+                    return;
+                }
+                Stored result = new Stored(fingerprint, status, Instant.now(clock));
+                if (status < 500) {
+                    remember(id, result);
+                }
+                mine.complete(result);
+            } finally {
+                inFlight.remove(id, mine);
+            }
+        });
+        return mine.thenApply(result -> new Outcome(result.status, false));
+    }
+
+    private static CompletableFuture<Integer> run(Supplier<CompletableFuture<Integer>> command) {
+        try {
+            return command.get();
+        } catch (RuntimeException e) {
+            CompletableFuture<Integer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private Outcome replay(Stored stored, String fingerprint) {
+        if (!stored.fingerprint.equals(fingerprint)) {
+            conflicts.increment();
+            throw new IdempotencyKeyReused("Idempotency key was already used for a different request");
+        }
+        return new Outcome(stored.status, true);
+    }
+
+    private Option<Stored> lookup(Key id) {
+        Option<Stored> inMemory = fromMemory(id);
+        if (inMemory.isDefined()) {
+            memoryHits.increment();
+            return inMemory;
+        }
+        Option<Stored> inTable = fromTable(id);
+        inTable.forEach(stored -> {
+            tableHits.increment();
+            synchronized (recent) {
+                recent.put(id, stored);
+            }
+        });
+        return inTable;
+    }
+
+    private Option<Stored> fromMemory(Key id) {
+        Stored stored;
+        synchronized (recent) {
+            stored = recent.get(id);
+        }
+        return Option.of(stored).filter(this::notExpired);
+    }
+
+    private Option<Stored> fromTable(Key id) {
+        List<Stored> rows = shards.on(id.scope, () -> jdbcTemplate.query(
+                "SELECT k.fingerprint, k.status, k.created_at FROM idempotency_keys k " +
+                        "WHERE k.scope_id = ? AND k.idempotency_key = ? AND k.created_at > ?",
+                new Object[]{id.scope, id.key, Timestamp.from(Instant.now(clock).minus(ttl))},
+                (rs, rowNum) -> new Stored(rs.getString("FINGERPRINT"), rs.getInt("STATUS"), rs.getTimestamp("CREATED_AT").toInstant())));
+        return Option.ofOptional(rows.stream().findFirst());
+    }
+
+    private void remember(Key id, Stored stored) {
+        synchronized (recent) {
+            recent.put(id, stored);
+        }
+        shards.on(id.scope, () -> {
+            try {
+                jdbcTemplate.update(
+                        "INSERT INTO idempotency_keys (scope_id, idempotency_key, fingerprint, status, created_at) VALUES (?, ?, ?, ?, ?)",
+                        id.scope, id.key, stored.fingerprint, stored.status, Timestamp.from(stored.createdAt));
+            } catch (DuplicateKeyException e) {
+                //an expired row not cleaned up yet
+                jdbcTemplate.update(
+                        "UPDATE idempotency_keys SET fingerprint = ?, status = ?, created_at = ? WHERE scope_id = ? AND idempotency_key = ?",
+                        stored.fingerprint, stored.status, Timestamp.from(stored.createdAt), id.scope, id.key);
+            }
+        });
+    }
+
+    private boolean notExpired(Stored stored) {
+        return stored.createdAt.isAfter(Instant.now(clock).minus(ttl));
+    }
+
+    @Scheduled(initialDelayString = "${lending.idempotency.cleanup-millis:60000}", fixedDelayString = "${lending.idempotency.cleanup-millis:60000}")
+    public void removeExpired() {
+        Timestamp cutoff = Timestamp.from(Instant.now(clock).minus(ttl));
+        shards.onEachShard(shard -> jdbcTemplate.update("DELETE FROM idempotency_keys WHERE created_at <= ?", cutoff));
+        synchronized (recent) {
+            recent.values().removeIf(stored -> !notExpired(stored));
+        }
+    }
+
+    @Value
+    public static class Outcome {
+        int status;
+        boolean replayed;
+    }
+
+    @Value
+    private static class Key {
+        UUID scope;
+        String key;
+    }
+
+    @Value
+    private static class Stored {
+        String fingerprint;
+        int status;
+        Instant createdAt;
+    }
+}
@@ -0,0 +1,26 @@
+package io.pillopl.library.commons.commands.profiling;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@Value
+public class CommandExecution {
+
+    String command;
+    String thread;
+    Instant startedAt;
+    Duration took;
+    boolean failed;
+    List<Phase> phases;
+
+    @Value
+    public static class Phase {
+
+        String name;
+        int invocations;
+        Duration took;
+    }
+}
@@ -0,0 +1,26 @@
+package io.pillopl.library.commons.commands.profiling;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.commands.CommandProfiler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CommandProfilingConfig {
+
+    @Bean
+    RecentCommandExecutions recentCommandExecutions(@Value("${commands.profiling.recent-executions:1024}") int capacity) {
+        return new RecentCommandExecutions(capacity);
+    }
+
+    @Bean
+    CommandProfiler commandProfiler(MeterRegistry meterRegistry, RecentCommandExecutions recentCommandExecutions) {
+        return new MeteredCommandProfiler(meterRegistry, recentCommandExecutions);
+    }
+
+    @Bean
+    SlowCommandsEndpoint slowCommandsEndpoint(RecentCommandExecutions recentCommandExecutions) {
+        return new SlowCommandsEndpoint(recentCommandExecutions);
+    }
+}
@@ -0,0 +1,172 @@
+package io.pillopl.library.commons.commands.profiling;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.pillopl.library.commons.commands.CommandProfiler;
+import io.vavr.control.Either;
+import io.vavr.control.Try;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Records a {@code command} timer per command and outcome ({@code failed}) and a {@code command_phase} timer per
+ * command and phase, and keeps every finished execution with its phase breakdown in {@link RecentCommandExecutions}.
+ */
+class MeteredCommandProfiler implements CommandProfiler {
+
+    private static final String COMMAND = "command";
+    private static final String COMMAND_PHASE = "command_phase";
+    private static final String TAG_COMMAND = "command";
+    private static final String TAG_PHASE = "phase";
+    private static final String TAG_FAILED = "failed";
+
+    private final ThreadLocal<Running> current = new ThreadLocal<>();
+    private final ConcurrentMap<String, Timer> commandTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> failedCommandTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer>> phaseTimers = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final RecentCommandExecutions recent;
+
+    MeteredCommandProfiler(MeterRegistry meterRegistry, RecentCommandExecutions recent) {
+        this.meterRegistry = meterRegistry;
+        this.recent = recent;
+    }
+
+    @Override
+    public <T> T command(String name, Supplier<T> command) {
+        if (current.get() != null) {
+            return phase(name, command);
+        }
+        Running running = new Running(name);
+        current.set(running);
+        boolean failed = true;
+        try {
+            T result = command.get();
+            failed = failed(result);
+            return result;
+        } finally {
+            current.remove();
+            finish(running, failed);
+        }
+    }
+
+    /**
+     * Commands catch their own exceptions and hand them back as a failed {@link Try} or a {@link Either.Left},
+     * so a command that returned can still have failed.
+     */
+    private static boolean failed(Object result) {
+        if (result instanceof Try) {
+            return ((Try<?>) result).isFailure();
+        }
+        if (result instanceof Either) {
+            return ((Either<?, ?>) result).isLeft();
+        }
+        return false;
+    }
+
+    @Override
+    public <T> T phase(String name, Supplier<T> phase) {
+        Running running = current.get();
+        if (running == null) {
+            return phase.get();
+        }
+        String outer = running.currentPhase;
+        String path = outer == null ? name : outer + "/" + name;
+        running.currentPhase = path;
+        long start = System.nanoTime();
+        try {
+            return phase.get();
+        } finally {
+            running.record(path, System.nanoTime() - start);
+            running.currentPhase = outer;
+        }
+    }
+
+    @Override
+    public <T> Supplier<T> onBehalfOfCurrent(Supplier<T> work) {
+        Running running = current.get();
+        if (running == null) {
+            return work;
+        }
+        String phase = running.currentPhase;
+        return () -> {
+            Running previous = current.get();
+            String previousPhase = running.currentPhase;
+            current.set(running);
+            running.currentPhase = phase;
+            try {
+                return work.get();
+            } finally {
+                running.currentPhase = previousPhase;
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    private void finish(Running running, boolean failed) {
+        long took = System.nanoTime() - running.startNanos;
+        (failed ? failedCommandTimers : commandTimers)
+                .computeIfAbsent(running.command, command -> commandTimer(command, failed))
+                .record(took, TimeUnit.NANOSECONDS);
+        ConcurrentMap<String, Timer> timers = phaseTimers.computeIfAbsent(running.command, command -> new ConcurrentHashMap<>());
+        List<CommandExecution.Phase> phases = new ArrayList<>(running.phases.size());
+        running.phases.forEach((phase, stats) -> {
+            timers.computeIfAbsent(phase, p -> phaseTimer(running.command, p)).record(stats.nanos, TimeUnit.NANOSECONDS);
+            phases.add(new CommandExecution.Phase(phase, stats.invocations, Duration.ofNanos(stats.nanos)));
+        });
+        recent.add(new CommandExecution(running.command, running.thread, running.startedAt, Duration.ofNanos(took), failed, phases));
+    }
+
+    private Timer commandTimer(String command, boolean failed) {
+        return Timer.builder(COMMAND)
+                .tags(TAG_COMMAND, command, TAG_FAILED, String.valueOf(failed))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Timer phaseTimer(String command, String phase) {
+        return Timer.builder(COMMAND_PHASE)
+                .tags(TAG_COMMAND, command, TAG_PHASE, phase)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static class Running {
+
+        private final String command;
+        private final String thread = Thread.currentThread().getName();
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private final Map<String, PhaseStats> phases = new LinkedHashMap<>();
+        private String currentPhase;
+
+        private Running(String command) {
+            this.command = command;
+        }
+
+        private void record(String phase, long nanos) {
+            PhaseStats stats = phases.computeIfAbsent(phase, p -> new PhaseStats());
+            stats.invocations++;
+            stats.nanos += nanos;
+        }
+    }
+
+    private static class PhaseStats {
+
+        private int invocations;
+        private long nanos;
+    }
+}
@@ -0,0 +1,41 @@
+package io.pillopl.library.commons.commands.profiling;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last {@code capacity} command executions. Writers claim a slot with a single {@code getAndIncrement} and
+ * overwrite whatever was there, so recording never blocks a command; readers get whatever is in the slots at the
+ * time they look.
+ */
+class RecentCommandExecutions {
+
+    private final AtomicReferenceArray<CommandExecution> slots;
+    private final AtomicLong next = new AtomicLong();
+    private final int mask;
+
+    RecentCommandExecutions(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    void add(CommandExecution execution) {
+        slots.lazySet((int) (next.getAndIncrement() & mask), execution);
+    }
+
+    List<CommandExecution> slowest(int limit) {
+        List<CommandExecution> executions = new ArrayList<>(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            CommandExecution execution = slots.get(i);
+            if (execution != null) {
+                executions.add(execution);
+            }
+        }
+        executions.sort(Comparator.comparing(CommandExecution::getTook).reversed());
+        return executions.subList(0, Math.max(0, Math.min(limit, executions.size())));
+    }
+}
@@ -0,0 +1,24 @@
+package io.pillopl.library.commons.commands.profiling;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+@Endpoint(id = "slowcommands")
+public class SlowCommandsEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final RecentCommandExecutions recent;
+
+    SlowCommandsEndpoint(RecentCommandExecutions recent) {
+        this.recent = recent;
+    }
+
+    @ReadOperation
+    public List<CommandExecution> slowest(@Nullable Integer limit) {
+        return recent.slowest(limit == null ? DEFAULT_LIMIT : limit);
+    }
+}
@@ -1,9 +1,10 @@
 package io.pillopl.library.commons.events;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.UUID;
 
-public interface DomainEvent {
+public interface DomainEvent extends Serializable {
 
     UUID getEventId();
 
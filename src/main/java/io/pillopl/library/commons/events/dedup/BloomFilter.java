@@ -0,0 +1,56 @@
+package io.pillopl.library.commons.events.dedup;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over event ids, sized for {@code expectedInsertions} at the given false positive rate. Bit positions
+ * come from two hashes of the id combined as {@code h1 + i * h2}; a random UUID is well mixed already, so its two
+ * halves only go through a finalizer to spread ids that are not random.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long numberOfBits;
+    private final int numberOfHashes;
+
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (bits + 63) / 64);
+        this.words = new AtomicLongArray(words);
+        this.numberOfBits = words * 64L;
+        this.numberOfHashes = Math.max(1, (int) Math.round((double) numberOfBits / expectedInsertions * Math.log(2)));
+    }
+
+    void put(UUID id) {
+        long h1 = mix(id.getMostSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits());
+        for (int i = 0; i < numberOfHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numberOfBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+            } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    boolean mightContain(UUID id) {
+        long h1 = mix(id.getMostSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits());
+        for (int i = 0; i < numberOfHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numberOfBits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,191 @@
+package io.pillopl.library.commons.events.dedup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.pillopl.library.commons.sharding.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers which events a projection already applied, so a redelivered event is dropped before any of its SQL
+ * runs. The ids of the most recent events are kept in memory and checked first. Every id stored in the
+ * {@code processed_events} table is also in a Bloom filter, so an event the filter has never seen, which is nearly
+ * every event, skips the lookup in the table altogether. Only when the filter answers "maybe" is the table asked,
+ * and that lookup coming back empty is counted as a false positive.
+ * <p>
+ * The id is stored in the same transaction as the write of the projection. Callers are expected to be on the shard
+ * the write goes to. Called within a transaction, the id is stored under a savepoint and only reaches the memory
+ * and the filter once the whole transaction commits, so an event rolled back with it is applied again when it is
+ * redelivered. Rows older than {@code retention} are removed, and the filter is rebuilt from what is left.
+ */
+@Slf4j
+public class ProcessedEvents {
+
+    private static final String LOOKUPS = "processed_events_lookups";
+    private static final String TAG_PROJECTION = "projection";
+    private static final String TAG_RESULT = "result";
+
+    private final String projection;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final Shards shards;
+    private final Clock clock;
+    private final Duration retention;
+    private final int expectedEvents;
+    private final double falsePositiveRate;
+    private final Map<UUID, Boolean> recent;
+    private final Counter recentHits;
+    private final Counter tableHits;
+    private final Counter falsePositives;
+    private final Counter races;
+    private final Counter misses;
+    private volatile BloomFilter filter;
+
+    public ProcessedEvents(String projection,
+                           JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           Shards shards,
+                           Clock clock,
+                           Duration retention,
+                           int expectedEvents,
+                           double falsePositiveRate,
+                           int recentCapacity,
+                           MeterRegistry meterRegistry) {
+        this.projection = projection;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.shards = shards;
+        this.clock = clock;
+        this.retention = retention;
+        this.expectedEvents = expectedEvents;
+        this.falsePositiveRate = falsePositiveRate;
+        this.recent = new LinkedHashMap<UUID, Boolean>(recentCapacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                return size() > recentCapacity;
+            }
+        };
+        this.recentHits = meterRegistry.counter(LOOKUPS, TAG_PROJECTION, projection, TAG_RESULT, "recent_hit");
+        this.tableHits = meterRegistry.counter(LOOKUPS, TAG_PROJECTION, projection, TAG_RESULT, "table_hit");
+        this.falsePositives = meterRegistry.counter(LOOKUPS, TAG_PROJECTION, projection, TAG_RESULT, "false_positive");
+        this.races = meterRegistry.counter(LOOKUPS, TAG_PROJECTION, projection, TAG_RESULT, "race");
+        this.misses = meterRegistry.counter(LOOKUPS, TAG_PROJECTION, projection, TAG_RESULT, "miss");
+        this.filter = new BloomFilter(expectedEvents, falsePositiveRate);
+    }
+
+    /**
+     * Runs {@code write} unless the event was applied before.
+     *
+     * @return whether {@code write} ran
+     */
+    public boolean processOnce(UUID eventId, Runnable write) {
+        if (recentlySeen(eventId)) {
+            recentHits.increment();
+            return false;
+        }
+        if (filter.mightContain(eventId)) {
+            if (stored(eventId)) {
+                AfterCommit.run(() -> remember(eventId));
+                tableHits.increment();
+                return false;
+            }
+            falsePositives.increment();
+        } else {
+            misses.increment();
+        }
+        try {
+            boolean first = transaction.execute(status -> {
+                if (!store(eventId)) {
+                    return false;
+                }
+                write.run();
+                return true;
+            });
+            if (first) {
+                AfterCommit.run(() -> {
+                    filter.put(eventId);
+                    remember(eventId);
+                });
+            } else {
+                races.increment();
+            }
+            return first;
+        } catch (DuplicateKeyException e) {
+            //stored by a concurrent delivery of the same event in between, which remembers it once it commits
+            races.increment();
+            return false;
+        }
+    }
+
+    public void warmUp() {
+        BloomFilter warm = new BloomFilter(expectedEvents, falsePositiveRate);
+        int[] loaded = {0};
+        shards.onEachShard(shard -> jdbcTemplate.query(
+                "SELECT e.event_id FROM processed_events e WHERE e.projection = ?",
+                new Object[]{projection},
+                rs -> {
+                    warm.put((UUID) rs.getObject("EVENT_ID"));
+                    loaded[0]++;
+                }));
+        filter = warm;
+        log.info("Loaded {} processed events of {}", loaded[0], projection);
+    }
+
+    @Scheduled(initialDelayString = "${lending.projections.dedup.cleanup-millis:3600000}", fixedDelayString = "${lending.projections.dedup.cleanup-millis:3600000}")
+    public void removeExpired() {
+        Timestamp cutoff = Timestamp.from(Instant.now(clock).minus(retention));
+        shards.onEachShard(shard -> jdbcTemplate.update(
+                "DELETE FROM processed_events WHERE projection = ? AND processed_at <= ?", projection, cutoff));
+        //a Bloom filter cannot forget, so start over from the ids still stored
+        warmUp();
+    }
+
+    private boolean stored(UUID eventId) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM processed_events e WHERE e.projection = ? AND e.event_id = ?",
+                Integer.class,
+                projection,
+                eventId);
+        return count != null && count > 0;
+    }
+
+    private boolean store(UUID eventId) {
+        int inserted = jdbcTemplate.update(
+                "INSERT INTO processed_events (projection, event_id, processed_at) SELECT ?, ?, ? FROM dual " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM processed_events e WHERE e.projection = ? AND e.event_id = ?)",
+                projection,
+                eventId,
+                Timestamp.from(Instant.now(clock)),
+                projection,
+                eventId);
+        return inserted > 0;
+    }
+
+
+    private boolean recentlySeen(UUID eventId) {
+        synchronized (recent) {
+            return recent.containsKey(eventId);
+        }
+    }
+
+    private void remember(UUID eventId) {
+        synchronized (recent) {
+            recent.put(eventId, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.pillopl.library.commons.events.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Where the consumer of the journal stands: the offset of the next record to hand out and where that record lives.
+ * Kept in two slots written in turns, each with a checksum, so a write torn by a crash still leaves the previous
+ * position readable.
+ */
+class ConsumerOffset {
+
+    private static final int SLOT_BYTES = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private Position position;
+    private int nextSlot;
+
+    private ConsumerOffset(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static ConsumerOffset open(Path file) {
+        try {
+            FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+            ConsumerOffset offset = new ConsumerOffset(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * SLOT_BYTES));
+            offset.load();
+            return offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open consumer offset " + file, e);
+        }
+    }
+
+    private void load() {
+        Position first = readSlot(0);
+        Position second = readSlot(1);
+        if (second != null && (first == null || second.offset > first.offset)) {
+            position = second;
+            nextSlot = 0;
+        } else {
+            position = first;
+            nextSlot = 1;
+        }
+    }
+
+    /**
+     * The stored position, or null when nothing was consumed yet.
+     */
+    Position position() {
+        return position;
+    }
+
+    void store(Position committed) {
+        int at = nextSlot * SLOT_BYTES;
+        buffer.putLong(at, committed.offset);
+        buffer.putLong(at + 8, committed.segmentBase);
+        buffer.putInt(at + 16, committed.segmentPosition);
+        buffer.putInt(at + 20, crcOf(at));
+        position = committed;
+        nextSlot = 1 - nextSlot;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close consumer offset", e);
+        }
+    }
+
+    private Position readSlot(int slot) {
+        int at = slot * SLOT_BYTES;
+        if (buffer.getLong(at) == 0 && buffer.getInt(at + 20) == 0) {
+            return null;
+        }
+        if (buffer.getInt(at + 20) != crcOf(at)) {
+            return null;
+        }
+        return new Position(buffer.getLong(at), buffer.getLong(at + 8), buffer.getInt(at + 16));
+    }
+
+    private int crcOf(int at) {
+        CRC32 crc = new CRC32();
+        for (int i = at; i < at + 20; i++) {
+            crc.update(buffer.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    static class Position {
+
+        final long offset;
+        final long segmentBase;
+        final int segmentPosition;
+
+        Position(long offset, long segmentBase, int segmentPosition) {
+            this.offset = offset;
+            this.segmentBase = segmentBase;
+            this.segmentPosition = segmentPosition;
+        }
+    }
+}
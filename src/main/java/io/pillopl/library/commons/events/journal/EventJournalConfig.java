@@ -0,0 +1,58 @@
+package io.pillopl.library.commons.events.journal;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.events.DomainEvents;
+import io.pillopl.library.commons.events.publisher.JustForwardDomainEventPublisher;
+import io.pillopl.library.commons.events.publisher.MeteredDomainEventPublisher;
+import io.pillopl.library.commons.events.publisher.StoreAndForwardDomainEventPublisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "lending.events.storage", havingValue = "journal")
+public class EventJournalConfig {
+
+    @Bean(destroyMethod = "close")
+    @Lazy(false)
+    JournalEventsStorage journalEventsStorage(MeterRegistry meterRegistry,
+                                              @Value("${lending.events.journal.directory:${java.io.tmpdir}/library/events-journal}") String directory,
+                                              @Value("${lending.events.journal.segment-bytes:67108864}") int segmentBytes,
+                                              @Value("${lending.events.journal.fsync:interval}") String fsync,
+                                              @Value("${lending.events.journal.fsync-interval-millis:100}") long fsyncIntervalMillis,
+                                              @Value("${lending.events.journal.retention-hours:24}") long retentionHours,
+                                              @Value("${lending.events.journal.batch-size:1000}") int batchSize) {
+        return new JournalEventsStorage(
+                Paths.get(directory),
+                segmentBytes,
+                FsyncPolicy.valueOf(fsync.toUpperCase()),
+                Duration.ofMillis(fsyncIntervalMillis),
+                Duration.ofHours(retentionHours),
+                batchSize,
+                meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    @Lazy(false)
+    DomainEvents journaledDomainEvents(ApplicationEventPublisher applicationEventPublisher,
+                                       MeterRegistry meterRegistry,
+                                       JournalEventsStorage journalEventsStorage,
+                                       @Value("${lending.shards.count:1}") int shardCount) {
+        if (shardCount > 1) {
+            //a forwarded batch is one transaction and one connection, so listeners of events from other shards would write to the wrong one
+            throw new IllegalStateException("Events journal needs a single lending shard, got " + shardCount);
+        }
+        return new StoreAndForwardDomainEventPublisher(
+                new MeteredDomainEventPublisher(
+                        new JustForwardDomainEventPublisher(applicationEventPublisher), meterRegistry),
+                journalEventsStorage);
+    }
+}
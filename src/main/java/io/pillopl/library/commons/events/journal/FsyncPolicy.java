@@ -0,0 +1,22 @@
+package io.pillopl.library.commons.events.journal;
+
+/**
+ * When appended events are forced from the page cache to disk.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Before {@code save} returns. Nothing acknowledged is ever lost, every append pays for a disk flush.
+     */
+    ALWAYS,
+
+    /**
+     * By a background thread every {@code fsync-interval-millis}. A power loss costs at most that much of events.
+     */
+    INTERVAL,
+
+    /**
+     * Whenever the operating system writes the pages back. Survives a crash of the process but not of the machine.
+     */
+    NEVER
+}
@@ -0,0 +1,353 @@
+package io.pillopl.library.commons.events.journal;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.pillopl.library.commons.events.DomainEvent;
+import io.pillopl.library.commons.events.journal.ConsumerOffset.Position;
+import io.pillopl.library.commons.events.journal.Segment.Record;
+import io.pillopl.library.commons.events.publisher.EventsStorage;
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.vavr.collection.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * {@link EventsStorage} on a local journal instead of the aggregates' database, so storing an event costs a copy
+ * into a memory-mapped file rather than a second write to the database.
+ * <p>
+ * The journal is a directory of segments of {@code segmentBytes} each, appended to strictly in order; a record that
+ * does not fit the active segment starts the next one. Each record carries its offset and a CRC32 of its payload, so
+ * a tail torn by a crash is recognised and cut off on the next start. The consumer position, how far events were
+ * published, lives next to the segments. Segments that were fully published and are older than {@code retention}
+ * are deleted whenever a new one is started. When appends reach the disk is up to the {@link FsyncPolicy}.
+ * <p>
+ * The journal is not part of the database transaction. An event saved within a transaction is appended once that
+ * transaction commits, so events of rolled back changes are never published; a crash between the commit and the
+ * append loses the event instead. Likewise, events marked as published within a transaction only move the consumer
+ * position once it commits; if it rolls back they are handed out again. Events are written with Java serialization.
+ */
+@Slf4j
+public class JournalEventsStorage implements EventsStorage {
+
+    private static final String CONSUMER_OFFSET = "consumer.offset";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final Duration retention;
+    private final int batchSize;
+    private final java.util.List<Segment> segments = new ArrayList<>();
+    private final java.util.List<Pending> pending = new ArrayList<>();
+    private final ConsumerOffset consumerOffset;
+    private final Timer appendLatency;
+    private final Counter unreadable;
+    private final ScheduledExecutorService flusher;
+    private Position committed;
+    private boolean offsetDirty;
+
+    public JournalEventsStorage(Path directory,
+                                int segmentBytes,
+                                FsyncPolicy fsyncPolicy,
+                                Duration fsyncInterval,
+                                Duration retention,
+                                int batchSize,
+                                MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        openSegments();
+        this.consumerOffset = ConsumerOffset.open(directory.resolve(CONSUMER_OFFSET));
+        this.committed = startingPosition(consumerOffset.position());
+        this.appendLatency = Timer.builder("events_journal_append")
+                .tag("fsync", fsyncPolicy.name().toLowerCase())
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.unreadable = meterRegistry.counter("events_journal_unreadable");
+        Gauge.builder("events_journal_lag", this, JournalEventsStorage::lag)
+                .register(meterRegistry);
+        Gauge.builder("events_journal_segments", this, JournalEventsStorage::segmentCount)
+                .register(meterRegistry);
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("events-journal-fsync-"));
+            this.flusher.scheduleWithFixedDelay(this::flush, fsyncInterval.toMillis(), fsyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    private void openSegments() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(Segment::isSegment)
+                        .sorted((first, second) -> Long.compare(Segment.baseOffsetOf(first), Segment.baseOffsetOf(second)))
+                        .map(Segment::open)
+                        .forEach(segments::add);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the events journal in " + directory, e);
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(directory, 0, segmentBytes));
+        } else if (active().recover()) {
+            log.warn("Cut off a torn record at the end of {}, events from offset {} on were lost", active().file(), active().nextOffset());
+        }
+    }
+
+    private Position startingPosition(Position stored) {
+        Segment oldest = segments.get(0);
+        if (stored == null) {
+            return new Position(oldest.baseOffset(), oldest.baseOffset(), 0);
+        }
+        if (segments.stream().noneMatch(segment -> segment.baseOffset() == stored.segmentBase)) {
+            log.warn("Segment {} of the consumer position is gone, publishing again from offset {}", stored.segmentBase, oldest.baseOffset());
+            return new Position(oldest.baseOffset(), oldest.baseOffset(), 0);
+        }
+        Segment active = active();
+        if (stored.offset > active.nextOffset()) {
+            //the position reached the disk, the events it points past did not
+            log.warn("Consumer position {} is past the end of the journal, continuing from {}", stored.offset, active.nextOffset());
+            return new Position(active.nextOffset(), active.baseOffset(), active.writePosition());
+        }
+        return stored;
+    }
+
+    @Override
+    public void save(DomainEvent event) {
+        byte[] payload = serialize(event);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    append(payload);
+                }
+            });
+        } else {
+            append(payload);
+        }
+    }
+
+    private void append(byte[] payload) {
+        long started = System.nanoTime();
+        Segment segment;
+        synchronized (this) {
+            segment = writableFor(payload);
+            segment.append(payload);
+        }
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            //outside of the lock, appends of other threads that land in the meantime are flushed along
+            segment.force();
+        }
+        appendLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private Segment writableFor(byte[] payload) {
+        Segment active = active();
+        if (active.hasRoomFor(payload)) {
+            return active;
+        }
+        if (!Segment.fitsEmpty(payload, segmentBytes)) {
+            throw new IllegalArgumentException("Event of " + payload.length + " bytes does not fit in a journal segment of " + segmentBytes + " bytes");
+        }
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            active.force();
+        }
+        Segment next = Segment.create(directory, active.nextOffset(), segmentBytes);
+        segments.add(next);
+        removeExpired();
+        return next;
+    }
+
+    @Override
+    public synchronized List<DomainEvent> toPublish() {
+        pending.clear();
+        java.util.List<DomainEvent> events = new ArrayList<>();
+        int index = indexOf(committed.segmentBase);
+        int position = committed.segmentPosition;
+        long offset = committed.offset;
+        while (events.size() < batchSize) {
+            Segment segment = segments.get(index);
+            Record record = segment.read(position, offset);
+            if (record == null) {
+                if (index == segments.size() - 1) {
+                    break;
+                }
+                Segment next = segments.get(++index);
+                if (next.baseOffset() != offset) {
+                    log.warn("Could not read events {} to {} of the journal, skipping them", offset, next.baseOffset() - 1);
+                }
+                position = 0;
+                offset = next.baseOffset();
+                continue;
+            }
+            Position after = new Position(offset + 1, segment.baseOffset(), record.nextPosition);
+            DomainEvent event = deserialize(record);
+            if (event == null && !events.isEmpty()) {
+                break;
+            }
+            if (event == null) {
+                commit(after);
+            } else {
+                events.add(event);
+                pending.add(new Pending(event, after));
+            }
+            position = after.segmentPosition;
+            offset = after.offset;
+        }
+        return List.ofAll(events);
+    }
+
+    @Override
+    public synchronized void published(List<DomainEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        int last = events.size() - 1;
+        if (last >= pending.size() || pending.get(last).event != events.last()) {
+            throw new IllegalStateException("Only events handed out by the latest toPublish can be marked as published");
+        }
+        Position after = pending.get(last).after;
+        pending.subList(0, last + 1).clear();
+        AfterCommit.run(() -> advanceTo(after));
+    }
+
+    private synchronized void advanceTo(Position position) {
+        if (position.offset > committed.offset) {
+            commit(position);
+        }
+    }
+
+    private void commit(Position position) {
+        committed = position;
+        consumerOffset.store(position);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            consumerOffset.force();
+        } else {
+            offsetDirty = true;
+        }
+    }
+
+    private void removeExpired() {
+        Instant threshold = Instant.now().minus(retention);
+        while (segments.size() > 1 && segments.get(1).baseOffset() <= committed.offset && modifiedBefore(segments.get(0), threshold)) {
+            Segment oldest = segments.remove(0);
+            if (committed.segmentBase == oldest.baseOffset()) {
+                commit(new Position(committed.offset, segments.get(0).baseOffset(), 0));
+            }
+            oldest.delete();
+            log.info("Removed journal segment {}", oldest.file());
+        }
+    }
+
+    private static boolean modifiedBefore(Segment segment, Instant threshold) {
+        try {
+            return !Files.getLastModifiedTime(segment.file()).toInstant().isAfter(threshold);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void flush() {
+        java.util.List<Segment> dirty;
+        boolean flushOffset;
+        synchronized (this) {
+            dirty = segments.stream().filter(Segment::takeDirty).collect(toList());
+            flushOffset = offsetDirty;
+            offsetDirty = false;
+        }
+        dirty.forEach(Segment::force);
+        if (flushOffset) {
+            consumerOffset.force();
+        }
+    }
+
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                segments.forEach(Segment::force);
+                consumerOffset.force();
+            }
+            segments.forEach(Segment::close);
+            consumerOffset.close();
+        }
+    }
+
+    private Segment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private int indexOf(long segmentBase) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).baseOffset() == segmentBase) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No journal segment starts at offset " + segmentBase);
+    }
+
+    private synchronized double lag() {
+        return active().nextOffset() - committed.offset;
+    }
+
+    private synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private static byte[] serialize(DomainEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize " + event.getClass().getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private DomainEvent deserialize(Record record) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record.payload))) {
+            return (DomainEvent) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            log.error("Could not read event {} of the journal, skipping it", record.offset, e);
+            unreadable.increment();
+            return null;
+        }
+    }
+
+    private static class Pending {
+
+        final DomainEvent event;
+        final Position after;
+
+        Pending(DomainEvent event, Position after) {
+            this.event = event;
+            this.after = after;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.pillopl.library.commons.events.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * One file of the journal, memory-mapped as a whole. Records are laid out back to back:
+ * {@code [int length][int crc32 of payload][long offset][payload]}. The file is created at its full size, so it is
+ * filled with zeroes past the last record, and a zero length marks the end.
+ */
+class Segment {
+
+    static final int HEADER_BYTES = 16;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final Path file;
+    private final long baseOffset;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private long nextOffset;
+    private boolean dirty;
+
+    private Segment(Path file, long baseOffset, FileChannel channel, MappedByteBuffer buffer) {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.nextOffset = baseOffset;
+    }
+
+    static Segment create(Path directory, long baseOffset, int size) {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, baseOffset, SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE);
+            return new Segment(file, baseOffset, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment " + file, e);
+        }
+    }
+
+    static Segment open(Path file) {
+        try {
+            FileChannel channel = FileChannel.open(file, READ, WRITE);
+            return new Segment(file, baseOffsetOf(file), channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open journal segment " + file, e);
+        }
+    }
+
+    static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    static long baseOffsetOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Walks the records to find where the next one goes. Anything after the first record that does not check out,
+     * a write cut short by a crash, is wiped. Returns whether something had to be wiped.
+     */
+    boolean recover() {
+        int position = 0;
+        long offset = baseOffset;
+        Record record;
+        while ((record = read(position, offset)) != null) {
+            position = record.nextPosition;
+            offset++;
+        }
+        writePosition = position;
+        nextOffset = offset;
+        if (position + Integer.BYTES <= buffer.capacity() && buffer.getInt(position) != 0) {
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    boolean hasRoomFor(byte[] payload) {
+        return writePosition + HEADER_BYTES + payload.length <= buffer.capacity();
+    }
+
+    static boolean fitsEmpty(byte[] payload, int size) {
+        return HEADER_BYTES + payload.length <= size;
+    }
+
+    long append(byte[] payload) {
+        int position = writePosition;
+        long offset = nextOffset;
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + HEADER_BYTES);
+        target.put(payload);
+        buffer.putLong(position + 8, offset);
+        buffer.putInt(position + 4, crcOf(payload));
+        //length last, so a record left half written by a crash of this process reads as the end of the segment
+        buffer.putInt(position, payload.length);
+        writePosition = position + HEADER_BYTES + payload.length;
+        nextOffset = offset + 1;
+        dirty = true;
+        return offset;
+    }
+
+    /**
+     * The record at {@code position}, provided it is the one with {@code expectedOffset} and its checksum matches,
+     * otherwise null.
+     */
+    Record read(int position, long expectedOffset) {
+        if (position + HEADER_BYTES > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.capacity() - position - HEADER_BYTES) {
+            return null;
+        }
+        if (buffer.getLong(position + 8) != expectedOffset) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + HEADER_BYTES);
+        source.get(payload);
+        if (crcOf(payload) != buffer.getInt(position + 4)) {
+            return null;
+        }
+        return new Record(expectedOffset, payload, position + HEADER_BYTES + length);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close journal segment " + file, e);
+        }
+    }
+
+    void delete() {
+        close();
+        try {
+            //the mapping itself goes away once the buffer is garbage collected
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete journal segment " + file, e);
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    private static int crcOf(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static class Record {
+
+        final long offset;
+        final byte[] payload;
+        final int nextPosition;
+
+        Record(long offset, byte[] payload, int nextPosition) {
+            this.offset = offset;
+            this.payload = payload;
+            this.nextPosition = nextPosition;
+        }
+    }
+}
@@ -2,9 +2,11 @@ package io.pillopl.library.commons.events.publisher;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import io.pillopl.library.commons.events.DomainEvents;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListenerFactory;
 
 @Configuration
 public class DomainEventsConfig {
@@ -13,4 +15,9 @@ public class DomainEventsConfig {
     DomainEvents domainEvents(ApplicationEventPublisher applicationEventPublisher, MeterRegistry meterRegistry) {
         return new MeteredDomainEventPublisher(new JustForwardDomainEventPublisher(applicationEventPublisher), meterRegistry);
     }
+
+    @Bean
+    static EventListenerFactory timedEventListenerFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new TimedEventListenerFactory(meterRegistry);
+    }
 }
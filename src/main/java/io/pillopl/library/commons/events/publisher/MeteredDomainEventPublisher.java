@@ -1,23 +1,59 @@
 package io.pillopl.library.commons.events.publisher;
 
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.pillopl.library.commons.events.DomainEvent;
 import io.pillopl.library.commons.events.DomainEvents;
-import lombok.AllArgsConstructor;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
-@AllArgsConstructor
 public class MeteredDomainEventPublisher implements DomainEvents {
 
     private static final String DOMAIN_EVENTS = "domain_events";
+    private static final String DOMAIN_EVENTS_PUBLISH = "domain_events_publish";
     private static final String TAG_NAME = "name";
 
     private final DomainEvents delegate;
     private final MeterRegistry metricsRegistry;
+    private final ConcurrentMap<Class<?>, EventMeters> meters = new ConcurrentHashMap<>();
+
+    public MeteredDomainEventPublisher(DomainEvents delegate, MeterRegistry metricsRegistry) {
+        this.delegate = delegate;
+        this.metricsRegistry = metricsRegistry;
+    }
 
     @Override
     public void publish(DomainEvent event) {
-        delegate.publish(event);
-        metricsRegistry.counter(DOMAIN_EVENTS, TAG_NAME, event.getClass().getSimpleName()).increment();
+        EventMeters eventMeters = meters.computeIfAbsent(event.getClass(), this::metersFor);
+        eventMeters.publish.record(() -> delegate.publish(event));
+        eventMeters.published.increment();
+    }
+
+    private EventMeters metersFor(Class<?> eventType) {
+        String name = eventType.getSimpleName();
+        return new EventMeters(
+                metricsRegistry.counter(DOMAIN_EVENTS, TAG_NAME, name),
+                Timer.builder(DOMAIN_EVENTS_PUBLISH)
+                        .description("Time from publishing a domain event until all synchronous listeners handled it")
+                        .tag(TAG_NAME, name)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(10))
+                        .register(metricsRegistry));
+    }
+
+    private static class EventMeters {
+
+        private final Counter published;
+        private final Timer publish;
+
+        private EventMeters(Counter published, Timer publish) {
+            this.published = published;
+            this.publish = publish;
+        }
     }
 }
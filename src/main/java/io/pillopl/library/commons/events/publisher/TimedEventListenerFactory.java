@@ -0,0 +1,115 @@
+package io.pillopl.library.commons.events.publisher;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.pillopl.library.commons.events.DomainEvent;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+import org.springframework.context.event.ApplicationListenerMethodAdapter;
+import org.springframework.context.event.EventListenerFactory;
+import org.springframework.core.Ordered;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wraps every {@code @EventListener} method that handles a {@link DomainEvent} so that its handling time and
+ * failures are recorded per event type and listener bean. Ordered before Spring's default factory but after the
+ * transactional one, so {@code @TransactionalEventListener}s keep their phase semantics.
+ */
+class TimedEventListenerFactory implements EventListenerFactory, Ordered {
+
+    private static final String LISTENER_TIMER = "domain_event_listener";
+    private static final String LISTENER_ERRORS = "domain_event_listener_errors";
+    private static final String TAG_NAME = "name";
+    private static final String TAG_LISTENER = "listener";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    TimedEventListenerFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean supportsMethod(Method method) {
+        return method.getParameterCount() == 1 && DomainEvent.class.isAssignableFrom(method.getParameterTypes()[0]);
+    }
+
+    @Override
+    public ApplicationListener<?> createApplicationListener(String beanName, Class<?> type, Method method) {
+        return new TimedListenerMethodAdapter(beanName, type, method);
+    }
+
+    @Override
+    public int getOrder() {
+        return 100;
+    }
+
+    private class TimedListenerMethodAdapter extends ApplicationListenerMethodAdapter {
+
+        private final String listener;
+        private final ConcurrentMap<Class<?>, ListenerMeters> meters = new ConcurrentHashMap<>();
+        private volatile MeterRegistry registry;
+
+        private TimedListenerMethodAdapter(String beanName, Class<?> targetClass, Method method) {
+            super(beanName, targetClass, method);
+            this.listener = beanName;
+        }
+
+        @Override
+        public void processEvent(ApplicationEvent event) {
+            MeterRegistry registry = registry();
+            if (registry == null) {
+                super.processEvent(event);
+                return;
+            }
+            Object payload = event instanceof PayloadApplicationEvent ? ((PayloadApplicationEvent<?>) event).getPayload() : event;
+            ListenerMeters listenerMeters = meters.computeIfAbsent(payload.getClass(), eventType -> metersFor(registry, eventType));
+            long start = registry.config().clock().monotonicTime();
+            try {
+                super.processEvent(event);
+            } catch (RuntimeException | Error e) {
+                listenerMeters.errors.increment();
+                throw e;
+            } finally {
+                listenerMeters.handling.record(Duration.ofNanos(registry.config().clock().monotonicTime() - start));
+            }
+        }
+
+        private MeterRegistry registry() {
+            if (registry == null) {
+                registry = meterRegistry.getIfAvailable();
+            }
+            return registry;
+        }
+
+        private ListenerMeters metersFor(MeterRegistry registry, Class<?> eventType) {
+            String name = eventType.getSimpleName();
+            return new ListenerMeters(
+                    Timer.builder(LISTENER_TIMER)
+                            .description("Time a single listener took to handle a domain event")
+                            .tags(TAG_NAME, name, TAG_LISTENER, listener)
+                            .publishPercentileHistogram()
+                            .minimumExpectedValue(Duration.ofMillis(1))
+                            .maximumExpectedValue(Duration.ofSeconds(10))
+                            .register(registry),
+                    registry.counter(LISTENER_ERRORS, TAG_NAME, name, TAG_LISTENER, listener));
+        }
+    }
+
+    private static class ListenerMeters {
+
+        private final Timer handling;
+        private final Counter errors;
+
+        private ListenerMeters(Timer handling, Counter errors) {
+            this.handling = handling;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.pillopl.library.commons.groupcommit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Defers an in-memory effect of a write until that write is committed, for listeners whose state lives outside the
+ * database: caches, counters, schedules. Without a transaction the effect applies at once; inside one it applies
+ * after the commit and is dropped on rollback. Inside a {@link GroupCommit} member it is also dropped when only that
+ * member's savepoint is rolled back.
+ * <p>
+ * Effects run in the order they were deferred. One that throws is logged and does not stop the others, the write
+ * is committed by then.
+ */
+@Slf4j
+public final class AfterCommit {
+
+    private static final ThreadLocal<List<Runnable>> savepoint = new ThreadLocal<>();
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable effect) {
+        List<Runnable> member = savepoint.get();
+        if (member != null) {
+            member.add(effect);
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            effect.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                try {
+                    effect.run();
+                } catch (RuntimeException e) {
+                    log.error("After-commit effect failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs one savepoint of a group, keeping the effects it defers aside and handing them on only if it returns.
+     */
+    static <T> T underSavepoint(Supplier<T> write) {
+        List<Runnable> outer = savepoint.get();
+        List<Runnable> member = new ArrayList<>();
+        savepoint.set(member);
+        T result;
+        try {
+            result = write.get();
+        } finally {
+            if (outer == null) {
+                savepoint.remove();
+            } else {
+                savepoint.set(outer);
+            }
+        }
+        member.forEach(AfterCommit::run);
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package io.pillopl.library.commons.groupcommit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Funnels the writes of concurrent callers through a single writer thread. The writer takes whatever arrives within
+ * {@code window} of the first pending write, up to {@code maxGroupSize}, and runs the whole group in one transaction,
+ * so a burst of commands pays for one commit instead of one each.
+ * <p>
+ * Every write runs under its own savepoint: one that throws is rolled back alone and only its caller sees the
+ * exception, the rest of the group still commits. Callers are completed after the commit, never before.
+ * <p>
+ * A write submitted from the writer thread itself, e.g. by a listener reacting to a write of the current group, joins
+ * the running transaction instead of waiting for a group that could never start.
+ * <p>
+ * Listeners with in-memory state defer their effects through {@link AfterCommit}: those of a write apply once the
+ * group commits, and only if the write's savepoint was kept.
+ */
+@Slf4j
+public class GroupCommit {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final TransactionTemplate group;
+    private final TransactionTemplate member;
+    private final long windowNanos;
+    private final int maxGroupSize;
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary groupSize;
+    private final Counter commits;
+    private final Counter rolledBackMembers;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public GroupCommit(PlatformTransactionManager transactionManager, Duration window, int maxGroupSize, MeterRegistry meterRegistry) {
+        this.group = new TransactionTemplate(transactionManager);
+        this.member = new TransactionTemplate(transactionManager);
+        this.member.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.windowNanos = window.toNanos();
+        this.maxGroupSize = maxGroupSize;
+        this.groupSize = DistributionSummary.builder("group_commit_size")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.commits = meterRegistry.counter("group_commit_commits");
+        this.rolledBackMembers = meterRegistry.counter("group_commit_rolled_back_members");
+        this.writer = new Thread(this::run, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public <T> T execute(Supplier<T> write) {
+        if (Thread.currentThread() == writer) {
+            return write.get();
+        }
+        try {
+            return submit(write).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> write) {
+        Pending<T> pending = new Pending<>(write);
+        if (!running) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Group commit is shut down"));
+            return pending.result;
+        }
+        queue.add(pending);
+        return pending.result;
+    }
+
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        List<Pending<?>> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(pending -> pending.result.completeExceptionally(new RejectedExecutionException("Group commit is shut down")));
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<Pending<?>> next = collect();
+                if (!next.isEmpty()) {
+                    commit(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<Pending<?>> collect() throws InterruptedException {
+        List<Pending<?>> next = new ArrayList<>();
+        Pending<?> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return next;
+        }
+        next.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (next.size() < maxGroupSize) {
+            long left = deadline - System.nanoTime();
+            Pending<?> pending = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+            if (pending == null) {
+                break;
+            }
+            next.add(pending);
+        }
+        return next;
+    }
+
+    private void commit(List<Pending<?>> pendings) {
+        groupSize.record(pendings.size());
+        try {
+            group.execute(status -> {
+                pendings.forEach(this::runUnderSavepoint);
+                return null;
+            });
+            commits.increment();
+            pendings.forEach(Pending::complete);
+        } catch (RuntimeException | Error e) {
+            log.error("Group of {} writes failed to commit", pendings.size(), e);
+            pendings.forEach(pending -> pending.result.completeExceptionally(e));
+        }
+    }
+
+    private void runUnderSavepoint(Pending<?> pending) {
+        try {
+            AfterCommit.underSavepoint(() -> member.execute(status -> pending.run()));
+        } catch (RuntimeException | Error e) {
+            rolledBackMembers.increment();
+            pending.failure = e;
+        }
+    }
+
+    private static class Pending<T> {
+
+        private final Supplier<T> write;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private T value;
+        private Throwable failure;
+
+        Pending(Supplier<T> write) {
+            this.write = write;
+        }
+
+        private T run() {
+            value = write.get();
+            return value;
+        }
+
+        private void complete() {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+}
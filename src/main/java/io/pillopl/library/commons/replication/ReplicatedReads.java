@@ -0,0 +1,106 @@
+package io.pillopl.library.commons.replication;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a query-only path may read from the replica or has to go to the primary.
+ * <p>
+ * The replica is fed asynchronously and in order: every write is announced with {@link #written(UUID)} when it is
+ * handed over and with {@link #applied(UUID)} once the replica has it. A key with writes still in flight is read from
+ * the primary, so whoever just changed something reads their own write; and once the oldest write in flight is older
+ * than {@code maxLag} every read goes to the primary until the replica catches up. A write the replica could not
+ * apply is announced with {@link #diverged(UUID)}: the replica stays wrong for that key, so reads of the key and
+ * scans over the replica go to the primary from then on.
+ */
+public class ReplicatedReads implements MeterBinder {
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final long maxLagNanos;
+    private final Queue<Long> inFlight = new ConcurrentLinkedQueue<>();
+    private final Map<UUID, AtomicInteger> inFlightByKey = new ConcurrentHashMap<>();
+    private final Set<UUID> diverged = ConcurrentHashMap.newKeySet();
+
+    public ReplicatedReads(JdbcTemplate primary, JdbcTemplate replica, Duration maxLag) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagNanos = maxLag.toNanos();
+    }
+
+    public static ReplicatedReads primaryOnly(JdbcTemplate primary) {
+        return new ReplicatedReads(primary, null, Duration.ZERO);
+    }
+
+    public boolean hasReplica() {
+        return replica != null;
+    }
+
+    public JdbcTemplate primary() {
+        return primary;
+    }
+
+    public JdbcTemplate replica() {
+        return replica;
+    }
+
+    public JdbcTemplate forKey(UUID key) {
+        if (!hasReplica() || inFlightByKey.containsKey(key) || diverged.contains(key)) {
+            return primary;
+        }
+        return forScan();
+    }
+
+    public JdbcTemplate forScan() {
+        if (!hasReplica() || !diverged.isEmpty() || lagNanos() > maxLagNanos) {
+            return primary;
+        }
+        return replica;
+    }
+
+    public void written(UUID key) {
+        inFlight.add(System.nanoTime());
+        inFlightByKey.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    public void applied(UUID key) {
+        inFlight.poll();
+        inFlightByKey.computeIfPresent(key, (k, count) -> count.decrementAndGet() == 0 ? null : count);
+    }
+
+    public void diverged(UUID key) {
+        diverged.add(key);
+    }
+
+    public Duration lag() {
+        return Duration.ofNanos(lagNanos());
+    }
+
+    private long lagNanos() {
+        Long oldest = inFlight.peek();
+        return oldest == null ? 0 : Math.max(0, System.nanoTime() - oldest);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("read_replica_lag", this, reads -> reads.lagNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("read_replica_pending_writes", inFlight, Queue::size)
+                .register(registry);
+        Gauge.builder("read_replica_diverged_keys", diverged, Set::size)
+                .register(registry);
+    }
+}
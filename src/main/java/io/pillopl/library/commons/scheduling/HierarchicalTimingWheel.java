@@ -0,0 +1,151 @@
+package io.pillopl.library.commons.scheduling;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keys due at a point in time, kept in a few levels of wheels instead of a sorted structure. Level 0 has one slot per
+ * tick, each higher level has one slot per full rotation of the level below, and timeouts further away than the top
+ * level can reach wait in an overflow list. Scheduling and cancelling are O(1); advancing moves entries down one level
+ * whenever the lower level completes a rotation.
+ * <p>
+ * A key is due at most once: scheduling it again replaces its deadline and cancelling forgets it, while the entries
+ * left behind in the wheels are dropped lazily when reached.
+ */
+public class HierarchicalTimingWheel<K> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long[] spans;
+    private final List<List<List<Entry<K>>>> levels;
+    private final List<Entry<K>> overflow = new ArrayList<>();
+    private final List<Entry<K>> overdue = new ArrayList<>();
+    private final Map<K, Long> deadlines = new HashMap<>();
+    private long currentTick;
+
+    public HierarchicalTimingWheel(Duration tick, int wheelSize, int numberOfLevels, Instant start) {
+        if (tick.toMillis() <= 0 || wheelSize < 2 || numberOfLevels < 1) {
+            throw new IllegalArgumentException("Tick must be at least a millisecond, with at least one level of two slots");
+        }
+        this.tickMillis = tick.toMillis();
+        this.wheelSize = wheelSize;
+        this.spans = new long[numberOfLevels + 1];
+        this.levels = new ArrayList<>(numberOfLevels);
+        spans[0] = 1;
+        for (int level = 0; level < numberOfLevels; level++) {
+            spans[level + 1] = spans[level] * wheelSize;
+            List<List<Entry<K>>> slots = new ArrayList<>(wheelSize);
+            for (int slot = 0; slot < wheelSize; slot++) {
+                slots.add(new ArrayList<>());
+            }
+            levels.add(slots);
+        }
+        this.currentTick = Math.floorDiv(start.toEpochMilli(), tickMillis);
+    }
+
+    public synchronized void schedule(K key, Instant deadline) {
+        long tick = Math.floorDiv(deadline.toEpochMilli() + tickMillis - 1, tickMillis);
+        deadlines.put(key, tick);
+        place(new Entry<>(key, tick));
+    }
+
+    public synchronized void cancel(K key) {
+        deadlines.remove(key);
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Moves the wheel forward and returns every key whose deadline is not after {@code now}, in deadline order
+     * (keys that were already overdue when scheduled come first).
+     */
+    public synchronized List<K> advanceTo(Instant now) {
+        long target = Math.floorDiv(now.toEpochMilli(), tickMillis);
+        List<K> due = new ArrayList<>();
+        drainOverdue(due);
+        if (deadlines.isEmpty()) {
+            currentTick = Math.max(currentTick, target);
+            return due;
+        }
+        while (currentTick < target) {
+            currentTick++;
+            cascade();
+            List<Entry<K>> slot = slot(0, currentTick);
+            List<Entry<K>> reached = new ArrayList<>(slot);
+            slot.clear();
+            reached.forEach(this::place);
+            drainOverdue(due);
+        }
+        return due;
+    }
+
+    private void cascade() {
+        for (int level = levels.size() - 1; level >= 1; level--) {
+            if (currentTick % spans[level] == 0) {
+                List<Entry<K>> slot = slot(level, currentTick);
+                List<Entry<K>> moved = new ArrayList<>(slot);
+                slot.clear();
+                moved.forEach(this::place);
+            }
+        }
+        if (currentTick % spans[levels.size() - 1] == 0 && !overflow.isEmpty()) {
+            List<Entry<K>> moved = new ArrayList<>(overflow);
+            overflow.clear();
+            moved.forEach(this::place);
+        }
+    }
+
+    private void place(Entry<K> entry) {
+        if (!entry.isCurrent(deadlines)) {
+            return;
+        }
+        long delta = entry.tick - currentTick;
+        if (delta <= 0) {
+            overdue.add(entry);
+            return;
+        }
+        for (int level = 0; level < levels.size(); level++) {
+            if (delta < spans[level + 1]) {
+                slot(level, entry.tick).add(entry);
+                return;
+            }
+        }
+        overflow.add(entry);
+    }
+
+    private void drainOverdue(List<K> due) {
+        for (Entry<K> entry : overdue) {
+            if (entry.isCurrent(deadlines)) {
+                deadlines.remove(entry.key);
+                due.add(entry.key);
+            }
+        }
+        overdue.clear();
+    }
+
+    private List<Entry<K>> slot(int level, long tick) {
+        return levels.get(level).get((int) Math.floorMod(tick / spans[level], (long) wheelSize));
+    }
+
+    private static class Entry<K> {
+
+        private final K key;
+        private final long tick;
+
+        private Entry(K key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+
+        private boolean isCurrent(Map<K, Long> deadlines) {
+            Long deadline = deadlines.get(key);
+            return deadline != null && deadline == tick;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.pillopl.library.commons.sharding;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections to the shard selected by {@link Shards} for the current thread, shard 0 when none is.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private ShardRoutingDataSource(List<? extends DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Connections are fetched lazily, so a transaction opened before the shard is chosen still ends up on the shard
+     * of its first statement.
+     */
+    public static DataSource over(List<? extends DataSource> shards) {
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shards));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return Shards.currentShard();
+    }
+}
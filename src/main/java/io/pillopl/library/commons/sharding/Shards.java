@@ -0,0 +1,102 @@
+package io.pillopl.library.commons.sharding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A fixed number of databases and a fixed map of keys onto them: an aggregate id always hashes to the same shard for
+ * as long as the shard count does not change. Work that has to hit the shard of a given key runs inside
+ * {@link #on(UUID, Supplier)}, which makes {@link ShardRoutingDataSource} hand out connections to that shard for the
+ * current thread; scopes nest and restore the outer shard on exit.
+ * <p>
+ * A transaction sticks to the shard its first statement ran on, so a single transaction never spans shards.
+ */
+public class Shards {
+
+    public static final Shards SINGLE = new Shards(1);
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+
+    public Shards(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one shard is needed, got: " + count);
+        }
+        this.count = count;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int shardOf(UUID key) {
+        long bits = key.getMostSignificantBits() ^ key.getLeastSignificantBits();
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        return (int) Math.floorMod(bits, (long) count);
+    }
+
+    public <T> T on(UUID key, Supplier<T> work) {
+        return onShard(shardOf(key), work);
+    }
+
+    public void on(UUID key, Runnable work) {
+        onShard(shardOf(key), work);
+    }
+
+    public <T> T onShard(int shard, Supplier<T> work) {
+        Integer outer = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (outer == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+        }
+    }
+
+    public void onShard(int shard, Runnable work) {
+        onShard(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public void onEachShard(IntConsumer work) {
+        for (int shard = 0; shard < count; shard++) {
+            int current = shard;
+            onShard(current, () -> work.accept(current));
+        }
+    }
+
+    /**
+     * Runs the same query on every shard, in parallel when there is more than one, and concatenates the results in
+     * shard order.
+     */
+    public <T> List<T> scatter(Supplier<? extends Collection<T>> query) {
+        if (count == 1) {
+            return new ArrayList<>(onShard(0, query));
+        }
+        return IntStream.range(0, count)
+                .parallel()
+                .mapToObj(shard -> onShard(shard, query))
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+    }
+
+    static int currentShard() {
+        Integer shard = CURRENT.get();
+        return shard == null ? 0 : shard;
+    }
+}
@@ -0,0 +1,69 @@
+package io.pillopl.library.commons.singleflight;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the load, everybody asking for that key while it
+ * runs waits for it and gets the same result, or the same exception. Nothing is kept once the load completes, so a
+ * caller arriving afterwards always starts a fresh one.
+ * <p>
+ * A caller that joins gets whatever the running load reads, and that load may have started before the caller asked:
+ * the result can miss a write the caller already knows about. Callers that must see at least what they know of put
+ * it into the key, for example the version they read, so they only join loads started after they read it.
+ */
+public class SingleFlight<K, V> {
+
+    private static final String LOADS = "single_flight_loads";
+    private static final String TAG_NAME = "name";
+    private static final String TAG_RESULT = "result";
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter shared;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.executed = meterRegistry.counter(LOADS, TAG_NAME, name, TAG_RESULT, "executed");
+        this.shared = meterRegistry.counter(LOADS, TAG_NAME, name, TAG_RESULT, "shared");
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.increment();
+            return join(running);
+        }
+        executed.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.pillopl.library.commons.warmup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the {@link WarmUpWorkload}s in a loop on a background thread until the JIT has caught up with them: at least
+ * {@code minIterations} rounds, and no growth of the total compilation time reported by the
+ * {@link CompilationMXBean} for {@code settle}. Gives up after {@code timeout}, warm or not.
+ * <p>
+ * Starts once the application is ready. Health is OUT_OF_SERVICE until the loop ends, so a probe on the health
+ * endpoint keeps traffic away while the hot paths still run in the interpreter. A workload that fails is dropped, it
+ * never holds the application back; if the loop itself dies the warm-up is reported ABORTED, with the failure in the
+ * health details, and health goes UP all the same.
+ * <p>
+ * Once warm, every workload runs {@code measuredRuns} more times into {@code warm_up_latency}, the latency traffic
+ * will meet right after the switch to UP.
+ */
+@Slf4j
+public class WarmUp implements HealthIndicator {
+
+    private static final int CHECK_EVERY = 50;
+
+    enum State {
+        PENDING, RUNNING, WARM, TIMED_OUT, ABORTED
+    }
+
+    private final List<WarmUpWorkload> workloads;
+    private final int minIterations;
+    private final long settleNanos;
+    private final long timeoutNanos;
+    private final int measuredRuns;
+    private final MeterRegistry meterRegistry;
+    private final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile State state = State.PENDING;
+    private volatile boolean running = true;
+    private volatile long startedAt;
+    private volatile long durationNanos;
+    private volatile long iterations;
+    private volatile String failure;
+
+    public WarmUp(List<WarmUpWorkload> workloads, int minIterations, Duration settle, Duration timeout, int measuredRuns, MeterRegistry meterRegistry) {
+        this.workloads = workloads;
+        this.minIterations = minIterations;
+        this.settleNanos = settle.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        this.measuredRuns = measuredRuns;
+        this.meterRegistry = meterRegistry;
+        TimeGauge.builder("warm_up_duration", this, TimeUnit.NANOSECONDS, WarmUp::elapsedNanos)
+                .register(meterRegistry);
+        TimeGauge.builder("warm_up_compilation_time", this, TimeUnit.MILLISECONDS, WarmUp::compilationMillis)
+                .register(meterRegistry);
+        Gauge.builder("warm_up_iterations", this, WarmUp::iterations)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        startedAt = System.nanoTime();
+        state = State.RUNNING;
+        Thread thread = new Thread(this::run, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        running = false;
+    }
+
+    @Override
+    public Health health() {
+        State current = state;
+        Health.Builder health = finished(current) ? Health.up() : Health.outOfService();
+        health.withDetail("state", current)
+                .withDetail("iterations", iterations)
+                .withDetail("durationMillis", TimeUnit.NANOSECONDS.toMillis((long) elapsedNanos()));
+        if (failure != null) {
+            health.withDetail("failure", failure);
+        }
+        return health.build();
+    }
+
+    boolean isFinished() {
+        return finished(state);
+    }
+
+    private static boolean finished(State state) {
+        return state == State.WARM || state == State.TIMED_OUT || state == State.ABORTED;
+    }
+
+    private void run() {
+        List<WarmUpWorkload> active = new ArrayList<>(workloads);
+        boolean timedOut = false;
+        boolean aborted = false;
+        try {
+            long compiled = compilationMillis();
+            long settledSince = System.nanoTime();
+            while (running && !active.isEmpty()) {
+                active.removeIf(workload -> !runs(workload));
+                iterations++;
+                if (iterations % CHECK_EVERY != 0) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                long compiledNow = compilationMillis();
+                if (compiledNow != compiled) {
+                    compiled = compiledNow;
+                    settledSince = now;
+                }
+                if (iterations >= minIterations && now - settledSince >= settleNanos) {
+                    break;
+                }
+                if (now - startedAt >= timeoutNanos) {
+                    timedOut = true;
+                    break;
+                }
+            }
+            durationNanos = System.nanoTime() - startedAt;
+            active.forEach(this::measure);
+        } catch (RuntimeException | Error e) {
+            aborted = true;
+            failure = e.toString();
+            log.error("Warm-up aborted", e);
+        } finally {
+            if (durationNanos == 0) {
+                durationNanos = System.nanoTime() - startedAt;
+            }
+            workloads.forEach(this::close);
+            state = aborted ? State.ABORTED : timedOut ? State.TIMED_OUT : State.WARM;
+            log.info("Warm-up {} after {} iterations in {} ms, {} ms of JIT compilation so far",
+                    aborted ? "aborted" : timedOut ? "timed out" : "finished",
+                    iterations,
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                    compilationMillis());
+        }
+    }
+
+    private boolean runs(WarmUpWorkload workload) {
+        try {
+            workload.run();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Warm-up workload {} failed, dropping it", workload.name(), e);
+            return false;
+        }
+    }
+
+    private void measure(WarmUpWorkload workload) {
+        Timer latency = Timer.builder("warm_up_latency")
+                .tag("workload", workload.name())
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        for (int i = 0; i < measuredRuns && running; i++) {
+            long runStarted = System.nanoTime();
+            if (!runs(workload)) {
+                return;
+            }
+            latency.record(System.nanoTime() - runStarted, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void close(WarmUpWorkload workload) {
+        try {
+            workload.close();
+        } catch (RuntimeException e) {
+            log.warn("Could not close warm-up workload {}", workload.name(), e);
+        }
+    }
+
+    private double elapsedNanos() {
+        if (state == State.PENDING) {
+            return 0;
+        }
+        return isFinished() ? durationNanos : System.nanoTime() - startedAt;
+    }
+
+    private long compilationMillis() {
+        return compilation != null && compilation.isCompilationTimeMonitoringSupported() ? compilation.getTotalCompilationTime() : 0;
+    }
+
+    private long iterations() {
+        return iterations;
+    }
+}
@@ -0,0 +1,33 @@
+package io.pillopl.library.commons.warmup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+import static java.util.stream.Collectors.toList;
+
+@Configuration
+@ConditionalOnProperty(name = "lending.warm-up.enabled", havingValue = "true")
+public class WarmUpConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    WarmUp warmUp(ObjectProvider<WarmUpWorkload> workloads,
+                  MeterRegistry meterRegistry,
+                  @Value("${lending.warm-up.min-iterations:2000}") int minIterations,
+                  @Value("${lending.warm-up.settle-millis:2000}") long settleMillis,
+                  @Value("${lending.warm-up.timeout-seconds:60}") long timeoutSeconds,
+                  @Value("${lending.warm-up.measured-runs:200}") int measuredRuns) {
+        return new WarmUp(
+                workloads.orderedStream().collect(toList()),
+                minIterations,
+                Duration.ofMillis(settleMillis),
+                Duration.ofSeconds(timeoutSeconds),
+                measuredRuns,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,15 @@
+package io.pillopl.library.commons.warmup;
+
+/**
+ * A hot path worth getting compiled before real traffic arrives. {@link #run()} is called over and over while the
+ * application warms up, so it must only ever touch throwaway data.
+ */
+public interface WarmUpWorkload {
+
+    String name();
+
+    void run();
+
+    default void close() {
+    }
+}
@@ -1,8 +1,13 @@
 package io.pillopl.library.lending;
 
+import io.pillopl.library.commons.commands.profiling.CommandProfilingConfig;
+import io.pillopl.library.commons.events.journal.EventJournalConfig;
 import io.pillopl.library.commons.events.publisher.DomainEventsConfig;
+import io.pillopl.library.commons.warmup.WarmUpConfig;
+import io.pillopl.library.lending.availability.infrastructure.AvailabilityConfiguration;
 import io.pillopl.library.lending.book.infrastructure.BookConfiguration;
 import io.pillopl.library.lending.dailysheet.infrastructure.DailySheetConfiguration;
+import io.pillopl.library.lending.dailysheet.web.DailySheetWebConfiguration;
 import io.pillopl.library.lending.patron.infrastructure.PatronConfiguration;
 import io.pillopl.library.lending.patronprofile.infrastructure.PatronProfileConfiguration;
 import io.pillopl.library.lending.patronprofile.web.WebConfiguration;
@@ -17,7 +22,12 @@ import org.springframework.scheduling.annotation.EnableScheduling;
         PatronProfileConfiguration.class,
         PatronConfiguration.class,
         DailySheetConfiguration.class,
+        DailySheetWebConfiguration.class,
         BookConfiguration.class,
-        DomainEventsConfig.class})
+        AvailabilityConfiguration.class,
+        DomainEventsConfig.class,
+        EventJournalConfig.class,
+        CommandProfilingConfig.class,
+        WarmUpConfig.class})
 public class LendingConfig {
 }
@@ -1,7 +1,12 @@
 package io.pillopl.library.lending;
 
 import io.pillopl.library.catalogue.BookId;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.pillopl.library.commons.aggregates.Version;
+import io.pillopl.library.commons.groupcommit.GroupCommit;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.ShardRoutingDataSource;
+import io.pillopl.library.commons.sharding.Shards;
 import io.pillopl.library.lending.book.model.AvailableBook;
 import io.pillopl.library.lending.book.model.BookInformation;
 import io.pillopl.library.lending.book.model.BookRepository;
@@ -9,10 +14,20 @@ import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
 import io.pillopl.library.lending.patron.model.PatronEvent.PatronCreated;
 import io.pillopl.library.lending.patron.model.PatronId;
 import io.pillopl.library.lending.patron.model.Patrons;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import javax.sql.DataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -23,11 +38,13 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.transaction.PlatformTransactionManager;
 
 
 import static io.pillopl.library.catalogue.BookType.Circulating;
 import static io.pillopl.library.lending.patron.model.PatronType.Regular;
+import static java.util.stream.Collectors.toList;
 
 @Configuration
 @Slf4j
@@ -48,14 +65,91 @@ class LendingDatabaseConfig extends AbstractJdbcConfiguration {
         return new DataSourceTransactionManager(dataSource());
     }
 
+    @Value("${lending.shards.count:1}")
+    private int shardCount;
+
+    @Bean
+    Shards shards() {
+        return new Shards(shardCount);
+    }
+
+    @Value("${lending.startup.parallel-databases:false}")
+    private boolean parallelDatabases;
+
     @Bean
     DataSource dataSource() {
+        return ShardRoutingDataSource.over(databases(this::lendingDatabase));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "lending.group-commit.enabled", havingValue = "true")
+    GroupCommit groupCommit(MeterRegistry meterRegistry,
+                            @Value("${lending.group-commit.window-micros:500}") long windowMicros,
+                            @Value("${lending.group-commit.max-group-size:64}") int maxGroupSize) {
+        if (shardCount > 1) {
+            //one transaction is one connection, so a group mixing patrons from different shards would land on one of them
+            throw new IllegalStateException("Group commit needs a single lending shard, got " + shardCount);
+        }
+        return new GroupCommit(transactionManager(), Duration.of(windowMicros, ChronoUnit.MICROS), maxGroupSize, meterRegistry);
+    }
+
+    @Value("${lending.read-replica.enabled:false}")
+    private boolean readReplicaEnabled;
+
+    @Value("${lending.read-replica.max-lag-millis:5000}")
+    private long readReplicaMaxLagMillis;
+
+    @Bean
+    ReplicatedReads replicatedReads(MeterRegistry meterRegistry) {
+        ReplicatedReads reads = readReplicaEnabled
+                ? new ReplicatedReads(jdbcTemplate(), new JdbcTemplate(readReplica()), Duration.ofMillis(readReplicaMaxLagMillis))
+                : ReplicatedReads.primaryOnly(jdbcTemplate());
+        reads.bindTo(meterRegistry);
+        return reads;
+    }
+
+    private DataSource readReplica() {
+        return ShardRoutingDataSource.over(databases(() -> new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("create_sheets_db.sql")
+                .build()));
+    }
+
+    /**
+     * One database per shard. Each runs its own DDL, so with {@code lending.startup.parallel-databases} they are
+     * created side by side instead of one after another.
+     */
+    private List<DataSource> databases(Supplier<DataSource> database) {
+        if (!parallelDatabases || shardCount == 1) {
+            List<DataSource> shards = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                shards.add(database.get());
+            }
+            return shards;
+        }
+        ExecutorService bootstrap = Executors.newFixedThreadPool(shardCount, new CustomizableThreadFactory("lending-database-"));
+        try {
+            List<CompletableFuture<DataSource>> shards = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                shards.add(CompletableFuture.supplyAsync(database, bootstrap));
+            }
+            return shards.stream().map(CompletableFuture::join).collect(toList());
+        } finally {
+            bootstrap.shutdown();
+        }
+    }
+
+    private DataSource lendingDatabase() {
         return new EmbeddedDatabaseBuilder()
                 .generateUniqueName(true)
                 .setType(EmbeddedDatabaseType.H2)
                 .addScript("create_patron_db.sql")
+                .addScript("create_patron_events_db.sql")
                 .addScript("create_lending_book_db.sql")
                 .addScript("create_sheets_db.sql")
+                .addScript("create_idempotency_keys_db.sql")
+                .addScript("create_processed_events_db.sql")
                 .build();
     }
 
@@ -0,0 +1,183 @@
+package io.pillopl.library.lending.availability.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.lending.availability.model.BranchShelves;
+import io.pillopl.library.lending.availability.model.ShelfCursor;
+import io.pillopl.library.lending.availability.model.ShelfPage;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One bitmap of available books per branch and {@link BookType}. Every book id gets a dense ordinal the first time it
+ * is seen, so a bitmap costs one bit per book known to the process and count, page and intersect are word-wise
+ * {@link BitSet} operations.
+ */
+class AvailabilityBitmaps implements BranchShelves {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final java.util.List<UUID> books = new ArrayList<>();
+    private final java.util.List<BookType> types = new ArrayList<>();
+    private final java.util.List<UUID> shelvedAt = new ArrayList<>();
+    private final Map<UUID, EnumMap<BookType, BitSet>> shelves = new HashMap<>();
+
+    void makeAvailable(UUID bookId, BookType type, UUID branchId) {
+        lock.writeLock().lock();
+        try {
+            Integer known = ordinals.get(bookId);
+            if (known != null) {
+                clear(known);
+            }
+            int ordinal = ordinalOf(bookId, type);
+            BookType knownType = types.get(ordinal);
+            if (knownType == null) {
+                return;
+            }
+            shelf(branchId, knownType).set(ordinal);
+            shelvedAt.set(ordinal, branchId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void makeUnavailable(UUID bookId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(bookId);
+            if (ordinal != null) {
+                clear(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void replaceWith(AvailabilityBitmaps rebuilt) {
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            ordinals.putAll(rebuilt.ordinals);
+            books.clear();
+            books.addAll(rebuilt.books);
+            types.clear();
+            types.addAll(rebuilt.types);
+            shelvedAt.clear();
+            shelvedAt.addAll(rebuilt.shelvedAt);
+            shelves.clear();
+            shelves.putAll(rebuilt.shelves);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int count(LibraryBranchId branch, Option<BookType> type) {
+        lock.readLock().lock();
+        try {
+            EnumMap<BookType, BitSet> byType = shelves.get(branch.getLibraryBranchId());
+            if (byType == null) {
+                return 0;
+            }
+            return type.isDefined()
+                    ? cardinality(byType.get(type.get()))
+                    : byType.values().stream().mapToInt(BitSet::cardinality).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ShelfPage page(LibraryBranchId branch, Option<BookType> type, Option<ShelfCursor> after, int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet shelf = shelfOf(branch, type);
+            java.util.List<BookId> page = new ArrayList<>(limit);
+            int last = -1;
+            int next = shelf.nextSetBit(after.map(cursor -> cursor.getPosition() + 1).getOrElse(0));
+            while (next >= 0 && page.size() < limit) {
+                page.add(new BookId(books.get(next)));
+                last = next;
+                next = shelf.nextSetBit(next + 1);
+            }
+            Option<ShelfCursor> cursor = next >= 0 && last >= 0 ? Option.of(new ShelfCursor(last)) : Option.none();
+            return new ShelfPage(List.ofAll(page), cursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<BookId> availableAmong(LibraryBranchId branch, Set<BookId> candidates) {
+        lock.readLock().lock();
+        try {
+            BitSet wanted = new BitSet(books.size());
+            candidates.forEach(book -> {
+                Integer ordinal = ordinals.get(book.getBookId());
+                if (ordinal != null) {
+                    wanted.set(ordinal);
+                }
+            });
+            wanted.and(shelfOf(branch, Option.none()));
+            return List.ofAll(wanted.stream().mapToObj(ordinal -> new BookId(books.get(ordinal))).iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet shelfOf(LibraryBranchId branch, Option<BookType> type) {
+        EnumMap<BookType, BitSet> byType = shelves.get(branch.getLibraryBranchId());
+        BitSet shelf = new BitSet();
+        if (byType != null) {
+            byType.forEach((bookType, bits) -> {
+                if (type.map(bookType::equals).getOrElse(true)) {
+                    shelf.or(bits);
+                }
+            });
+        }
+        return shelf;
+    }
+
+    private int ordinalOf(UUID bookId, BookType type) {
+        Integer ordinal = ordinals.get(bookId);
+        if (ordinal == null) {
+            ordinal = books.size();
+            ordinals.put(bookId, ordinal);
+            books.add(bookId);
+            types.add(type);
+            shelvedAt.add(null);
+        } else if (type != null) {
+            types.set(ordinal, type);
+        }
+        return ordinal;
+    }
+
+    private void clear(int ordinal) {
+        UUID branchId = shelvedAt.get(ordinal);
+        if (branchId != null) {
+            shelf(branchId, types.get(ordinal)).clear(ordinal);
+            shelvedAt.set(ordinal, null);
+        }
+    }
+
+    private BitSet shelf(UUID branchId, BookType type) {
+        return shelves
+                .computeIfAbsent(branchId, branch -> new EnumMap<>(BookType.class))
+                .computeIfAbsent(type, bookType -> new BitSet());
+    }
+
+    private static int cardinality(BitSet bits) {
+        return bits == null ? 0 : bits.cardinality();
+    }
+}
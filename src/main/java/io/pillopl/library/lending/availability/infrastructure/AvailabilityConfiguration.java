@@ -0,0 +1,42 @@
+package io.pillopl.library.lending.availability.infrastructure;
+
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.availability.model.BranchShelves;
+import io.pillopl.library.lending.availability.model.IsbnAvailability;
+import io.pillopl.library.lending.availability.web.BranchShelvesController;
+import io.pillopl.library.lending.availability.web.IsbnCopiesController;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@Configuration
+public class AvailabilityConfiguration {
+
+    @Bean
+    AvailabilityBitmaps availabilityBitmaps() {
+        return new AvailabilityBitmaps();
+    }
+
+    @Bean(initMethod = "rebuild")
+    @Lazy(false)
+    AvailabilityProjection availabilityProjection(AvailabilityBitmaps availabilityBitmaps, JdbcTemplate jdbcTemplate, Shards shards) {
+        return new AvailabilityProjection(availabilityBitmaps, jdbcTemplate, shards);
+    }
+
+    @Bean(initMethod = "rebuild")
+    @Lazy(false)
+    IsbnAvailabilityProjection isbnAvailabilityProjection(JdbcTemplate jdbcTemplate, Shards shards) {
+        return new IsbnAvailabilityProjection(jdbcTemplate, shards);
+    }
+
+    @Bean
+    IsbnCopiesController isbnCopiesController(IsbnAvailability isbnAvailability) {
+        return new IsbnCopiesController(isbnAvailability);
+    }
+
+    @Bean
+    BranchShelvesController branchShelvesController(BranchShelves branchShelves) {
+        return new BranchShelvesController(branchShelves);
+    }
+}
@@ -0,0 +1,94 @@
+package io.pillopl.library.lending.availability.infrastructure;
+
+import io.pillopl.library.catalogue.BookInstanceAddedToCatalogue;
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+/**
+ * Keeps {@link AvailabilityBitmaps} in line with the book aggregates: it is loaded from book_database_entity at startup
+ * and then follows the same events the books react to. Inside a transaction the shelves only change once it commits.
+ */
+@Slf4j
+@AllArgsConstructor
+class AvailabilityProjection {
+
+    private final AvailabilityBitmaps bitmaps;
+    private final JdbcTemplate jdbcTemplate;
+    private final Shards shards;
+
+    AvailabilityProjection(AvailabilityBitmaps bitmaps, JdbcTemplate jdbcTemplate) {
+        this(bitmaps, jdbcTemplate, Shards.SINGLE);
+    }
+
+    void rebuild() {
+        AvailabilityBitmaps rebuilt = new AvailabilityBitmaps();
+        int[] loaded = {0};
+        shards.onEachShard(shard -> jdbcTemplate.query(
+                "SELECT b.book_id, b.book_type, b.available_at_branch FROM book_database_entity b WHERE b.book_state = 'Available' ORDER BY b.id",
+                rs -> {
+                    rebuilt.makeAvailable(
+                            (UUID) rs.getObject("BOOK_ID"),
+                            BookType.valueOf(rs.getString("BOOK_TYPE")),
+                            (UUID) rs.getObject("AVAILABLE_AT_BRANCH"));
+                    loaded[0]++;
+                }));
+        bitmaps.replaceWith(rebuilt);
+        log.info("Loaded {} available books into branch shelves", loaded[0]);
+    }
+
+    /**
+     * Reads the book back instead of taking the branch from the event, which does not carry it, so it has to run
+     * after the book was created; that handler runs first.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookInstanceAddedToCatalogue event) {
+        shards.on(event.getBookId(), () -> jdbcTemplate.query(
+                "SELECT b.book_type, b.available_at_branch FROM book_database_entity b WHERE b.book_id = ? AND b.book_state = 'Available'",
+                new Object[]{event.getBookId()},
+                rs -> {
+                    BookType type = BookType.valueOf(rs.getString("BOOK_TYPE"));
+                    UUID branch = (UUID) rs.getObject("AVAILABLE_AT_BRANCH");
+                    AfterCommit.run(() -> bitmaps.makeAvailable(event.getBookId(), type, branch));
+                }));
+    }
+
+    @EventListener
+    public void handle(BookPlacedOnHold event) {
+        AfterCommit.run(() -> bitmaps.makeUnavailable(event.getBookId()));
+    }
+
+    @EventListener
+    public void handle(BookCheckedOut event) {
+        AfterCommit.run(() -> bitmaps.makeUnavailable(event.getBookId()));
+    }
+
+    @EventListener
+    public void handle(BookHoldCanceled event) {
+        AfterCommit.run(() -> bitmaps.makeAvailable(event.getBookId(), null, event.getLibraryBranchId()));
+    }
+
+    @EventListener
+    public void handle(BookHoldExpired event) {
+        AfterCommit.run(() -> bitmaps.makeAvailable(event.getBookId(), null, event.getLibraryBranchId()));
+    }
+
+    @EventListener
+    public void handle(BookReturned event) {
+        AfterCommit.run(() -> bitmaps.makeAvailable(event.getBookId(), event.getBookType(), event.getLibraryBranchId()));
+    }
+}
@@ -0,0 +1,182 @@
+package io.pillopl.library.lending.availability.infrastructure;
+
+import io.pillopl.library.catalogue.BookInstanceAddedToCatalogue;
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.availability.model.IsbnAvailability;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import io.vavr.collection.HashMap;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies per ISBN and branch, kept in memory and updated in place by every event that moves a book. The ISBN of a
+ * lending book is remembered in book_isbn when the catalogue announces it, which lets the projection be rebuilt
+ * at startup by joining that table with book_database_entity. Inside a transaction the counts only move once it
+ * commits.
+ */
+@Slf4j
+class IsbnAvailabilityProjection implements IsbnAvailability {
+
+    enum State {
+        Available, OnHold, CheckedOut
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Copies> byIsbn = new ConcurrentHashMap<>();
+    private final Map<UUID, String> isbnOfBook = new ConcurrentHashMap<>();
+
+    private final Shards shards;
+
+    IsbnAvailabilityProjection(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, Shards.SINGLE);
+    }
+
+    IsbnAvailabilityProjection(JdbcTemplate jdbcTemplate, Shards shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+    }
+
+    void rebuild() {
+        byIsbn.clear();
+        isbnOfBook.clear();
+        int[] loaded = {0};
+        shards.onEachShard(shard -> jdbcTemplate.query(
+                "SELECT i.isbn, b.book_id, b.book_state, b.available_at_branch, b.on_hold_at_branch, b.checked_out_at_branch " +
+                        "FROM book_isbn i JOIN book_database_entity b ON b.book_id = i.book_id",
+                rs -> {
+                    String isbn = rs.getString("ISBN");
+                    UUID bookId = (UUID) rs.getObject("BOOK_ID");
+                    isbnOfBook.put(bookId, isbn);
+                    State state = State.valueOf(rs.getString("BOOK_STATE"));
+                    copies(isbn).move(bookId, state, branchOf(rs, state));
+                    loaded[0]++;
+                }));
+        log.info("Loaded {} catalogued books into ISBN availability", loaded[0]);
+    }
+
+    @Override
+    public Option<IsbnCopies> copiesOf(String isbn) {
+        return Option.of(byIsbn.get(isbn)).map(copies -> copies.snapshot(isbn));
+    }
+
+    /**
+     * Counts the new copy at the branch of the lending book created for it, so it runs after the handler that
+     * creates that book.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookInstanceAddedToCatalogue event) {
+        shards.on(event.getBookId(), () -> catalogue(event));
+    }
+
+    private void catalogue(BookInstanceAddedToCatalogue event) {
+        try {
+            jdbcTemplate.update("INSERT INTO book_isbn (book_id, isbn) VALUES (?, ?)", event.getBookId(), event.getIsbn());
+        } catch (DuplicateKeyException e) {
+            //idempotent operation
+        }
+        AfterCommit.run(() -> isbnOfBook.put(event.getBookId(), event.getIsbn()));
+        jdbcTemplate.query(
+                "SELECT b.available_at_branch FROM book_database_entity b WHERE b.book_id = ? AND b.book_state = 'Available'",
+                new Object[]{event.getBookId()},
+                rs -> {
+                    UUID branch = (UUID) rs.getObject("AVAILABLE_AT_BRANCH");
+                    AfterCommit.run(() -> copies(event.getIsbn()).move(event.getBookId(), State.Available, branch));
+                });
+    }
+
+    @EventListener
+    public void handle(BookPlacedOnHold event) {
+        move(event.getBookId(), State.OnHold, event.getLibraryBranchId());
+    }
+
+    @EventListener
+    public void handle(BookCheckedOut event) {
+        move(event.getBookId(), State.CheckedOut, event.getLibraryBranchId());
+    }
+
+    @EventListener
+    public void handle(BookHoldCanceled event) {
+        move(event.getBookId(), State.Available, event.getLibraryBranchId());
+    }
+
+    @EventListener
+    public void handle(BookHoldExpired event) {
+        move(event.getBookId(), State.Available, event.getLibraryBranchId());
+    }
+
+    @EventListener
+    public void handle(BookReturned event) {
+        move(event.getBookId(), State.Available, event.getLibraryBranchId());
+    }
+
+    private void move(UUID bookId, State state, UUID branchId) {
+        AfterCommit.run(() -> {
+            String isbn = isbnOfBook.get(bookId);
+            if (isbn != null) {
+                copies(isbn).move(bookId, state, branchId);
+            }
+        });
+    }
+
+    private Copies copies(String isbn) {
+        return byIsbn.computeIfAbsent(isbn, key -> new Copies());
+    }
+
+    private static UUID branchOf(ResultSet rs, State state) throws SQLException {
+        switch (state) {
+            case OnHold:
+                return (UUID) rs.getObject("ON_HOLD_AT_BRANCH");
+            case CheckedOut:
+                return (UUID) rs.getObject("CHECKED_OUT_AT_BRANCH");
+            default:
+                return (UUID) rs.getObject("AVAILABLE_AT_BRANCH");
+        }
+    }
+
+    private static class Copies {
+
+        private final Map<UUID, int[]> counts = new java.util.HashMap<>();
+        private final Map<UUID, State> states = new java.util.HashMap<>();
+        private final Map<UUID, UUID> branches = new java.util.HashMap<>();
+
+        synchronized void move(UUID bookId, State state, UUID branchId) {
+            State previous = states.put(bookId, state);
+            UUID previousBranch = branchId == null ? branches.remove(bookId) : branches.put(bookId, branchId);
+            if (previous != null && previousBranch != null) {
+                counts.get(previousBranch)[previous.ordinal()]--;
+            }
+            if (branchId != null) {
+                counts.computeIfAbsent(branchId, branch -> new int[State.values().length])[state.ordinal()]++;
+            }
+        }
+
+        synchronized IsbnCopies snapshot(String isbn) {
+            HashMap<LibraryBranchId, BranchCopies> branchCopies = HashMap.empty();
+            for (Map.Entry<UUID, int[]> entry : counts.entrySet()) {
+                int[] count = entry.getValue();
+                branchCopies = branchCopies.put(
+                        new LibraryBranchId(entry.getKey()),
+                        new BranchCopies(count[State.Available.ordinal()], count[State.OnHold.ordinal()], count[State.CheckedOut.ordinal()]));
+            }
+            return new IsbnCopies(isbn, branchCopies);
+        }
+    }
+}
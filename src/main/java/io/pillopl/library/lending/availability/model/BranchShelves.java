@@ -0,0 +1,20 @@
+package io.pillopl.library.lending.availability.model;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+
+/**
+ * Which books are available right now at a library branch, optionally narrowed down to one {@link BookType}.
+ */
+public interface BranchShelves {
+
+    int count(LibraryBranchId branch, Option<BookType> type);
+
+    ShelfPage page(LibraryBranchId branch, Option<BookType> type, Option<ShelfCursor> after, int limit);
+
+    List<BookId> availableAmong(LibraryBranchId branch, Set<BookId> books);
+}
@@ -0,0 +1,38 @@
+package io.pillopl.library.lending.availability.model;
+
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * How many copies of a title are available, on hold and checked out, per library branch. Catalogue knows the ISBN of
+ * every book and lending knows its state; this view joins the two.
+ */
+public interface IsbnAvailability {
+
+    Option<IsbnCopies> copiesOf(String isbn);
+
+    @Value
+    class IsbnCopies {
+
+        @NonNull
+        String isbn;
+
+        @NonNull
+        Map<LibraryBranchId, BranchCopies> branches;
+
+        public int available() {
+            return branches.values().map(BranchCopies::getAvailable).sum().intValue();
+        }
+    }
+
+    @Value
+    class BranchCopies {
+
+        int available;
+        int onHold;
+        int checkedOut;
+    }
+}
@@ -0,0 +1,13 @@
+package io.pillopl.library.lending.availability.model;
+
+import lombok.Value;
+
+/**
+ * Position on a shelf. Positions are stable for the lifetime of the process, so a page that starts after a cursor
+ * never repeats or skips a book that stayed on the shelf.
+ */
+@Value
+public class ShelfCursor {
+
+    int position;
+}
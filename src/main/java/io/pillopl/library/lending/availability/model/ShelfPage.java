@@ -0,0 +1,17 @@
+package io.pillopl.library.lending.availability.model;
+
+import io.pillopl.library.catalogue.BookId;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class ShelfPage {
+
+    @NonNull
+    List<BookId> books;
+
+    @NonNull
+    Option<ShelfCursor> next;
+}
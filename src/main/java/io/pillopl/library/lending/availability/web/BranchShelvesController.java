@@ -0,0 +1,79 @@
+package io.pillopl.library.lending.availability.web;
+
+import io.micrometer.core.annotation.Timed;
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.catalogue.BookType;
+import io.pillopl.library.lending.availability.model.BranchShelves;
+import io.pillopl.library.lending.availability.model.ShelfCursor;
+import io.pillopl.library.lending.availability.model.ShelfPage;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.vavr.collection.HashSet;
+import io.vavr.control.Option;
+import lombok.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.springframework.http.ResponseEntity.badRequest;
+import static org.springframework.http.ResponseEntity.ok;
+
+@Timed(percentiles = {0.5, 0.75, 0.95, 0.99})
+@RestController
+public class BranchShelvesController {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final BranchShelves branchShelves;
+
+    public BranchShelvesController(BranchShelves branchShelves) {
+        this.branchShelves = branchShelves;
+    }
+
+    @GetMapping("/branches/{branchId}/shelf/count")
+    ResponseEntity<ShelfCount> count(@PathVariable UUID branchId, @RequestParam(required = false) BookType type) {
+        int available = branchShelves.count(new LibraryBranchId(branchId), Option.of(type));
+        return ok(new ShelfCount(branchId, type, available));
+    }
+
+    @GetMapping("/branches/{branchId}/shelf")
+    ResponseEntity<ShelfView> shelf(@PathVariable UUID branchId,
+                                    @RequestParam(required = false) BookType type,
+                                    @RequestParam(required = false) Integer after,
+                                    @RequestParam(defaultValue = "100") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE || (after != null && after < 0)) {
+            return badRequest().build();
+        }
+        ShelfPage page = branchShelves.page(new LibraryBranchId(branchId), Option.of(type), Option.of(after).map(ShelfCursor::new), size);
+        return ok(new ShelfView(
+                page.getBooks().map(BookId::getBookId).toJavaList(),
+                page.getNext().map(ShelfCursor::getPosition).getOrNull()));
+    }
+
+    @PostMapping("/branches/{branchId}/shelf/intersect")
+    ResponseEntity<List<UUID>> availableAmong(@PathVariable UUID branchId, @RequestBody List<UUID> bookIds) {
+        return ok(branchShelves
+                .availableAmong(new LibraryBranchId(branchId), HashSet.ofAll(bookIds).map(BookId::new))
+                .map(BookId::getBookId)
+                .toJavaList());
+    }
+
+    @Value
+    static class ShelfCount {
+        UUID branchId;
+        BookType type;
+        int available;
+    }
+
+    @Value
+    static class ShelfView {
+        List<UUID> bookIds;
+        Integer next;
+    }
+}
@@ -0,0 +1,64 @@
+package io.pillopl.library.lending.availability.web;
+
+import io.micrometer.core.annotation.Timed;
+import io.pillopl.library.lending.availability.model.IsbnAvailability;
+import io.pillopl.library.lending.availability.model.IsbnAvailability.BranchCopies;
+import io.pillopl.library.lending.availability.model.IsbnAvailability.IsbnCopies;
+import lombok.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.springframework.http.ResponseEntity.notFound;
+
+@Timed(percentiles = {0.5, 0.75, 0.95, 0.99})
+@RestController
+public class IsbnCopiesController {
+
+    private final IsbnAvailability isbnAvailability;
+
+    public IsbnCopiesController(IsbnAvailability isbnAvailability) {
+        this.isbnAvailability = isbnAvailability;
+    }
+
+    @GetMapping("/isbns/{isbn}/copies")
+    ResponseEntity<CopiesView> copiesOf(@PathVariable String isbn) {
+        return isbnAvailability
+                .copiesOf(isbn)
+                .map(CopiesView::of)
+                .map(ResponseEntity::ok)
+                .getOrElse(() -> notFound().build());
+    }
+
+    @Value
+    static class CopiesView {
+        String isbn;
+        int available;
+        List<BranchView> branches;
+
+        static CopiesView of(IsbnCopies copies) {
+            return new CopiesView(
+                    copies.getIsbn(),
+                    copies.available(),
+                    copies.getBranches()
+                            .map(branch -> BranchView.of(branch._1.getLibraryBranchId(), branch._2))
+                            .toJavaList());
+        }
+    }
+
+    @Value
+    static class BranchView {
+        UUID branchId;
+        int available;
+        int onHold;
+        int checkedOut;
+
+        static BranchView of(UUID branchId, BranchCopies copies) {
+            return new BranchView(branchId, copies.getAvailable(), copies.getOnHold(), copies.getCheckedOut());
+        }
+    }
+}
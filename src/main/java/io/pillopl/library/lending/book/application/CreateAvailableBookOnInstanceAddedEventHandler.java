@@ -8,6 +8,8 @@ import io.pillopl.library.lending.book.model.BookRepository;
 import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
 import lombok.AllArgsConstructor;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 
 import java.util.UUID;
 
@@ -16,7 +18,11 @@ public class CreateAvailableBookOnInstanceAddedEventHandler {
 
     private final BookRepository bookRepository;
 
+    /**
+     * Runs before any other listener of the event: the availability projections read the book this creates.
+     */
     @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     void handle(BookInstanceAddedToCatalogue event) {
         bookRepository.save(new AvailableBook(new BookId(event.getBookId()), event.getType(), ourLibraryBranch(), Version.zero()));
     }
@@ -1,6 +1,7 @@
 package io.pillopl.library.lending.book.infrastructure;
 
 import io.pillopl.library.commons.events.DomainEvents;
+import io.pillopl.library.commons.sharding.Shards;
 import io.pillopl.library.lending.book.application.CreateAvailableBookOnInstanceAddedEventHandler;
 import io.pillopl.library.lending.book.application.PatronEventsHandler;
 import io.pillopl.library.lending.book.model.BookRepository;
@@ -22,7 +23,7 @@ public class BookConfiguration {
     }
 
     @Bean
-    BookDatabaseRepository bookDatabaseRepository(JdbcTemplate jdbcTemplate) {
-        return new BookDatabaseRepository(jdbcTemplate);
+    BookDatabaseRepository bookDatabaseRepository(JdbcTemplate jdbcTemplate, Shards shards) {
+        return new BookDatabaseRepository(jdbcTemplate, shards);
     }
 }
@@ -3,6 +3,7 @@ package io.pillopl.library.lending.book.infrastructure;
 import io.pillopl.library.catalogue.BookId;
 import io.pillopl.library.catalogue.BookType;
 import io.pillopl.library.commons.aggregates.AggregateRootIsStale;
+import io.pillopl.library.commons.sharding.Shards;
 import io.pillopl.library.lending.book.model.*;
 import io.pillopl.library.lending.patron.application.hold.FindAvailableBook;
 import io.pillopl.library.lending.patron.application.hold.FindBookOnHold;
@@ -28,6 +29,11 @@ import static io.vavr.control.Option.of;
 class BookDatabaseRepository implements BookRepository, FindAvailableBook, FindBookOnHold {
 
     private final JdbcTemplate jdbcTemplate;
+    private final Shards shards;
+
+    BookDatabaseRepository(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, Shards.SINGLE);
+    }
 
     @Override
     public Option<Book> findBy(BookId bookId) {
@@ -36,16 +42,16 @@ class BookDatabaseRepository implements BookRepository, FindAvailableBook, FindB
     }
 
     private Option<BookDatabaseEntity> findBookById(BookId bookId) {
-        return Try
+        return shards.on(bookId.getBookId(), () -> Try
                 .ofSupplier(() -> of(jdbcTemplate.queryForObject("SELECT b.* FROM book_database_entity b WHERE b.book_id = ?", new BeanPropertyRowMapper<>(BookDatabaseEntity.class), bookId.getBookId())))
-                .getOrElse(none());
+                .getOrElse(none()));
     }
 
     @Override
     public void save(Book book) {
-        findBy(book.bookId())
+        shards.on(book.bookId().getBookId(), () -> findBy(book.bookId())
                 .map(entity -> updateOptimistically(book))
-                .onEmpty(() -> insertNew(book));
+                .onEmpty(() -> insertNew(book)));
     }
 
     private int updateOptimistically(Book book) {
@@ -0,0 +1,516 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.dailysheet.model.SheetsFlushed;
+import io.pillopl.library.lending.patron.model.PatronEvent;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import io.vavr.control.Option;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Projects the sheets in batches instead of one statement per event. Events are buffered as they are published and
+ * flushed every {@code interval}, or as soon as {@code maxBatchSize} of them are waiting. Changes to the same hold or
+ * checkout row are collapsed first, so a hold placed and canceled before a flush is inserted once, already canceled.
+ * What is left goes out as JDBC batches, in one transaction per shard.
+ * <p>
+ * Statements of one (book, patron) pair run in rounds, one per round and in the order their events were published,
+ * and every insert is guarded by its event id, so replaying an event changes nothing, same as without batching.
+ * {@link SheetsFlushed} is published after every flush, so profile versions move again once the rows are visible.
+ * <p>
+ * When the events of a shard fail to flush together, they are applied one by one to find the ones to blame. An event
+ * that keeps failing on its own is kept for the next flushes, up to {@code maxAttempts} of them, then logged and
+ * dropped ({@code sheets_projector_dead_letters}) so it does not hold back everything behind it. Later events of the
+ * same (book, patron) pair are not applied past it: they wait behind it, in order, and are dropped along with it,
+ * since a cancel or return applied before its hold or checkout would leave the row wrong. Failures to reach the
+ * database are not counted against the events, they are kept until it is back.
+ */
+@Slf4j
+class BatchingSheetsProjector {
+
+    private static final String INSERT_HOLD = "INSERT INTO holds_sheet " +
+            "(id, book_id, status, hold_event_id, hold_by_patron_id, hold_at, hold_till, expired_at, canceled_at, hold_at_branch, checked_out_at) " +
+            "SELECT holds_sheet_seq.nextval, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? FROM dual " +
+            "WHERE NOT EXISTS (SELECT 1 FROM holds_sheet h WHERE h.hold_event_id = ?)";
+    private static final String INSERT_CHECKOUT = "INSERT INTO checkouts_sheet " +
+            "(id, book_id, status, checkout_event_id, checked_out_by_patron_id, checked_out_at, checkout_till, checked_out_at_branch, returned_at) " +
+            "SELECT checkouts_sheet_seq.nextval, ?, ?, ?, ?, ?, ?, ?, ? FROM dual " +
+            "WHERE NOT EXISTS (SELECT 1 FROM checkouts_sheet c WHERE c.checkout_event_id = ?)";
+    private static final String MARK_AS_RETURNED = "UPDATE checkouts_sheet SET returned_at = ?, status = 'RETURNED' " +
+            "WHERE returned_at IS NULL AND book_id = ? AND checked_out_by_patron_id = ?";
+
+    private final JdbcTemplate sheets;
+    private final TransactionTemplate transaction;
+    private final SheetsWriteGate gate;
+    private final Shards shards;
+    private final ApplicationEventPublisher publisher;
+    private final int maxBatchSize;
+    private final int maxAttempts;
+    private final Timer batchLatency;
+    private final DistributionSummary batchSize;
+    private final Counter collapsed;
+    private final Counter deadLetters;
+    private final Map<UUID, Integer> failedAttempts = new HashMap<>();
+    private final Object flushing = new Object();
+    private final ScheduledExecutorService flusher = newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sheets-projector-"));
+    private List<PatronEvent> buffer = new ArrayList<>();
+    private long oldestBufferedAt;
+
+    BatchingSheetsProjector(JdbcTemplate sheets,
+                            TransactionTemplate transaction,
+                            SheetsWriteGate gate,
+                            Shards shards,
+                            ApplicationEventPublisher publisher,
+                            int maxBatchSize,
+                            int maxAttempts,
+                            Duration interval,
+                            MeterRegistry meterRegistry) {
+        this.sheets = sheets;
+        this.transaction = transaction;
+        this.gate = gate;
+        this.shards = shards;
+        this.publisher = publisher;
+        this.maxBatchSize = maxBatchSize;
+        this.maxAttempts = maxAttempts;
+        this.batchLatency = Timer.builder("sheets_projector_batch_latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("sheets_projector_batch_size")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.collapsed = meterRegistry.counter("sheets_projector_collapsed_events");
+        this.deadLetters = meterRegistry.counter("sheets_projector_dead_letters");
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void add(PatronEvent event) {
+        boolean full;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                oldestBufferedAt = System.nanoTime();
+            }
+            buffer.add(event);
+            full = buffer.size() >= maxBatchSize;
+        }
+        if (full) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    void flush() {
+        synchronized (flushing) {
+            List<PatronEvent> batch;
+            long bufferedSince;
+            synchronized (this) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                batch = buffer;
+                bufferedSince = oldestBufferedAt;
+                buffer = new ArrayList<>();
+            }
+            Set<UUID> flushedPatrons = new HashSet<>();
+            List<PatronEvent> failed = new ArrayList<>();
+            batch.stream()
+                    .collect(groupingBy(event -> shards.shardOf(event.getPatronId()), LinkedHashMap::new, toList()))
+                    .forEach((shard, events) -> {
+                        try {
+                            write(shard, events);
+                            flushed(events, flushedPatrons);
+                        } catch (RuntimeException e) {
+                            if (events.size() > 1 && !unreachable(e)) {
+                                log.warn("Could not flush {} sheet events together, applying them one by one", events.size(), e);
+                                Map<Row, Boolean> stuck = new HashMap<>();
+                                events.forEach(event -> writeAlone(shard, event, stuck, flushedPatrons, failed));
+                            } else {
+                                keepOrDrop(events, e, failed);
+                            }
+                        }
+                    });
+            if (!failed.isEmpty()) {
+                synchronized (this) {
+                    failed.addAll(buffer);
+                    buffer = failed;
+                    oldestBufferedAt = bufferedSince;
+                }
+            }
+            batchSize.record(batch.size());
+            batchLatency.record(System.nanoTime() - bufferedSince, TimeUnit.NANOSECONDS);
+            if (!flushedPatrons.isEmpty()) {
+                publisher.publishEvent(new SheetsFlushed(flushedPatrons));
+            }
+        }
+    }
+
+    private void write(int shard, List<PatronEvent> events) {
+        shards.onShard(shard, () -> gate.writeAll(events, () -> transaction.execute(status -> {
+            apply(events);
+            return null;
+        })));
+    }
+
+    /**
+     * @param stuck rows with an event that failed in this flush, mapped to whether that event was dropped
+     */
+    private void writeAlone(int shard, PatronEvent event, Map<Row, Boolean> stuck, Set<UUID> flushedPatrons, List<PatronEvent> failed) {
+        Row row = rowOf(event);
+        Boolean dropped = stuck.get(row);
+        if (dropped != null) {
+            if (dropped) {
+                deadLetters.increment();
+                log.error("Dropping sheet event {} along with an earlier event of the same row", event);
+            } else {
+                failed.add(event);
+            }
+            return;
+        }
+        List<PatronEvent> alone = List.of(event);
+        try {
+            write(shard, alone);
+            flushed(alone, flushedPatrons);
+        } catch (RuntimeException e) {
+            stuck.put(row, !keepOrDrop(event, e, failed));
+        }
+    }
+
+    private void flushed(List<PatronEvent> events, Set<UUID> flushedPatrons) {
+        events.forEach(event -> {
+            flushedPatrons.add(event.getPatronId());
+            if (!failedAttempts.isEmpty()) {
+                failedAttempts.remove(event.getEventId());
+            }
+        });
+    }
+
+    private void keepOrDrop(List<PatronEvent> events, RuntimeException failure, List<PatronEvent> failed) {
+        if (unreachable(failure)) {
+            log.error("Could not flush {} sheet events, keeping them for the next flush", events.size(), failure);
+            failed.addAll(events);
+            return;
+        }
+        events.forEach(event -> keepOrDrop(event, failure, failed));
+    }
+
+    /**
+     * @return whether the event was kept for the next flush
+     */
+    private boolean keepOrDrop(PatronEvent event, RuntimeException failure, List<PatronEvent> failed) {
+        if (unreachable(failure)) {
+            log.error("Could not flush sheet event {}, keeping it for the next flush", event.getEventId(), failure);
+            failed.add(event);
+            return true;
+        }
+        int attempts = failedAttempts.merge(event.getEventId(), 1, Integer::sum);
+        if (attempts >= maxAttempts) {
+            failedAttempts.remove(event.getEventId());
+            deadLetters.increment();
+            log.error("Dropping sheet event {} after {} failed flushes", event, attempts, failure);
+            return false;
+        }
+        log.error("Could not flush sheet event {}, keeping it for the next flush", event.getEventId(), failure);
+        failed.add(event);
+        return true;
+    }
+
+    private static boolean unreachable(RuntimeException failure) {
+        return failure instanceof TransientDataAccessException
+                || failure instanceof RecoverableDataAccessException
+                || failure instanceof DataAccessResourceFailureException
+                || failure instanceof TransactionException;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Flushing sheet events failed", e);
+        }
+    }
+
+    void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private void apply(List<PatronEvent> events) {
+        Set<UUID> seen = new HashSet<>();
+        Map<Row, Deque<PendingHold>> holds = new LinkedHashMap<>();
+        Map<Row, Deque<PendingCheckout>> checkouts = new LinkedHashMap<>();
+        for (PatronEvent event : events) {
+            if (!seen.add(event.getEventId())) {
+                collapsed.increment();
+            } else if (event instanceof BookPlacedOnHold) {
+                BookPlacedOnHold placed = (BookPlacedOnHold) event;
+                pendingOf(holds, placed.getBookId(), placed.getPatronId()).add(new PendingHold(placed));
+            } else if (event instanceof BookHoldCanceled) {
+                BookHoldCanceled canceled = (BookHoldCanceled) event;
+                change(holds, canceled.getBookId(), canceled.getPatronId(), HoldChange.CANCELED, canceled.getWhen());
+            } else if (event instanceof BookHoldExpired) {
+                BookHoldExpired expired = (BookHoldExpired) event;
+                change(holds, expired.getBookId(), expired.getPatronId(), HoldChange.EXPIRED, expired.getWhen());
+            } else if (event instanceof BookCheckedOut) {
+                BookCheckedOut checkedOut = (BookCheckedOut) event;
+                pendingOf(checkouts, checkedOut.getBookId(), checkedOut.getPatronId()).add(new PendingCheckout(checkedOut, null));
+                change(holds, checkedOut.getBookId(), checkedOut.getPatronId(), HoldChange.CHECKED_OUT, checkedOut.getWhen());
+            } else if (event instanceof BookReturned) {
+                returned(checkouts, (BookReturned) event);
+            }
+        }
+        List<Deque<Step>> programs = new ArrayList<>();
+        holds.values().forEach(pendings -> programs.add(program(pendings, PendingHold::steps)));
+        checkouts.values().forEach(pendings -> programs.add(program(pendings, PendingCheckout::steps)));
+        run(programs);
+    }
+
+    private void change(Map<Row, Deque<PendingHold>> holds, UUID bookId, UUID patronId, HoldChange change, Instant when) {
+        Deque<PendingHold> pendings = pendingOf(holds, bookId, patronId);
+        PendingHold last = pendings.peekLast();
+        if (last == null) {
+            last = new PendingHold(new Row(bookId, patronId));
+            pendings.add(last);
+        }
+        //a repeated change would not match anything, the first one already filled the column
+        boolean repeated = last.changes.putIfAbsent(change, when) != null;
+        if (repeated || last.placed != null) {
+            collapsed.increment();
+        }
+    }
+
+    private void returned(Map<Row, Deque<PendingCheckout>> checkouts, BookReturned event) {
+        Deque<PendingCheckout> pendings = pendingOf(checkouts, event.getBookId(), event.getPatronId());
+        PendingCheckout last = pendings.peekLast();
+        if (last != null && last.returned == null) {
+            last.returned = event;
+            collapsed.increment();
+        } else {
+            pendings.add(new PendingCheckout(null, event));
+        }
+    }
+
+    private static Row rowOf(PatronEvent event) {
+        if (event instanceof BookPlacedOnHold) {
+            return new Row(((BookPlacedOnHold) event).getBookId(), event.getPatronId());
+        }
+        if (event instanceof BookHoldCanceled) {
+            return new Row(((BookHoldCanceled) event).getBookId(), event.getPatronId());
+        }
+        if (event instanceof BookHoldExpired) {
+            return new Row(((BookHoldExpired) event).getBookId(), event.getPatronId());
+        }
+        if (event instanceof BookCheckedOut) {
+            return new Row(((BookCheckedOut) event).getBookId(), event.getPatronId());
+        }
+        return new Row(((BookReturned) event).getBookId(), event.getPatronId());
+    }
+
+    private static <T> Deque<T> pendingOf(Map<Row, Deque<T>> pendings, UUID bookId, UUID patronId) {
+        return pendings.computeIfAbsent(new Row(bookId, patronId), row -> new ArrayDeque<>());
+    }
+
+    private static <T> Deque<Step> program(Deque<T> pendings, Function<T, List<Step>> steps) {
+        Deque<Step> program = new ArrayDeque<>();
+        pendings.forEach(pending -> program.addAll(steps.apply(pending)));
+        return program;
+    }
+
+    /**
+     * Every round takes the next statement of each row and runs the ones sharing SQL as one batch. Statements whose
+     * outcome depends on an earlier one are only added to their row once that one ran.
+     */
+    private void run(List<Deque<Step>> programs) {
+        List<Deque<Step>> remaining = new ArrayList<>(programs);
+        while (!remaining.isEmpty()) {
+            Map<String, List<Deque<Step>>> round = new LinkedHashMap<>();
+            remaining.forEach(program -> round.computeIfAbsent(program.peekFirst().sql, sql -> new ArrayList<>()).add(program));
+            round.forEach((sql, ofRound) -> {
+                List<Step> steps = ofRound.stream().map(Deque::pollFirst).collect(toList());
+                int[] counts = sheets.batchUpdate(sql, steps.stream().map(step -> step.args).collect(toList()));
+                for (int i = 0; i < steps.size(); i++) {
+                    List<Step> followUps = steps.get(i).followUp.apply(counts[i]);
+                    for (int j = followUps.size() - 1; j >= 0; j--) {
+                        ofRound.get(i).addFirst(followUps.get(j));
+                    }
+                }
+            });
+            remaining.removeIf(Deque::isEmpty);
+        }
+    }
+
+    private enum HoldChange {
+        CANCELED("canceled_at", "CANCELED"),
+        EXPIRED("expired_at", "EXPIRED"),
+        CHECKED_OUT("checked_out_at", "CHECKEDOUT");
+
+        private final String sql;
+        private final String status;
+
+        HoldChange(String column, String status) {
+            this.sql = "UPDATE holds_sheet SET " + column + " = ?, status = '" + status + "' " +
+                    "WHERE " + column + " IS NULL AND book_id = ? AND hold_by_patron_id = ?";
+            this.status = status;
+        }
+    }
+
+    @Value
+    private static class Row {
+        UUID bookId;
+        UUID patronId;
+    }
+
+    private static class Step {
+
+        private static final IntFunction<List<Step>> DONE = count -> List.of();
+
+        private final String sql;
+        private final Object[] args;
+        private final IntFunction<List<Step>> followUp;
+
+        private Step(String sql, Object[] args, IntFunction<List<Step>> followUp) {
+            this.sql = sql;
+            this.args = args;
+            this.followUp = followUp;
+        }
+    }
+
+    private static class PendingHold {
+
+        private final Row row;
+        private final BookPlacedOnHold placed;
+        private final Map<HoldChange, Instant> changes = new LinkedHashMap<>();
+
+        PendingHold(Row row) {
+            this.row = row;
+            this.placed = null;
+        }
+
+        PendingHold(BookPlacedOnHold placed) {
+            this.row = new Row(placed.getBookId(), placed.getPatronId());
+            this.placed = placed;
+        }
+
+        List<Step> steps() {
+            if (placed == null) {
+                return changes();
+            }
+            //a replayed hold is already stored, its later changes still have to reach that row
+            return List.of(new Step(INSERT_HOLD, insertArgs(), count -> count == 0 ? changes() : List.of()));
+        }
+
+        private List<Step> changes() {
+            List<Step> steps = new ArrayList<>();
+            changes.forEach((change, when) -> steps.add(
+                    new Step(change.sql, new Object[]{Timestamp.from(when), row.bookId, row.patronId}, Step.DONE)));
+            return steps;
+        }
+
+        private Object[] insertArgs() {
+            String status = "ACTIVE";
+            for (HoldChange change : changes.keySet()) {
+                status = change.status;
+            }
+            return new Object[]{
+                    placed.getBookId(),
+                    status,
+                    placed.getEventId(),
+                    placed.getPatronId(),
+                    Timestamp.from(placed.getWhen()),
+                    Option.of(placed.getHoldTill()).map(Timestamp::from).getOrNull(),
+                    timestampOf(HoldChange.EXPIRED),
+                    timestampOf(HoldChange.CANCELED),
+                    placed.getLibraryBranchId(),
+                    timestampOf(HoldChange.CHECKED_OUT),
+                    placed.getEventId()};
+        }
+
+        private Timestamp timestampOf(HoldChange change) {
+            return Option.of(changes.get(change)).map(Timestamp::from).getOrNull();
+        }
+    }
+
+    private static class PendingCheckout {
+
+        private final BookCheckedOut checkedOut;
+        private BookReturned returned;
+
+        PendingCheckout(BookCheckedOut checkedOut, BookReturned returned) {
+            this.checkedOut = checkedOut;
+            this.returned = returned;
+        }
+
+        List<Step> steps() {
+            if (checkedOut == null) {
+                return List.of(markAsReturned(returned));
+            }
+            Object[] args = {
+                    checkedOut.getBookId(),
+                    returned == null ? "CHECKEDOUT" : "RETURNED",
+                    checkedOut.getEventId(),
+                    checkedOut.getPatronId(),
+                    Timestamp.from(checkedOut.getWhen()),
+                    Timestamp.from(checkedOut.getTill()),
+                    checkedOut.getLibraryBranchId(),
+                    returned == null ? null : Timestamp.from(returned.getWhen()),
+                    checkedOut.getEventId()};
+            BookReturned thenReturned = returned;
+            return List.of(new Step(INSERT_CHECKOUT, args, count -> count == 0 && thenReturned != null ? List.of(markAsReturned(thenReturned)) : List.of()));
+        }
+
+        private static Step markAsReturned(BookReturned event) {
+            return new Step(
+                    MARK_AS_RETURNED,
+                    new Object[]{Timestamp.from(event.getWhen()), event.getBookId(), event.getPatronId()},
+                    count -> count == 0 ? List.of(returnedWithCheckoutMissing(event)) : List.of());
+        }
+
+        private static Step returnedWithCheckoutMissing(BookReturned event) {
+            return new Step(INSERT_CHECKOUT, new Object[]{
+                    event.getBookId(),
+                    "CHECKEDOUT",
+                    event.getEventId(),
+                    event.getPatronId(),
+                    null,
+                    null,
+                    null,
+                    Timestamp.from(event.getWhen()),
+                    event.getEventId()}, Step.DONE);
+        }
+    }
+}
@@ -1,17 +1,169 @@
 package io.pillopl.library.lending.dailysheet.infrastructure;
 
-import io.pillopl.library.lending.dailysheet.model.DailySheet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.events.dedup.ProcessedEvents;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
+import io.pillopl.library.lending.dailysheet.model.SheetsExport;
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory;
+import io.vavr.control.Option;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
+import java.time.Duration;
 
 @Configuration
 public class DailySheetConfiguration {
 
     @Bean
-    DailySheet sheetsReadModel(JdbcTemplate jdbcTemplate) {
-        return new SheetsReadModel(jdbcTemplate, Clock.systemDefaultZone());
+    SheetsWriteGate sheetsWriteGate() {
+        return new SheetsWriteGate();
+    }
+
+    @Bean
+    SheetsReadModel sheetsReadModel(JdbcTemplate jdbcTemplate,
+                                    SheetsWriteGate sheetsWriteGate,
+                                    Shards shards,
+                                    ReplicatedReads replicatedReads,
+                                    ObjectProvider<BatchingSheetsProjector> batchingSheetsProjector,
+                                    ObjectProvider<ProcessedEvents> sheetsProcessedEvents) {
+        return new SheetsReadModel(
+                jdbcTemplate,
+                Clock.systemDefaultZone(),
+                sheetsWriteGate,
+                shards,
+                replicatedReads,
+                Option.of(batchingSheetsProjector.getIfAvailable()),
+                Option.of(sheetsProcessedEvents.getIfAvailable()));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "lending.warm-up.enabled", havingValue = "true")
+    WarmUpWorkload sheetsWarmUp() {
+        return new SheetsWarmUp();
+    }
+
+    @Bean(initMethod = "warmUp")
+    @Lazy(false)
+    @ConditionalOnProperty(name = "lending.projections.dedup.enabled", havingValue = "true", matchIfMissing = true)
+    ProcessedEvents sheetsProcessedEvents(JdbcTemplate jdbcTemplate,
+                                          PlatformTransactionManager transactionManager,
+                                          Shards shards,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${lending.projections.dedup.retention-hours:168}") long retentionHours,
+                                          @Value("${lending.projections.dedup.expected-events:1000000}") int expectedEvents,
+                                          @Value("${lending.projections.dedup.false-positive-rate:0.01}") double falsePositiveRate,
+                                          @Value("${lending.projections.dedup.recent-capacity:10000}") int recentCapacity) {
+        return new ProcessedEvents(
+                "daily_sheet",
+                jdbcTemplate,
+                transactionManager,
+                shards,
+                Clock.systemDefaultZone(),
+                Duration.ofHours(retentionHours),
+                expectedEvents,
+                falsePositiveRate,
+                recentCapacity,
+                meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "lending.sheets.projection.mode", havingValue = "batched")
+    BatchingSheetsProjector batchingSheetsProjector(JdbcTemplate jdbcTemplate,
+                                                    PlatformTransactionManager transactionManager,
+                                                    SheetsWriteGate sheetsWriteGate,
+                                                    Shards shards,
+                                                    ApplicationEventPublisher applicationEventPublisher,
+                                                    MeterRegistry meterRegistry,
+                                                    @Value("${lending.sheets.projection.batch-size:500}") int batchSize,
+                                                    @Value("${lending.sheets.projection.max-attempts:5}") int maxAttempts,
+                                                    @Value("${lending.sheets.projection.interval-millis:50}") long intervalMillis) {
+        return new BatchingSheetsProjector(
+                jdbcTemplate,
+                new TransactionTemplate(transactionManager),
+                sheetsWriteGate,
+                shards,
+                applicationEventPublisher,
+                batchSize,
+                maxAttempts,
+                Duration.ofMillis(intervalMillis),
+                meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Lazy(false)
+    @ConditionalOnProperty(name = "lending.read-replica.enabled", havingValue = "true")
+    SheetsReplicator sheetsReplicator(ReplicatedReads replicatedReads,
+                                      Shards shards,
+                                      @Value("${lending.sheets.archive.retention-days:30}") int retentionDays) {
+        JdbcTemplate replica = replicatedReads.replica();
+        return new SheetsReplicator(
+                new SheetsReadModel(replica, Clock.systemDefaultZone(), new SheetsWriteGate(), shards),
+                replica,
+                replicatedReads,
+                Clock.systemDefaultZone(),
+                Duration.ofDays(retentionDays),
+                shards);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    SheetsRebuild sheetsRebuild(JdbcTemplate jdbcTemplate,
+                                SheetsReadModel sheetsReadModel,
+                                SheetsWriteGate sheetsWriteGate,
+                                Shards shards,
+                                @Value("${lending.sheets.rebuild.threads:4}") int threads,
+                                @Value("${lending.sheets.rebuild.batch-size:1000}") int batchSize,
+                                @Value("${lending.patrons.storage:tables}") String patronsStorage) {
+        SheetsRebuild.Source source = "event-sourced".equals(patronsStorage)
+                ? SheetsRebuild.Source.PATRON_EVENTS
+                : SheetsRebuild.Source.AGGREGATE_TABLES;
+        return new SheetsRebuild(jdbcTemplate, sheetsReadModel, sheetsWriteGate, threads, batchSize, Clock.systemDefaultZone(), shards, source);
+    }
+
+    @Bean
+    @Lazy(false)
+    SheetsArchiver sheetsArchiver(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  SheetsWriteGate sheetsWriteGate,
+                                  Shards shards,
+                                  @Value("${lending.sheets.archive.retention-days:30}") int retentionDays,
+                                  @Value("${lending.sheets.archive.batch-size:500}") int batchSize,
+                                  @Value("${lending.sheets.archive.max-batches-per-run:20}") int maxBatchesPerRun) {
+        return new SheetsArchiver(
+                jdbcTemplate,
+                new TransactionTemplate(transactionManager),
+                sheetsWriteGate,
+                Clock.systemDefaultZone(),
+                Duration.ofDays(retentionDays),
+                batchSize,
+                maxBatchesPerRun,
+                shards);
+    }
+
+    @Bean
+    SheetsHistory sheetsHistory(JdbcTemplate jdbcTemplate, Shards shards) {
+        return new SheetsHistoryReadModel(jdbcTemplate, shards);
+    }
+
+    @Bean
+    SheetsExport sheetsExport(ReplicatedReads replicatedReads,
+                              Shards shards,
+                              @Value("${lending.sheets.export.fetch-size:500}") int fetchSize) {
+        return new SheetsExportReadModel(replicatedReads, fetchSize, shards);
+    }
+
+    @Bean
+    SheetsRebuildEndpoint sheetsRebuildEndpoint(SheetsRebuild sheetsRebuild) {
+        return new SheetsRebuildEndpoint(sheetsRebuild);
     }
 }
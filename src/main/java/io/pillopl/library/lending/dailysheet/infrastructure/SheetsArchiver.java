@@ -0,0 +1,148 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.commons.sharding.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Moves rows that reached a terminal state longer than the retention window ago out of the sheets into
+ * {@code holds_sheet_archive_YYYYMM} / {@code checkouts_sheet_archive_YYYYMM}, by the month they finished in.
+ * <p>
+ * Each batch is a short transaction that copies and deletes a bounded number of rows picked by id, so writers on the
+ * hot tables only ever wait for one batch. A run stops after {@code maxBatchesPerRun} batches and picks up where it
+ * left off next time. With more than one shard every shard is archived in turn, each into its own archive tables.
+ * <p>
+ * An archive keeps the event id of its rows unique, like the sheet it comes from. A row whose event is already
+ * archived, e.g. because a redelivered event was projected again after the first row left the sheet, is dropped
+ * from the sheet without being archived twice.
+ */
+@Slf4j
+class SheetsArchiver {
+
+    static final String HOLDS_ARCHIVE_PREFIX = "holds_sheet_archive_";
+    static final String CHECKOUTS_ARCHIVE_PREFIX = "checkouts_sheet_archive_";
+
+    static final String HOLD_COLUMNS = "id, book_id, status, hold_event_id, hold_at_branch, hold_by_patron_id, " +
+            "hold_at, hold_till, expired_at, canceled_at, checked_out_at";
+    static final String CHECKOUT_COLUMNS = "id, book_id, status, checkout_event_id, checked_out_by_patron_id, " +
+            "checked_out_at, returned_at, checked_out_at_branch, checkout_till";
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM").withZone(ZoneOffset.UTC);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SheetsWriteGate gate;
+    private final Clock clock;
+    private final Duration retention;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Shards shards;
+    private final Set<String> knownArchives = ConcurrentHashMap.newKeySet();
+
+    SheetsArchiver(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, SheetsWriteGate gate, Clock clock,
+                   Duration retention, int batchSize, int maxBatchesPerRun) {
+        this(jdbcTemplate, transactionTemplate, gate, clock, retention, batchSize, maxBatchesPerRun, Shards.SINGLE);
+    }
+
+    SheetsArchiver(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, SheetsWriteGate gate, Clock clock,
+                   Duration retention, int batchSize, int maxBatchesPerRun, Shards shards) {
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.gate = gate;
+        this.clock = clock;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(initialDelayString = "${lending.sheets.archive.delay-millis:60000}", fixedDelayString = "${lending.sheets.archive.delay-millis:60000}")
+    public void archivePeriodically() {
+        int archived = archive();
+        if (archived > 0) {
+            log.info("Archived {} finished sheet rows", archived);
+        }
+    }
+
+    int archive() {
+        Timestamp cutoff = Timestamp.from(Instant.now(clock).minus(retention));
+        int[] archived = {0};
+        shards.onEachShard(shard -> archived[0] += archive(shard, cutoff));
+        return archived[0];
+    }
+
+    private int archive(int shard, Timestamp cutoff) {
+        return archive(
+                "SELECT h.id, COALESCE(h.canceled_at, h.expired_at, h.checked_out_at) AS finished_at FROM holds_sheet h " +
+                        "WHERE h.status IN ('CANCELED', 'EXPIRED', 'CHECKEDOUT') " +
+                        "AND COALESCE(h.canceled_at, h.expired_at, h.checked_out_at) < ? ORDER BY h.id LIMIT ?",
+                shard, "holds_sheet", HOLDS_ARCHIVE_PREFIX, HOLD_COLUMNS, "hold_event_id", cutoff)
+                + archive(
+                "SELECT c.id, c.returned_at AS finished_at FROM checkouts_sheet c " +
+                        "WHERE c.status = 'RETURNED' AND c.returned_at < ? ORDER BY c.id LIMIT ?",
+                shard, "checkouts_sheet", CHECKOUTS_ARCHIVE_PREFIX, CHECKOUT_COLUMNS, "checkout_event_id", cutoff);
+    }
+
+    private int archive(String selectFinished, int shard, String table, String archivePrefix, String columns, String eventColumn, Timestamp cutoff) {
+        int archived = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            Map<String, List<Long>> idsByMonth = jdbcTemplate.query(
+                    selectFinished,
+                    new Object[]{cutoff, batchSize},
+                    (rs, rowNum) -> Map.entry(MONTH.format(rs.getTimestamp("FINISHED_AT").toInstant()), rs.getLong("ID")))
+                    .stream()
+                    .collect(groupingBy(Map.Entry::getKey, LinkedHashMap::new, mapping(Map.Entry::getValue, toList())));
+            int moved = idsByMonth.values().stream().mapToInt(List::size).sum();
+            if (moved == 0) {
+                break;
+            }
+            idsByMonth.forEach((month, ids) -> move(shard, table, archivePrefix + month, columns, eventColumn, ids));
+            archived += moved;
+            if (moved < batchSize) {
+                break;
+            }
+        }
+        return archived;
+    }
+
+    private void move(int shard, String table, String archive, String columns, String eventColumn, List<Long> ids) {
+        ensureArchiveExists(shard, table, archive, columns, eventColumn);
+        String in = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        Object[] arguments = ids.toArray();
+        gate.shared(() -> transactionTemplate.execute(status -> {
+            jdbcTemplate.update("INSERT INTO " + archive + " (" + columns + ") SELECT " + columns + " FROM " + table + " t WHERE t.id IN (" + in + ") " +
+                    "AND (t." + eventColumn + " IS NULL OR NOT EXISTS (SELECT 1 FROM " + archive + " a WHERE a." + eventColumn + " = t." + eventColumn + "))", arguments);
+            return jdbcTemplate.update("DELETE FROM " + table + " WHERE id IN (" + in + ")", arguments);
+        }));
+    }
+
+    private void ensureArchiveExists(int shard, String table, String archive, String columns, String eventColumn) {
+        if (knownArchives.contains(shard + ":" + archive)) {
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + archive + " AS SELECT " + columns + " FROM " + table + " WHERE 1 = 0");
+        String patronColumn = table.startsWith("holds") ? "hold_by_patron_id" : "checked_out_by_patron_id";
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + archive + "_patron_idx ON " + archive + " (" + patronColumn + ", id)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + archive + "_event_idx ON " + archive + " (" + eventColumn + ")");
+        knownArchives.add(shard + ":" + archive);
+    }
+}
@@ -0,0 +1,80 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.dailysheet.model.SheetsExport;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.PatronId;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Reads the sheets through a forward-only cursor fetching {@code streamingFetchSize} rows at a time, one shard after
+ * the other, and maps each row straight into the consumer. Rows are ordered by due time only within each shard: merging
+ * the shards would need a cursor and a connection open on every shard at once.
+ */
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+class SheetsExportReadModel implements SheetsExport {
+
+    private static final String HOLDS_TO_EXPIRE = "SELECT h.book_id, h.hold_by_patron_id AS patron_id, h.hold_at_branch AS branch_id, h.hold_till AS due " +
+            "FROM holds_sheet h WHERE h.status = 'ACTIVE' AND h.hold_till >= ? AND h.hold_till < ?";
+
+    private static final String CHECKOUTS_TO_OVERDUE = "SELECT c.book_id, c.checked_out_by_patron_id AS patron_id, c.checked_out_at_branch AS branch_id, c.checkout_till AS due " +
+            "FROM checkouts_sheet c WHERE c.status = 'CHECKEDOUT' AND c.checkout_till >= ? AND c.checkout_till < ?";
+
+    private final ReplicatedReads reads;
+    private final int streamingFetchSize;
+    private final Shards shards;
+
+    SheetsExportReadModel(JdbcTemplate sheets, int streamingFetchSize) {
+        this(ReplicatedReads.primaryOnly(sheets), streamingFetchSize, Shards.SINGLE);
+    }
+
+    @Override
+    public void streamHoldsToExpire(Filter filter, Consumer<Row> consumer) {
+        stream(HOLDS_TO_EXPIRE, " AND h.hold_at_branch = ? ORDER BY h.hold_till", " ORDER BY h.hold_till", filter, consumer);
+    }
+
+    @Override
+    public void streamCheckoutsToOverdue(Filter filter, Consumer<Row> consumer) {
+        stream(CHECKOUTS_TO_OVERDUE, " AND c.checked_out_at_branch = ? ORDER BY c.checkout_till", " ORDER BY c.checkout_till", filter, consumer);
+    }
+
+    private void stream(String sql, String ofBranch, String ofAllBranches, Filter filter, Consumer<Row> consumer) {
+        String query = sql + (filter.getBranch().isDefined() ? ofBranch : ofAllBranches);
+        shards.onEachShard(shard -> reads.forScan().query(forwardOnly(query, filter), rs -> {
+            consumer.accept(toRow(rs));
+        }));
+    }
+
+    private PreparedStatementCreator forwardOnly(String sql, Filter filter) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(streamingFetchSize);
+            statement.setTimestamp(1, Timestamp.from(filter.getFrom()));
+            statement.setTimestamp(2, Timestamp.from(filter.getTill()));
+            if (filter.getBranch().isDefined()) {
+                statement.setObject(3, filter.getBranch().get().getLibraryBranchId());
+            }
+            return statement;
+        };
+    }
+
+    private Row toRow(ResultSet rs) throws SQLException {
+        return new Row(
+                new BookId((UUID) rs.getObject("BOOK_ID")),
+                new PatronId((UUID) rs.getObject("PATRON_ID")),
+                new LibraryBranchId((UUID) rs.getObject("BRANCH_ID")),
+                rs.getTimestamp("DUE").toInstant());
+    }
+}
@@ -0,0 +1,81 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.vavr.collection.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+
+import static io.pillopl.library.lending.dailysheet.infrastructure.SheetsArchiver.CHECKOUTS_ARCHIVE_PREFIX;
+import static io.pillopl.library.lending.dailysheet.infrastructure.SheetsArchiver.HOLDS_ARCHIVE_PREFIX;
+
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+class SheetsHistoryReadModel implements SheetsHistory {
+
+    private final JdbcTemplate sheets;
+    private final Shards shards;
+
+    SheetsHistoryReadModel(JdbcTemplate sheets) {
+        this(sheets, Shards.SINGLE);
+    }
+
+    @Override
+    public List<Entry> holdsOf(PatronId patronId, Scope scope) {
+        return query(
+                "holds_sheet", HOLDS_ARCHIVE_PREFIX, scope,
+                "SELECT h.id, h.book_id, h.status, h.hold_at AS started_at, COALESCE(h.canceled_at, h.expired_at, h.checked_out_at) AS finished_at " +
+                        "FROM %s h WHERE h.hold_by_patron_id = ?",
+                patronId);
+    }
+
+    @Override
+    public List<Entry> checkoutsOf(PatronId patronId, Scope scope) {
+        return query(
+                "checkouts_sheet", CHECKOUTS_ARCHIVE_PREFIX, scope,
+                "SELECT c.id, c.book_id, c.status, c.checked_out_at AS started_at, c.returned_at AS finished_at " +
+                        "FROM %s c WHERE c.checked_out_by_patron_id = ?",
+                patronId);
+    }
+
+    private List<Entry> query(String table, String archivePrefix, Scope scope, String selectFrom, PatronId patronId) {
+        return shards.on(patronId.getPatronId(), () -> queryOnShard(table, archivePrefix, scope, selectFrom, patronId));
+    }
+
+    private List<Entry> queryOnShard(String table, String archivePrefix, Scope scope, String selectFrom, PatronId patronId) {
+        List<String> tables = List.of(table);
+        if (scope == Scope.IncludingArchives) {
+            tables = tables.appendAll(archives(archivePrefix));
+        }
+        String sql = tables.map(name -> String.format(selectFrom, name)).mkString("", " UNION ALL ", " ORDER BY id");
+        Object[] arguments = tables.map(name -> (Object) patronId.getPatronId()).toJavaArray();
+        return List.ofAll(sheets.query(sql, arguments, this::toEntry));
+    }
+
+    private List<String> archives(String archivePrefix) {
+        return List.ofAll(sheets.queryForList(
+                "SELECT t.table_name FROM information_schema.tables t WHERE t.table_name LIKE ? ORDER BY t.table_name",
+                String.class,
+                archivePrefix.toUpperCase().replace("_", "\\_") + "%"));
+    }
+
+    private Entry toEntry(ResultSet rs, int rowNum) throws SQLException {
+        return new Entry(
+                new BookId((UUID) rs.getObject("BOOK_ID")),
+                rs.getString("STATUS"),
+                instantOrNull(rs.getTimestamp("STARTED_AT")),
+                instantOrNull(rs.getTimestamp("FINISHED_AT")));
+    }
+
+    private static Instant instantOrNull(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+}
@@ -1,12 +1,18 @@
 package io.pillopl.library.lending.dailysheet.infrastructure;
 
 import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.events.dedup.ProcessedEvents;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
 import io.pillopl.library.lending.dailysheet.model.CheckoutsToOverdueSheet;
 import io.pillopl.library.lending.dailysheet.model.DailySheet;
 import io.pillopl.library.lending.dailysheet.model.ExpiredHold;
+import io.pillopl.library.lending.dailysheet.model.HoldsToExpireSchedule;
+import io.pillopl.library.lending.dailysheet.model.HoldsToExpireSchedule.ScheduledExpiry;
 import io.pillopl.library.lending.dailysheet.model.HoldsToExpireSheet;
 import io.pillopl.library.lending.dailysheet.model.OverdueCheckout;
 import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.PatronEvent;
 import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
 import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
 import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
@@ -17,6 +23,8 @@ import io.vavr.control.Option;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -38,6 +46,31 @@ class SheetsReadModel implements DailySheet {
 
     private final JdbcTemplate sheets;
     private final Clock clock;
+    private final SheetsWriteGate gate;
+    private final Shards shards;
+    private final ReplicatedReads reads;
+    private final Option<BatchingSheetsProjector> batching;
+    private final Option<ProcessedEvents> processedEvents;
+
+    SheetsReadModel(JdbcTemplate sheets, Clock clock) {
+        this(sheets, clock, new SheetsWriteGate());
+    }
+
+    SheetsReadModel(JdbcTemplate sheets, Clock clock, SheetsWriteGate gate) {
+        this(sheets, clock, gate, Shards.SINGLE);
+    }
+
+    SheetsReadModel(JdbcTemplate sheets, Clock clock, SheetsWriteGate gate, Shards shards) {
+        this(sheets, clock, gate, shards, ReplicatedReads.primaryOnly(sheets));
+    }
+
+    SheetsReadModel(JdbcTemplate sheets, Clock clock, SheetsWriteGate gate, Shards shards, ReplicatedReads reads) {
+        this(sheets, clock, gate, shards, reads, Option.none());
+    }
+
+    SheetsReadModel(JdbcTemplate sheets, Clock clock, SheetsWriteGate gate, Shards shards, ReplicatedReads reads, Option<BatchingSheetsProjector> batching) {
+        this(sheets, clock, gate, shards, reads, batching, Option.none());
+    }
 
     @Override
     public HoldsToExpireSheet queryForHoldsToExpireSheet() {
@@ -49,19 +82,33 @@ class SheetsReadModel implements DailySheet {
     }
 
     private List<Map<String, Object>> findHoldsToExpire() {
-        return sheets.query(
+        Timestamp now = from(Instant.now(clock));
+        JdbcTemplate reader = reads.forScan();
+        return shards.scatter(() -> reader.query(
                 "SELECT h.book_id, h.hold_by_patron_id, h.hold_at_branch FROM holds_sheet h WHERE h.status = 'ACTIVE' and h.hold_till <= ?",
-                new Object[]{from(Instant.now(clock))},
-                new ColumnMapRowMapper());
+                new Object[]{now},
+                new ColumnMapRowMapper()));
     }
 
-    private ExpiredHold toExpiredHold(Map<String, Object> map) {
+    ExpiredHold toExpiredHold(Map<String, Object> map) {
         return new ExpiredHold(
                 new BookId((UUID) map.get("BOOK_ID")),
                 new PatronId((UUID) map.get("HOLD_BY_PATRON_ID")),
                 new LibraryBranchId((UUID) map.get("HOLD_AT_BRANCH")));
     }
 
+    @Override
+    public HoldsToExpireSchedule queryForHoldsToExpireSchedule() {
+        JdbcTemplate reader = reads.forScan();
+        return new HoldsToExpireSchedule(ofAll(
+                shards.scatter(() -> reader.query(
+                        "SELECT h.book_id, h.hold_by_patron_id, h.hold_at_branch, h.hold_till FROM holds_sheet h WHERE h.status = 'ACTIVE' and h.hold_till IS NOT NULL",
+                        new ColumnMapRowMapper()))
+                        .stream()
+                        .map(map -> new ScheduledExpiry(toExpiredHold(map), ((Timestamp) map.get("HOLD_TILL")).toInstant()))
+                        .collect(toList())));
+    }
+
     @Override
     public CheckoutsToOverdueSheet queryForCheckoutsToOverdue() {
         return new CheckoutsToOverdueSheet(ofAll(
@@ -72,13 +119,15 @@ class SheetsReadModel implements DailySheet {
     }
 
     private List<Map<String, Object>> findCheckoutsToOverdue() {
-        return sheets.query(
+        Timestamp now = from(Instant.now(clock));
+        JdbcTemplate reader = reads.forScan();
+        return shards.scatter(() -> reader.query(
                 "SELECT c.book_id, c.checked_out_by_patron_id, c.checked_out_at_branch FROM checkouts_sheet c WHERE c.status = 'CHECKEDOUT' and c.checkout_till <= ?",
-                new Object[]{from(Instant.now(clock))},
-                new ColumnMapRowMapper());
+                new Object[]{now},
+                new ColumnMapRowMapper()));
     }
 
-    private OverdueCheckout toOverdueCheckout(Map<String, Object> map) {
+    OverdueCheckout toOverdueCheckout(Map<String, Object> map) {
         return new OverdueCheckout(
                 new BookId((UUID) map.get("BOOK_ID")),
                 new PatronId((UUID) map.get("CHECKED_OUT_BY_PATRON_ID")),
@@ -88,12 +137,15 @@ class SheetsReadModel implements DailySheet {
     @Override
     @Transactional
     @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public void handle(BookPlacedOnHold event) {
-        try {
-            createNewHold(event);
-        } catch (DuplicateKeyException ex) {
-            //idempotent operation
-        }
+        project(event, () -> {
+            try {
+                createNewHold(event);
+            } catch (DuplicateKeyException ex) {
+                //idempotent operation
+            }
+        });
     }
 
     private void createNewHold(BookPlacedOnHold event) {
@@ -111,7 +163,13 @@ class SheetsReadModel implements DailySheet {
 
 
     @Override
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public void handle(BookHoldCanceled event) {
+        project(event, () -> markAsCanceled(event));
+    }
+
+    private void markAsCanceled(BookHoldCanceled event) {
         sheets.update("UPDATE holds_sheet SET canceled_at = ?, status = 'CANCELED' WHERE canceled_at IS NULL AND book_id = ? AND hold_by_patron_id = ?",
                 from(event.getWhen()),
                 event.getBookId(),
@@ -120,7 +178,12 @@ class SheetsReadModel implements DailySheet {
 
     @Override
     @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public void handle(BookHoldExpired event) {
+        project(event, () -> markAsExpired(event));
+    }
+
+    private void markAsExpired(BookHoldExpired event) {
         sheets.update("UPDATE holds_sheet SET expired_at = ?, status = 'EXPIRED' WHERE expired_at IS NULL AND book_id = ? AND hold_by_patron_id = ?",
                 from(event.getWhen()),
                 event.getBookId(),
@@ -129,12 +192,15 @@ class SheetsReadModel implements DailySheet {
 
     @Override
     @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public void handle(BookCheckedOut event) {
-        try {
-            createNewCheckout(event);
-        } catch (DuplicateKeyException ex) {
-            //idempotent operation
-        }
+        project(event, () -> {
+            try {
+                createNewCheckout(event);
+            } catch (DuplicateKeyException ex) {
+                //idempotent operation
+            }
+        });
     }
 
     private void createNewCheckout(BookCheckedOut event) {
@@ -148,6 +214,10 @@ class SheetsReadModel implements DailySheet {
                 from(event.getWhen()),
                 from(event.getTill()),
                 event.getLibraryBranchId());
+        markHoldAsCheckedOut(event);
+    }
+
+    private void markHoldAsCheckedOut(BookCheckedOut event) {
         sheets.update("UPDATE holds_sheet SET checked_out_at = ?, status = 'CHECKEDOUT' WHERE checked_out_at IS NULL AND book_id = ? AND hold_by_patron_id = ?",
                 from(event.getWhen()),
                 event.getBookId(),
@@ -156,12 +226,30 @@ class SheetsReadModel implements DailySheet {
 
     @Override
     @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public void handle(BookReturned event) {
-        int results = markAsReturned(event);
-        if (results == 0) {
-            insertAsReturnedWithCheckedOutEventMissing(event);
+        project(event, () -> {
+            int results = markAsReturned(event);
+            if (results == 0) {
+                insertAsReturnedWithCheckedOutEventMissing(event);
+            }
+        });
+    }
+
+    private void project(PatronEvent event, Runnable write) {
+        if (batching.isDefined()) {
+            batching.get().add(event);
+        } else {
+            gate.write(event, () -> shards.on(event.getPatronId(), () -> once(event, write)));
         }
+    }
 
+    private void once(PatronEvent event, Runnable write) {
+        if (processedEvents.isDefined()) {
+            processedEvents.get().processOnce(event.getEventId(), write);
+        } else {
+            write.run();
+        }
     }
 
     private int markAsReturned(BookReturned event) {
@@ -182,5 +270,63 @@ class SheetsReadModel implements DailySheet {
                 from(event.getWhen()));
     }
 
-}
+    /**
+     * Applies an event captured during a rebuild to the freshly swapped in tables. A rebuilt row carries no event
+     * id, so inserts are guarded by the (book, patron) pair instead, and a return never invents a missing checkout.
+     */
+    void catchUp(Object event) {
+        if (event instanceof PatronEvent) {
+            shards.on(((PatronEvent) event).getPatronId(), () -> catchUpOnShard(event));
+        }
+    }
+
+    private void catchUpOnShard(Object event) {
+        if (event instanceof BookPlacedOnHold) {
+            catchUpHold((BookPlacedOnHold) event);
+        } else if (event instanceof BookHoldCanceled) {
+            markAsCanceled((BookHoldCanceled) event);
+        } else if (event instanceof BookHoldExpired) {
+            markAsExpired((BookHoldExpired) event);
+        } else if (event instanceof BookCheckedOut) {
+            catchUpCheckout((BookCheckedOut) event);
+        } else if (event instanceof BookReturned) {
+            markAsReturned((BookReturned) event);
+        }
+    }
+
+    private void catchUpHold(BookPlacedOnHold event) {
+        sheets.update("INSERT INTO holds_sheet " +
+                        "(id, book_id, status, hold_event_id, hold_by_patron_id, hold_at, hold_till, expired_at, canceled_at, hold_at_branch, checked_out_at) " +
+                        "SELECT holds_sheet_seq.nextval, ?, 'ACTIVE', ?, ?, ?, ?, null, null, ?, null FROM dual " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM holds_sheet h WHERE h.hold_event_id = ? " +
+                        "OR (h.book_id = ? AND h.hold_by_patron_id = ? AND h.status = 'ACTIVE'))",
+                event.getBookId(),
+                event.getEventId(),
+                event.getPatronId(),
+                from(event.getWhen()),
+                Option.of(event.getHoldTill()).map(Timestamp::from).getOrNull(),
+                event.getLibraryBranchId(),
+                event.getEventId(),
+                event.getBookId(),
+                event.getPatronId());
+    }
+
+    private void catchUpCheckout(BookCheckedOut event) {
+        sheets.update("INSERT INTO checkouts_sheet " +
+                        "(id, book_id, status, checkout_event_id, checked_out_by_patron_id, checked_out_at, checkout_till, checked_out_at_branch, returned_at) " +
+                        "SELECT checkouts_sheet_seq.nextval, ?, 'CHECKEDOUT', ?, ?, ?, ?, ?, null FROM dual " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM checkouts_sheet c WHERE c.checkout_event_id = ? " +
+                        "OR (c.book_id = ? AND c.checked_out_by_patron_id = ? AND c.status = 'CHECKEDOUT'))",
+                event.getBookId(),
+                event.getEventId(),
+                event.getPatronId(),
+                from(event.getWhen()),
+                from(event.getTill()),
+                event.getLibraryBranchId(),
+                event.getEventId(),
+                event.getBookId(),
+                event.getPatronId());
+        markHoldAsCheckedOut(event);
+    }
 
+}
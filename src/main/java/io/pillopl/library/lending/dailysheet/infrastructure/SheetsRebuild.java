@@ -0,0 +1,527 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.patron.model.CheckoutDuration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds holds_sheet and checkouts_sheet from wherever the patrons are actually kept, see {@link Source}, into
+ * shadow tables with JDBC batches. The application keeps writing into the live tables in the meantime; every such
+ * event is captured by the {@link SheetsWriteGate} and replayed after the shadow tables are renamed into place, which
+ * happens while the gate holds writers off.
+ * <p>
+ * With {@link Source#AGGREGATE_TABLES} current holds come from the patrons' hold_database_entity rows and current
+ * checkouts from book_database_entity, both split into id ranges copied in parallel; hold_at / checked_out_at are
+ * taken from patron_events whenever a patron stream has them. The aggregates keep no history, so canceled, expired and
+ * checked out holds and returned checkouts can only be copied over from the live tables: this is the one part such a
+ * rebuild cannot repair. Those finished before the rebuild started are copied alongside the aggregates, the rest while
+ * the gate holds writers off. A finished row is skipped whenever the aggregates say the same hold or checkout is
+ * still going, and the rebuilt row stands alone.
+ * <p>
+ * With {@link Source#PATRON_EVENTS} the patron streams are the only source: every hold and checkout, finished or not,
+ * is replayed from patron_events, one shard per worker, and nothing is copied from the live tables but the tills.
+ * <p>
+ * Neither source knows {@code hold_till} of a streamed hold or {@code checkout_till} of any checkout. A rebuilt row
+ * keeps the till of its live row, matched by event id when it has one. A checkout without a live row is given the
+ * latest till it could have, {@code checked_out_at} plus the longest checkout, and is left without one (never
+ * overdue) when even {@code checked_out_at} is unknown; a streamed hold without a live row is left open-ended.
+ * <p>
+ * With more than one shard every step runs on each shard. Holds are copied within their shard, since both the hold
+ * and its sheet row live with the patron; checkouts are read from the book's shard and written to the patron's.
+ */
+@Slf4j
+class SheetsRebuild {
+
+    private static final int PLACED_ON_HOLD = 2;
+    private static final int HOLD_CANCELED = 3;
+    private static final int HOLD_EXPIRED = 4;
+    private static final int CHECKED_OUT = 5;
+    private static final int RETURNED = 7;
+    private static final int RANGES_PER_THREAD = 4;
+
+    private static final String HOLDS = "SELECT h.book_id, h.patron_id, h.library_branch_id, h.till, " +
+            "(SELECT MAX(e.occurred_at) FROM patron_events e WHERE e.patron_id = h.patron_id AND e.book_id = h.book_id " +
+            "AND e.event_type = " + PLACED_ON_HOLD + ") AS hold_at " +
+            "FROM hold_database_entity h WHERE h.id BETWEEN ? AND ?";
+
+    private static final String CHECKOUTS = "SELECT b.book_id, b.checked_out_by_patron, b.checked_out_at_branch, " +
+            "(SELECT MAX(e.occurred_at) FROM patron_events e WHERE e.patron_id = b.checked_out_by_patron AND e.book_id = b.book_id " +
+            "AND e.event_type = " + CHECKED_OUT + ") AS checked_out_at " +
+            "FROM book_database_entity b WHERE b.id BETWEEN ? AND ? AND b.book_state = 'CheckedOut'";
+
+    private static final String INSERT_HOLD = "INSERT INTO holds_sheet_rebuild " +
+            "(id, book_id, status, hold_event_id, hold_by_patron_id, hold_at, hold_till, expired_at, canceled_at, hold_at_branch, checked_out_at) VALUES " +
+            "(holds_sheet_seq.nextval, ?, 'ACTIVE', null, ?, ?, ?, null, null, ?, null)";
+
+    private static final String INSERT_CHECKOUT = "INSERT INTO checkouts_sheet_rebuild " +
+            "(id, book_id, status, checkout_event_id, checked_out_by_patron_id, checked_out_at, checkout_till, checked_out_at_branch, returned_at) VALUES " +
+            "(checkouts_sheet_seq.nextval, ?, 'CHECKEDOUT', null, ?, ?, null, ?, null)";
+
+    private static final String PATRON_STREAMS = "SELECT e.patron_id, e.event_type, e.event_id, e.occurred_at, e.book_id, e.library_branch_id " +
+            "FROM patron_events e WHERE e.event_type IN (" + PLACED_ON_HOLD + ", " + HOLD_CANCELED + ", " + HOLD_EXPIRED + ", " + CHECKED_OUT + ", " + RETURNED + ") " +
+            "ORDER BY e.patron_id, e.sequence";
+
+    private static final String INSERT_STREAMED_HOLD = "INSERT INTO holds_sheet_rebuild " +
+            "(id, book_id, status, hold_event_id, hold_by_patron_id, hold_at, hold_till, expired_at, canceled_at, hold_at_branch, checked_out_at) VALUES " +
+            "(holds_sheet_seq.nextval, ?, ?, ?, ?, ?, null, ?, ?, ?, ?)";
+
+    private static final String INSERT_STREAMED_CHECKOUT = "INSERT INTO checkouts_sheet_rebuild " +
+            "(id, book_id, status, checkout_event_id, checked_out_by_patron_id, checked_out_at, checkout_till, checked_out_at_branch, returned_at) VALUES " +
+            "(checkouts_sheet_seq.nextval, ?, ?, ?, ?, ?, null, ?, ?)";
+
+    private static final String CARRY_OVER_HOLD_TILL = "UPDATE holds_sheet_rebuild r SET hold_till = " +
+            "(SELECT h.hold_till FROM holds_sheet h WHERE h.hold_event_id = r.hold_event_id) " +
+            "WHERE r.hold_event_id IS NOT NULL";
+
+    private static final String CARRY_OVER_CHECKOUT_TILL = "UPDATE checkouts_sheet_rebuild r SET checkout_till = " +
+            "(SELECT MAX(c.checkout_till) FROM checkouts_sheet c WHERE c.book_id = r.book_id " +
+            "AND c.checked_out_by_patron_id = r.checked_out_by_patron_id AND c.status = 'CHECKEDOUT') " +
+            "WHERE r.checkout_event_id IS NULL";
+
+    private static final String CARRY_OVER_STREAMED_CHECKOUT_TILL = "UPDATE checkouts_sheet_rebuild r SET checkout_till = " +
+            "(SELECT c.checkout_till FROM checkouts_sheet c WHERE c.checkout_event_id = r.checkout_event_id) " +
+            "WHERE r.checkout_event_id IS NOT NULL";
+
+    private static final String LATEST_CHECKOUT_TILL = "UPDATE checkouts_sheet_rebuild SET checkout_till = " +
+            "DATEADD('DAY', " + CheckoutDuration.MAX_CHECKOUT_DURATION + ", checked_out_at) " +
+            "WHERE checkout_till IS NULL AND checked_out_at IS NOT NULL";
+
+    private static final String COPY_FINISHED_HOLDS = "INSERT INTO holds_sheet_rebuild " +
+            "(id, book_id, status, hold_event_id, hold_by_patron_id, hold_at, hold_till, expired_at, canceled_at, hold_at_branch, checked_out_at) " +
+            "SELECT h.id, h.book_id, h.status, h.hold_event_id, h.hold_by_patron_id, h.hold_at, h.hold_till, h.expired_at, h.canceled_at, h.hold_at_branch, h.checked_out_at " +
+            "FROM holds_sheet h WHERE h.status IN ('CANCELED', 'EXPIRED', 'CHECKEDOUT') ";
+
+    //a finished row placed no earlier than the rebuilt active hold is that very hold, which the aggregates say is still going
+    private static final String HOLD_NOT_REBUILT = "AND NOT EXISTS (SELECT 1 FROM holds_sheet_rebuild r WHERE r.book_id = h.book_id " +
+            "AND r.hold_by_patron_id = h.hold_by_patron_id AND r.status = 'ACTIVE' AND (r.hold_at IS NULL OR h.hold_at IS NULL OR r.hold_at <= h.hold_at))";
+
+    private static final String HOLD_FINISHED_BEFORE = "AND COALESCE(h.canceled_at, h.expired_at, h.checked_out_at) < ? " + HOLD_NOT_REBUILT;
+
+    private static final String HOLD_FINISHED_SINCE = "AND NOT (COALESCE(h.canceled_at, h.expired_at, h.checked_out_at) < ?) " +
+            "AND NOT EXISTS (SELECT 1 FROM holds_sheet_rebuild r WHERE r.book_id = h.book_id AND r.hold_by_patron_id = h.hold_by_patron_id AND r.status = 'ACTIVE')";
+
+    private static final String COPY_FINISHED_CHECKOUTS = "INSERT INTO checkouts_sheet_rebuild " +
+            "(id, book_id, status, checkout_event_id, checked_out_by_patron_id, checked_out_at, checkout_till, checked_out_at_branch, returned_at) " +
+            "SELECT c.id, c.book_id, c.status, c.checkout_event_id, c.checked_out_by_patron_id, c.checked_out_at, c.checkout_till, c.checked_out_at_branch, c.returned_at " +
+            "FROM checkouts_sheet c WHERE c.status = 'RETURNED' ";
+
+    private static final String CHECKOUT_NOT_REBUILT = "AND NOT EXISTS (SELECT 1 FROM checkouts_sheet_rebuild r WHERE r.book_id = c.book_id " +
+            "AND r.checked_out_by_patron_id = c.checked_out_by_patron_id AND r.status = 'CHECKEDOUT' " +
+            "AND (r.checked_out_at IS NULL OR c.checked_out_at IS NULL OR r.checked_out_at <= c.checked_out_at))";
+
+    private static final String CHECKOUT_FINISHED_BEFORE = "AND c.returned_at < ? " + CHECKOUT_NOT_REBUILT;
+
+    private static final String CHECKOUT_FINISHED_SINCE = "AND NOT (c.returned_at < ?) " +
+            "AND NOT EXISTS (SELECT 1 FROM checkouts_sheet_rebuild r WHERE r.book_id = c.book_id AND r.checked_out_by_patron_id = c.checked_out_by_patron_id AND r.status = 'CHECKEDOUT')";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SheetsReadModel sheetsReadModel;
+    private final SheetsWriteGate gate;
+    private final int threads;
+    private final int batchSize;
+    private final Clock clock;
+    private final Shards shards;
+    private final Source source;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("sheets-rebuild-"));
+    private final AtomicReference<SheetsRebuildStatus> status = new AtomicReference<>(SheetsRebuildStatus.idle());
+
+    SheetsRebuild(JdbcTemplate jdbcTemplate, SheetsReadModel sheetsReadModel, SheetsWriteGate gate, int threads, int batchSize, Clock clock) {
+        this(jdbcTemplate, sheetsReadModel, gate, threads, batchSize, clock, Shards.SINGLE, Source.AGGREGATE_TABLES);
+    }
+
+    SheetsRebuild(JdbcTemplate jdbcTemplate, SheetsReadModel sheetsReadModel, SheetsWriteGate gate, int threads, int batchSize, Clock clock, Shards shards, Source source) {
+        this.shards = shards;
+        this.source = source;
+        this.jdbcTemplate = jdbcTemplate;
+        this.sheetsReadModel = sheetsReadModel;
+        this.gate = gate;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+
+    SheetsRebuildStatus status() {
+        return status.get();
+    }
+
+    CompletableFuture<SheetsRebuildStatus> start() {
+        SheetsRebuildStatus current = status.get();
+        SheetsRebuildStatus running = SheetsRebuildStatus.running(Instant.now(clock));
+        if (current.isRunning() || !status.compareAndSet(current, running)) {
+            return CompletableFuture.completedFuture(status.get());
+        }
+        return CompletableFuture.supplyAsync(() -> rebuild(running), coordinator);
+    }
+
+    private SheetsRebuildStatus rebuild(SheetsRebuildStatus running) {
+        String generation = Long.toString(System.nanoTime(), 36);
+        Timestamp started = Timestamp.from(running.getStartedAt());
+        gate.startCapturing();
+        try {
+            shards.onEachShard(shard -> createShadowTables());
+            ExecutorService workers = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("sheets-rebuild-worker-"));
+            long[] copied;
+            try {
+                copied = source == Source.PATRON_EVENTS ? replayPatronStreams(workers) : copyAggregates(workers);
+            } finally {
+                workers.shutdownNow();
+            }
+            long holds = copied[0];
+            long checkouts = copied[1];
+            long[] finished = {0};
+            long[] withoutTill = {0};
+            shards.onEachShard(shard -> {
+                withoutTill[0] += fillTills();
+                if (source == Source.AGGREGATE_TABLES) {
+                    finished[0] += copyFinished(HOLD_FINISHED_BEFORE, CHECKOUT_FINISHED_BEFORE, started);
+                }
+                createShadowIndexes(generation);
+            });
+            if (withoutTill[0] > 0) {
+                log.warn("{} rebuilt checkouts have no checkout_till and will never be registered as overdue", withoutTill[0]);
+            }
+            int caughtUp = gate.exclusively(() -> swapAndCatchUp(started));
+            shards.onEachShard(shard -> dropRetiredTables());
+            SheetsRebuildStatus done = running.done(Instant.now(clock), holds, checkouts, caughtUp);
+            log.info("Daily sheets rebuilt: {} holds, {} checkouts, {} finished rows copied from the live tables, {} events caught up", holds, checkouts, finished[0], caughtUp);
+            status.set(done);
+            return done;
+        } catch (Exception e) {
+            gate.stopCapturing();
+            shards.onEachShard(shard -> dropShadowTables());
+            log.error("Daily sheets rebuild failed, live tables left untouched", e);
+            SheetsRebuildStatus failed = running.failed(Instant.now(clock), e.toString());
+            status.set(failed);
+            return failed;
+        }
+    }
+
+    private void createShadowTables() {
+        dropShadowTables();
+        jdbcTemplate.execute("CREATE TABLE holds_sheet_rebuild (" +
+                "id INTEGER IDENTITY PRIMARY KEY, book_id UUID NOT NULL, status VARCHAR(20) NOT NULL, hold_event_id UUID UNIQUE, " +
+                "hold_at_branch UUID, hold_by_patron_id UUID, hold_at TIMESTAMP, hold_till TIMESTAMP, " +
+                "expired_at TIMESTAMP, canceled_at TIMESTAMP, checked_out_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE checkouts_sheet_rebuild (" +
+                "id INTEGER IDENTITY PRIMARY KEY, book_id UUID NOT NULL, status VARCHAR(20) NOT NULL, checkout_event_id UUID UNIQUE, " +
+                "checked_out_by_patron_id UUID, checked_out_at TIMESTAMP, returned_at TIMESTAMP, " +
+                "checked_out_at_branch UUID, checkout_till TIMESTAMP)");
+    }
+
+    private void createShadowIndexes(String generation) {
+        jdbcTemplate.execute("CREATE INDEX holds_sheet_patron_idx_" + generation + " ON holds_sheet_rebuild (hold_by_patron_id, id)");
+        jdbcTemplate.execute("CREATE INDEX checkouts_sheet_patron_idx_" + generation + " ON checkouts_sheet_rebuild (checked_out_by_patron_id, id)");
+        jdbcTemplate.execute("CREATE INDEX holds_sheet_status_idx_" + generation + " ON holds_sheet_rebuild (status, id)");
+        jdbcTemplate.execute("CREATE INDEX checkouts_sheet_status_idx_" + generation + " ON checkouts_sheet_rebuild (status, id)");
+        jdbcTemplate.execute("CREATE INDEX holds_sheet_due_idx_" + generation + " ON holds_sheet_rebuild (status, hold_till)");
+        jdbcTemplate.execute("CREATE INDEX checkouts_sheet_due_idx_" + generation + " ON checkouts_sheet_rebuild (status, checkout_till)");
+    }
+
+    private long[] copyAggregates(ExecutorService workers) throws InterruptedException, ExecutionException {
+        List<Future<Long>> holdCopies = new ArrayList<>();
+        List<Future<Long>> checkoutCopies = new ArrayList<>();
+        shards.onEachShard(shard -> {
+            holdCopies.addAll(copyInRanges(workers, shard, "hold_database_entity", (from, to) -> copyHolds(shard, from, to)));
+            checkoutCopies.addAll(copyInRanges(workers, shard, "book_database_entity", this::copyCheckouts));
+        });
+        return new long[]{sum(holdCopies), sum(checkoutCopies)};
+    }
+
+    private long[] replayPatronStreams(ExecutorService workers) throws InterruptedException, ExecutionException {
+        List<Future<long[]>> replays = new ArrayList<>();
+        shards.onEachShard(shard -> replays.add(workers.submit(() -> shards.onShard(shard, () -> new PatronStreamsReplay().run()))));
+        long[] total = {0, 0};
+        for (Future<long[]> replay : replays) {
+            long[] copied = replay.get();
+            total[0] += copied[0];
+            total[1] += copied[1];
+        }
+        return total;
+    }
+
+    private long fillTills() {
+        if (source == Source.PATRON_EVENTS) {
+            jdbcTemplate.update(CARRY_OVER_HOLD_TILL);
+            jdbcTemplate.update(CARRY_OVER_STREAMED_CHECKOUT_TILL);
+        } else {
+            jdbcTemplate.update(CARRY_OVER_CHECKOUT_TILL);
+        }
+        jdbcTemplate.update(LATEST_CHECKOUT_TILL);
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM checkouts_sheet_rebuild WHERE checkout_till IS NULL AND status = 'CHECKEDOUT'", Long.class);
+    }
+
+    private int copyFinished(String holdsFinished, String checkoutsFinished, Timestamp started) {
+        return jdbcTemplate.update(COPY_FINISHED_HOLDS + holdsFinished, started)
+                + jdbcTemplate.update(COPY_FINISHED_CHECKOUTS + checkoutsFinished, started);
+    }
+
+    private int swapAndCatchUp(Timestamp started) {
+        shards.onEachShard(shard -> {
+            if (source == Source.AGGREGATE_TABLES) {
+                copyFinished(HOLD_FINISHED_SINCE, CHECKOUT_FINISHED_SINCE, started);
+            }
+            jdbcTemplate.execute("ALTER TABLE holds_sheet RENAME TO holds_sheet_retired");
+            jdbcTemplate.execute("ALTER TABLE holds_sheet_rebuild RENAME TO holds_sheet");
+            jdbcTemplate.execute("ALTER TABLE checkouts_sheet RENAME TO checkouts_sheet_retired");
+            jdbcTemplate.execute("ALTER TABLE checkouts_sheet_rebuild RENAME TO checkouts_sheet");
+        });
+        List<Object> captured = gate.stopCapturing();
+        captured.forEach(sheetsReadModel::catchUp);
+        return captured.size();
+    }
+
+    private void dropShadowTables() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS holds_sheet_rebuild");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS checkouts_sheet_rebuild");
+    }
+
+    private void dropRetiredTables() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS holds_sheet_retired");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS checkouts_sheet_retired");
+    }
+
+    private List<Future<Long>> copyInRanges(ExecutorService workers, int shard, String table, RangeCopy copy) {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS low, MAX(id) AS high FROM " + table);
+        List<Future<Long>> copies = new ArrayList<>();
+        if (bounds.get("LOW") == null) {
+            return copies;
+        }
+        long low = ((Number) bounds.get("LOW")).longValue();
+        long high = ((Number) bounds.get("HIGH")).longValue();
+        int ranges = threads * RANGES_PER_THREAD;
+        long step = Math.max(1, (high - low + ranges) / ranges);
+        for (long from = low; from <= high; from += step) {
+            long rangeFrom = from;
+            long rangeTo = Math.min(high, from + step - 1);
+            copies.add(workers.submit(() -> shards.onShard(shard, () -> copy.copy(rangeFrom, rangeTo))));
+        }
+        return copies;
+    }
+
+    private long copyHolds(int shard, long from, long to) {
+        return copy(HOLDS, INSERT_HOLD, from, to, rs -> shard, rs -> new Object[]{
+                rs.getObject("BOOK_ID"),
+                rs.getObject("PATRON_ID"),
+                rs.getTimestamp("HOLD_AT"),
+                rs.getTimestamp("TILL"),
+                rs.getObject("LIBRARY_BRANCH_ID")});
+    }
+
+    private long copyCheckouts(long from, long to) {
+        return copy(CHECKOUTS, INSERT_CHECKOUT, from, to, rs -> shards.shardOf((UUID) rs.getObject("CHECKED_OUT_BY_PATRON")), rs -> new Object[]{
+                rs.getObject("BOOK_ID"),
+                rs.getObject("CHECKED_OUT_BY_PATRON"),
+                rs.getTimestamp("CHECKED_OUT_AT"),
+                rs.getObject("CHECKED_OUT_AT_BRANCH")});
+    }
+
+    private long copy(String select, String insert, long from, long to, RowToShard toShard, RowToArguments toArguments) {
+        Map<Integer, List<Object[]>> batches = new HashMap<>();
+        long[] copied = {0};
+        jdbcTemplate.query(select, new Object[]{from, to}, (RowCallbackHandler) rs -> {
+            int target = toShard.map(rs);
+            List<Object[]> batch = batches.computeIfAbsent(target, shard -> new ArrayList<>(batchSize));
+            batch.add(toArguments.map(rs));
+            if (batch.size() == batchSize) {
+                copied[0] += flush(target, insert, batch);
+            }
+        });
+        for (Map.Entry<Integer, List<Object[]>> batch : batches.entrySet()) {
+            copied[0] += flush(batch.getKey(), insert, batch.getValue());
+        }
+        return copied[0];
+    }
+
+    private int flush(int shard, String insert, List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        shards.onShard(shard, () -> {
+            jdbcTemplate.batchUpdate(insert, batch);
+        });
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    private static long sum(List<Future<Long>> copies) throws InterruptedException, ExecutionException {
+        long total = 0;
+        for (Future<Long> copy : copies) {
+            total += copy.get();
+        }
+        return total;
+    }
+
+    void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    /**
+     * Where the patrons are kept, so what a rebuild is a rebuild from.
+     */
+    enum Source {
+        AGGREGATE_TABLES, PATRON_EVENTS
+    }
+
+    /**
+     * Replays the patron streams of the current shard, one patron after the other, into the shadow tables. A hold
+     * or checkout is written once it is finished, or once its patron is done when it is still going.
+     */
+    private class PatronStreamsReplay {
+
+        private final List<Object[]> holds = new ArrayList<>(batchSize);
+        private final List<Object[]> checkouts = new ArrayList<>(batchSize);
+        private final Map<UUID, StreamedRow> openHolds = new HashMap<>();
+        private final Map<UUID, StreamedRow> openCheckouts = new HashMap<>();
+        private long holdsCopied;
+        private long checkoutsCopied;
+        private UUID patron;
+
+        long[] run() {
+            jdbcTemplate.query(PATRON_STREAMS, (RowCallbackHandler) this::apply);
+            closePatron();
+            holdsCopied += flush(INSERT_STREAMED_HOLD, holds);
+            checkoutsCopied += flush(INSERT_STREAMED_CHECKOUT, checkouts);
+            return new long[]{holdsCopied, checkoutsCopied};
+        }
+
+        private void apply(ResultSet rs) throws SQLException {
+            UUID patronId = (UUID) rs.getObject("PATRON_ID");
+            if (!patronId.equals(patron)) {
+                closePatron();
+                patron = patronId;
+            }
+            UUID book = (UUID) rs.getObject("BOOK_ID");
+            Timestamp at = rs.getTimestamp("OCCURRED_AT");
+            switch (rs.getInt("EVENT_TYPE")) {
+                case PLACED_ON_HOLD:
+                    //a hold the stream never finished is superseded by the next one of the same book
+                    openHolds.put(book, new StreamedRow(patronId, book, (UUID) rs.getObject("EVENT_ID"), at, (UUID) rs.getObject("LIBRARY_BRANCH_ID")));
+                    break;
+                case HOLD_CANCELED:
+                    finishHold(book, "CANCELED", at);
+                    break;
+                case HOLD_EXPIRED:
+                    finishHold(book, "EXPIRED", at);
+                    break;
+                case CHECKED_OUT:
+                    finishHold(book, "CHECKEDOUT", at);
+                    openCheckouts.put(book, new StreamedRow(patronId, book, (UUID) rs.getObject("EVENT_ID"), at, (UUID) rs.getObject("LIBRARY_BRANCH_ID")));
+                    break;
+                case RETURNED:
+                    finishCheckout(book, at);
+                    break;
+                default:
+            }
+        }
+
+        private void finishHold(UUID book, String status, Timestamp at) {
+            StreamedRow hold = openHolds.remove(book);
+            if (hold != null) {
+                addHold(hold.hold(status, at));
+            }
+        }
+
+        private void finishCheckout(UUID book, Timestamp at) {
+            StreamedRow checkout = openCheckouts.remove(book);
+            if (checkout != null) {
+                addCheckout(checkout.checkout("RETURNED", at));
+            }
+        }
+
+        private void closePatron() {
+            openHolds.values().forEach(hold -> addHold(hold.hold("ACTIVE", null)));
+            openCheckouts.values().forEach(checkout -> addCheckout(checkout.checkout("CHECKEDOUT", null)));
+            openHolds.clear();
+            openCheckouts.clear();
+        }
+
+        private void addHold(Object[] row) {
+            holds.add(row);
+            if (holds.size() == batchSize) {
+                holdsCopied += flush(INSERT_STREAMED_HOLD, holds);
+            }
+        }
+
+        private void addCheckout(Object[] row) {
+            checkouts.add(row);
+            if (checkouts.size() == batchSize) {
+                checkoutsCopied += flush(INSERT_STREAMED_CHECKOUT, checkouts);
+            }
+        }
+
+        private int flush(String insert, List<Object[]> batch) {
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            jdbcTemplate.batchUpdate(insert, batch);
+            int size = batch.size();
+            batch.clear();
+            return size;
+        }
+    }
+
+    private static class StreamedRow {
+
+        private final UUID patron;
+        private final UUID book;
+        private final UUID eventId;
+        private final Timestamp at;
+        private final UUID branch;
+
+        StreamedRow(UUID patron, UUID book, UUID eventId, Timestamp at, UUID branch) {
+            this.patron = patron;
+            this.book = book;
+            this.eventId = eventId;
+            this.at = at;
+            this.branch = branch;
+        }
+
+        Object[] hold(String status, Timestamp finishedAt) {
+            return new Object[]{book, status, eventId, patron, at,
+                    "EXPIRED".equals(status) ? finishedAt : null,
+                    "CANCELED".equals(status) ? finishedAt : null,
+                    branch,
+                    "CHECKEDOUT".equals(status) ? finishedAt : null};
+        }
+
+        Object[] checkout(String status, Timestamp returnedAt) {
+            return new Object[]{book, status, eventId, patron, at, branch, returnedAt};
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeCopy {
+        long copy(long from, long to);
+    }
+
+    @FunctionalInterface
+    private interface RowToShard {
+        int map(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowToArguments {
+        Object[] map(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,26 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+@Endpoint(id = "sheetsrebuild")
+public class SheetsRebuildEndpoint {
+
+    private final SheetsRebuild sheetsRebuild;
+
+    SheetsRebuildEndpoint(SheetsRebuild sheetsRebuild) {
+        this.sheetsRebuild = sheetsRebuild;
+    }
+
+    @ReadOperation
+    public SheetsRebuildStatus status() {
+        return sheetsRebuild.status();
+    }
+
+    @WriteOperation
+    public SheetsRebuildStatus rebuild() {
+        sheetsRebuild.start();
+        return sheetsRebuild.status();
+    }
+}
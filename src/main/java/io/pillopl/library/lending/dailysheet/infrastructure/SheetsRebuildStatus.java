@@ -0,0 +1,41 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class SheetsRebuildStatus {
+
+    public enum State {
+        Idle, Running, Done, Failed
+    }
+
+    State state;
+    Instant startedAt;
+    Instant finishedAt;
+    long holds;
+    long checkouts;
+    int caughtUpEvents;
+    String failure;
+
+    static SheetsRebuildStatus idle() {
+        return new SheetsRebuildStatus(State.Idle, null, null, 0, 0, 0, null);
+    }
+
+    static SheetsRebuildStatus running(Instant startedAt) {
+        return new SheetsRebuildStatus(State.Running, startedAt, null, 0, 0, 0, null);
+    }
+
+    SheetsRebuildStatus done(Instant finishedAt, long holds, long checkouts, int caughtUpEvents) {
+        return new SheetsRebuildStatus(State.Done, startedAt, finishedAt, holds, checkouts, caughtUpEvents, null);
+    }
+
+    SheetsRebuildStatus failed(Instant finishedAt, String failure) {
+        return new SheetsRebuildStatus(State.Failed, startedAt, finishedAt, 0, 0, 0, failure);
+    }
+
+    boolean isRunning() {
+        return state == State.Running;
+    }
+}
@@ -0,0 +1,115 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.patron.model.PatronEvent;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the read replica of the sheets current: the same events the primary sheets are written from are applied to
+ * the replica on a single background thread, in the order they were published. Finished rows are pruned from the
+ * replica once they are past the archive retention, since nothing reads them there.
+ * Writes are announced before any other listener sees the event, in particular before the profile version is bumped,
+ * so nobody holding the new version can be served from a replica that does not have the write yet. A write the
+ * replica fails to apply marks the patron as diverged, and reads fall back to the primary. Inside a transaction a
+ * write is only handed over once it commits, so the replica never gets one the primary rolled back.
+ */
+@Slf4j
+class SheetsReplicator {
+
+    private final SheetsReadModel replica;
+    private final JdbcTemplate replicaTemplate;
+    private final ReplicatedReads reads;
+    private final Clock clock;
+    private final Duration retention;
+    private final Shards shards;
+    private final ExecutorService applier = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("sheets-replicator-"));
+
+    SheetsReplicator(SheetsReadModel replica, JdbcTemplate replicaTemplate, ReplicatedReads reads, Clock clock, Duration retention, Shards shards) {
+        this.replica = replica;
+        this.replicaTemplate = replicaTemplate;
+        this.reads = reads;
+        this.clock = clock;
+        this.retention = retention;
+        this.shards = shards;
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void handle(BookPlacedOnHold event) {
+        replicate(event, () -> replica.handle(event));
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void handle(BookHoldCanceled event) {
+        replicate(event, () -> replica.handle(event));
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void handle(BookHoldExpired event) {
+        replicate(event, () -> replica.handle(event));
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void handle(BookCheckedOut event) {
+        replicate(event, () -> replica.handle(event));
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void handle(BookReturned event) {
+        replicate(event, () -> replica.handle(event));
+    }
+
+    private void replicate(PatronEvent event, Runnable apply) {
+        AfterCommit.run(() -> {
+            reads.written(event.getPatronId());
+            applier.execute(() -> {
+                try {
+                    apply.run();
+                } catch (Exception e) {
+                    log.error("Could not apply {} to the sheets replica, reading patron {} from the primary", event, event.getPatronId(), e);
+                    reads.diverged(event.getPatronId());
+                } finally {
+                    reads.applied(event.getPatronId());
+                }
+            });
+        });
+    }
+
+    @Scheduled(initialDelayString = "${lending.sheets.archive.delay-millis:60000}", fixedDelayString = "${lending.sheets.archive.delay-millis:60000}")
+    public void prune() {
+        Timestamp cutoff = Timestamp.from(Instant.now(clock).minus(retention));
+        applier.execute(() -> shards.onEachShard(shard -> {
+            replicaTemplate.update("DELETE FROM holds_sheet WHERE status IN ('CANCELED', 'EXPIRED', 'CHECKEDOUT') " +
+                    "AND COALESCE(canceled_at, expired_at, checked_out_at) < ?", cutoff);
+            replicaTemplate.update("DELETE FROM checkouts_sheet WHERE status = 'RETURNED' AND returned_at < ?", cutoff);
+        }));
+    }
+
+    void shutdown() {
+        applier.shutdown();
+    }
+}
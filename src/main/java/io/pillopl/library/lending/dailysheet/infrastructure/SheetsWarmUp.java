@@ -0,0 +1,72 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.CheckoutDuration;
+import io.pillopl.library.lending.patron.model.HoldDuration;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import io.pillopl.library.lending.patron.model.PatronId;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.UUID;
+
+import static io.pillopl.library.catalogue.BookType.Circulating;
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut.bookCheckedOutNow;
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold.bookPlacedOnHoldNow;
+
+/**
+ * Projects a hold, its checkout and the return into a {@link SheetsReadModel} of its own, backed by a private
+ * in-memory database, then runs the daily sheet queries against it. The database is emptied every now and then so
+ * later rounds do not scan more rows than the first ones.
+ */
+class SheetsWarmUp implements WarmUpWorkload {
+
+    private static final int CLEAR_EVERY = 500;
+
+    private final EmbeddedDatabase database;
+    private final JdbcTemplate jdbcTemplate;
+    private final SheetsReadModel sheets;
+    private int runs;
+
+    SheetsWarmUp() {
+        this.database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("create_sheets_db.sql")
+                .build();
+        this.jdbcTemplate = new JdbcTemplate(database);
+        this.sheets = new SheetsReadModel(jdbcTemplate, Clock.systemDefaultZone());
+    }
+
+    @Override
+    public String name() {
+        return "daily_sheet";
+    }
+
+    @Override
+    public void run() {
+        PatronId patronId = new PatronId(UUID.randomUUID());
+        BookId bookId = new BookId(UUID.randomUUID());
+        LibraryBranchId branch = new LibraryBranchId(UUID.randomUUID());
+        sheets.handle(bookPlacedOnHoldNow(bookId, Circulating, branch, patronId, HoldDuration.closeEnded(3)));
+        sheets.handle(bookCheckedOutNow(bookId, Circulating, branch, patronId, CheckoutDuration.forNoOfDays(7)));
+        sheets.handle(new BookReturned(Instant.now(), patronId.getPatronId(), bookId.getBookId(), Circulating, branch.getLibraryBranchId()));
+        sheets.queryForHoldsToExpireSheet();
+        sheets.queryForCheckoutsToOverdue();
+        if (++runs % CLEAR_EVERY == 0) {
+            jdbcTemplate.update("DELETE FROM holds_sheet");
+            jdbcTemplate.update("DELETE FROM checkouts_sheet");
+        }
+    }
+
+    @Override
+    public void close() {
+        database.shutdown();
+    }
+}
@@ -0,0 +1,74 @@
+package io.pillopl.library.lending.dailysheet.infrastructure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Every write to the sheets goes through here. Writers share the lock with each other and only a table swap takes
+ * it exclusively. While a rebuild is running each event is also captured after it was written, so it can be
+ * replayed against the rebuilt tables once they are swapped in.
+ */
+class SheetsWriteGate {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Queue<Object> captured;
+
+    void write(Object event, Runnable write) {
+        lock.readLock().lock();
+        try {
+            write.run();
+            Queue<Object> queue = captured;
+            if (queue != null) {
+                queue.add(event);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void writeAll(List<?> events, Runnable write) {
+        lock.readLock().lock();
+        try {
+            write.run();
+            Queue<Object> queue = captured;
+            if (queue != null) {
+                queue.addAll(events);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void shared(Runnable write) {
+        lock.readLock().lock();
+        try {
+            write.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void startCapturing() {
+        captured = new ConcurrentLinkedQueue<>();
+    }
+
+    List<Object> stopCapturing() {
+        Queue<Object> queue = captured;
+        captured = null;
+        return queue == null ? List.of() : new ArrayList<>(queue);
+    }
+
+    <T> T exclusively(Supplier<T> work) {
+        lock.writeLock().lock();
+        try {
+            return work.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -8,6 +8,8 @@ public interface DailySheet {
 
     HoldsToExpireSheet queryForHoldsToExpireSheet();
 
+    HoldsToExpireSchedule queryForHoldsToExpireSchedule();
+
     void handle(BookPlacedOnHold event);
 
     void handle(BookHoldCanceled event);
@@ -12,7 +12,7 @@ public class ExpiredHold {
     private final PatronId patron;
     private final LibraryBranchId library;
 
-    BookHoldExpired toEvent() {
+    public BookHoldExpired toEvent() {
         return BookHoldExpired.now(this.heldBook, this.patron, this.library);
     }
 }
@@ -0,0 +1,28 @@
+package io.pillopl.library.lending.dailysheet.model;
+
+import io.vavr.collection.List;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class HoldsToExpireSchedule {
+
+    @NonNull
+    List<ScheduledExpiry> holds;
+
+    @Value
+    public static class ScheduledExpiry {
+
+        @NonNull
+        ExpiredHold hold;
+
+        @NonNull
+        Instant till;
+    }
+
+    public int count() {
+        return holds.size();
+    }
+}
@@ -0,0 +1,61 @@
+package io.pillopl.library.lending.dailysheet.model;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.vavr.control.Option;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * The daily sheets row by row, for staff to download. Rows are handed to the consumer while they are read, nothing is
+ * collected in between. They come earliest due first within one shard of the sheets, a sheet split across several
+ * shards is handed over one shard after the other.
+ */
+public interface SheetsExport {
+
+    /**
+     * Active holds whose {@code hold_till} falls within the filter.
+     */
+    void streamHoldsToExpire(Filter filter, Consumer<Row> consumer);
+
+    /**
+     * Books still checked out whose {@code checkout_till} falls within the filter.
+     */
+    void streamCheckoutsToOverdue(Filter filter, Consumer<Row> consumer);
+
+    /**
+     * Rows of one branch, or of all of them, due from {@code from} inclusive until {@code till} exclusive.
+     */
+    @Value
+    class Filter {
+
+        @NonNull
+        Option<LibraryBranchId> branch;
+
+        @NonNull
+        Instant from;
+
+        @NonNull
+        Instant till;
+    }
+
+    @Value
+    class Row {
+
+        @NonNull
+        BookId book;
+
+        @NonNull
+        PatronId patron;
+
+        @NonNull
+        LibraryBranchId branch;
+
+        @NonNull
+        Instant due;
+    }
+}
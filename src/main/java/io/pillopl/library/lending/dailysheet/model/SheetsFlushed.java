@@ -0,0 +1,14 @@
+package io.pillopl.library.lending.dailysheet.model;
+
+import lombok.Value;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Published once buffered sheet rows of these patrons were committed.
+ */
+@Value
+public class SheetsFlushed {
+    private final Set<UUID> patronIds;
+}
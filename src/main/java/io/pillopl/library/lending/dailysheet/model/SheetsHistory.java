@@ -0,0 +1,38 @@
+package io.pillopl.library.lending.dailysheet.model;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.vavr.collection.List;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Every hold and checkout of a patron, finished ones included. Rows that finished longer ago than the retention window
+ * live in monthly archives and are only read when asked for with {@link Scope#IncludingArchives}.
+ */
+public interface SheetsHistory {
+
+    List<Entry> holdsOf(PatronId patronId, Scope scope);
+
+    List<Entry> checkoutsOf(PatronId patronId, Scope scope);
+
+    enum Scope {
+        ActiveTableOnly, IncludingArchives
+    }
+
+    @Value
+    class Entry {
+
+        @NonNull
+        BookId book;
+
+        @NonNull
+        String status;
+
+        Instant startedAt;
+
+        Instant finishedAt;
+    }
+}
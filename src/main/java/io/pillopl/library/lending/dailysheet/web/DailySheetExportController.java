@@ -0,0 +1,219 @@
+package io.pillopl.library.lending.dailysheet.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import io.pillopl.library.lending.dailysheet.model.SheetsExport;
+import io.pillopl.library.lending.dailysheet.model.SheetsExport.Filter;
+import io.pillopl.library.lending.dailysheet.model.SheetsExport.Row;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.vavr.control.Option;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.format.annotation.DateTimeFormat.ISO.DATE;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.ResponseEntity.ok;
+
+/**
+ * The daily sheets as downloads for branch staff. Rows are written while the cursor moves, so a download of any size
+ * holds one fetch of rows in memory and the first bytes leave before the query is done. CSV is the default, NDJSON is
+ * served when asked for explicitly.
+ */
+@Timed(percentiles = {0.5, 0.75, 0.95, 0.99})
+@RestController
+@AllArgsConstructor
+class DailySheetExportController {
+
+    static final String NDJSON = "application/x-ndjson";
+    static final String CSV = "text/csv";
+
+    private final SheetsExport sheetsExport;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+
+    @GetMapping("/daily-sheets/holds-to-expire")
+    ResponseEntity<StreamingResponseBody> holdsToExpireAsCsv(@RequestParam(required = false) UUID branch,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate from,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate to) {
+        return csv("holds-to-expire", "hold_till", sheetsExport::streamHoldsToExpire, branch, from, to);
+    }
+
+    @GetMapping(path = "/daily-sheets/holds-to-expire", produces = NDJSON)
+    ResponseEntity<StreamingResponseBody> holdsToExpireAsNdJson(@RequestParam(required = false) UUID branch,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate from,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate to) {
+        return ndJson(sheetsExport::streamHoldsToExpire, HoldToExpire::new, branch, from, to);
+    }
+
+    @GetMapping("/daily-sheets/checkouts-to-overdue")
+    ResponseEntity<StreamingResponseBody> checkoutsToOverdueAsCsv(@RequestParam(required = false) UUID branch,
+                                                                  @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate from,
+                                                                  @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate to) {
+        return csv("checkouts-to-overdue", "checkout_till", sheetsExport::streamCheckoutsToOverdue, branch, from, to);
+    }
+
+    @GetMapping(path = "/daily-sheets/checkouts-to-overdue", produces = NDJSON)
+    ResponseEntity<StreamingResponseBody> checkoutsToOverdueAsNdJson(@RequestParam(required = false) UUID branch,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate from,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DATE) LocalDate to) {
+        return ndJson(sheetsExport::streamCheckoutsToOverdue, CheckoutToOverdue::new, branch, from, to);
+    }
+
+    private ResponseEntity<StreamingResponseBody> csv(String sheet, String dueColumn, BiConsumer<Filter, Consumer<Row>> rows, UUID branch, LocalDate from, LocalDate to) {
+        Option<Filter> filter = filterOf(branch, from, to);
+        if (filter.isEmpty()) {
+            return ResponseEntity.status(BAD_REQUEST).build();
+        }
+        return ok().contentType(MediaType.parseMediaType(CSV))
+                .header(CONTENT_DISPOSITION, "attachment; filename=\"" + sheet + "-" + dayOf(from) + ".csv\"")
+                .body(out -> rows.accept(filter.get(), new CsvWriter(out, dueColumn)));
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndJson(BiConsumer<Filter, Consumer<Row>> rows, Function<Row, ?> document, UUID branch, LocalDate from, LocalDate to) {
+        Option<Filter> filter = filterOf(branch, from, to);
+        if (filter.isEmpty()) {
+            return ResponseEntity.status(BAD_REQUEST).build();
+        }
+        return ok().contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> rows.accept(filter.get(), new NdJsonWriter(out, document)));
+    }
+
+    /**
+     * Whole days in the zone of the clock, today when not given, {@code to} included.
+     */
+    private Option<Filter> filterOf(UUID branch, LocalDate from, LocalDate to) {
+        LocalDate first = dayOf(from);
+        LocalDate last = to == null ? first : to;
+        if (last.isBefore(first)) {
+            return Option.none();
+        }
+        return Option.of(new Filter(
+                Option.of(branch).map(LibraryBranchId::new),
+                startOf(first),
+                startOf(last.plusDays(1))));
+    }
+
+    private LocalDate dayOf(LocalDate day) {
+        return day == null ? LocalDate.now(clock) : day;
+    }
+
+    private Instant startOf(LocalDate day) {
+        return day.atStartOfDay(clock.getZone()).toInstant();
+    }
+
+    /**
+     * Writes the header straight away, so the download starts before the first row is read.
+     */
+    private static class CsvWriter implements Consumer<Row> {
+
+        private final OutputStream out;
+
+        private CsvWriter(OutputStream out, String dueColumn) {
+            this.out = out;
+            write("book_id,patron_id,branch_id," + dueColumn + "\n");
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void accept(Row row) {
+            write(row.getBook().getBookId() + "," +
+                    row.getPatron().getPatronId() + "," +
+                    row.getBranch().getLibraryBranchId() + "," +
+                    row.getDue() + "\n");
+        }
+
+        private void write(String line) {
+            try {
+                out.write(line.getBytes(UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes one JSON document per line, flushing after the first one so the client sees data
+     * before the whole result set has been read.
+     */
+    private class NdJsonWriter implements Consumer<Row> {
+
+        private final OutputStream out;
+        private final Function<Row, ?> document;
+        private boolean flushed;
+
+        private NdJsonWriter(OutputStream out, Function<Row, ?> document) {
+            this.out = out;
+            this.document = document;
+        }
+
+        @Override
+        public void accept(Row row) {
+            try {
+                out.write(objectMapper.writeValueAsBytes(document.apply(row)));
+                out.write('\n');
+                if (!flushed) {
+                    out.flush();
+                    flushed = true;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
+
+@Value
+class HoldToExpire {
+
+    UUID bookId;
+    UUID patronId;
+    UUID branchId;
+    Instant holdTill;
+
+    HoldToExpire(Row row) {
+        this.bookId = row.getBook().getBookId();
+        this.patronId = row.getPatron().getPatronId();
+        this.branchId = row.getBranch().getLibraryBranchId();
+        this.holdTill = row.getDue();
+    }
+}
+
+@Value
+class CheckoutToOverdue {
+
+    UUID bookId;
+    UUID patronId;
+    UUID branchId;
+    Instant checkoutTill;
+
+    CheckoutToOverdue(Row row) {
+        this.bookId = row.getBook().getBookId();
+        this.patronId = row.getPatron().getPatronId();
+        this.branchId = row.getBranch().getLibraryBranchId();
+        this.checkoutTill = row.getDue();
+    }
+}
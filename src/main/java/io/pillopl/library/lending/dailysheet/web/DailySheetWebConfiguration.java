@@ -0,0 +1,23 @@
+package io.pillopl.library.lending.dailysheet.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pillopl.library.lending.dailysheet.model.SheetsExport;
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class DailySheetWebConfiguration {
+
+    @Bean
+    DailySheetExportController dailySheetExportController(SheetsExport sheetsExport, ObjectMapper objectMapper) {
+        return new DailySheetExportController(sheetsExport, objectMapper, Clock.systemDefaultZone());
+    }
+
+    @Bean
+    SheetsHistoryController sheetsHistoryController(SheetsHistory sheetsHistory) {
+        return new SheetsHistoryController(sheetsHistory);
+    }
+}
@@ -0,0 +1,64 @@
+package io.pillopl.library.lending.dailysheet.web;
+
+import io.micrometer.core.annotation.Timed;
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory;
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory.Entry;
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory.Scope;
+import io.pillopl.library.lending.patron.model.PatronId;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.springframework.http.ResponseEntity.ok;
+
+/**
+ * Every hold and checkout a patron ever had, for staff answering "did I have this book?". The monthly archives are
+ * only read with {@code archives=true}, so the common question about recent rows stays on the hot tables.
+ */
+@Timed(percentiles = {0.5, 0.75, 0.95, 0.99})
+@RestController
+@AllArgsConstructor
+class SheetsHistoryController {
+
+    private final SheetsHistory sheetsHistory;
+
+    @GetMapping("/daily-sheets/history/{patronId}/holds")
+    ResponseEntity<List<HistoryEntry>> holdsOf(@PathVariable UUID patronId,
+                                               @RequestParam(defaultValue = "false") boolean archives) {
+        return ok(sheetsHistory.holdsOf(new PatronId(patronId), scope(archives)).map(HistoryEntry::new).toJavaList());
+    }
+
+    @GetMapping("/daily-sheets/history/{patronId}/checkouts")
+    ResponseEntity<List<HistoryEntry>> checkoutsOf(@PathVariable UUID patronId,
+                                                   @RequestParam(defaultValue = "false") boolean archives) {
+        return ok(sheetsHistory.checkoutsOf(new PatronId(patronId), scope(archives)).map(HistoryEntry::new).toJavaList());
+    }
+
+    private static Scope scope(boolean archives) {
+        return archives ? Scope.IncludingArchives : Scope.ActiveTableOnly;
+    }
+}
+
+@Value
+class HistoryEntry {
+
+    UUID bookId;
+    String status;
+    Instant startedAt;
+    Instant finishedAt;
+
+    HistoryEntry(Entry entry) {
+        this.bookId = entry.getBook().getBookId();
+        this.status = entry.getStatus();
+        this.startedAt = entry.getStartedAt();
+        this.finishedAt = entry.getFinishedAt();
+    }
+}
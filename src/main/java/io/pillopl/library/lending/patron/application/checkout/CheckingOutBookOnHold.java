@@ -1,6 +1,7 @@
 package io.pillopl.library.lending.patron.application.checkout;
 
 import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.commons.commands.Result;
 import io.pillopl.library.lending.book.model.BookOnHold;
 import io.pillopl.library.lending.patron.application.hold.FindBookOnHold;
@@ -28,16 +29,21 @@ public class CheckingOutBookOnHold {
 
     private final FindBookOnHold findBookOnHold;
     private final Patrons patronRepository;
+    private final CommandProfiler profiler;
+
+    public CheckingOutBookOnHold(FindBookOnHold findBookOnHold, Patrons patronRepository) {
+        this(findBookOnHold, patronRepository, CommandProfiler.NONE);
+    }
 
     public Try<Result> checkOut(@NonNull CheckOutBookCommand command) {
-        return Try.of(() -> {
-            BookOnHold bookOnHold = find(command.getBookId(), command.getPatronId());
-            Patron patron = find(command.getPatronId());
-            Either<BookCheckingOutFailed, BookCheckedOut> result = patron.checkOut(bookOnHold, command.getCheckoutDuration());
+        return profiler.command("CheckingOutBookOnHold", () -> Try.of(() -> {
+            BookOnHold bookOnHold = profiler.phase("findBook", () -> find(command.getBookId(), command.getPatronId()));
+            Patron patron = profiler.phase("loadPatron", () -> find(command.getPatronId()));
+            Either<BookCheckingOutFailed, BookCheckedOut> result = profiler.phase("policies", () -> patron.checkOut(bookOnHold, command.getCheckoutDuration()));
             return Match(result).of(
                     Case($Left($()), this::publishEvents),
                     Case($Right($()), this::publishEvents));
-        });
+        }));
     }
 
     private Result publishEvents(BookCheckedOut bookCheckedOut) {
@@ -1,6 +1,7 @@
 package io.pillopl.library.lending.patron.application.checkout;
 
 import io.pillopl.library.commons.commands.BatchResult;
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.lending.dailysheet.model.DailySheet;
 import io.pillopl.library.lending.patron.model.PatronEvent.OverdueCheckoutRegistered;
 import io.pillopl.library.lending.patron.model.Patrons;
@@ -12,15 +13,20 @@ public class RegisteringOverdueCheckout {
 
     private final DailySheet find;
     private final Patrons patronRepository;
+    private final CommandProfiler profiler;
+
+    public RegisteringOverdueCheckout(DailySheet find, Patrons patronRepository) {
+        this(find, patronRepository, CommandProfiler.NONE);
+    }
 
     public Try<BatchResult> registerOverdueCheckouts() {
-        return Try.of(() ->
-                find.queryForCheckoutsToOverdue()
+        return profiler.command("RegisteringOverdueCheckout", () -> Try.of(() ->
+                profiler.phase("findCheckoutsToOverdue", find::queryForCheckoutsToOverdue)
                 .toStreamOfEvents()
                 .map(this::publish)
                 .find(Try::isFailure)
                 .map(handleEventError -> BatchResult.SomeFailed)
-                .getOrElse(BatchResult.FullSuccess));
+                .getOrElse(BatchResult.FullSuccess)));
     }
 
     private Try<Void> publish(OverdueCheckoutRegistered event) {
@@ -1,5 +1,6 @@
 package io.pillopl.library.lending.patron.application.hold;
 
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.commons.commands.Result;
 import io.pillopl.library.catalogue.BookId;
 import io.pillopl.library.lending.book.model.BookOnHold;
@@ -24,17 +25,22 @@ public class CancelingHold {
 
     private final FindBookOnHold findBookOnHold;
     private final Patrons patronRepository;
+    private final CommandProfiler profiler;
+
+    public CancelingHold(FindBookOnHold findBookOnHold, Patrons patronRepository) {
+        this(findBookOnHold, patronRepository, CommandProfiler.NONE);
+    }
 
     public Try<Result> cancelHold(@NonNull CancelHoldCommand command) {
-        return Try.of(() -> {
-            BookOnHold bookOnHold = find(command.getBookId(), command.getPatronId());
-            Patron patron = find(command.getPatronId());
-            Either<BookHoldCancelingFailed, BookHoldCanceled> result = patron.cancelHold(bookOnHold);
+        return profiler.command("CancelingHold", () -> Try.of(() -> {
+            BookOnHold bookOnHold = profiler.phase("findBook", () -> find(command.getBookId(), command.getPatronId()));
+            Patron patron = profiler.phase("loadPatron", () -> find(command.getPatronId()));
+            Either<BookHoldCancelingFailed, BookHoldCanceled> result = profiler.phase("policies", () -> patron.cancelHold(bookOnHold));
             return Match(result).of(
                     Case($Left($()), this::publishEvents),
                     Case($Right($()), this::publishEvents)
             );
-        });
+        }));
     }
 
     private Result publishEvents(BookHoldCanceled bookHoldCanceled) {
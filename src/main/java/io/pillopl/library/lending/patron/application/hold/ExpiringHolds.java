@@ -1,6 +1,7 @@
 package io.pillopl.library.lending.patron.application.hold;
 
 import io.pillopl.library.commons.commands.BatchResult;
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.lending.dailysheet.model.DailySheet;
 import io.pillopl.library.lending.patron.model.PatronEvent;
 import io.pillopl.library.lending.patron.model.Patrons;
@@ -12,15 +13,20 @@ public class ExpiringHolds {
 
     private final DailySheet find;
     private final Patrons patronRepository;
+    private final CommandProfiler profiler;
+
+    public ExpiringHolds(DailySheet find, Patrons patronRepository) {
+        this(find, patronRepository, CommandProfiler.NONE);
+    }
 
     public Try<BatchResult> expireHolds() {
-        return Try.of(() ->
-                find.queryForHoldsToExpireSheet()
+        return profiler.command("ExpiringHolds", () -> Try.of(() ->
+                profiler.phase("findHoldsToExpire", find::queryForHoldsToExpireSheet)
                 .toStreamOfEvents()
                 .map(this::publish)
                 .find(Try::isFailure)
                 .map(handleEventError -> BatchResult.SomeFailed)
-                .getOrElse(BatchResult.FullSuccess));
+                .getOrElse(BatchResult.FullSuccess)));
     }
 
     private Try<Void> publish(PatronEvent.BookHoldExpired event) {
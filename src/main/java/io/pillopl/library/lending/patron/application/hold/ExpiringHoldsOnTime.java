@@ -0,0 +1,150 @@
+package io.pillopl.library.lending.patron.application.hold;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.commands.BatchResult;
+import io.pillopl.library.commons.commands.CommandProfiler;
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.pillopl.library.commons.scheduling.HierarchicalTimingWheel;
+import io.pillopl.library.lending.dailysheet.model.DailySheet;
+import io.pillopl.library.lending.dailysheet.model.ExpiredHold;
+import io.pillopl.library.lending.dailysheet.model.HoldsToExpireSchedule;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.PatronEvent;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patron.model.Patrons;
+import io.vavr.control.Try;
+import org.springframework.context.event.EventListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.vavr.collection.List.ofAll;
+
+/**
+ * Expires every close-ended hold at its own hold-till instead of in the daily sweep. Holds are kept in a
+ * {@link HierarchicalTimingWheel} fed by {@link BookPlacedOnHold} and taken out again when the hold ends any other way.
+ * <p>
+ * The wheel lives in memory only; {@link #reconcile()} reloads it from the daily sheet, which is the source of truth.
+ * It runs at startup and then periodically, so holds scheduled before a restart are picked up again (already overdue
+ * ones are due straight away). Since the sheet may lag behind, a due hold is only expired if the patron still holds
+ * the book.
+ * <p>
+ * A hold whose expiry fails goes back into the wheel {@code retryBackoff} later, twice as long after every further
+ * failure up to {@link #MAX_BACKOFF_DOUBLINGS} doublings, rather than waiting for the next reconcile.
+ * Inside a transaction the wheel only changes once it commits.
+ */
+public class ExpiringHoldsOnTime {
+
+    static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofSeconds(5);
+    static final int MAX_BACKOFF_DOUBLINGS = 6;
+
+    private final HierarchicalTimingWheel<ExpiredHold> wheel;
+    private final DailySheet find;
+    private final Patrons patronRepository;
+    private final Clock clock;
+    private final CommandProfiler profiler;
+    private final Duration retryBackoff;
+    private final Map<ExpiredHold, Integer> failures = new ConcurrentHashMap<>();
+
+    public ExpiringHoldsOnTime(HierarchicalTimingWheel<ExpiredHold> wheel, DailySheet find, Patrons patronRepository, Clock clock) {
+        this(wheel, find, patronRepository, clock, CommandProfiler.NONE);
+    }
+
+    public ExpiringHoldsOnTime(HierarchicalTimingWheel<ExpiredHold> wheel, DailySheet find, Patrons patronRepository, Clock clock, CommandProfiler profiler) {
+        this(wheel, find, patronRepository, clock, profiler, DEFAULT_RETRY_BACKOFF);
+    }
+
+    public ExpiringHoldsOnTime(HierarchicalTimingWheel<ExpiredHold> wheel, DailySheet find, Patrons patronRepository, Clock clock, CommandProfiler profiler, Duration retryBackoff) {
+        this.wheel = wheel;
+        this.find = find;
+        this.patronRepository = patronRepository;
+        this.clock = clock;
+        this.profiler = profiler;
+        this.retryBackoff = retryBackoff;
+    }
+
+    public int reconcile() {
+        HoldsToExpireSchedule schedule = find.queryForHoldsToExpireSchedule();
+        schedule.getHolds().forEach(expiry -> wheel.schedule(expiry.getHold(), expiry.getTill()));
+        return schedule.count();
+    }
+
+    public Try<BatchResult> expireDueHolds() {
+        List<ExpiredHold> due = wheel.advanceTo(Instant.now(clock));
+        if (due.isEmpty()) {
+            return Try.success(BatchResult.FullSuccess);
+        }
+        return profiler.command("ExpiringHoldsOnTime", () -> Try.of(() ->
+                ofAll(due)
+                        .map(this::expireIfStillHeld)
+                        .find(Try::isFailure)
+                        .map(handleEventError -> BatchResult.SomeFailed)
+                        .getOrElse(BatchResult.FullSuccess)));
+    }
+
+    private Try<Void> expireIfStillHeld(ExpiredHold hold) {
+        return Try.of(() -> stillHeld(hold))
+                .flatMap(held -> held ? publish(hold.toEvent()) : Try.<Void>success(null))
+                .onSuccess(nothing -> failures.remove(hold))
+                .onFailure(error -> retryLater(hold));
+    }
+
+    private void retryLater(ExpiredHold hold) {
+        int failed = failures.merge(hold, 1, Integer::sum);
+        Duration backoff = retryBackoff.multipliedBy(1L << Math.min(failed - 1, MAX_BACKOFF_DOUBLINGS));
+        wheel.schedule(hold, Instant.now(clock).plus(backoff));
+    }
+
+    private boolean stillHeld(ExpiredHold hold) {
+        return profiler.phase("loadPatron", () -> patronRepository.findBy(hold.getPatron())
+                .map(patron -> patron.isHolding(hold.getHeldBook(), hold.getLibrary()))
+                .getOrElse(false));
+    }
+
+    @EventListener
+    public void handle(BookPlacedOnHold event) {
+        if (event.getHoldTill() != null) {
+            ExpiredHold hold = holdOf(event.getBookId(), event.getPatronId(), event.getLibraryBranchId());
+            AfterCommit.run(() -> wheel.schedule(hold, event.getHoldTill()));
+        }
+    }
+
+    @EventListener
+    public void handle(BookHoldCanceled event) {
+        forget(holdOf(event.getBookId(), event.getPatronId(), event.getLibraryBranchId()));
+    }
+
+    @EventListener
+    public void handle(BookHoldExpired event) {
+        forget(holdOf(event.getBookId(), event.getPatronId(), event.getLibraryBranchId()));
+    }
+
+    @EventListener
+    public void handle(BookCheckedOut event) {
+        forget(holdOf(event.getBookId(), event.getPatronId(), event.getLibraryBranchId()));
+    }
+
+    private void forget(ExpiredHold hold) {
+        AfterCommit.run(() -> {
+            wheel.cancel(hold);
+            failures.remove(hold);
+        });
+    }
+
+    private Try<Void> publish(PatronEvent.BookHoldExpired event) {
+        return Try.run(() -> patronRepository.publish(event));
+    }
+
+    private static ExpiredHold holdOf(UUID bookId, UUID patronId, UUID libraryBranchId) {
+        return new ExpiredHold(new BookId(bookId), new PatronId(patronId), new LibraryBranchId(libraryBranchId));
+    }
+}
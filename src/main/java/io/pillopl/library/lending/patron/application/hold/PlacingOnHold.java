@@ -1,5 +1,6 @@
 package io.pillopl.library.lending.patron.application.hold;
 
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.commons.commands.Result;
 import io.pillopl.library.lending.book.model.AvailableBook;
 import io.pillopl.library.catalogue.BookId;
@@ -24,17 +25,22 @@ public class PlacingOnHold {
 
     private final FindAvailableBook findAvailableBook;
     private final Patrons patronRepository;
+    private final CommandProfiler profiler;
+
+    public PlacingOnHold(FindAvailableBook findAvailableBook, Patrons patronRepository) {
+        this(findAvailableBook, patronRepository, CommandProfiler.NONE);
+    }
 
     public Try<Result> placeOnHold(@NonNull PlaceOnHoldCommand command) {
-        return Try.of(() -> {
-            AvailableBook availableBook = find(command.getBookId());
-            Patron patron = find(command.getPatronId());
-            Either<BookHoldFailed, BookPlacedOnHoldEvents> result = patron.placeOnHold(availableBook, command.getHoldDuration());
+        return profiler.command("PlacingOnHold", () -> Try.of(() -> {
+            AvailableBook availableBook = profiler.phase("findBook", () -> find(command.getBookId()));
+            Patron patron = profiler.phase("loadPatron", () -> find(command.getPatronId()));
+            Either<BookHoldFailed, BookPlacedOnHoldEvents> result = profiler.phase("policies", () -> patron.placeOnHold(availableBook, command.getHoldDuration()));
             return Match(result).of(
                     Case($Left($()), this::publishEvents),
                     Case($Right($()), this::publishEvents)
             );
-        }).onFailure(t -> log.error("Failed to place a hold", t));
+        }).onFailure(t -> log.error("Failed to place a hold", t)));
     }
 
     private Result publishEvents(BookPlacedOnHoldEvents placedOnHold) {
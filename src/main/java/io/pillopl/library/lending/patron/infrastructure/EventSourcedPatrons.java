@@ -0,0 +1,143 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.commons.aggregates.AggregateRootIsStale;
+import io.pillopl.library.commons.commands.CommandProfiler;
+import io.pillopl.library.commons.events.DomainEvents;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.patron.model.Patron;
+import io.pillopl.library.lending.patron.model.PatronEvent;
+import io.pillopl.library.lending.patron.model.PatronFactory;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patron.model.PatronType;
+import io.pillopl.library.lending.patron.model.Patrons;
+import io.vavr.control.Option;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps every patron as an append-only stream of {@link PatronStreamEvent}s keyed by (patron, sequence) and
+ * rebuilds it from the latest snapshot plus the events after it. A snapshot is written every
+ * {@code snapshotEvery} events, so a load never replays more than that many rows.
+ * <p>
+ * Two writers appending the same sequence number collide on the primary key; the loser gets
+ * {@link AggregateRootIsStale}, just like a stale {@code Book} version.
+ */
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+class EventSourcedPatrons implements Patrons {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PatronFactory patronFactory;
+    private final DomainEvents domainEvents;
+    private final int snapshotEvery;
+    private final CommandProfiler profiler;
+    private final Shards shards;
+
+    EventSourcedPatrons(JdbcTemplate jdbcTemplate, PatronFactory patronFactory, DomainEvents domainEvents, int snapshotEvery, CommandProfiler profiler) {
+        this(jdbcTemplate, patronFactory, domainEvents, snapshotEvery, profiler, Shards.SINGLE);
+    }
+
+    @Override
+    public Option<Patron> findBy(PatronId patronId) {
+        PatronStreamState state = shards.on(patronId.getPatronId(), () -> load(patronId));
+        return state.exists() ? Option.of(state.toPatron(patronFactory)) : Option.none();
+    }
+
+    @Override
+    public Patron publish(PatronEvent domainEvent) {
+        Option<PatronStreamEvent> streamEvent = PatronStreamEvent.of(domainEvent);
+        Patron result = streamEvent
+                .map(event -> profiler.phase("save", () -> shards.on(domainEvent.patronId().getPatronId(), () -> append(domainEvent.patronId(), event))))
+                .getOrElse(() -> findBy(domainEvent.patronId()).getOrNull());
+        profiler.phase("listeners", () -> domainEvents.publish(domainEvent.normalize()));
+        return result;
+    }
+
+    private Patron append(PatronId patronId, PatronStreamEvent event) {
+        PatronStreamState state = load(patronId);
+        long sequence = state.sequence() + 1;
+        state.apply(sequence, event);
+        try {
+            jdbcTemplate.update("INSERT INTO patron_events " +
+                            "(patron_id, sequence, event_type, event_id, occurred_at, book_id, library_branch_id, patron_type) VALUES " +
+                            "(?, ?, ?, ?, ?, ?, ?, ?)",
+                    patronId.getPatronId(),
+                    sequence,
+                    event.getType().code,
+                    event.getEventId(),
+                    Timestamp.from(event.getOccurredAt()),
+                    event.getBookId(),
+                    event.getLibraryBranchId(),
+                    Option.of(event.getPatronType()).map(Enum::name).getOrNull());
+        } catch (DuplicateKeyException e) {
+            throw new AggregateRootIsStale("Someone has updated patron in the meantime, patron: " + patronId.getPatronId() + ", sequence: " + sequence);
+        }
+        if (sequence % snapshotEvery == 0) {
+            snapshot(patronId, state);
+        }
+        return state.toPatron(patronFactory);
+    }
+
+    private PatronStreamState load(PatronId patronId) {
+        PatronStreamState state = profiler.phase("snapshot", () -> latestSnapshot(patronId));
+        return profiler.phase("replay", () -> replay(state, patronId));
+    }
+
+    private PatronStreamState latestSnapshot(PatronId patronId) {
+        List<PatronStreamState> snapshots = jdbcTemplate.query(
+                "SELECT s.sequence, s.patron_type, s.holds, s.overdue_checkouts FROM patron_snapshots s WHERE s.patron_id = ?",
+                new Object[]{patronId.getPatronId()},
+                (rs, rowNum) -> PatronStreamState.fromSnapshot(
+                        patronId,
+                        PatronType.valueOf(rs.getString("PATRON_TYPE")),
+                        rs.getLong("SEQUENCE"),
+                        rs.getBytes("HOLDS"),
+                        rs.getBytes("OVERDUE_CHECKOUTS")));
+        return snapshots.isEmpty() ? new PatronStreamState(patronId) : snapshots.get(0);
+    }
+
+    private PatronStreamState replay(PatronStreamState state, PatronId patronId) {
+        jdbcTemplate.query(
+                "SELECT e.sequence, e.event_type, e.event_id, e.occurred_at, e.book_id, e.library_branch_id, e.patron_type " +
+                        "FROM patron_events e WHERE e.patron_id = ? AND e.sequence > ? ORDER BY e.sequence",
+                new Object[]{patronId.getPatronId(), state.sequence()},
+                rs -> {
+                    state.apply(rs.getLong("SEQUENCE"), toStreamEvent(rs));
+                });
+        return state;
+    }
+
+    private void snapshot(PatronId patronId, PatronStreamState state) {
+        int updated = jdbcTemplate.update(
+                "UPDATE patron_snapshots SET sequence = ?, patron_type = ?, holds = ?, overdue_checkouts = ? WHERE patron_id = ? AND sequence < ?",
+                state.sequence(), state.patronType().name(), state.encodedHolds(), state.encodedOverdueCheckouts(),
+                patronId.getPatronId(), state.sequence());
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update(
+                        "INSERT INTO patron_snapshots (patron_id, sequence, patron_type, holds, overdue_checkouts) VALUES (?, ?, ?, ?, ?)",
+                        patronId.getPatronId(), state.sequence(), state.patronType().name(), state.encodedHolds(), state.encodedOverdueCheckouts());
+            } catch (DuplicateKeyException e) {
+                //a newer snapshot is already there
+            }
+        }
+    }
+
+    private static PatronStreamEvent toStreamEvent(ResultSet rs) throws SQLException {
+        String patronType = rs.getString("PATRON_TYPE");
+        return new PatronStreamEvent(
+                PatronStreamEvent.Type.of(rs.getShort("EVENT_TYPE")),
+                (UUID) rs.getObject("EVENT_ID"),
+                rs.getTimestamp("OCCURRED_AT").toInstant(),
+                (UUID) rs.getObject("BOOK_ID"),
+                (UUID) rs.getObject("LIBRARY_BRANCH_ID"),
+                patronType == null ? null : PatronType.valueOf(patronType));
+    }
+}
@@ -0,0 +1,37 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.commons.commands.CommandProfiler;
+import io.pillopl.library.commons.groupcommit.GroupCommit;
+import io.pillopl.library.lending.patron.model.Patron;
+import io.pillopl.library.lending.patron.model.PatronEvent;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patron.model.Patrons;
+import io.vavr.control.Option;
+import lombok.AllArgsConstructor;
+
+/**
+ * Hands each published event to the {@link GroupCommit} writer. Listeners run synchronously inside
+ * {@link Patrons#publish}, so the patron, the books it touches and the daily sheet rows are all written in the same
+ * savepoint and either land together or not at all. Listeners keeping state in memory apply it through
+ * {@link io.pillopl.library.commons.groupcommit.AfterCommit}, so it only changes once the group commits.
+ * <p>
+ * The write runs on the writer thread on behalf of the calling command, so its {@code save} and {@code listeners}
+ * phases are still profiled as part of that command; the wait for the group to commit is not a phase of its own.
+ */
+@AllArgsConstructor
+class GroupCommittedPatrons implements Patrons {
+
+    private final Patrons patrons;
+    private final GroupCommit groupCommit;
+    private final CommandProfiler profiler;
+
+    @Override
+    public Option<Patron> findBy(PatronId patronId) {
+        return patrons.findBy(patronId);
+    }
+
+    @Override
+    public Patron publish(PatronEvent event) {
+        return groupCommit.execute(profiler.onBehalfOfCurrent(() -> patrons.publish(event)));
+    }
+}
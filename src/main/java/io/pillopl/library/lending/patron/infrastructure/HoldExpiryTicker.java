@@ -0,0 +1,21 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.lending.patron.application.hold.ExpiringHoldsOnTime;
+import lombok.AllArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+
+@AllArgsConstructor
+class HoldExpiryTicker {
+
+    private final ExpiringHoldsOnTime expiringHoldsOnTime;
+
+    @Scheduled(fixedDelayString = "${lending.holds.expiry.tick-millis:1000}")
+    public void tick() {
+        expiringHoldsOnTime.expireDueHolds();
+    }
+
+    @Scheduled(initialDelay = 0L, fixedDelayString = "${lending.holds.expiry.reconcile-millis:3600000}")
+    public void reconcile() {
+        expiringHoldsOnTime.reconcile();
+    }
+}
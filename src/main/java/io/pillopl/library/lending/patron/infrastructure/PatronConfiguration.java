@@ -1,43 +1,81 @@
 package io.pillopl.library.lending.patron.infrastructure;
 
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.commons.events.DomainEvents;
+import io.pillopl.library.commons.groupcommit.GroupCommit;
+import io.pillopl.library.commons.scheduling.HierarchicalTimingWheel;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
 import io.pillopl.library.lending.dailysheet.model.DailySheet;
+import io.pillopl.library.lending.dailysheet.model.ExpiredHold;
 import io.pillopl.library.lending.patron.application.checkout.CheckingOutBookOnHold;
 import io.pillopl.library.lending.patron.application.checkout.RegisteringOverdueCheckout;
 import io.pillopl.library.lending.patron.application.hold.CancelingHold;
 import io.pillopl.library.lending.patron.application.hold.ExpiringHolds;
+import io.pillopl.library.lending.patron.application.hold.ExpiringHoldsOnTime;
 import io.pillopl.library.lending.patron.application.hold.FindAvailableBook;
 import io.pillopl.library.lending.patron.application.hold.FindBookOnHold;
 import io.pillopl.library.lending.patron.application.hold.HandleDuplicateHold;
 import io.pillopl.library.lending.patron.application.hold.PlacingOnHold;
 import io.pillopl.library.lending.patron.model.PatronFactory;
 import io.pillopl.library.lending.patron.model.Patrons;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.jdbc.repository.config.EnableJdbcRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 
 @Configuration
 @EnableJdbcRepositories
 public class PatronConfiguration {
 
     @Bean
-    CheckingOutBookOnHold checkingOutBookOnHold(FindBookOnHold findBookOnHold, Patrons patronRepository) {
-        return new CheckingOutBookOnHold(findBookOnHold, patronRepository);
+    CheckingOutBookOnHold checkingOutBookOnHold(FindBookOnHold findBookOnHold, Patrons patronRepository, CommandProfiler commandProfiler) {
+        return new CheckingOutBookOnHold(findBookOnHold, patronRepository, commandProfiler);
+    }
+
+    @Bean
+    RegisteringOverdueCheckout registeringOverdueCheckout(DailySheet dailySheet, Patrons patronRepository, CommandProfiler commandProfiler) {
+        return new RegisteringOverdueCheckout(dailySheet, patronRepository, commandProfiler);
     }
 
     @Bean
-    RegisteringOverdueCheckout registeringOverdueCheckout(DailySheet dailySheet, Patrons patronRepository) {
-        return new RegisteringOverdueCheckout(dailySheet, patronRepository);
+    CancelingHold cancelingHold(FindBookOnHold findBookOnHold, Patrons patronRepository, CommandProfiler commandProfiler) {
+        return new CancelingHold(findBookOnHold, patronRepository, commandProfiler);
     }
 
     @Bean
-    CancelingHold cancelingHold(FindBookOnHold findBookOnHold, Patrons patronRepository) {
-        return new CancelingHold(findBookOnHold, patronRepository);
+    ExpiringHolds expiringHolds(DailySheet dailySheet, Patrons patronRepository, CommandProfiler commandProfiler) {
+        return new ExpiringHolds(dailySheet, patronRepository, commandProfiler);
     }
 
     @Bean
-    ExpiringHolds expiringHolds(DailySheet dailySheet, Patrons patronRepository) {
-        return new ExpiringHolds(dailySheet, patronRepository);
+    ExpiringHoldsOnTime expiringHoldsOnTime(DailySheet dailySheet,
+                                            Patrons patronRepository,
+                                            CommandProfiler commandProfiler,
+                                            @Value("${lending.holds.expiry.tick-millis:1000}") long tickMillis,
+                                            @Value("${lending.holds.expiry.retry-millis:5000}") long retryMillis) {
+        HierarchicalTimingWheel<ExpiredHold> wheel = new HierarchicalTimingWheel<>(Duration.ofMillis(tickMillis), 64, 4, Instant.now());
+        return new ExpiringHoldsOnTime(wheel, dailySheet, patronRepository, Clock.systemUTC(), commandProfiler, Duration.ofMillis(retryMillis));
+    }
+
+    @Bean
+    @Lazy(false)
+    HoldExpiryTicker holdExpiryTicker(ExpiringHoldsOnTime expiringHoldsOnTime) {
+        return new HoldExpiryTicker(expiringHoldsOnTime);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "lending.warm-up.enabled", havingValue = "true")
+    WarmUpWorkload patronWarmUp() {
+        return new PatronWarmUp();
     }
 
     @Bean
@@ -46,16 +84,50 @@ public class PatronConfiguration {
     }
 
     @Bean
-    PlacingOnHold placingOnHold(FindAvailableBook findAvailableBook, Patrons patronRepository) {
-        return new PlacingOnHold(findAvailableBook, patronRepository);
+    PlacingOnHold placingOnHold(FindAvailableBook findAvailableBook, Patrons patronRepository, CommandProfiler commandProfiler) {
+        return new PlacingOnHold(findAvailableBook, patronRepository, commandProfiler);
     }
 
     @Bean
+    @ConditionalOnProperty(name = "lending.patrons.storage", havingValue = "tables", matchIfMissing = true)
     Patrons patronRepository(PatronEntityRepository patronEntityRepository,
-                             DomainEvents domainEvents) {
-        return new PatronsDatabaseRepository(
-                patronEntityRepository,
-                new DomainModelMapper(new PatronFactory()),
-                domainEvents);
+                             DomainEvents domainEvents,
+                             CommandProfiler commandProfiler,
+                             Shards shards,
+                             ObjectProvider<GroupCommit> groupCommit) {
+        return groupCommitted(
+                new PatronsDatabaseRepository(
+                        patronEntityRepository,
+                        new DomainModelMapper(new PatronFactory()),
+                        domainEvents,
+                        commandProfiler,
+                        shards),
+                groupCommit,
+                commandProfiler);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "lending.patrons.storage", havingValue = "event-sourced")
+    Patrons eventSourcedPatronRepository(JdbcTemplate jdbcTemplate,
+                                         DomainEvents domainEvents,
+                                         CommandProfiler commandProfiler,
+                                         Shards shards,
+                                         ObjectProvider<GroupCommit> groupCommit,
+                                         @Value("${lending.patrons.snapshot-every:50}") int snapshotEvery) {
+        return groupCommitted(
+                new EventSourcedPatrons(
+                        jdbcTemplate,
+                        new PatronFactory(),
+                        domainEvents,
+                        snapshotEvery,
+                        commandProfiler,
+                        shards),
+                groupCommit,
+                commandProfiler);
+    }
+
+    private static Patrons groupCommitted(Patrons patrons, ObjectProvider<GroupCommit> groupCommit, CommandProfiler commandProfiler) {
+        GroupCommit writer = groupCommit.getIfAvailable();
+        return writer == null ? patrons : new GroupCommittedPatrons(patrons, writer, commandProfiler);
     }
 }
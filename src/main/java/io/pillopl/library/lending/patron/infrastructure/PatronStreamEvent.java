@@ -0,0 +1,72 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.lending.patron.model.PatronEvent;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHoldEvents;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import io.pillopl.library.lending.patron.model.PatronEvent.OverdueCheckoutRegistered;
+import io.pillopl.library.lending.patron.model.PatronEvent.PatronCreated;
+import io.pillopl.library.lending.patron.model.PatronType;
+import io.vavr.control.Option;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static io.vavr.API.$;
+import static io.vavr.API.Case;
+import static io.vavr.API.Match;
+import static io.vavr.Predicates.instanceOf;
+
+/**
+ * A row of a patron's event stream: only what replaying the patron needs, as plain columns.
+ * Events that do not change the patron (failures, limits reached) are not part of the stream.
+ */
+@Value
+class PatronStreamEvent {
+
+    enum Type {
+        Created(1), PlacedOnHold(2), HoldCanceled(3), HoldExpired(4), CheckedOut(5), OverdueRegistered(6), Returned(7);
+
+        final short code;
+
+        Type(int code) {
+            this.code = (short) code;
+        }
+
+        static Type of(short code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown patron event type: " + code);
+        }
+    }
+
+    Type type;
+    UUID eventId;
+    Instant occurredAt;
+    UUID bookId;
+    UUID libraryBranchId;
+    PatronType patronType;
+
+    static Option<PatronStreamEvent> of(PatronEvent event) {
+        return Match(event).option(
+                Case($(instanceOf(PatronCreated.class)), (PatronCreated e) -> new PatronStreamEvent(Type.Created, e.getEventId(), e.getWhen(), null, null, e.getPatronType())),
+                Case($(instanceOf(BookPlacedOnHoldEvents.class)), (BookPlacedOnHoldEvents e) -> placedOnHold(e.getBookPlacedOnHold())),
+                Case($(instanceOf(BookPlacedOnHold.class)), (BookPlacedOnHold e) -> placedOnHold(e)),
+                Case($(instanceOf(BookHoldCanceled.class)), (BookHoldCanceled e) -> new PatronStreamEvent(Type.HoldCanceled, e.getEventId(), e.getWhen(), e.getBookId(), e.getLibraryBranchId(), null)),
+                Case($(instanceOf(BookHoldExpired.class)), (BookHoldExpired e) -> new PatronStreamEvent(Type.HoldExpired, e.getEventId(), e.getWhen(), e.getBookId(), e.getLibraryBranchId(), null)),
+                Case($(instanceOf(BookCheckedOut.class)), (BookCheckedOut e) -> new PatronStreamEvent(Type.CheckedOut, e.getEventId(), e.getWhen(), e.getBookId(), e.getLibraryBranchId(), null)),
+                Case($(instanceOf(OverdueCheckoutRegistered.class)), (OverdueCheckoutRegistered e) -> new PatronStreamEvent(Type.OverdueRegistered, e.getEventId(), e.getWhen(), e.getBookId(), e.getLibraryBranchId(), null)),
+                Case($(instanceOf(BookReturned.class)), (BookReturned e) -> new PatronStreamEvent(Type.Returned, e.getEventId(), e.getWhen(), e.getBookId(), e.getLibraryBranchId(), null)));
+    }
+
+    private static PatronStreamEvent placedOnHold(BookPlacedOnHold e) {
+        return new PatronStreamEvent(Type.PlacedOnHold, e.getEventId(), e.getWhen(), e.getBookId(), e.getLibraryBranchId(), null);
+    }
+}
@@ -0,0 +1,136 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.Patron;
+import io.pillopl.library.lending.patron.model.PatronFactory;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patron.model.PatronType;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What a patron looks like after replaying its stream up to {@link #sequence}. Snapshots store holds and overdue
+ * checkouts as arrays of 32 byte (UUID, UUID) pairs.
+ */
+class PatronStreamState {
+
+    private static final int PAIR_BYTES = 4 * Long.BYTES;
+
+    private final PatronId patronId;
+    private PatronType patronType;
+    private long sequence;
+    private final Set<Tuple2<BookId, LibraryBranchId>> holds;
+    private final Map<LibraryBranchId, Set<BookId>> overdueCheckouts;
+
+    PatronStreamState(PatronId patronId) {
+        this(patronId, null, 0, new HashSet<>(), new HashMap<>());
+    }
+
+    private PatronStreamState(PatronId patronId, PatronType patronType, long sequence,
+                              Set<Tuple2<BookId, LibraryBranchId>> holds, Map<LibraryBranchId, Set<BookId>> overdueCheckouts) {
+        this.patronId = patronId;
+        this.patronType = patronType;
+        this.sequence = sequence;
+        this.holds = holds;
+        this.overdueCheckouts = overdueCheckouts;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    boolean exists() {
+        return patronType != null;
+    }
+
+    PatronType patronType() {
+        return patronType;
+    }
+
+    PatronStreamState apply(long sequence, PatronStreamEvent event) {
+        switch (event.getType()) {
+            case Created:
+                patronType = event.getPatronType();
+                break;
+            case PlacedOnHold:
+                holds.add(hold(event));
+                break;
+            case HoldCanceled:
+            case HoldExpired:
+            case CheckedOut:
+                holds.remove(hold(event));
+                break;
+            case OverdueRegistered:
+                overdueCheckouts
+                        .computeIfAbsent(new LibraryBranchId(event.getLibraryBranchId()), branch -> new HashSet<>())
+                        .add(new BookId(event.getBookId()));
+                break;
+            case Returned:
+                LibraryBranchId branch = new LibraryBranchId(event.getLibraryBranchId());
+                Set<BookId> overdue = overdueCheckouts.get(branch);
+                if (overdue != null && overdue.remove(new BookId(event.getBookId())) && overdue.isEmpty()) {
+                    overdueCheckouts.remove(branch);
+                }
+                break;
+        }
+        this.sequence = sequence;
+        return this;
+    }
+
+    Patron toPatron(PatronFactory patronFactory) {
+        Map<LibraryBranchId, Set<BookId>> overdue = new HashMap<>();
+        overdueCheckouts.forEach((branch, books) -> overdue.put(branch, new HashSet<>(books)));
+        return patronFactory.create(patronType, patronId, new HashSet<>(holds), overdue);
+    }
+
+    byte[] encodedHolds() {
+        ByteBuffer buffer = ByteBuffer.allocate(holds.size() * PAIR_BYTES);
+        holds.forEach(hold -> putPair(buffer, hold._1.getBookId(), hold._2.getLibraryBranchId()));
+        return buffer.array();
+    }
+
+    byte[] encodedOverdueCheckouts() {
+        int count = overdueCheckouts.values().stream().mapToInt(Set::size).sum();
+        ByteBuffer buffer = ByteBuffer.allocate(count * PAIR_BYTES);
+        overdueCheckouts.forEach((branch, books) -> books.forEach(book -> putPair(buffer, branch.getLibraryBranchId(), book.getBookId())));
+        return buffer.array();
+    }
+
+    static PatronStreamState fromSnapshot(PatronId patronId, PatronType patronType, long sequence, byte[] holds, byte[] overdueCheckouts) {
+        Set<Tuple2<BookId, LibraryBranchId>> decodedHolds = new HashSet<>();
+        ByteBuffer holdsBuffer = ByteBuffer.wrap(holds);
+        while (holdsBuffer.hasRemaining()) {
+            decodedHolds.add(Tuple.of(new BookId(uuid(holdsBuffer)), new LibraryBranchId(uuid(holdsBuffer))));
+        }
+        Map<LibraryBranchId, Set<BookId>> decodedOverdue = new HashMap<>();
+        ByteBuffer overdueBuffer = ByteBuffer.wrap(overdueCheckouts);
+        while (overdueBuffer.hasRemaining()) {
+            LibraryBranchId branch = new LibraryBranchId(uuid(overdueBuffer));
+            decodedOverdue.computeIfAbsent(branch, b -> new HashSet<>()).add(new BookId(uuid(overdueBuffer)));
+        }
+        return new PatronStreamState(patronId, patronType, sequence, decodedHolds, decodedOverdue);
+    }
+
+    private static Tuple2<BookId, LibraryBranchId> hold(PatronStreamEvent event) {
+        return Tuple.of(new BookId(event.getBookId()), new LibraryBranchId(event.getLibraryBranchId()));
+    }
+
+    private static void putPair(ByteBuffer buffer, UUID first, UUID second) {
+        buffer.putLong(first.getMostSignificantBits())
+                .putLong(first.getLeastSignificantBits())
+                .putLong(second.getMostSignificantBits())
+                .putLong(second.getLeastSignificantBits());
+    }
+
+    private static UUID uuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
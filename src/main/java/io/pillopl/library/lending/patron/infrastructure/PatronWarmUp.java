@@ -0,0 +1,58 @@
+package io.pillopl.library.lending.patron.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.aggregates.Version;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
+import io.pillopl.library.lending.book.model.AvailableBook;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
+import io.pillopl.library.lending.patron.model.HoldDuration;
+import io.pillopl.library.lending.patron.model.PatronEvent.OverdueCheckoutRegistered;
+import io.pillopl.library.lending.patron.model.Patron;
+import io.pillopl.library.lending.patron.model.PatronFactory;
+import io.pillopl.library.lending.patron.model.PatronId;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.pillopl.library.catalogue.BookType.Circulating;
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold.bookPlacedOnHoldNow;
+import static io.pillopl.library.lending.patron.model.PatronType.Regular;
+
+/**
+ * Rebuilds patrons with a random number of holds and overdue checkouts through {@link DomainModelMapper} and places
+ * holds on them, so both the granted and the rejected outcomes of {@link Patron#placeOnHold} get compiled. Nothing
+ * leaves memory.
+ */
+class PatronWarmUp implements WarmUpWorkload {
+
+    private static final int MAX_HOLDS = 6;
+
+    private final DomainModelMapper domainModelMapper = new DomainModelMapper(new PatronFactory());
+
+    @Override
+    public String name() {
+        return "patron";
+    }
+
+    @Override
+    public void run() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        PatronId patronId = new PatronId(UUID.randomUUID());
+        LibraryBranchId branch = new LibraryBranchId(UUID.randomUUID());
+        PatronDatabaseEntity entity = new PatronDatabaseEntity(patronId, Regular);
+        for (int i = random.nextInt(MAX_HOLDS); i > 0; i--) {
+            entity.handle(bookPlacedOnHoldNow(anyBook(), Circulating, branch, patronId, HoldDuration.closeEnded(3)));
+        }
+        if (random.nextInt(4) == 0) {
+            entity.handle(OverdueCheckoutRegistered.now(patronId, anyBook(), branch));
+        }
+        Patron patron = domainModelMapper.map(entity);
+        patron.placeOnHold(new AvailableBook(anyBook(), Circulating, branch, Version.zero()), HoldDuration.closeEnded(3))
+                .peek(entity::handle);
+        patron.placeOnHold(new AvailableBook(anyBook(), Circulating, branch, Version.zero()), HoldDuration.openEnded());
+    }
+
+    private static BookId anyBook() {
+        return new BookId(UUID.randomUUID());
+    }
+}
@@ -1,6 +1,8 @@
 package io.pillopl.library.lending.patron.infrastructure;
 
+import io.pillopl.library.commons.commands.CommandProfiler;
 import io.pillopl.library.commons.events.DomainEvents;
+import io.pillopl.library.commons.sharding.Shards;
 import io.pillopl.library.catalogue.BookId;
 import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
 import io.pillopl.library.lending.patron.model.*;
@@ -29,20 +31,27 @@ class PatronsDatabaseRepository implements Patrons {
     private final PatronEntityRepository patronEntityRepository;
     private final DomainModelMapper domainModelMapper;
     private final DomainEvents domainEvents;
+    private final CommandProfiler profiler;
+    private final Shards shards;
+
+    PatronsDatabaseRepository(PatronEntityRepository patronEntityRepository, DomainModelMapper domainModelMapper,
+                              DomainEvents domainEvents, CommandProfiler profiler) {
+        this(patronEntityRepository, domainModelMapper, domainEvents, profiler, Shards.SINGLE);
+    }
 
     @Override
     public Option<Patron> findBy(PatronId patronId) {
-        return Option.of(patronEntityRepository
-                .findByPatronId(patronId.getPatronId()))
-                .map(domainModelMapper::map);
+        return Option.of(profiler.phase("query", () -> shards.on(patronId.getPatronId(), () -> patronEntityRepository
+                .findByPatronId(patronId.getPatronId()))))
+                .map(entity -> profiler.phase("mapAggregate", () -> domainModelMapper.map(entity)));
     }
 
     @Override
     public Patron publish(PatronEvent domainEvent) {
-        Patron result = Match(domainEvent).of(
+        Patron result = profiler.phase("save", () -> shards.on(domainEvent.patronId().getPatronId(), () -> Match(domainEvent).of(
                 Case($(instanceOf(PatronCreated.class)), this::createNewPatron),
-                Case($(), this::handleNextEvent));
-        domainEvents.publish(domainEvent.normalize());
+                Case($(), this::handleNextEvent))));
+        profiler.phase("listeners", () -> domainEvents.publish(domainEvent.normalize()));
         return result;
     }
 
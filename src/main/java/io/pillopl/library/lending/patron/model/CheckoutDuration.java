@@ -12,7 +12,7 @@ import static java.time.Instant.now;
 @Value
 public class CheckoutDuration {
 
-    static final int MAX_CHECKOUT_DURATION  = 60;
+    public static final int MAX_CHECKOUT_DURATION  = 60;
 
     @NonNull NumberOfDays noOfDays;
     @NonNull Instant from;
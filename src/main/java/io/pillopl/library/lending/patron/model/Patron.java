@@ -1,6 +1,7 @@
 package io.pillopl.library.lending.patron.model;
 
 
+import io.pillopl.library.catalogue.BookId;
 import io.pillopl.library.lending.book.model.AvailableBook;
 import io.pillopl.library.lending.book.model.BookOnHold;
 import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
@@ -91,6 +92,10 @@ public class Patron {
         return patronHolds.count();
     }
 
+    public boolean isHolding(BookId bookId, LibraryBranchId libraryBranch) {
+        return patronHolds.a(bookId, libraryBranch);
+    }
+
 
 
 }
@@ -1,7 +1,9 @@
 package io.pillopl.library.lending.patron.model;
 
+import io.pillopl.library.catalogue.BookId;
 import io.pillopl.library.lending.book.model.AvailableBook;
 import io.pillopl.library.lending.book.model.BookOnHold;
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
 import lombok.NonNull;
 import lombok.Value;
 
@@ -19,6 +21,10 @@ class PatronHolds {
         return resourcesOnHold.contains(hold);
     }
 
+    boolean a(@NonNull BookId bookId, @NonNull LibraryBranchId libraryBranchId) {
+        return resourcesOnHold.contains(new Hold(bookId, libraryBranchId));
+    }
+
     int count() {
         return resourcesOnHold.size();
     }
@@ -1,15 +1,42 @@
 package io.pillopl.library.lending.patronprofile.infrastructure;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.commons.singleflight.SingleFlight;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
+import io.pillopl.library.lending.patronprofile.model.PatronProfilePages;
+import io.pillopl.library.lending.patronprofile.model.PatronProfileVersions;
 import io.pillopl.library.lending.patronprofile.model.PatronProfiles;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.core.JdbcTemplate;
 
 @Configuration
 public class PatronProfileConfiguration {
 
     @Bean
-    public PatronProfiles patronProfilesReadModel(JdbcTemplate jdbcTemplate) {
-        return new PatronProfileReadModel(jdbcTemplate);
+    public PatronProfiles patronProfilesReadModel(ReplicatedReads replicatedReads, Shards shards, PatronProfileVersions patronProfileVersions, MeterRegistry meterRegistry) {
+        return new SingleFlightPatronProfiles(
+                new PatronProfileReadModel(replicatedReads, shards),
+                patronProfileVersions,
+                new SingleFlight<>("patron_profiles", meterRegistry));
+    }
+
+    @Bean
+    public PatronProfilePages patronProfilePages(ReplicatedReads replicatedReads, Shards shards, @Value("${lending.patron-profile.streaming-fetch-size:500}") int streamingFetchSize) {
+        return new PatronProfileCursorReadModel(replicatedReads, streamingFetchSize, shards);
+    }
+
+    @Bean
+    public PatronProfileVersions patronProfileVersions(@Value("${lending.patron-profile.version-slots:65536}") int numberOfSlots) {
+        return new PatronProfileVersionTracker(numberOfSlots);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "lending.warm-up.enabled", havingValue = "true")
+    WarmUpWorkload patronProfileWarmUp() {
+        return new PatronProfileWarmUp();
     }
 }
@@ -0,0 +1,107 @@
+package io.pillopl.library.lending.patronprofile.infrastructure;
+
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patronprofile.model.Checkout;
+import io.pillopl.library.lending.patronprofile.model.Hold;
+import io.pillopl.library.lending.patronprofile.model.PatronProfilePages;
+import io.pillopl.library.lending.patronprofile.model.ProfileCursor;
+import io.pillopl.library.lending.patronprofile.model.ProfilePage;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+class PatronProfileCursorReadModel implements PatronProfilePages {
+
+    private static final String CURRENT_HOLDS = "SELECT h.id, h.book_id, h.hold_till FROM holds_sheet h " +
+            "WHERE h.hold_by_patron_id = ? AND h.checked_out_at IS NULL AND h.expired_at IS NULL AND h.canceled_at IS NULL";
+
+    private static final String CURRENT_CHECKOUTS = "SELECT c.id, c.book_id, c.checkout_till FROM checkouts_sheet c " +
+            "WHERE c.checked_out_by_patron_id = ? AND c.returned_at IS NULL";
+
+    private final ReplicatedReads reads;
+    private final int streamingFetchSize;
+    private final Shards shards;
+
+    PatronProfileCursorReadModel(JdbcTemplate sheets, int streamingFetchSize) {
+        this(ReplicatedReads.primaryOnly(sheets), streamingFetchSize, Shards.SINGLE);
+    }
+
+    @Override
+    public ProfilePage<Hold> holdsOf(PatronId patronId, Option<ProfileCursor> after, int limit) {
+        return page(CURRENT_HOLDS + " AND h.id > ? ORDER BY h.id LIMIT ?", patronId, after, limit, this::toHold);
+    }
+
+    @Override
+    public ProfilePage<Checkout> checkoutsOf(PatronId patronId, Option<ProfileCursor> after, int limit) {
+        return page(CURRENT_CHECKOUTS + " AND c.id > ? ORDER BY c.id LIMIT ?", patronId, after, limit, this::toCheckout);
+    }
+
+    private <T> ProfilePage<T> page(String sql, PatronId patronId, Option<ProfileCursor> after, int limit, RowMapper<T> mapper) {
+        List<Tuple2<Long, T>> rows = List.ofAll(shards.on(patronId.getPatronId(), () -> reads.forKey(patronId.getPatronId()).query(
+                sql,
+                new Object[]{patronId.getPatronId(), after.map(ProfileCursor::getPosition).getOrElse(0L), limit + 1},
+                (rs, rowNum) -> Tuple.of(rs.getLong("ID"), mapper.mapRow(rs, rowNum)))));
+        List<Tuple2<Long, T>> page = rows.take(limit);
+        Option<ProfileCursor> next = rows.size() > limit ? Option.of(new ProfileCursor(page.last()._1)) : Option.none();
+        return new ProfilePage<>(page.map(Tuple2::_2), next);
+    }
+
+    @Override
+    public void streamHoldsOf(PatronId patronId, Consumer<Hold> consumer) {
+        stream(CURRENT_HOLDS + " ORDER BY h.id", patronId, rs -> consumer.accept(toHold(rs, 0)));
+    }
+
+    @Override
+    public void streamCheckoutsOf(PatronId patronId, Consumer<Checkout> consumer) {
+        stream(CURRENT_CHECKOUTS + " ORDER BY c.id", patronId, rs -> consumer.accept(toCheckout(rs, 0)));
+    }
+
+    private void stream(String sql, PatronId patronId, RowConsumer rowConsumer) {
+        shards.on(patronId.getPatronId(), () -> {
+            reads.forKey(patronId.getPatronId()).query(forwardOnly(sql, patronId.getPatronId()), rowConsumer::accept);
+        });
+    }
+
+    private PreparedStatementCreator forwardOnly(String sql, UUID patronId) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(streamingFetchSize);
+            statement.setObject(1, patronId);
+            return statement;
+        };
+    }
+
+    private Hold toHold(ResultSet rs, int rowNum) throws SQLException {
+        return new Hold(new BookId((UUID) rs.getObject("BOOK_ID")), instantOrNull(rs.getTimestamp("HOLD_TILL")));
+    }
+
+    private Checkout toCheckout(ResultSet rs, int rowNum) throws SQLException {
+        return new Checkout(new BookId((UUID) rs.getObject("BOOK_ID")), instantOrNull(rs.getTimestamp("CHECKOUT_TILL")));
+    }
+
+    private static java.time.Instant instantOrNull(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    @FunctionalInterface
+    private interface RowConsumer {
+        void accept(ResultSet rs) throws SQLException;
+    }
+}
@@ -1,6 +1,8 @@
 package io.pillopl.library.lending.patronprofile.infrastructure;
 
 import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.replication.ReplicatedReads;
+import io.pillopl.library.commons.sharding.Shards;
 import io.pillopl.library.lending.patron.model.PatronId;
 import io.pillopl.library.lending.patronprofile.model.Checkout;
 import io.pillopl.library.lending.patronprofile.model.CheckoutsView;
@@ -24,24 +26,34 @@ import static java.util.stream.Collectors.toList;
 @AllArgsConstructor(access = AccessLevel.PACKAGE)
 class PatronProfileReadModel implements PatronProfiles {
 
-    private final JdbcTemplate sheets;
+    private final ReplicatedReads reads;
+    private final Shards shards;
+
+    PatronProfileReadModel(JdbcTemplate sheets) {
+        this(ReplicatedReads.primaryOnly(sheets), Shards.SINGLE);
+    }
 
     @Override
     public PatronProfile fetchFor(PatronId patronId) {
+        return shards.on(patronId.getPatronId(), () -> fetchOnShard(patronId));
+    }
+
+    private PatronProfile fetchOnShard(PatronId patronId) {
+        JdbcTemplate sheets = reads.forKey(patronId.getPatronId());
         HoldsView holdsView = new HoldsView(
-                ofAll(findCurrentHoldsFor(patronId)
+                ofAll(findCurrentHoldsFor(sheets, patronId)
                         .stream()
                         .map(this::toHold)
                         .collect(toList())));
         CheckoutsView checkoutsView = new CheckoutsView(
-                ofAll(findCurrentCheckoutsFor(patronId)
+                ofAll(findCurrentCheckoutsFor(sheets, patronId)
                         .stream()
                         .map(this::toCheckout)
                         .collect(toList())));
         return new PatronProfile(holdsView, checkoutsView);
     }
 
-    private List<Map<String, Object>> findCurrentHoldsFor(PatronId patronId) {
+    private List<Map<String, Object>> findCurrentHoldsFor(JdbcTemplate sheets, PatronId patronId) {
         return sheets.query(
                 "SELECT h.book_id, h.hold_till FROM holds_sheet h WHERE h.hold_by_patron_id = ? AND h.checked_out_at IS NULL AND h.expired_at IS NULL AND h.canceled_at IS NULL",
                 new Object[]{patronId.getPatronId()},
@@ -53,7 +65,7 @@ class PatronProfileReadModel implements PatronProfiles {
                 ((Timestamp) map.get("HOLD_TILL")).toInstant());
     }
 
-    private List<Map<String, Object>> findCurrentCheckoutsFor(PatronId patronId) {
+    private List<Map<String, Object>> findCurrentCheckoutsFor(JdbcTemplate sheets, PatronId patronId) {
         return sheets.query(
                 "SELECT h.book_id, h.checkout_till FROM checkouts_sheet h WHERE h.checked_out_by_patron_id = ? AND h.returned_at IS NULL",
                 new Object[]{patronId.getPatronId()},
@@ -0,0 +1,97 @@
+package io.pillopl.library.lending.patronprofile.infrastructure;
+
+import io.pillopl.library.commons.groupcommit.AfterCommit;
+import io.pillopl.library.lending.dailysheet.model.SheetsFlushed;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookCheckedOut;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookHoldExpired;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold;
+import io.pillopl.library.lending.patron.model.PatronEvent.BookReturned;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patronprofile.model.PatronProfileVersions;
+import io.pillopl.library.lending.patronprofile.model.ProfileVersion;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps a change version per patron for everything that ends up in {@code holds_sheet} and {@code checkouts_sheet}.
+ * Patrons are hashed onto a fixed number of slots, so memory does not grow with the number of patrons; two patrons
+ * sharing a slot only ever cause a spurious "modified", never a stale "not modified".
+ * The epoch changes with every start, so versions handed out before a restart never match again.
+ * Listeners run after the sheets projection, so a version is only bumped once the new rows are visible. When the
+ * projection batches its writes, versions are bumped once more after each flush. Inside a transaction a version is
+ * only bumped once it commits, so a rolled back change never invalidates anything.
+ */
+class PatronProfileVersionTracker implements PatronProfileVersions {
+
+    private final long epoch;
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    PatronProfileVersionTracker(int numberOfSlots) {
+        this(numberOfSlots, ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    }
+
+    PatronProfileVersionTracker(int numberOfSlots, long epoch) {
+        if (Integer.bitCount(numberOfSlots) != 1) {
+            throw new IllegalArgumentException("Number of slots must be a power of two, got: " + numberOfSlots);
+        }
+        this.epoch = epoch;
+        this.slots = new AtomicLongArray(numberOfSlots);
+        this.mask = numberOfSlots - 1;
+    }
+
+    @Override
+    public ProfileVersion currentVersionOf(PatronId patronId) {
+        return new ProfileVersion(epoch, slots.get(slotOf(patronId.getPatronId())));
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookPlacedOnHold event) {
+        changed(event.getPatronId());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookHoldCanceled event) {
+        changed(event.getPatronId());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookHoldExpired event) {
+        changed(event.getPatronId());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookCheckedOut event) {
+        changed(event.getPatronId());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void handle(BookReturned event) {
+        changed(event.getPatronId());
+    }
+
+    @EventListener
+    public void handle(SheetsFlushed event) {
+        event.getPatronIds().forEach(this::changed);
+    }
+
+    void changed(UUID patronId) {
+        AfterCommit.run(() -> slots.incrementAndGet(slotOf(patronId)));
+    }
+
+    private int slotOf(UUID patronId) {
+        int hash = patronId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
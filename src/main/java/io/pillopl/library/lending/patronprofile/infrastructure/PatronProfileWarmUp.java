@@ -0,0 +1,90 @@
+package io.pillopl.library.lending.patronprofile.infrastructure;
+
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.vavr.control.Option;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reads profiles and profile pages of a handful of made up patrons, seeded into a private in-memory database, through
+ * read models of its own.
+ */
+class PatronProfileWarmUp implements WarmUpWorkload {
+
+    private static final int PATRONS = 100;
+    private static final int HOLDS_PER_PATRON = 4;
+    private static final int CHECKOUTS_PER_PATRON = 3;
+    private static final int PAGE_SIZE = 2;
+
+    private final EmbeddedDatabase database;
+    private final PatronProfileReadModel profiles;
+    private final PatronProfileCursorReadModel pages;
+    private final List<PatronId> patrons = new ArrayList<>();
+
+    PatronProfileWarmUp() {
+        this.database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("create_sheets_db.sql")
+                .build();
+        JdbcTemplate sheets = new JdbcTemplate(database);
+        this.profiles = new PatronProfileReadModel(sheets);
+        this.pages = new PatronProfileCursorReadModel(sheets, PAGE_SIZE);
+        seed(sheets);
+    }
+
+    private void seed(JdbcTemplate sheets) {
+        Timestamp now = Timestamp.from(Instant.now());
+        Timestamp later = Timestamp.from(Instant.now().plus(Duration.ofDays(3)));
+        for (int i = 0; i < PATRONS; i++) {
+            UUID patronId = UUID.randomUUID();
+            UUID branch = UUID.randomUUID();
+            for (int hold = 0; hold < HOLDS_PER_PATRON; hold++) {
+                sheets.update("INSERT INTO holds_sheet " +
+                                "(id, book_id, status, hold_event_id, hold_by_patron_id, hold_at, hold_till, hold_at_branch) VALUES " +
+                                "(holds_sheet_seq.nextval, ?, 'ACTIVE', ?, ?, ?, ?, ?)",
+                        UUID.randomUUID(), UUID.randomUUID(), patronId, now, later, branch);
+            }
+            for (int checkout = 0; checkout < CHECKOUTS_PER_PATRON; checkout++) {
+                sheets.update("INSERT INTO checkouts_sheet " +
+                                "(id, book_id, status, checkout_event_id, checked_out_by_patron_id, checked_out_at, checkout_till, checked_out_at_branch) VALUES " +
+                                "(checkouts_sheet_seq.nextval, ?, 'CHECKEDOUT', ?, ?, ?, ?, ?)",
+                        UUID.randomUUID(), UUID.randomUUID(), patronId, now, later, branch);
+            }
+            patrons.add(new PatronId(patronId));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "patron_profile";
+    }
+
+    @Override
+    public void run() {
+        PatronId patronId = patrons.get(ThreadLocalRandom.current().nextInt(PATRONS));
+        profiles.fetchFor(patronId);
+        pages.holdsOf(patronId, Option.none(), PAGE_SIZE)
+                .getNext()
+                .forEach(next -> pages.holdsOf(patronId, Option.of(next), PAGE_SIZE));
+        pages.checkoutsOf(patronId, Option.none(), PAGE_SIZE);
+        pages.streamCheckoutsOf(patronId, checkout -> {
+        });
+    }
+
+    @Override
+    public void close() {
+        database.shutdown();
+    }
+}
@@ -0,0 +1,35 @@
+package io.pillopl.library.lending.patronprofile.infrastructure;
+
+import io.pillopl.library.commons.singleflight.SingleFlight;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patronprofile.model.PatronProfile;
+import io.pillopl.library.lending.patronprofile.model.PatronProfileVersions;
+import io.pillopl.library.lending.patronprofile.model.PatronProfiles;
+import io.pillopl.library.lending.patronprofile.model.ProfileVersion;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * Concurrent loads of the same profile share one query, but only among callers that saw the same profile version.
+ * The version is read before joining, and it only moves once a change is visible to a fresh load, so whoever joins
+ * a load gets a profile at least as new as the version it read: the ETag it answers with, or the write it just made.
+ */
+@AllArgsConstructor
+class SingleFlightPatronProfiles implements PatronProfiles {
+
+    private final PatronProfiles patronProfiles;
+    private final PatronProfileVersions versions;
+    private final SingleFlight<VersionedPatron, PatronProfile> loads;
+
+    @Override
+    public PatronProfile fetchFor(PatronId patronId) {
+        VersionedPatron key = new VersionedPatron(patronId, versions.currentVersionOf(patronId));
+        return loads.load(key, () -> patronProfiles.fetchFor(patronId));
+    }
+
+    @Value
+    static class VersionedPatron {
+        PatronId patronId;
+        ProfileVersion version;
+    }
+}
@@ -0,0 +1,18 @@
+package io.pillopl.library.lending.patronprofile.model;
+
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.vavr.control.Option;
+
+import java.util.function.Consumer;
+
+public interface PatronProfilePages {
+
+    ProfilePage<Hold> holdsOf(PatronId patronId, Option<ProfileCursor> after, int limit);
+
+    ProfilePage<Checkout> checkoutsOf(PatronId patronId, Option<ProfileCursor> after, int limit);
+
+    void streamHoldsOf(PatronId patronId, Consumer<Hold> consumer);
+
+    void streamCheckoutsOf(PatronId patronId, Consumer<Checkout> consumer);
+
+}
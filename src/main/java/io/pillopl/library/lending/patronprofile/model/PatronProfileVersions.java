@@ -0,0 +1,10 @@
+package io.pillopl.library.lending.patronprofile.model;
+
+import io.pillopl.library.lending.patron.model.PatronId;
+
+@FunctionalInterface
+public interface PatronProfileVersions {
+
+    ProfileVersion currentVersionOf(PatronId patronId);
+
+}
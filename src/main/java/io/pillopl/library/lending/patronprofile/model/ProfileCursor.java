@@ -0,0 +1,24 @@
+package io.pillopl.library.lending.patronprofile.model;
+
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+@Value
+public class ProfileCursor {
+
+    long position;
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(position).array());
+    }
+
+    public static ProfileCursor decode(String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != Long.BYTES) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        return new ProfileCursor(ByteBuffer.wrap(bytes).getLong());
+    }
+}
@@ -0,0 +1,14 @@
+package io.pillopl.library.lending.patronprofile.model;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class ProfilePage<T> {
+
+    @NonNull List<T> items;
+    @NonNull Option<ProfileCursor> next;
+
+}
@@ -0,0 +1,14 @@
+package io.pillopl.library.lending.patronprofile.model;
+
+import lombok.Value;
+
+@Value
+public class ProfileVersion {
+
+    long epoch;
+    long version;
+
+    public String token() {
+        return Long.toHexString(epoch) + "-" + Long.toHexString(version);
+    }
+}
@@ -0,0 +1,129 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the commands bulkhead. The number of commands allowed in flight follows the observed
+ * latency, gradient style: while the latest round trip stays within {@code tolerance} of the long-term average the
+ * limit grows by roughly its square root, and as latency climbs the limit shrinks in proportion. A command timing out
+ * cuts the limit by a tenth straight away.
+ * <p>
+ * Anything above the limit is rejected immediately instead of queueing. Each patron may hold at most
+ * {@code perPatronShare} of the limit, so a single client retrying in a loop is turned away with
+ * {@link TooManyConcurrentCommands} before it can crowd out everybody else.
+ */
+class AdaptiveLimiter {
+
+    private static final String SHED = "command_limiter_shed";
+    private static final String TAG_REASON = "reason";
+    private static final double LONG_RTT_WINDOW = 600;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double perPatronShare;
+    private final double tolerance;
+    private final double smoothing;
+    private final Map<UUID, Integer> inFlightByPatron = new HashMap<>();
+    private final Counter shedOverLimit;
+    private final Counter shedOverPatronShare;
+    private double limit;
+    private double longRtt;
+    private int inFlight;
+
+    AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double perPatronShare, double tolerance, double smoothing, MeterRegistry meterRegistry) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.perPatronShare = perPatronShare;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.shedOverLimit = meterRegistry.counter(SHED, TAG_REASON, "limit");
+        this.shedOverPatronShare = meterRegistry.counter(SHED, TAG_REASON, "patron_share");
+        Gauge.builder("command_limiter_limit", this, AdaptiveLimiter::limit)
+                .register(meterRegistry);
+        Gauge.builder("command_limiter_in_flight", this, AdaptiveLimiter::inFlight)
+                .register(meterRegistry);
+    }
+
+    <T> CompletableFuture<T> submit(UUID patronId, Supplier<CompletableFuture<T>> command) {
+        synchronized (this) {
+            int allowed = (int) limit;
+            if (inFlight >= allowed) {
+                shedOverLimit.increment();
+                return failed(new RejectedExecutionException("Concurrency limit of " + allowed + " commands reached"));
+            }
+            int ofPatron = inFlightByPatron.getOrDefault(patronId, 0);
+            if (ofPatron >= perPatronLimit()) {
+                shedOverPatronShare.increment();
+                return failed(new TooManyConcurrentCommands("Patron " + patronId + " already has " + ofPatron + " commands in flight"));
+            }
+            inFlight++;
+            inFlightByPatron.put(patronId, ofPatron + 1);
+        }
+        long started = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = command.get();
+        } catch (RuntimeException e) {
+            result = failed(e);
+        }
+        return result.whenComplete((value, failure) -> release(patronId, System.nanoTime() - started, failure));
+    }
+
+    private synchronized void release(UUID patronId, long rttNanos, Throwable failure) {
+        inFlight--;
+        inFlightByPatron.computeIfPresent(patronId, (patron, count) -> count == 1 ? null : count - 1);
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof TimeoutException) {
+            limit = clamp(limit * BACKOFF);
+        } else if (!(cause instanceof RejectedExecutionException)) {
+            sample(rttNanos);
+        }
+    }
+
+    private void sample(long rttNanos) {
+        double rtt = Math.max(1, rttNanos);
+        longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / LONG_RTT_WINDOW;
+        if (longRtt > rtt * 2) {
+            //latency dropped for good, let the average follow quickly instead of over-admitting for a long time
+            longRtt = rtt * 2;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / rtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - smoothing) + newLimit * smoothing);
+    }
+
+    private double clamp(double candidate) {
+        return Math.max(minLimit, Math.min(maxLimit, candidate));
+    }
+
+    private int perPatronLimit() {
+        return Math.max(1, (int) Math.ceil(limit * perPatronShare));
+    }
+
+    synchronized double limit() {
+        return limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(failure);
+        return result;
+    }
+}
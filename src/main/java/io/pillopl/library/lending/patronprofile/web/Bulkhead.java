@@ -0,0 +1,79 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of threads with a bounded queue in front of them. Work that does not fit is rejected straight
+ * away and work that takes longer than the timeout completes with a {@link TimeoutException}, so a slow dependency
+ * only ever ties up this bulkhead's threads, never the servlet container's.
+ * <p>
+ * The timeout only stops the caller from waiting: a command that already started still runs to completion.
+ */
+class Bulkhead {
+
+    private static final String TAG_BULKHEAD = "bulkhead";
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final Counter rejections;
+    private final Counter timeouts;
+
+    Bulkhead(String name, int threads, int queueCapacity, long timeoutMillis, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("bulkhead-" + name + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        Tags tags = Tags.of(TAG_BULKHEAD, name);
+        this.rejections = meterRegistry.counter("bulkhead_rejections", tags);
+        this.timeouts = meterRegistry.counter("bulkhead_timeouts", tags);
+        Gauge.builder("bulkhead_active_threads", executor, ThreadPoolExecutor::getActiveCount)
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("bulkhead_queued", executor, e -> e.getQueue().size())
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("bulkhead_utilization", executor, e -> (double) e.getActiveCount() / e.getMaximumPoolSize())
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> result;
+        try {
+            result = CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            result = new CompletableFuture<>();
+            result.completeExceptionally(new RejectedExecutionException("Bulkhead " + name + " is full", e));
+            return result;
+        }
+        return result
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((value, failure) -> {
+                    if (failure instanceof TimeoutException) {
+                        timeouts.increment();
+                    }
+                });
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
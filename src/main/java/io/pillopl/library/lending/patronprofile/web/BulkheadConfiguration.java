@@ -0,0 +1,36 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+class BulkheadConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    Bulkheads bulkheads(
+            MeterRegistry meterRegistry,
+            @Value("${lending.bulkheads.commands.threads:8}") int commandThreads,
+            @Value("${lending.bulkheads.commands.queue-capacity:32}") int commandQueueCapacity,
+            @Value("${lending.bulkheads.commands.timeout-millis:5000}") long commandTimeoutMillis,
+            @Value("${lending.bulkheads.queries.threads:16}") int queryThreads,
+            @Value("${lending.bulkheads.queries.queue-capacity:64}") int queryQueueCapacity,
+            @Value("${lending.bulkheads.queries.timeout-millis:2000}") long queryTimeoutMillis) {
+        return new Bulkheads(
+                new Bulkhead("commands", commandThreads, commandQueueCapacity, commandTimeoutMillis, meterRegistry),
+                new Bulkhead("queries", queryThreads, queryQueueCapacity, queryTimeoutMillis, meterRegistry));
+    }
+
+    @Bean
+    AdaptiveLimiter commandLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${lending.limiter.commands.initial-limit:16}") int initialLimit,
+            @Value("${lending.limiter.commands.min-limit:2}") int minLimit,
+            @Value("${lending.limiter.commands.max-limit:40}") int maxLimit,
+            @Value("${lending.limiter.commands.per-patron-share:0.25}") double perPatronShare,
+            @Value("${lending.limiter.commands.rtt-tolerance:1.5}") double rttTolerance,
+            @Value("${lending.limiter.commands.smoothing:0.2}") double smoothing) {
+        return new AdaptiveLimiter(initialLimit, minLimit, maxLimit, perPatronShare, rttTolerance, smoothing, meterRegistry);
+    }
+}
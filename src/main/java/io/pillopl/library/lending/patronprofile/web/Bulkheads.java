@@ -0,0 +1,21 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Commands and queries run on separate bulkheads, so a command stuck on a lock wait cannot starve profile reads.
+ */
+@Getter(AccessLevel.PACKAGE)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+class Bulkheads {
+
+    private final Bulkhead commands;
+    private final Bulkhead queries;
+
+    void shutdown() {
+        commands.shutdown();
+        queries.shutdown();
+    }
+}
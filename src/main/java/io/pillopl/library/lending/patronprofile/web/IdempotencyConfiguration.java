@@ -0,0 +1,28 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.commons.commands.idempotency.IdempotentCommands;
+import io.pillopl.library.commons.sharding.Shards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+class IdempotencyConfiguration {
+
+    @Bean
+    @Lazy(false)
+    IdempotentCommands idempotentCommands(
+            JdbcTemplate jdbcTemplate,
+            Shards shards,
+            MeterRegistry meterRegistry,
+            @Value("${lending.idempotency.ttl-hours:24}") int ttlHours,
+            @Value("${lending.idempotency.capacity:10000}") int capacity) {
+        return new IdempotentCommands(jdbcTemplate, shards, Clock.systemDefaultZone(), Duration.ofHours(ttlHours), capacity, meterRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request mapping path such as {@literal /profiles/{patronId}/holds/{bookId}} split once into literal segments,
+ * so expanding it is a single pass over a {@link StringBuilder}.
+ */
+class LinkTemplate {
+
+    private final String[] literals;
+    private final int variables;
+    private final int literalsLength;
+
+    private LinkTemplate(List<String> literals) {
+        this.literals = literals.toArray(new String[0]);
+        this.variables = literals.size() - 1;
+        this.literalsLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    static LinkTemplate compile(String path) {
+        List<String> literals = new ArrayList<>();
+        int from = 0;
+        int open = path.indexOf('{');
+        while (open >= 0) {
+            int close = path.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed variable in path: " + path);
+            }
+            literals.add(path.substring(from, open));
+            from = close + 1;
+            open = path.indexOf('{', from);
+        }
+        literals.add(path.substring(from));
+        return new LinkTemplate(literals);
+    }
+
+    String expand(String baseUri, Object... values) {
+        if (values.length != variables) {
+            throw new IllegalArgumentException("Expected " + variables + " values, got " + values.length);
+        }
+        StringBuilder href = new StringBuilder(baseUri.length() + literalsLength + 36 * variables);
+        href.append(baseUri).append(literals[0]);
+        for (int i = 0; i < variables; i++) {
+            href.append(values[i]).append(literals[i + 1]);
+        }
+        return href.toString();
+    }
+
+    int variables() {
+        return variables;
+    }
+}
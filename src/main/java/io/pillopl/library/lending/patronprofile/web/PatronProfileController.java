@@ -2,44 +2,72 @@ package io.pillopl.library.lending.patronprofile.web;
 
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.annotation.Timed;
 import io.pillopl.library.catalogue.BookId;
 import io.pillopl.library.commons.commands.Result;
+import io.pillopl.library.commons.commands.idempotency.IdempotencyKeyReused;
+import io.pillopl.library.commons.commands.idempotency.IdempotentCommands;
 import io.pillopl.library.lending.librarybranch.model.LibraryBranchId;
 import io.pillopl.library.lending.patron.application.hold.CancelHoldCommand;
 import io.pillopl.library.lending.patron.application.hold.CancelingHold;
 import io.pillopl.library.lending.patron.application.hold.PlaceOnHoldCommand;
 import io.pillopl.library.lending.patron.application.hold.PlacingOnHold;
 import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patronprofile.model.PatronProfilePages;
 import io.pillopl.library.lending.patronprofile.model.PatronProfiles;
+import io.pillopl.library.lending.patronprofile.model.ProfileCursor;
+import io.pillopl.library.lending.patronprofile.model.ProfilePage;
 import io.vavr.Predicates;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import lombok.AllArgsConstructor;
 import lombok.Value;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.RepresentationModel;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 import static io.vavr.API.$;
 import static io.vavr.API.Case;
 import static io.vavr.API.Match;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.toList;
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.afford;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 import static org.springframework.http.ResponseEntity.notFound;
 import static org.springframework.http.ResponseEntity.ok;
 
@@ -48,9 +76,21 @@ import static org.springframework.http.ResponseEntity.ok;
 @AllArgsConstructor
 class PatronProfileController {
 
+    static final String NDJSON = "application/x-ndjson";
+    static final int MAX_PAGE_SIZE = 100;
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
     private final PatronProfiles patronProfiles;
+    private final PatronProfilePages patronProfilePages;
     private final PlacingOnHold placingOnHold;
     private final CancelingHold cancelingHold;
+    private final ProfileETags profileETags;
+    private final PatronProfileLinks patronProfileLinks;
+    private final ObjectMapper objectMapper;
+    private final Bulkheads bulkheads;
+    private final IdempotentCommands idempotentCommands;
+    private final AdaptiveLimiter commandLimiter;
 
     @GetMapping("/profiles/{patronId}")
     ResponseEntity<ProfileResource> patronProfile(@PathVariable UUID patronId) {
@@ -58,84 +98,239 @@ class PatronProfileController {
     }
 
     @GetMapping("/profiles/{patronId}/holds/")
-    ResponseEntity<CollectionModel<EntityModel<Hold>>> findHolds(@PathVariable UUID patronId) {
-        List<EntityModel<Hold>> holds = patronProfiles.fetchFor(new PatronId(patronId))
-                .getHoldsView()
-                .getCurrentHolds()
-                .toStream()
-                .map(hold -> resourceWithLinkToHoldSelf(patronId, hold))
-                .collect(toList());
-        return ResponseEntity.ok(new CollectionModel<>(holds, linkTo(methodOn(PatronProfileController.class).findHolds(patronId)).withSelfRel()));
+    CompletableFuture<ResponseEntity<CollectionModel<EntityModel<Hold>>>> findHolds(@PathVariable UUID patronId, @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = profileETags.current(patronId);
+        if (profileETags.notModified(eTag, ifNoneMatch)) {
+            return completedFuture(ResponseEntity.status(NOT_MODIFIED).eTag(eTag).build());
+        }
+        PatronProfileLinks.ForPatron links = patronProfileLinks.forCurrentRequest(patronId);
+        return bulkheads.getQueries().submit(() -> {
+            List<EntityModel<Hold>> holds = patronProfiles.fetchFor(new PatronId(patronId))
+                    .getHoldsView()
+                    .getCurrentHolds()
+                    .toStream()
+                    .map(hold -> resourceWithLinkToHoldSelf(links, hold))
+                    .collect(toList());
+            return ResponseEntity.ok().eTag(eTag).body(new CollectionModel<>(holds, links.holds()));
+        });
+    }
+
+    @GetMapping(path = "/profiles/{patronId}/holds/", params = "size")
+    CompletableFuture<ResponseEntity<CollectionModel<EntityModel<Hold>>>> findHoldsPage(@PathVariable UUID patronId, @RequestParam int size, @RequestParam(required = false) String cursor) {
+        Option<Option<ProfileCursor>> after = cursorFrom(cursor);
+        if (after.isEmpty()) {
+            return completedFuture(ResponseEntity.status(BAD_REQUEST).build());
+        }
+        int limit = pageSize(size);
+        PatronProfileLinks.ForPatron links = patronProfileLinks.forCurrentRequest(patronId);
+        return bulkheads.getQueries().submit(() -> {
+            ProfilePage<io.pillopl.library.lending.patronprofile.model.Hold> page = patronProfilePages.holdsOf(new PatronId(patronId), after.get(), limit);
+            List<EntityModel<Hold>> holds = page.getItems()
+                    .toStream()
+                    .map(hold -> resourceWithLinkToHoldSelf(links, hold))
+                    .collect(toList());
+            CollectionModel<EntityModel<Hold>> body = new CollectionModel<>(holds, links.holds());
+            page.getNext().forEach(next -> body.add(links.nextHolds(next, limit)));
+            return ok(body);
+        });
+    }
 
+    @GetMapping(path = "/profiles/{patronId}/holds/", produces = NDJSON)
+    ResponseEntity<StreamingResponseBody> streamHolds(@PathVariable UUID patronId) {
+        return ok().contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> patronProfilePages.streamHoldsOf(new PatronId(patronId), new NdJsonWriter<>(out, Hold::new)));
     }
 
     @GetMapping("/profiles/{patronId}/holds/{bookId}")
-    ResponseEntity<EntityModel<Hold>> findHold(@PathVariable UUID patronId, @PathVariable UUID bookId) {
-        return patronProfiles.fetchFor(new PatronId(patronId))
+    CompletableFuture<ResponseEntity<EntityModel<Hold>>> findHold(@PathVariable UUID patronId, @PathVariable UUID bookId, @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = profileETags.current(patronId);
+        if (profileETags.notModified(eTag, ifNoneMatch)) {
+            return completedFuture(ResponseEntity.status(NOT_MODIFIED).eTag(eTag).build());
+        }
+        PatronProfileLinks.ForPatron links = patronProfileLinks.forCurrentRequest(patronId);
+        return bulkheads.getQueries().submit(() -> patronProfiles.fetchFor(new PatronId(patronId))
                 .findHold(new BookId(bookId))
-                .map(hold -> ok(resourceWithLinkToHoldSelf(patronId, hold)))
-                .getOrElse(notFound().build());
-
+                .map(hold -> ok().eTag(eTag).body(resourceWithLinkToHoldSelf(links, hold)))
+                .getOrElse(notFound().build()));
     }
 
     @GetMapping("/profiles/{patronId}/checkouts/")
-    ResponseEntity<CollectionModel<EntityModel<Checkout>>> findCheckouts(@PathVariable UUID patronId) {
-        List<EntityModel<Checkout>> checkouts = patronProfiles.fetchFor(new PatronId(patronId))
-                .getCurrentCheckouts()
-                .getCurrentCheckouts()
-                .toStream()
-                .map(checkout -> resourceWithLinkToCheckoutSelf(patronId, checkout))
-                .collect(toList());
-        return ResponseEntity.ok(new CollectionModel<>(checkouts, linkTo(methodOn(PatronProfileController.class).findHolds(patronId)).withSelfRel()));
+    CompletableFuture<ResponseEntity<CollectionModel<EntityModel<Checkout>>>> findCheckouts(@PathVariable UUID patronId, @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = profileETags.current(patronId);
+        if (profileETags.notModified(eTag, ifNoneMatch)) {
+            return completedFuture(ResponseEntity.status(NOT_MODIFIED).eTag(eTag).build());
+        }
+        PatronProfileLinks.ForPatron links = patronProfileLinks.forCurrentRequest(patronId);
+        return bulkheads.getQueries().submit(() -> {
+            List<EntityModel<Checkout>> checkouts = patronProfiles.fetchFor(new PatronId(patronId))
+                    .getCurrentCheckouts()
+                    .getCurrentCheckouts()
+                    .toStream()
+                    .map(checkout -> resourceWithLinkToCheckoutSelf(links, checkout))
+                    .collect(toList());
+            return ResponseEntity.ok().eTag(eTag).body(new CollectionModel<>(checkouts, links.checkouts()));
+        });
+    }
+
+    @GetMapping(path = "/profiles/{patronId}/checkouts/", params = "size")
+    CompletableFuture<ResponseEntity<CollectionModel<EntityModel<Checkout>>>> findCheckoutsPage(@PathVariable UUID patronId, @RequestParam int size, @RequestParam(required = false) String cursor) {
+        Option<Option<ProfileCursor>> after = cursorFrom(cursor);
+        if (after.isEmpty()) {
+            return completedFuture(ResponseEntity.status(BAD_REQUEST).build());
+        }
+        int limit = pageSize(size);
+        PatronProfileLinks.ForPatron links = patronProfileLinks.forCurrentRequest(patronId);
+        return bulkheads.getQueries().submit(() -> {
+            ProfilePage<io.pillopl.library.lending.patronprofile.model.Checkout> page = patronProfilePages.checkoutsOf(new PatronId(patronId), after.get(), limit);
+            List<EntityModel<Checkout>> checkouts = page.getItems()
+                    .toStream()
+                    .map(checkout -> resourceWithLinkToCheckoutSelf(links, checkout))
+                    .collect(toList());
+            CollectionModel<EntityModel<Checkout>> body = new CollectionModel<>(checkouts, links.checkouts());
+            page.getNext().forEach(next -> body.add(links.nextCheckouts(next, limit)));
+            return ok(body);
+        });
+    }
+
+    @GetMapping(path = "/profiles/{patronId}/checkouts/", produces = NDJSON)
+    ResponseEntity<StreamingResponseBody> streamCheckouts(@PathVariable UUID patronId) {
+        return ok().contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> patronProfilePages.streamCheckoutsOf(new PatronId(patronId), new NdJsonWriter<>(out, Checkout::new)));
     }
 
     @GetMapping("/profiles/{patronId}/checkouts/{bookId}")
-    ResponseEntity<EntityModel<Checkout>> findCheckout(@PathVariable UUID patronId, @PathVariable UUID bookId) {
-        return patronProfiles.fetchFor(new PatronId(patronId))
+    CompletableFuture<ResponseEntity<EntityModel<Checkout>>> findCheckout(@PathVariable UUID patronId, @PathVariable UUID bookId, @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = profileETags.current(patronId);
+        if (profileETags.notModified(eTag, ifNoneMatch)) {
+            return completedFuture(ResponseEntity.status(NOT_MODIFIED).eTag(eTag).build());
+        }
+        PatronProfileLinks.ForPatron links = patronProfileLinks.forCurrentRequest(patronId);
+        return bulkheads.getQueries().submit(() -> patronProfiles.fetchFor(new PatronId(patronId))
                 .findCheckout(new BookId(bookId))
-                .map(hold -> ok(resourceWithLinkToCheckoutSelf(patronId, hold)))
-                .getOrElse(notFound().build());
+                .map(checkout -> ok().eTag(eTag).body(resourceWithLinkToCheckoutSelf(links, checkout)))
+                .getOrElse(notFound().build()));
     }
 
     @PostMapping("/profiles/{patronId}/holds")
-    ResponseEntity placeHold(@PathVariable UUID patronId, @RequestBody PlaceHoldRequest request) {
-        Try<Result> result = placingOnHold.placeOnHold(
-                new PlaceOnHoldCommand(
-                        Instant.now(),
-                        new PatronId(patronId),
-                        new LibraryBranchId(request.getLibraryBranchId()),
-                        new BookId(request.getBookId()),
-                        Option.of(request.getNumberOfDays())
-                )
+    CompletableFuture<ResponseEntity> placeHold(@PathVariable UUID patronId, @RequestBody PlaceHoldRequest request, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        PlaceOnHoldCommand command = new PlaceOnHoldCommand(
+                Instant.now(),
+                new PatronId(patronId),
+                new LibraryBranchId(request.getLibraryBranchId()),
+                new BookId(request.getBookId()),
+                Option.of(request.getNumberOfDays())
         );
-        return result
-                .map(success -> ResponseEntity.ok().build())
-                .getOrElse(ResponseEntity.status(INTERNAL_SERVER_ERROR).build());
+        String fingerprint = "place-hold " + request.getBookId() + " " + request.getLibraryBranchId() + " " + request.getNumberOfDays();
+        return idempotently(patronId, idempotencyKey, fingerprint, () -> commandLimiter.submit(patronId, () -> bulkheads.getCommands().submit(() -> {
+            Try<Result> result = placingOnHold.placeOnHold(command);
+            return result
+                    .map(success -> ResponseEntity.ok().build())
+                    .getOrElse(ResponseEntity.status(INTERNAL_SERVER_ERROR).build());
+        })));
     }
 
     @DeleteMapping("/profiles/{patronId}/holds/{bookId}")
-    ResponseEntity cancelHold(@PathVariable UUID patronId, @PathVariable UUID bookId) {
-        Try<Result> result = cancelingHold.cancelHold(new CancelHoldCommand(Instant.now(), new PatronId(patronId), new BookId(bookId)));
-        return result
-                .map(success -> ResponseEntity.noContent().build())
-                .recover(r -> Match(r).of(Case($(Predicates.instanceOf(IllegalArgumentException.class)), ResponseEntity.notFound().build())))
-                .getOrElse(ResponseEntity.status(INTERNAL_SERVER_ERROR).build());
+    CompletableFuture<ResponseEntity> cancelHold(@PathVariable UUID patronId, @PathVariable UUID bookId, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        CancelHoldCommand command = new CancelHoldCommand(Instant.now(), new PatronId(patronId), new BookId(bookId));
+        return idempotently(patronId, idempotencyKey, "cancel-hold " + bookId, () -> commandLimiter.submit(patronId, () -> bulkheads.getCommands().submit(() -> {
+            Try<Result> result = cancelingHold.cancelHold(command);
+            return result
+                    .map(success -> ResponseEntity.noContent().build())
+                    .recover(r -> Match(r).of(Case($(Predicates.instanceOf(IllegalArgumentException.class)), ResponseEntity.notFound().build())))
+                    .getOrElse(ResponseEntity.status(INTERNAL_SERVER_ERROR).build());
+        })));
+    }
+
+    /**
+     * A retried command with an already seen key gets the stored status back and never reaches the aggregates.
+     * The commands answer with a bare status, so the status is all there is to store.
+     */
+    private CompletableFuture<ResponseEntity> idempotently(UUID patronId, String idempotencyKey, String fingerprint, Supplier<CompletableFuture<ResponseEntity>> command) {
+        if (idempotencyKey == null) {
+            return command.get();
+        }
+        return idempotentCommands
+                .execute(patronId, idempotencyKey, fingerprint, () -> command.get().thenApply(ResponseEntity::getStatusCodeValue))
+                .thenApply(outcome -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.status(outcome.getStatus());
+                    if (outcome.isReplayed()) {
+                        response.header(IDEMPOTENT_REPLAYED, "true");
+                    }
+                    return response.build();
+                });
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    ResponseEntity bulkheadFull() {
+        return ResponseEntity.status(SERVICE_UNAVAILABLE).build();
+    }
+
+    @ExceptionHandler(TooManyConcurrentCommands.class)
+    ResponseEntity tooManyConcurrentCommands() {
+        return ResponseEntity.status(TOO_MANY_REQUESTS).header(RETRY_AFTER, "1").build();
+    }
+
+    @ExceptionHandler(TimeoutException.class)
+    ResponseEntity bulkheadTimedOut() {
+        return ResponseEntity.status(GATEWAY_TIMEOUT).build();
+    }
+
+    @ExceptionHandler(IdempotencyKeyReused.class)
+    ResponseEntity idempotencyKeyReused() {
+        return ResponseEntity.status(UNPROCESSABLE_ENTITY).build();
+    }
+
+    private static Option<Option<ProfileCursor>> cursorFrom(String cursor) {
+        if (cursor == null) {
+            return Option.of(Option.none());
+        }
+        return Try.of(() -> ProfileCursor.decode(cursor)).map(Option::of).toOption();
+    }
+
+    private static int pageSize(int requested) {
+        return Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Writes one JSON document per line, flushing after the first one so the client sees data
+     * before the whole result set has been read.
+     */
+    private class NdJsonWriter<M, R> implements Consumer<M> {
+
+        private final OutputStream out;
+        private final Function<M, R> toResource;
+        private boolean flushed;
+
+        private NdJsonWriter(OutputStream out, Function<M, R> toResource) {
+            this.out = out;
+            this.toResource = toResource;
+        }
+
+        @Override
+        public void accept(M item) {
+            try {
+                out.write(objectMapper.writeValueAsBytes(toResource.apply(item)));
+                out.write('\n');
+                if (!flushed) {
+                    out.flush();
+                    flushed = true;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
-    private EntityModel<Hold> resourceWithLinkToHoldSelf(UUID patronId, io.pillopl.library.lending.patronprofile.model.Hold hold) {
+    private EntityModel<Hold> resourceWithLinkToHoldSelf(PatronProfileLinks.ForPatron links, io.pillopl.library.lending.patronprofile.model.Hold hold) {
         return new EntityModel<>(
                 new Hold(hold),
-                linkTo(methodOn(PatronProfileController.class).findHold(patronId, hold.getBook().getBookId()))
-                        .withSelfRel()
-                        .andAffordance(afford(methodOn(PatronProfileController.class)
-                                .cancelHold(patronId, hold.getBook().getBookId()))));
+                links.holdWithCancelAffordance(hold.getBook().getBookId()));
     }
 
-    private EntityModel<Checkout> resourceWithLinkToCheckoutSelf(UUID patronId, io.pillopl.library.lending.patronprofile.model.Checkout checkout) {
+    private EntityModel<Checkout> resourceWithLinkToCheckoutSelf(PatronProfileLinks.ForPatron links, io.pillopl.library.lending.patronprofile.model.Checkout checkout) {
         return new EntityModel<>(
                 new Checkout(checkout),
-                linkTo(methodOn(PatronProfileController.class).findCheckout(patronId, checkout.getBook().getBookId()))
-                        .withSelfRel());
+                links.checkout(checkout.getBook().getBookId()));
     }
 }
 
@@ -146,8 +341,8 @@ class ProfileResource extends RepresentationModel {
 
     ProfileResource(UUID patronId) {
         this.patronId = patronId;
-        add(linkTo(methodOn(PatronProfileController.class).findHolds(patronId)).withRel("holds"));
-        add(linkTo(methodOn(PatronProfileController.class).findCheckouts(patronId)).withRel("checkouts"));
+        add(linkTo(methodOn(PatronProfileController.class).findHolds(patronId, null)).withRel("holds"));
+        add(linkTo(methodOn(PatronProfileController.class).findCheckouts(patronId, null)).withRel("checkouts"));
         add(linkTo(methodOn(PatronProfileController.class).patronProfile(patronId)).withSelfRel());
 
     }
@@ -0,0 +1,113 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import io.pillopl.library.lending.patronprofile.model.ProfileCursor;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Renders the links of {@link PatronProfileController} from templates resolved once at startup, instead of
+ * building a {@code methodOn(...)} proxy invocation and expanding a URI template for every rendered item.
+ */
+@Component
+class PatronProfileLinks {
+
+    private static final String CANCEL_HOLD = "cancelHold";
+
+    private final LinkTemplate holds;
+    private final LinkTemplate hold;
+    private final LinkTemplate checkouts;
+    private final LinkTemplate checkout;
+    private final ResolvableType cancelHoldOutputType;
+
+    PatronProfileLinks() {
+        this.holds = templateOf("findHolds");
+        this.hold = templateOf("findHold");
+        this.checkouts = templateOf("findCheckouts");
+        this.checkout = templateOf("findCheckout");
+        this.cancelHoldOutputType = responseTypeOf(handler(CANCEL_HOLD));
+    }
+
+    /**
+     * Links are absolute within a request and relative outside of one, e.g. during the warm-up.
+     */
+    ForPatron forCurrentRequest(UUID patronId) {
+        String baseUri = RequestContextHolder.getRequestAttributes() == null
+                ? ""
+                : ServletUriComponentsBuilder.fromCurrentServletMapping().build().toUriString();
+        return new ForPatron(baseUri, patronId);
+    }
+
+    class ForPatron {
+
+        private final String baseUri;
+        private final UUID patronId;
+
+        private ForPatron(String baseUri, UUID patronId) {
+            this.baseUri = baseUri;
+            this.patronId = patronId;
+        }
+
+        Link holds() {
+            return new Link(PatronProfileLinks.this.holds.expand(baseUri, patronId), IanaLinkRelations.SELF);
+        }
+
+        Link checkouts() {
+            return new Link(PatronProfileLinks.this.checkouts.expand(baseUri, patronId), IanaLinkRelations.SELF);
+        }
+
+        Link holdWithCancelAffordance(UUID bookId) {
+            return new Link(hold.expand(baseUri, patronId, bookId), IanaLinkRelations.SELF)
+                    .andAffordance(CANCEL_HOLD, HttpMethod.DELETE, ResolvableType.NONE, Collections.emptyList(), cancelHoldOutputType);
+        }
+
+        Link nextHolds(ProfileCursor cursor, int size) {
+            return new Link(nextPage(PatronProfileLinks.this.holds.expand(baseUri, patronId), cursor, size), IanaLinkRelations.NEXT);
+        }
+
+        Link nextCheckouts(ProfileCursor cursor, int size) {
+            return new Link(nextPage(PatronProfileLinks.this.checkouts.expand(baseUri, patronId), cursor, size), IanaLinkRelations.NEXT);
+        }
+
+        Link checkout(UUID bookId) {
+            return new Link(checkout.expand(baseUri, patronId, bookId), IanaLinkRelations.SELF);
+        }
+    }
+
+    private static String nextPage(String collection, ProfileCursor cursor, int size) {
+        return collection + "?size=" + size + "&cursor=" + cursor.encode();
+    }
+
+    private static ResolvableType responseTypeOf(Method handler) {
+        ResolvableType returnType = ResolvableType.forMethodReturnType(handler);
+        return CompletableFuture.class.equals(returnType.resolve()) ? returnType.getGeneric(0) : returnType;
+    }
+
+    private static LinkTemplate templateOf(String handlerName) {
+        RequestMapping mapping = AnnotatedElementUtils.findMergedAnnotation(handler(handlerName), RequestMapping.class);
+        if (mapping == null || mapping.path().length == 0) {
+            throw new IllegalStateException("No request mapping found for " + handlerName);
+        }
+        return LinkTemplate.compile(mapping.path()[0]);
+    }
+
+    private static Method handler(String name) {
+        return Arrays.stream(PatronProfileController.class.getDeclaredMethods())
+                .filter(method -> method.getName().equals(name))
+                .filter(method -> AnnotatedElementUtils.hasAnnotation(method, RequestMapping.class))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No handler method " + name + " in PatronProfileController"));
+    }
+}
@@ -0,0 +1,61 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patronprofile.model.PatronProfileVersions;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Component
+class ProfileETags {
+
+    private static final String CONDITIONAL_GETS = "patron_profile_conditional_gets";
+    private static final String TAG_RESULT = "result";
+
+    private final PatronProfileVersions patronProfileVersions;
+    private final Counter notModified;
+    private final Counter modified;
+    private final Counter unconditional;
+
+    ProfileETags(PatronProfileVersions patronProfileVersions, MeterRegistry meterRegistry) {
+        this.patronProfileVersions = patronProfileVersions;
+        this.notModified = meterRegistry.counter(CONDITIONAL_GETS, TAG_RESULT, "not_modified");
+        this.modified = meterRegistry.counter(CONDITIONAL_GETS, TAG_RESULT, "modified");
+        this.unconditional = meterRegistry.counter(CONDITIONAL_GETS, TAG_RESULT, "unconditional");
+    }
+
+    String current(UUID patronId) {
+        return "\"" + patronProfileVersions.currentVersionOf(new PatronId(patronId)).token() + "\"";
+    }
+
+    boolean notModified(String eTag, String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            unconditional.increment();
+            return false;
+        }
+        if (matches(eTag, ifNoneMatch)) {
+            notModified.increment();
+            return true;
+        }
+        modified.increment();
+        return false;
+    }
+
+    private static boolean matches(String eTag, String ifNoneMatch) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pillopl.library.catalogue.BookId;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
+import io.pillopl.library.lending.patron.model.PatronId;
+import io.pillopl.library.lending.patronprofile.model.Checkout;
+import io.pillopl.library.lending.patronprofile.model.CheckoutsView;
+import io.pillopl.library.lending.patronprofile.model.Hold;
+import io.pillopl.library.lending.patronprofile.model.HoldsView;
+import io.pillopl.library.lending.patronprofile.model.PatronProfile;
+import io.pillopl.library.lending.patronprofile.model.PatronProfilePages;
+import io.pillopl.library.lending.patronprofile.model.ProfileCursor;
+import io.pillopl.library.lending.patronprofile.model.ProfilePage;
+import io.pillopl.library.lending.patronprofile.model.ProfileVersion;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.springframework.http.ResponseEntity;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Runs the profile reads of {@link PatronProfileController} in-process and renders the responses, so the handlers,
+ * the links and the HAL model get compiled. The controller is one of its own, over a handful of made up patrons kept
+ * in memory: nothing reaches the lending database, and its ETag and bulkhead meters go to a registry of its own, so
+ * the application's metrics only ever see real traffic. Outside a request the links come out relative.
+ */
+class ProfileRequestsWarmUp implements WarmUpWorkload {
+
+    private static final int PATRONS = 100;
+    private static final int HOLDS_PER_PATRON = 4;
+    private static final int CHECKOUTS_PER_PATRON = 3;
+    private static final ProfileVersion VERSION = new ProfileVersion(0, 0);
+
+    private final Map<UUID, PatronProfile> profiles = new HashMap<>();
+    private final java.util.List<UUID> patrons = new ArrayList<>();
+    private final ObjectMapper objectMapper;
+    private final Bulkheads bulkheads;
+    private final PatronProfileController controller;
+    private final String eTag;
+
+    ProfileRequestsWarmUp(ObjectMapper objectMapper) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        this.objectMapper = objectMapper;
+        this.bulkheads = new Bulkheads(
+                new Bulkhead("warm_up_commands", 1, 1, 5000, meterRegistry),
+                new Bulkhead("warm_up_queries", 2, 16, 5000, meterRegistry));
+        ProfileETags eTags = new ProfileETags(patronId -> VERSION, meterRegistry);
+        this.controller = new PatronProfileController(
+                patronId -> profiles.get(patronId.getPatronId()),
+                new Pages(),
+                null,
+                null,
+                eTags,
+                new PatronProfileLinks(),
+                objectMapper,
+                bulkheads,
+                null,
+                null);
+        this.eTag = eTags.current(UUID.randomUUID());
+        seed();
+    }
+
+    private void seed() {
+        Instant later = Instant.now().plus(Duration.ofDays(3));
+        for (int i = 0; i < PATRONS; i++) {
+            List<Hold> holds = List.fill(HOLDS_PER_PATRON, () -> new Hold(new BookId(UUID.randomUUID()), later));
+            List<Checkout> checkouts = List.fill(CHECKOUTS_PER_PATRON, () -> new Checkout(new BookId(UUID.randomUUID()), later));
+            UUID patronId = UUID.randomUUID();
+            profiles.put(patronId, new PatronProfile(new HoldsView(holds), new CheckoutsView(checkouts)));
+            patrons.add(patronId);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "patron_profile_requests";
+    }
+
+    @Override
+    public void run() {
+        UUID patronId = patrons.get(ThreadLocalRandom.current().nextInt(PATRONS));
+        PatronProfile profile = profiles.get(patronId);
+        render(controller.findHolds(patronId, null));
+        render(controller.findHolds(patronId, eTag));
+        render(controller.findCheckouts(patronId, null));
+        render(controller.findHold(patronId, profile.getHoldsView().getCurrentHolds().head().getBook().getBookId(), null));
+        render(controller.findCheckout(patronId, profile.getCurrentCheckouts().getCurrentCheckouts().head().getBook().getBookId(), null));
+        render(controller.findHoldsPage(patronId, PatronProfileController.MAX_PAGE_SIZE, null));
+    }
+
+    private void render(CompletableFuture<? extends ResponseEntity<?>> response) {
+        try {
+            objectMapper.writeValueAsBytes(response.join().getBody());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        bulkheads.shutdown();
+    }
+
+    private class Pages implements PatronProfilePages {
+
+        @Override
+        public ProfilePage<Hold> holdsOf(PatronId patronId, Option<ProfileCursor> after, int limit) {
+            return new ProfilePage<>(profiles.get(patronId.getPatronId()).getHoldsView().getCurrentHolds(), Option.none());
+        }
+
+        @Override
+        public ProfilePage<Checkout> checkoutsOf(PatronId patronId, Option<ProfileCursor> after, int limit) {
+            return new ProfilePage<>(profiles.get(patronId.getPatronId()).getCurrentCheckouts().getCurrentCheckouts(), Option.none());
+        }
+
+        @Override
+        public void streamHoldsOf(PatronId patronId, Consumer<Hold> consumer) {
+            profiles.get(patronId.getPatronId()).getHoldsView().getCurrentHolds().forEach(consumer);
+        }
+
+        @Override
+        public void streamCheckoutsOf(PatronId patronId, Consumer<Checkout> consumer) {
+            profiles.get(patronId.getPatronId()).getCurrentCheckouts().getCurrentCheckouts().forEach(consumer);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package io.pillopl.library.lending.patronprofile.web;
+
+class TooManyConcurrentCommands extends RuntimeException {
+
+    TooManyConcurrentCommands(String msg) {
+        super(msg);
+    }
+}
@@ -1,15 +1,17 @@
 package io.pillopl.library.lending.patronprofile.web;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pillopl.library.commons.warmup.WarmUpWorkload;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.hateoas.config.EnableHypermediaSupport;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
@@ -18,9 +20,19 @@ import static org.springframework.hateoas.config.EnableHypermediaSupport.Hyperme
 @Configuration
 @EnableAutoConfiguration
 @EnableHypermediaSupport(type = HAL_FORMS)
-@ComponentScan
+@Import({PatronProfileController.class,
+        ProfileETags.class,
+        PatronProfileLinks.class,
+        BulkheadConfiguration.class,
+        IdempotencyConfiguration.class})
 public class WebConfiguration {
 
+    @Bean
+    @ConditionalOnProperty(name = "lending.warm-up.enabled", havingValue = "true")
+    WarmUpWorkload profileRequestsWarmUp(ObjectMapper objectMapper) {
+        return new ProfileRequestsWarmUp(objectMapper);
+    }
+
     @Bean
     static HalObjectMapperConfigurer halObjectMapperConfigurer() {
         return new HalObjectMapperConfigurer();
@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+  scope_id UUID NOT NULL,
+  idempotency_key VARCHAR(255) NOT NULL,
+  fingerprint VARCHAR(255) NOT NULL,
+  status SMALLINT NOT NULL,
+  created_at TIMESTAMP NOT NULL,
+  PRIMARY KEY (scope_id, idempotency_key));
+
+CREATE INDEX IF NOT EXISTS idempotency_keys_created_at_idx ON idempotency_keys (created_at);
@@ -12,3 +12,7 @@ CREATE TABLE IF NOT EXISTS book_database_entity (
   version INTEGER);
 
 CREATE SEQUENCE book_database_entity_seq;
+
+CREATE TABLE IF NOT EXISTS book_isbn (
+  book_id UUID PRIMARY KEY,
+  isbn VARCHAR(100) NOT NULL);
@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS patron_events (
+  patron_id UUID NOT NULL,
+  sequence BIGINT NOT NULL,
+  event_type SMALLINT NOT NULL,
+  event_id UUID NOT NULL,
+  occurred_at TIMESTAMP NOT NULL,
+  book_id UUID,
+  library_branch_id UUID,
+  patron_type VARCHAR(20),
+  PRIMARY KEY (patron_id, sequence));
+
+CREATE TABLE IF NOT EXISTS patron_snapshots (
+  patron_id UUID PRIMARY KEY,
+  sequence BIGINT NOT NULL,
+  patron_type VARCHAR(20) NOT NULL,
+  holds VARBINARY NOT NULL,
+  overdue_checkouts VARBINARY NOT NULL);
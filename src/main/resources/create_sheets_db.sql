@@ -26,3 +26,9 @@ id INTEGER IDENTITY PRIMARY KEY,
 CREATE SEQUENCE holds_sheet_seq;
 CREATE SEQUENCE checkouts_sheet_seq;
 
+CREATE INDEX IF NOT EXISTS holds_sheet_patron_idx ON holds_sheet (hold_by_patron_id, id);
+CREATE INDEX IF NOT EXISTS checkouts_sheet_patron_idx ON checkouts_sheet (checked_out_by_patron_id, id);
+CREATE INDEX IF NOT EXISTS holds_sheet_status_idx ON holds_sheet (status, id);
+CREATE INDEX IF NOT EXISTS checkouts_sheet_status_idx ON checkouts_sheet (status, id);
+CREATE INDEX IF NOT EXISTS holds_sheet_due_idx ON holds_sheet (status, hold_till);
+CREATE INDEX IF NOT EXISTS checkouts_sheet_due_idx ON checkouts_sheet (status, checkout_till);
@@ -0,0 +1,123 @@
+package io.pillopl.library.commons.commands.profiling
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.commands.Result
+import io.pillopl.library.commons.groupcommit.GroupCommit
+import io.pillopl.library.lending.patron.application.hold.CancelHoldCommand
+import io.pillopl.library.lending.patron.application.hold.CancelingHold
+import io.pillopl.library.lending.patron.application.hold.FindBookOnHold
+import io.pillopl.library.lending.patron.model.Patrons
+import io.vavr.control.Option
+import io.vavr.control.Try
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.SimpleTransactionStatus
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+import java.util.function.Supplier
+
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+
+class MeteredCommandProfilerTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    RecentCommandExecutions recent = new RecentCommandExecutions(4)
+    MeteredCommandProfiler profiler = new MeteredCommandProfiler(meterRegistry, recent)
+
+    def 'should record phases of a command, nesting inner phases under outer ones'() {
+        when:
+            String result = profiler.command('PlacingOnHold', {
+                profiler.phase('loadPatron', {
+                    profiler.phase('query', { 'entity' } as Supplier)
+                } as Supplier)
+                profiler.phase('save', { 'saved' } as Supplier)
+                profiler.phase('save', { 'saved' } as Supplier)
+            })
+        then:
+            result == 'saved'
+            CommandExecution execution = recent.slowest(1).first()
+            execution.command == 'PlacingOnHold'
+            !execution.failed
+            execution.phases*.name == ['loadPatron/query', 'loadPatron', 'save']
+            execution.phases.find { it.name == 'save' }.invocations == 2
+        and:
+            meterRegistry.get('command').tag('command', 'PlacingOnHold').timer().count() == 1
+            meterRegistry.get('command_phase').tags('command', 'PlacingOnHold', 'phase', 'loadPatron/query').timer().count() == 1
+    }
+
+    def 'should run phases outside of a command without recording them'() {
+        when:
+            String result = profiler.phase('save', { 'saved' } as Supplier)
+        then:
+            result == 'saved'
+            recent.slowest(10).isEmpty()
+            meterRegistry.find('command_phase').timers().isEmpty()
+    }
+
+    def 'should record a command started within another one as its phase'() {
+        when:
+            profiler.command('PlacingOnHold', {
+                profiler.command('CancelingHold', { 'canceled' })
+            })
+        then:
+            recent.slowest(10)*.command == ['PlacingOnHold']
+            recent.slowest(10).first().phases*.name == ['CancelingHold']
+    }
+
+    def 'should record phases a group commit writer runs on behalf of the command'() {
+        given:
+            PlatformTransactionManager transactionManager = Stub() {
+                getTransaction(_) >> { new SimpleTransactionStatus() }
+            }
+            GroupCommit groupCommit = new GroupCommit(transactionManager, Duration.ofMillis(1), 10, meterRegistry)
+        when:
+            profiler.command('PlacingOnHold', {
+                groupCommit.execute(profiler.onBehalfOfCurrent({
+                    profiler.phase('save', { Thread.currentThread().name } as Supplier)
+                } as Supplier))
+            })
+        then:
+            recent.slowest(1).first().phases*.name == ['save']
+            meterRegistry.get('command_phase').tags('command', 'PlacingOnHold', 'phase', 'save').timer().count() == 1
+        cleanup:
+            groupCommit.shutdown()
+    }
+
+    def 'should mark failed commands'() {
+        when:
+            profiler.command('PlacingOnHold', { throw new IllegalStateException() })
+        then:
+            thrown(IllegalStateException)
+            recent.slowest(1).first().failed
+    }
+
+    def 'should mark commands that hand their failure back in the result'() {
+        given:
+            FindBookOnHold willNotFindBook = { bookId, patronId -> Option.none() }
+            CancelingHold canceling = new CancelingHold(willNotFindBook, Stub(Patrons), profiler)
+        when:
+            Try<Result> result = canceling.cancelHold(new CancelHoldCommand(Instant.now(), anyPatronId(), anyBookId()))
+        then:
+            result.isFailure()
+            recent.slowest(1).first().command == 'CancelingHold'
+            recent.slowest(1).first().failed
+            meterRegistry.get('command').tags('command', 'CancelingHold', 'failed', 'true').timer().count() == 1
+    }
+
+    def 'should give nothing for a negative limit'() {
+        given:
+            profiler.command('PlacingOnHold', { null })
+        expect:
+            recent.slowest(-1).isEmpty()
+    }
+
+    def 'should keep only the most recent executions'() {
+        when:
+            6.times { profiler.command("command-$it", { null }) }
+        then:
+            recent.slowest(10)*.command as Set == ['command-2', 'command-3', 'command-4', 'command-5'] as Set
+    }
+}
@@ -0,0 +1,26 @@
+package io.pillopl.library.commons.events.dedup
+
+import spock.lang.Specification
+
+class BloomFilterTest extends Specification {
+
+    def 'should always recognize an id it was given'() {
+        given:
+            BloomFilter filter = new BloomFilter(1000, 0.01)
+            List<UUID> ids = (1..1000).collect { UUID.randomUUID() }
+        when:
+            ids.each { filter.put(it) }
+        then:
+            ids.every { filter.mightContain(it) }
+    }
+
+    def 'should keep false positives close to the rate it was sized for'() {
+        given:
+            BloomFilter filter = new BloomFilter(10000, 0.01)
+            10000.times { filter.put(UUID.randomUUID()) }
+        when:
+            int falsePositives = (1..10000).count { filter.mightContain(UUID.randomUUID()) }
+        then:
+            falsePositives < 300
+    }
+}
@@ -0,0 +1,167 @@
+package io.pillopl.library.commons.events.journal
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.catalogue.BookId
+import io.pillopl.library.commons.events.DomainEvent
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.pillopl.library.lending.patron.model.HoldDuration
+import io.pillopl.library.lending.patron.model.PatronId
+import io.vavr.collection.List
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+import org.springframework.transaction.support.TransactionCallback
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookHoldCanceled.holdCanceledNow
+import static io.pillopl.library.lending.patron.model.PatronEvent.BookPlacedOnHold.bookPlacedOnHoldNow
+
+class JournalEventsStorageTest extends Specification {
+
+    Path directory = Files.createTempDirectory('events-journal')
+
+    PatronId patronId = new PatronId(UUID.randomUUID())
+    LibraryBranchId branch = new LibraryBranchId(UUID.randomUUID())
+
+    JournalEventsStorage journal = open(64 * 1024)
+
+    def cleanup() {
+        journal.close()
+        directory.toFile().deleteDir()
+    }
+
+    def 'should hand out saved events in order until they are published'() {
+        given:
+            DomainEvent placed = placedOnHold()
+            DomainEvent canceled = holdCanceledNow(new BookId(placed.bookId), branch, patronId)
+        when:
+            journal.save(placed)
+            journal.save(canceled)
+        then:
+            eventIdsOf(journal.toPublish()) == [placed.eventId, canceled.eventId]
+            eventIdsOf(journal.toPublish()) == [placed.eventId, canceled.eventId]
+        when:
+            journal.published(journal.toPublish())
+        then:
+            journal.toPublish().isEmpty()
+    }
+
+    def 'should hand out events again when the transaction forwarding them rolls back'() {
+        given:
+            EmbeddedDatabase database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2).build()
+            TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(database))
+            DomainEvent placed = placedOnHold()
+            journal.save(placed)
+        when:
+            transaction.execute({ status ->
+                journal.published(journal.toPublish())
+                status.setRollbackOnly()
+            } as TransactionCallback)
+        then:
+            eventIdsOf(journal.toPublish()) == [placed.eventId]
+        when:
+            transaction.execute({ status -> journal.published(journal.toPublish()) } as TransactionCallback)
+        then:
+            journal.toPublish().isEmpty()
+        cleanup:
+            database.shutdown()
+    }
+
+    def 'should keep unpublished events across restarts'() {
+        given:
+            DomainEvent published = placedOnHold()
+            DomainEvent unpublished = placedOnHold()
+            journal.save(published)
+            journal.published(journal.toPublish())
+            journal.save(unpublished)
+        when:
+            reopen(64 * 1024)
+        then:
+            journal.toPublish().toJavaList() == [unpublished]
+    }
+
+    def 'should roll over to new segments and remove published ones'() {
+        given:
+            reopen(4 * 1024)
+        when:
+            30.times { journal.save(placedOnHold()) }
+        then:
+            segmentFiles() > 1
+            journal.toPublish().size() == 30
+        when:
+            journal.published(journal.toPublish())
+            30.times { journal.save(placedOnHold()) }
+        then:
+            journal.toPublish().size() == 30
+            segmentFiles() < 12
+    }
+
+    def 'should cut off a record torn by a crash'() {
+        given:
+            DomainEvent first = placedOnHold()
+            DomainEvent second = placedOnHold()
+            journal.save(first)
+            journal.save(second)
+            journal.save(placedOnHold())
+            journal.close()
+            corruptRecord(2)
+        when:
+            reopen(64 * 1024)
+            DomainEvent afterRestart = placedOnHold()
+            journal.save(afterRestart)
+        then:
+            journal.toPublish().toJavaList() == [first, second, afterRestart]
+    }
+
+    def 'should not mark events it did not hand out as published'() {
+        given:
+            journal.save(placedOnHold())
+            journal.toPublish()
+        when:
+            journal.published(List.of(placedOnHold()))
+        then:
+            thrown(IllegalStateException)
+    }
+
+    private JournalEventsStorage open(int segmentBytes) {
+        new JournalEventsStorage(directory, segmentBytes, FsyncPolicy.NEVER, Duration.ofMillis(100), Duration.ZERO, 100, new SimpleMeterRegistry())
+    }
+
+    private void reopen(int segmentBytes) {
+        journal.close()
+        journal = open(segmentBytes)
+    }
+
+    private DomainEvent placedOnHold() {
+        bookPlacedOnHoldNow(new BookId(UUID.randomUUID()), Circulating, branch, patronId, HoldDuration.closeEnded(3))
+    }
+
+    private static java.util.List<UUID> eventIdsOf(List<DomainEvent> events) {
+        events.map { it.eventId }.toJavaList()
+    }
+
+    private int segmentFiles() {
+        directory.toFile().list().count { it.startsWith('segment-') } as int
+    }
+
+    private void corruptRecord(int index) {
+        new RandomAccessFile(directory.resolve(String.format('segment-%020d.log', 0)).toFile(), 'rw').withCloseable { segment ->
+            long position = 0
+            index.times {
+                segment.seek(position)
+                position += Segment.HEADER_BYTES + segment.readInt()
+            }
+            segment.seek(position + Segment.HEADER_BYTES)
+            int payload = segment.read()
+            segment.seek(position + Segment.HEADER_BYTES)
+            segment.write(payload ^ 0xFF)
+        }
+    }
+}
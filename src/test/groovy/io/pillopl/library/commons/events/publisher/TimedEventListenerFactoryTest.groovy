@@ -0,0 +1,104 @@
+package io.pillopl.library.commons.events.publisher
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.events.DomainEvent
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.context.annotation.AnnotationConfigApplicationContext
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.event.EventListener
+import org.springframework.context.event.EventListenerFactory
+import spock.lang.Specification
+
+import java.time.Instant
+
+class TimedEventListenerFactoryTest extends Specification {
+
+    AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(ListenersConfig)
+    MeterRegistry meterRegistry = context.getBean(MeterRegistry)
+
+    def cleanup() {
+        context.close()
+    }
+
+    def 'should time domain event handling per listener'() {
+        when:
+            context.publishEvent(new SomethingHappened())
+            context.publishEvent(new SomethingHappened())
+        then:
+            meterRegistry.get('domain_event_listener')
+                    .tags('name', 'SomethingHappened', 'listener', 'recordingListener')
+                    .timer()
+                    .count() == 2
+    }
+
+    def 'should count listener failures'() {
+        when:
+            context.publishEvent(new SomethingFailed())
+        then:
+            thrown(IllegalStateException)
+            meterRegistry.get('domain_event_listener_errors')
+                    .tags('name', 'SomethingFailed', 'listener', 'recordingListener')
+                    .counter()
+                    .count() == 1
+    }
+
+    def 'should leave listeners of other events untimed'() {
+        when:
+            context.publishEvent('not a domain event')
+        then:
+            context.getBean(RecordingListener).strings == ['not a domain event']
+            meterRegistry.find('domain_event_listener').tag('listener', 'recordingListener').tag('name', 'String').timer() == null
+    }
+
+    @Configuration
+    static class ListenersConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry()
+        }
+
+        @Bean
+        static EventListenerFactory timedEventListenerFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+            return new TimedEventListenerFactory(meterRegistry)
+        }
+
+        @Bean
+        RecordingListener recordingListener() {
+            return new RecordingListener()
+        }
+    }
+
+    static class RecordingListener {
+
+        List<String> strings = []
+
+        @EventListener
+        void handle(SomethingHappened event) {
+        }
+
+        @EventListener
+        void handle(SomethingFailed event) {
+            throw new IllegalStateException('failed')
+        }
+
+        @EventListener
+        void handle(String event) {
+            strings << event
+        }
+    }
+
+    static class SomethingHappened implements DomainEvent {
+        UUID eventId = UUID.randomUUID()
+        UUID aggregateId = UUID.randomUUID()
+        Instant when = Instant.now()
+    }
+
+    static class SomethingFailed implements DomainEvent {
+        UUID eventId = UUID.randomUUID()
+        UUID aggregateId = UUID.randomUUID()
+        Instant when = Instant.now()
+    }
+}
@@ -0,0 +1,42 @@
+package io.pillopl.library.commons.replication
+
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ReplicatedReadsTest extends Specification {
+
+    JdbcTemplate primary = new JdbcTemplate()
+    JdbcTemplate replica = new JdbcTemplate()
+
+    ReplicatedReads reads = new ReplicatedReads(primary, replica, Duration.ofMinutes(1))
+
+    UUID key = UUID.randomUUID()
+    UUID anotherKey = UUID.randomUUID()
+
+    def 'should read a key from the primary only while its writes are in flight'() {
+        when:
+            reads.written(key)
+        then:
+            reads.forKey(key).is(primary)
+            reads.forKey(anotherKey).is(replica)
+        when:
+            reads.applied(key)
+        then:
+            reads.forKey(key).is(replica)
+    }
+
+    def 'should keep reading from the primary once the replica failed to apply a write'() {
+        given:
+            reads.written(key)
+        when:
+            reads.diverged(key)
+            reads.applied(key)
+        then:
+            reads.forKey(key).is(primary)
+            reads.forScan().is(primary)
+        and:
+            reads.forKey(anotherKey).is(replica)
+    }
+}
@@ -0,0 +1,66 @@
+package io.pillopl.library.commons.scheduling
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+class HierarchicalTimingWheelTest extends Specification {
+
+    Instant start = Instant.parse('2019-10-01T00:00:00Z')
+
+    HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(Duration.ofSeconds(1), 8, 3, start)
+
+    def 'should fire a key only once its deadline has passed'() {
+        given:
+            wheel.schedule('hold', start.plusSeconds(5))
+        expect:
+            wheel.advanceTo(start.plusSeconds(4)).isEmpty()
+            wheel.advanceTo(start.plusSeconds(5)) == ['hold']
+            wheel.advanceTo(start.plusSeconds(6)).isEmpty()
+    }
+
+    def 'should cascade keys scheduled on higher levels and beyond the last one'() {
+        given:
+            wheel.schedule('second level', start.plusSeconds(100))
+            wheel.schedule('third level', start.plusSeconds(300))
+            wheel.schedule('overflow', start.plusSeconds(2000))
+        expect:
+            wheel.advanceTo(start.plusSeconds(99)).isEmpty()
+            wheel.advanceTo(start.plusSeconds(100)) == ['second level']
+            wheel.advanceTo(start.plusSeconds(299)).isEmpty()
+            wheel.advanceTo(start.plusSeconds(300)) == ['third level']
+            wheel.advanceTo(start.plusSeconds(1999)).isEmpty()
+            wheel.advanceTo(start.plusSeconds(2000)) == ['overflow']
+    }
+
+    def 'should fire keys in deadline order when catching up'() {
+        given:
+            wheel.schedule('later', start.plusSeconds(70))
+            wheel.schedule('sooner', start.plusSeconds(3))
+        expect:
+            wheel.advanceTo(start.plusSeconds(1000)) == ['sooner', 'later']
+    }
+
+    def 'should fire overdue keys on the next advance'() {
+        given:
+            wheel.advanceTo(start.plusSeconds(10))
+        when:
+            wheel.schedule('overdue', start)
+        then:
+            wheel.advanceTo(start.plusSeconds(10)) == ['overdue']
+    }
+
+    def 'should forget cancelled keys and use the latest deadline of rescheduled ones'() {
+        given:
+            wheel.schedule('canceled', start.plusSeconds(5))
+            wheel.schedule('rescheduled', start.plusSeconds(5))
+        when:
+            wheel.cancel('canceled')
+            wheel.schedule('rescheduled', start.plusSeconds(50))
+        then:
+            wheel.advanceTo(start.plusSeconds(49)).isEmpty()
+            wheel.advanceTo(start.plusSeconds(50)) == ['rescheduled']
+            wheel.size() == 0
+    }
+}
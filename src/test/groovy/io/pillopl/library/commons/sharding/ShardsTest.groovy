@@ -0,0 +1,41 @@
+package io.pillopl.library.commons.sharding
+
+import spock.lang.Specification
+
+import java.util.function.Supplier
+
+class ShardsTest extends Specification {
+
+    Shards shards = new Shards(4)
+
+    def 'should always map the same key onto the same shard'() {
+        given:
+            UUID key = UUID.randomUUID()
+        expect:
+            shards.shardOf(key) == shards.shardOf(key)
+            shards.shardOf(key) in 0..3
+    }
+
+    def 'should spread keys over all shards'() {
+        when:
+            Set<Integer> used = (1..1000).collect { shards.shardOf(UUID.randomUUID()) } as Set
+        then:
+            used == [0, 1, 2, 3] as Set
+    }
+
+    def 'should restore the outer shard when a nested scope ends'() {
+        when:
+            List<Integer> seen = shards.onShard(1, {
+                int inner = shards.onShard(3, { Shards.currentShard() } as Supplier)
+                [inner, Shards.currentShard()]
+            } as Supplier)
+        then:
+            seen == [3, 1]
+            Shards.currentShard() == 0
+    }
+
+    def 'should gather the results of every shard'() {
+        expect:
+            shards.scatter({ [Shards.currentShard()] } as Supplier).sort() == [0, 1, 2, 3]
+    }
+}
@@ -0,0 +1,92 @@
+package io.pillopl.library.commons.singleflight
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+class SingleFlightTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>('test', meterRegistry)
+
+    AtomicInteger loads = new AtomicInteger()
+
+    CountDownLatch loading = new CountDownLatch(1)
+    CountDownLatch release = new CountDownLatch(1)
+
+    def cleanup() {
+        release.countDown()
+    }
+
+    def 'should share one load between concurrent callers of the same key'() {
+        given:
+            CompletableFuture<Integer> first = CompletableFuture.supplyAsync({ singleFlight.load('patron', blockingLoad()) } as Supplier)
+            loading.await(5, TimeUnit.SECONDS)
+        when:
+            CompletableFuture<Integer> second = CompletableFuture.supplyAsync({ singleFlight.load('patron', blockingLoad()) } as Supplier)
+            waitUntilJoined()
+            release.countDown()
+        then:
+            first.get(5, TimeUnit.SECONDS) == 1
+            second.get(5, TimeUnit.SECONDS) == 1
+            loads.get() == 1
+            count('shared') == 1
+            count('executed') == 1
+    }
+
+    def 'should not keep the result once the load completed'() {
+        when:
+            singleFlight.load('patron', { loads.incrementAndGet() } as Supplier)
+            singleFlight.load('patron', { loads.incrementAndGet() } as Supplier)
+        then:
+            loads.get() == 2
+            count('shared') == 0
+    }
+
+    def 'should load different keys separately'() {
+        given:
+            CompletableFuture<Integer> first = CompletableFuture.supplyAsync({ singleFlight.load('patron', blockingLoad()) } as Supplier)
+            loading.await(5, TimeUnit.SECONDS)
+        when:
+            Integer other = singleFlight.load('another patron', { 42 } as Supplier)
+            release.countDown()
+        then:
+            other == 42
+            first.get(5, TimeUnit.SECONDS) == 1
+    }
+
+    def 'should rethrow the failure of the load'() {
+        when:
+            singleFlight.load('patron', { throw new IllegalStateException('database down') } as Supplier)
+        then:
+            thrown(IllegalStateException)
+        and:
+            singleFlight.load('patron', { 1 } as Supplier) == 1
+    }
+
+    private Supplier<Integer> blockingLoad() {
+        return {
+            int load = loads.incrementAndGet()
+            loading.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            load
+        } as Supplier
+    }
+
+    private void waitUntilJoined() {
+        long deadline = System.currentTimeMillis() + 5000
+        while (count('shared') == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1)
+        }
+    }
+
+    private double count(String result) {
+        meterRegistry.counter('single_flight_loads', 'name', 'test', 'result', result).count()
+    }
+}
@@ -0,0 +1,103 @@
+package io.pillopl.library.commons.warmup
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.boot.actuate.health.Status
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class WarmUpTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    AtomicInteger runs = new AtomicInteger()
+    AtomicInteger closed = new AtomicInteger()
+
+    def 'should be out of service until warm'() {
+        given:
+            WarmUp warmUp = warmUp([workload('counting', { runs.incrementAndGet() })], Duration.ofMillis(1), Duration.ofSeconds(30))
+        expect:
+            warmUp.health().status == Status.OUT_OF_SERVICE
+        when:
+            warmUp.start()
+            waitUntilFinished(warmUp)
+        then:
+            warmUp.health().status == Status.UP
+            warmUp.health().details.state == WarmUp.State.WARM
+            runs.get() >= 100
+            closed.get() == 1
+        and:
+            meterRegistry.get('warm_up_latency').tag('workload', 'counting').timer().count() == 20
+    }
+
+    def 'should drop a failing workload and warm up the rest'() {
+        given:
+            WarmUp warmUp = warmUp([
+                    workload('failing', { throw new IllegalStateException('boom') }),
+                    workload('counting', { runs.incrementAndGet() })],
+                    Duration.ofMillis(1), Duration.ofSeconds(30))
+        when:
+            warmUp.start()
+            waitUntilFinished(warmUp)
+        then:
+            warmUp.health().status == Status.UP
+            runs.get() >= 100
+            closed.get() == 2
+    }
+
+    def 'should report up once the timeout passed'() {
+        given:
+            WarmUp warmUp = warmUp([workload('slow', { Thread.sleep(1) })], Duration.ofHours(1), Duration.ofMillis(200))
+        when:
+            warmUp.start()
+            waitUntilFinished(warmUp)
+        then:
+            warmUp.health().status == Status.UP
+            warmUp.health().details.state == WarmUp.State.TIMED_OUT
+    }
+
+    def 'should report up and aborted when the loop itself dies'() {
+        given:
+            WarmUp warmUp = warmUp([workload('dying', { throw new AssertionError('boom') })], Duration.ofMillis(1), Duration.ofSeconds(30))
+        when:
+            warmUp.start()
+            waitUntilFinished(warmUp)
+        then:
+            warmUp.health().status == Status.UP
+            warmUp.health().details.state == WarmUp.State.ABORTED
+            warmUp.health().details.failure.contains('boom')
+            closed.get() == 1
+    }
+
+    private WarmUp warmUp(List<WarmUpWorkload> workloads, Duration settle, Duration timeout) {
+        new WarmUp(workloads, 100, settle, timeout, 20, meterRegistry)
+    }
+
+    private WarmUpWorkload workload(String workloadName, Closure body) {
+        return new WarmUpWorkload() {
+
+            @Override
+            String name() {
+                workloadName
+            }
+
+            @Override
+            void run() {
+                body.call()
+            }
+
+            @Override
+            void close() {
+                closed.incrementAndGet()
+            }
+        }
+    }
+
+    private static void waitUntilFinished(WarmUp warmUp) {
+        long deadline = System.currentTimeMillis() + 40000
+        while (!warmUp.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.pillopl.library.lending.availability.infrastructure
+
+import io.pillopl.library.catalogue.BookId
+import io.pillopl.library.lending.availability.model.ShelfPage
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.vavr.collection.HashSet
+import io.vavr.control.Option
+import spock.lang.Specification
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+import static io.pillopl.library.catalogue.BookType.Restricted
+
+class AvailabilityBitmapsTest extends Specification {
+
+    UUID branch = UUID.randomUUID()
+    UUID anotherBranch = UUID.randomUUID()
+
+    AvailabilityBitmaps bitmaps = new AvailabilityBitmaps()
+
+    def 'should count available books per branch and type'() {
+        given:
+            bitmaps.makeAvailable(UUID.randomUUID(), Restricted, branch)
+            bitmaps.makeAvailable(UUID.randomUUID(), Circulating, branch)
+            bitmaps.makeAvailable(UUID.randomUUID(), Circulating, branch)
+            bitmaps.makeAvailable(UUID.randomUUID(), Circulating, anotherBranch)
+        expect:
+            bitmaps.count(new LibraryBranchId(branch), Option.of(Restricted)) == 1
+            bitmaps.count(new LibraryBranchId(branch), Option.of(Circulating)) == 2
+            bitmaps.count(new LibraryBranchId(branch), Option.none()) == 3
+            bitmaps.count(new LibraryBranchId(UUID.randomUUID()), Option.none()) == 0
+    }
+
+    def 'should move a book between shelves and remember its type'() {
+        given:
+            UUID book = UUID.randomUUID()
+            bitmaps.makeAvailable(book, Restricted, branch)
+        when:
+            bitmaps.makeUnavailable(book)
+        then:
+            bitmaps.count(new LibraryBranchId(branch), Option.none()) == 0
+        when:
+            bitmaps.makeAvailable(book, null, anotherBranch)
+        then:
+            bitmaps.count(new LibraryBranchId(anotherBranch), Option.of(Restricted)) == 1
+            bitmaps.count(new LibraryBranchId(branch), Option.none()) == 0
+    }
+
+    def 'should page through a shelf with a cursor'() {
+        given:
+            List<UUID> books = (1..5).collect { UUID.randomUUID() }
+            books.each { bitmaps.makeAvailable(it, Circulating, branch) }
+        when:
+            ShelfPage first = bitmaps.page(new LibraryBranchId(branch), Option.none(), Option.none(), 3)
+            ShelfPage second = bitmaps.page(new LibraryBranchId(branch), Option.none(), first.next, 3)
+        then:
+            first.books.map { it.bookId }.toJavaList() == books.take(3)
+            second.books.map { it.bookId }.toJavaList() == books.drop(3)
+            second.next.isEmpty()
+    }
+
+    def 'should intersect candidates with a shelf'() {
+        given:
+            UUID onShelf = UUID.randomUUID()
+            UUID elsewhere = UUID.randomUUID()
+            bitmaps.makeAvailable(onShelf, Circulating, branch)
+            bitmaps.makeAvailable(elsewhere, Circulating, anotherBranch)
+        expect:
+            bitmaps.availableAmong(new LibraryBranchId(branch), HashSet.of(new BookId(onShelf), new BookId(elsewhere), new BookId(UUID.randomUUID())))
+                    .map { it.bookId }.toJavaList() == [onShelf]
+    }
+}
@@ -0,0 +1,20 @@
+package io.pillopl.library.lending.availability.web
+
+import io.pillopl.library.lending.availability.model.BranchShelves
+import spock.lang.Specification
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST
+
+class BranchShelvesControllerTest extends Specification {
+
+    BranchShelves branchShelves = Mock()
+    BranchShelvesController controller = new BranchShelvesController(branchShelves)
+
+    def 'should reject a negative cursor without reading the shelf'() {
+        when:
+            def response = controller.shelf(UUID.randomUUID(), null, -1, 10)
+        then:
+            response.statusCode == BAD_REQUEST
+            0 * branchShelves._
+    }
+}
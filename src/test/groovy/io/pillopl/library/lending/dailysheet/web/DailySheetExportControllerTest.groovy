@@ -0,0 +1,122 @@
+package io.pillopl.library.lending.dailysheet.web
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.pillopl.library.catalogue.BookId
+import io.pillopl.library.lending.dailysheet.model.SheetsExport
+import io.pillopl.library.lending.dailysheet.model.SheetsExport.Filter
+import io.pillopl.library.lending.dailysheet.model.SheetsExport.Row
+import io.pillopl.library.lending.librarybranch.model.LibraryBranchId
+import io.pillopl.library.lending.patron.model.PatronId
+import io.vavr.control.Option
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.function.Consumer
+
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static org.springframework.http.HttpHeaders.ACCEPT
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup
+
+class DailySheetExportControllerTest extends Specification {
+
+    static final Instant NOW = Instant.parse("2100-01-01T10:00:00Z")
+    static final Instant DUE = Instant.parse("2100-01-01T12:00:00Z")
+
+    BookId book = anyBookId()
+    PatronId patron = anyPatronId()
+    LibraryBranchId branch = anyBranch()
+
+    SheetsExport sheetsExport = Mock()
+    MockMvc mockMvc = standaloneSetup(new DailySheetExportController(
+            sheetsExport, new ObjectMapper().findAndRegisterModules(), Clock.fixed(NOW, ZoneOffset.UTC))).build()
+
+    def 'should serve the csv by default'() {
+        given:
+            sheetsExport.streamHoldsToExpire(_ as Filter, _ as Consumer) >> { Filter filter, Consumer<Row> rows -> rows.accept(row()) }
+        when:
+            MvcResult result = download("/daily-sheets/holds-to-expire", "*/*")
+        then:
+            result.response.status == 200
+            result.response.contentType.startsWith("text/csv")
+            result.response.contentAsString.readLines() == [
+                    "book_id,patron_id,branch_id,hold_till",
+                    "${book.bookId},${patron.patronId},${branch.libraryBranchId},${DUE}".toString()]
+    }
+
+    def 'should serve the csv as an attachment named after the sheet and the first day'() {
+        given:
+            sheetsExport.streamCheckoutsToOverdue(_ as Filter, _ as Consumer) >> { Filter filter, Consumer<Row> rows -> rows.accept(row()) }
+        when:
+            MvcResult result = download("/daily-sheets/checkouts-to-overdue", "text/csv")
+        then:
+            result.response.status == 200
+            result.response.contentType.startsWith("text/csv")
+            result.response.getHeader(CONTENT_DISPOSITION) == 'attachment; filename="checkouts-to-overdue-2100-01-01.csv"'
+            result.response.contentAsString.readLines().first() == "book_id,patron_id,branch_id,checkout_till"
+    }
+
+    def 'should serve one json document per row when ndjson is asked for'() {
+        given:
+            sheetsExport.streamHoldsToExpire(_ as Filter, _ as Consumer) >> { Filter filter, Consumer<Row> rows -> rows.accept(row()); rows.accept(row()) }
+        when:
+            MvcResult result = download("/daily-sheets/holds-to-expire", "application/x-ndjson")
+        then:
+            result.response.status == 200
+            result.response.contentType.startsWith("application/x-ndjson")
+            List<Map> documents = result.response.contentAsString.readLines().collect { new ObjectMapper().readValue(it, Map) }
+            documents.size() == 2
+            documents.every {
+                it.bookId == book.bookId.toString() &&
+                        it.patronId == patron.patronId.toString() &&
+                        it.branchId == branch.libraryBranchId.toString() &&
+                        it.containsKey("holdTill")
+            }
+    }
+
+    def 'should name the due time of a checkout after its sheet in ndjson'() {
+        given:
+            sheetsExport.streamCheckoutsToOverdue(_ as Filter, _ as Consumer) >> { Filter filter, Consumer<Row> rows -> rows.accept(row()) }
+        when:
+            MvcResult result = download("/daily-sheets/checkouts-to-overdue", "application/x-ndjson")
+        then:
+            Map document = new ObjectMapper().readValue(result.response.contentAsString.readLines().first(), Map)
+            document.containsKey("checkoutTill")
+            !document.containsKey("holdTill")
+    }
+
+    def 'should filter whole days of the branch in the zone of the clock'() {
+        when:
+            download("/daily-sheets/holds-to-expire?branch=${branch.libraryBranchId}&from=2100-01-02&to=2100-01-03", "text/csv")
+        then:
+            1 * sheetsExport.streamHoldsToExpire(new Filter(Option.of(branch),
+                    Instant.parse("2100-01-02T00:00:00Z"), Instant.parse("2100-01-04T00:00:00Z")), _ as Consumer)
+    }
+
+    def 'should reject a range ending before it starts without reading the sheet'() {
+        when:
+            MvcResult result = mockMvc.perform(get("/daily-sheets/holds-to-expire?from=2100-01-02&to=2100-01-01").header(ACCEPT, accept)).andReturn()
+        then:
+            result.response.status == 400
+            0 * sheetsExport._
+        where:
+            accept << ["text/csv", "application/x-ndjson"]
+    }
+
+    MvcResult download(String uri, String accept) {
+        MvcResult started = mockMvc.perform(get(uri).header(ACCEPT, accept)).andReturn()
+        return mockMvc.perform(asyncDispatch(started)).andReturn()
+    }
+
+    Row row() {
+        return new Row(book, patron, branch, DUE)
+    }
+}
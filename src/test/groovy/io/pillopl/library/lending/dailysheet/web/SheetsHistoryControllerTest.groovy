@@ -0,0 +1,45 @@
+package io.pillopl.library.lending.dailysheet.web
+
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory
+import io.pillopl.library.lending.dailysheet.model.SheetsHistory.Entry
+import io.pillopl.library.lending.patron.model.PatronId
+import io.vavr.collection.List
+import org.springframework.test.web.servlet.MockMvc
+import spock.lang.Specification
+
+import java.time.Instant
+
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup
+
+class SheetsHistoryControllerTest extends Specification {
+
+    PatronId patron = anyPatronId()
+    Entry canceled = new Entry(anyBookId(), 'CANCELED', Instant.parse('2100-01-01T00:00:00Z'), Instant.parse('2100-01-02T00:00:00Z'))
+
+    SheetsHistory sheetsHistory = Mock()
+    MockMvc mockMvc = standaloneSetup(new SheetsHistoryController(sheetsHistory)).build()
+
+    def 'should read holds from the active table only by default'() {
+        when:
+            def response = mockMvc.perform(get("/daily-sheets/history/${patron.patronId}/holds"))
+        then:
+            1 * sheetsHistory.holdsOf(patron, SheetsHistory.Scope.ActiveTableOnly) >> List.of(canceled)
+            response.andExpect(status().isOk())
+                    .andExpect(jsonPath('$[0].bookId').value(canceled.book.bookId.toString()))
+                    .andExpect(jsonPath('$[0].status').value('CANCELED'))
+    }
+
+    def 'should read checkouts from the archives when asked to'() {
+        when:
+            def response = mockMvc.perform(get("/daily-sheets/history/${patron.patronId}/checkouts?archives=true"))
+        then:
+            1 * sheetsHistory.checkoutsOf(patron, SheetsHistory.Scope.IncludingArchives) >> List.empty()
+            response.andExpect(status().isOk())
+                    .andExpect(jsonPath('$').isEmpty())
+    }
+}
@@ -0,0 +1,165 @@
+package io.pillopl.library.lending.patron.application.hold
+
+import io.pillopl.library.commons.commands.BatchResult
+import io.pillopl.library.commons.scheduling.HierarchicalTimingWheel
+import io.pillopl.library.lending.dailysheet.model.DailySheet
+import io.pillopl.library.lending.dailysheet.model.ExpiredHold
+import io.pillopl.library.lending.dailysheet.model.HoldsToExpireSchedule
+import io.pillopl.library.lending.patron.model.Patron
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.Patrons
+import io.vavr.control.Option
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+import static io.pillopl.library.catalogue.BookType.Restricted
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.book.model.BookFixture.bookOnHold
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static io.pillopl.library.lending.patron.model.PatronFixture.regularPatron
+import static io.pillopl.library.lending.patron.model.PatronFixture.regularPatronWith
+import static io.vavr.collection.List.of
+
+class ExpiringHoldsOnTimeTest extends Specification {
+
+    Instant start = Instant.parse('2019-10-01T00:00:00Z')
+    Instant current = start
+    Clock clock = Stub() {
+        instant() >> { current }
+    }
+
+    Patrons repository = Mock()
+    DailySheet dailySheet = Stub()
+
+    ExpiredHold hold = new ExpiredHold(anyBookId(), anyPatronId(), anyBranch())
+
+    ExpiringHoldsOnTime expiring = new ExpiringHoldsOnTime(
+            new HierarchicalTimingWheel<>(Duration.ofSeconds(1), 64, 4, start), dailySheet, repository, clock)
+
+    Patron patron = regularPatronWith(bookOnHold(hold.heldBook, hold.library), hold.patron)
+
+    def setup() {
+        repository.findBy(hold.patron) >> { Option.of(patron) }
+    }
+
+    def 'should expire a placed hold when its hold till has passed'() {
+        given:
+            expiring.handle(placedOnHold(start.plusSeconds(90)))
+        when:
+            now(start.plusSeconds(89))
+            expiring.expireDueHolds()
+        then:
+            0 * repository.publish(_)
+        when:
+            now(start.plusSeconds(90))
+            expiring.expireDueHolds()
+        then:
+            1 * repository.publish({ it instanceof PatronEvent.BookHoldExpired && it.bookId == hold.heldBook.bookId })
+    }
+
+    def 'should not expire a hold that was checked out in the meantime'() {
+        given:
+            expiring.handle(placedOnHold(start.plusSeconds(90)))
+        and:
+            expiring.handle(new PatronEvent.BookCheckedOut(
+                    start, hold.patron.patronId, hold.heldBook.bookId, Restricted, hold.library.libraryBranchId, start.plusSeconds(3600)))
+        when:
+            now(start.plusSeconds(90))
+            expiring.expireDueHolds()
+        then:
+            0 * repository.publish(_)
+    }
+
+    def 'should reload holds from the daily sheet after a restart'() {
+        given:
+            dailySheet.queryForHoldsToExpireSchedule() >> new HoldsToExpireSchedule(
+                    of(new HoldsToExpireSchedule.ScheduledExpiry(hold, start.minusSeconds(10))))
+        when:
+            expiring.reconcile()
+        and:
+            now(start)
+            def result = expiring.expireDueHolds()
+        then:
+            1 * repository.publish(_ as PatronEvent.BookHoldExpired)
+            result.get() == BatchResult.FullSuccess
+    }
+
+    def 'should not expire a hold the patron no longer holds even though the sheet still has it'() {
+        given:
+            dailySheet.queryForHoldsToExpireSchedule() >> new HoldsToExpireSchedule(
+                    of(new HoldsToExpireSchedule.ScheduledExpiry(hold, start.minusSeconds(10))))
+        and:
+            patron = regularPatron(hold.patron)
+        when:
+            expiring.reconcile()
+        and:
+            now(start)
+            def result = expiring.expireDueHolds()
+        then:
+            0 * repository.publish(_)
+            result.get() == BatchResult.FullSuccess
+    }
+
+    def 'should retry an expiry that failed to publish after a short backoff'() {
+        given:
+            expiring.handle(placedOnHold(start.plusSeconds(90)))
+        when:
+            now(start.plusSeconds(90))
+            def result = expiring.expireDueHolds()
+        then:
+            1 * repository.publish(_ as PatronEvent.BookHoldExpired) >> { throw new IllegalStateException() }
+            result.get() == BatchResult.SomeFailed
+        when:
+            now(start.plusSeconds(90).plus(ExpiringHoldsOnTime.DEFAULT_RETRY_BACKOFF).minusSeconds(1))
+            expiring.expireDueHolds()
+        then:
+            0 * repository.publish(_)
+        when:
+            now(start.plusSeconds(90).plus(ExpiringHoldsOnTime.DEFAULT_RETRY_BACKOFF))
+            result = expiring.expireDueHolds()
+        then:
+            1 * repository.publish(_ as PatronEvent.BookHoldExpired)
+            result.get() == BatchResult.FullSuccess
+    }
+
+    def 'should back off longer after every further failure'() {
+        given:
+            expiring.handle(placedOnHold(start.plusSeconds(90)))
+            repository.publish(_) >> { throw new IllegalStateException() }
+        and:
+            now(start.plusSeconds(90))
+            expiring.expireDueHolds()
+            now(start.plusSeconds(90).plus(ExpiringHoldsOnTime.DEFAULT_RETRY_BACKOFF))
+            expiring.expireDueHolds()
+        when:
+            now(start.plusSeconds(90).plus(ExpiringHoldsOnTime.DEFAULT_RETRY_BACKOFF.multipliedBy(2)))
+            def result = expiring.expireDueHolds()
+        then:
+            result.get() == BatchResult.FullSuccess
+        when:
+            now(start.plusSeconds(90).plus(ExpiringHoldsOnTime.DEFAULT_RETRY_BACKOFF.multipliedBy(3)))
+            result = expiring.expireDueHolds()
+        then:
+            result.get() == BatchResult.SomeFailed
+    }
+
+    void now(Instant instant) {
+        current = instant
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold(Instant till) {
+        return new PatronEvent.BookPlacedOnHold(
+                start,
+                hold.patron.patronId,
+                hold.heldBook.bookId,
+                Restricted,
+                hold.library.libraryBranchId,
+                start,
+                till)
+    }
+}
@@ -0,0 +1,74 @@
+package io.pillopl.library.lending.patronprofile.infrastructure
+
+import io.pillopl.library.lending.patron.model.PatronEvent
+import io.pillopl.library.lending.patron.model.PatronId
+import spock.lang.Specification
+
+import static io.pillopl.library.catalogue.BookType.Circulating
+import static io.pillopl.library.lending.book.model.BookFixture.anyBookId
+import static io.pillopl.library.lending.librarybranch.model.LibraryBranchFixture.anyBranch
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+import static java.time.Instant.now
+
+class PatronProfileVersionTrackerTest extends Specification {
+
+    PatronId patronId = anyPatronId()
+
+    PatronProfileVersionTracker tracker = new PatronProfileVersionTracker(1024, 1L)
+
+    def 'should not change version when nothing happened to patron'() {
+        expect:
+            tracker.currentVersionOf(patronId) == tracker.currentVersionOf(patronId)
+    }
+
+    def 'should change version when patron placed a book on hold'() {
+        given:
+            String before = tracker.currentVersionOf(patronId).token()
+        when:
+            tracker.handle(placedOnHold())
+        then:
+            tracker.currentVersionOf(patronId).token() != before
+    }
+
+    def 'should change version when patron returned a book'() {
+        given:
+            String before = tracker.currentVersionOf(patronId).token()
+        when:
+            tracker.handle(bookReturned())
+        then:
+            tracker.currentVersionOf(patronId).token() != before
+    }
+
+    def 'should hand out different versions after restart'() {
+        expect:
+            new PatronProfileVersionTracker(1024, 1L).currentVersionOf(patronId).token() !=
+                    new PatronProfileVersionTracker(1024, 2L).currentVersionOf(patronId).token()
+    }
+
+    def 'should accept only power of two number of slots'() {
+        when:
+            new PatronProfileVersionTracker(1000, 1L)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    PatronEvent.BookPlacedOnHold placedOnHold() {
+        return new PatronEvent.BookPlacedOnHold(
+                now(),
+                patronId.patronId,
+                anyBookId().bookId,
+                Circulating,
+                anyBranch().libraryBranchId,
+                now(),
+                null)
+    }
+
+    PatronEvent.BookReturned bookReturned() {
+        return new PatronEvent.BookReturned(
+                now(),
+                patronId.patronId,
+                anyBookId().bookId,
+                Circulating,
+                anyBranch().libraryBranchId)
+    }
+}
@@ -0,0 +1,58 @@
+package io.pillopl.library.lending.patronprofile.infrastructure
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.pillopl.library.commons.singleflight.SingleFlight
+import io.pillopl.library.lending.patron.model.PatronId
+import io.pillopl.library.lending.patronprofile.model.CheckoutsView
+import io.pillopl.library.lending.patronprofile.model.HoldsView
+import io.pillopl.library.lending.patronprofile.model.PatronProfile
+import io.pillopl.library.lending.patronprofile.model.PatronProfiles
+import io.vavr.collection.List
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+import static io.pillopl.library.lending.patron.model.PatronFixture.anyPatronId
+
+class SingleFlightPatronProfilesTest extends Specification {
+
+    PatronId patronId = anyPatronId()
+
+    PatronProfileVersionTracker versions = new PatronProfileVersionTracker(1024, 1L)
+
+    AtomicInteger loads = new AtomicInteger()
+    CountDownLatch loading = new CountDownLatch(1)
+    CountDownLatch release = new CountDownLatch(1)
+
+    PatronProfiles blockingProfiles = { PatronId id ->
+        loads.incrementAndGet()
+        loading.countDown()
+        release.await(5, TimeUnit.SECONDS)
+        new PatronProfile(new HoldsView(List.empty()), new CheckoutsView(List.empty()))
+    } as PatronProfiles
+
+    SingleFlightPatronProfiles profiles = new SingleFlightPatronProfiles(
+            blockingProfiles, versions, new SingleFlight<>('patron_profiles', new SimpleMeterRegistry()))
+
+    def cleanup() {
+        release.countDown()
+    }
+
+    def 'should not join a load started before the profile version moved'() {
+        given:
+            CompletableFuture<PatronProfile> first = CompletableFuture.supplyAsync({ profiles.fetchFor(patronId) } as Supplier)
+            loading.await(5, TimeUnit.SECONDS)
+        and:
+            versions.changed(patronId.patronId)
+        when:
+            release.countDown()
+            profiles.fetchFor(patronId)
+            first.get(5, TimeUnit.SECONDS)
+        then:
+            loads.get() == 2
+    }
+}
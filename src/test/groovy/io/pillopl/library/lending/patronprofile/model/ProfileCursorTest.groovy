@@ -0,0 +1,27 @@
+package io.pillopl.library.lending.patronprofile.model
+
+import spock.lang.Specification
+
+class ProfileCursorTest extends Specification {
+
+    def 'should decode what was encoded'() {
+        expect:
+            ProfileCursor.decode(new ProfileCursor(position).encode()) == new ProfileCursor(position)
+        where:
+            position << [0L, 1L, 42L, Long.MAX_VALUE]
+    }
+
+    def 'encoded cursor should be safe to put in a query string'() {
+        expect:
+            new ProfileCursor(Long.MAX_VALUE).encode() ==~ /[A-Za-z0-9_-]+/
+    }
+
+    def 'should reject malformed cursor'() {
+        when:
+            ProfileCursor.decode(cursor)
+        then:
+            thrown(IllegalArgumentException)
+        where:
+            cursor << ['AAAA', 'not a cursor!']
+    }
+}
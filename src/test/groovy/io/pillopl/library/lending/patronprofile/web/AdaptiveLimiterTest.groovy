@@ -0,0 +1,95 @@
+package io.pillopl.library.lending.patronprofile.web
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeoutException
+import java.util.function.Supplier
+
+import static java.util.concurrent.CompletableFuture.completedFuture
+
+class AdaptiveLimiterTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    UUID patron = UUID.randomUUID()
+    UUID anotherPatron = UUID.randomUUID()
+
+    def 'should shed commands above the limit'() {
+        given:
+            AdaptiveLimiter limiter = limiter(2, 1.0)
+            limiter.submit(patron, pending())
+            limiter.submit(anotherPatron, pending())
+        when:
+            limiter.submit(UUID.randomUUID(), pending()).get()
+        then:
+            ExecutionException e = thrown()
+            e.cause instanceof RejectedExecutionException
+            shed('limit') == 1
+    }
+
+    def 'should not let one patron take more than its share of the limit'() {
+        given:
+            AdaptiveLimiter limiter = limiter(4, 0.25)
+            limiter.submit(patron, pending())
+        when:
+            limiter.submit(patron, pending()).get()
+        then:
+            ExecutionException e = thrown()
+            e.cause instanceof TooManyConcurrentCommands
+            shed('patron_share') == 1
+        and:
+            !limiter.submit(anotherPatron, pending()).isCompletedExceptionally()
+    }
+
+    def 'should release the permit once the command completes'() {
+        given:
+            AdaptiveLimiter limiter = limiter(1, 1.0)
+            CompletableFuture<String> running = new CompletableFuture<>()
+            limiter.submit(patron, { running } as Supplier)
+        when:
+            running.complete('done')
+        then:
+            limiter.inFlight() == 0
+            limiter.submit(patron, { completedFuture('next') } as Supplier).get() == 'next'
+    }
+
+    def 'should grow the limit while latency stays flat'() {
+        given:
+            AdaptiveLimiter limiter = limiter(4, 1.0)
+        when:
+            100.times { limiter.submit(patron, { completedFuture('done') } as Supplier).get() }
+        then:
+            limiter.limit() > 4
+    }
+
+    def 'should back off when commands time out'() {
+        given:
+            AdaptiveLimiter limiter = limiter(10, 1.0)
+        when:
+            limiter.submit(patron, { failedWith(new TimeoutException()) } as Supplier)
+        then:
+            limiter.limit() == 9
+    }
+
+    private AdaptiveLimiter limiter(int initialLimit, double perPatronShare) {
+        new AdaptiveLimiter(initialLimit, 1, 100, perPatronShare, 1.5, 0.2, meterRegistry)
+    }
+
+    private static Supplier<CompletableFuture<String>> pending() {
+        return { new CompletableFuture<String>() } as Supplier
+    }
+
+    private static CompletableFuture<String> failedWith(Throwable failure) {
+        CompletableFuture<String> result = new CompletableFuture<>()
+        result.completeExceptionally(failure)
+        result
+    }
+
+    private double shed(String reason) {
+        meterRegistry.counter('command_limiter_shed', 'reason', reason).count()
+    }
+}
@@ -0,0 +1,56 @@
+package io.pillopl.library.lending.patronprofile.web
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeoutException
+
+class BulkheadTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    CountDownLatch release = new CountDownLatch(1)
+
+    def cleanup() {
+        release.countDown()
+    }
+
+    def 'should run work on bulkhead threads'() {
+        given:
+            Bulkhead bulkhead = new Bulkhead('test', 1, 1, 1000, meterRegistry)
+        expect:
+            bulkhead.submit({ Thread.currentThread().name }).get().startsWith('bulkhead-test-')
+        cleanup:
+            bulkhead.shutdown()
+    }
+
+    def 'should reject work when threads and queue are busy'() {
+        given:
+            Bulkhead bulkhead = new Bulkhead('test', 1, 1, 10000, meterRegistry)
+            bulkhead.submit({ release.await() })
+            bulkhead.submit({ release.await() })
+        when:
+            bulkhead.submit({ 'rejected' }).get()
+        then:
+            ExecutionException e = thrown()
+            e.cause instanceof RejectedExecutionException
+            meterRegistry.get('bulkhead_rejections').tag('bulkhead', 'test').counter().count() == 1
+        cleanup:
+            bulkhead.shutdown()
+    }
+
+    def 'should time out slow work'() {
+        given:
+            Bulkhead bulkhead = new Bulkhead('test', 1, 1, 50, meterRegistry)
+        when:
+            bulkhead.submit({ release.await() }).get()
+        then:
+            ExecutionException e = thrown()
+            e.cause instanceof TimeoutException
+            meterRegistry.get('bulkhead_timeouts').tag('bulkhead', 'test').counter().count() == 1
+        cleanup:
+            bulkhead.shutdown()
+    }
+}
@@ -0,0 +1,39 @@
+package io.pillopl.library.lending.patronprofile.web
+
+import spock.lang.Specification
+
+class LinkTemplateTest extends Specification {
+
+    UUID patronId = UUID.randomUUID()
+    UUID bookId = UUID.randomUUID()
+
+    def 'should expand all variables of a mapping path'() {
+        given:
+            LinkTemplate template = LinkTemplate.compile('/profiles/{patronId}/holds/{bookId}')
+        expect:
+            template.expand('http://localhost', patronId, bookId) == "http://localhost/profiles/${patronId}/holds/${bookId}"
+    }
+
+    def 'should keep trailing literal after last variable'() {
+        given:
+            LinkTemplate template = LinkTemplate.compile('/profiles/{patronId}/holds/')
+        expect:
+            template.expand('', patronId) == "/profiles/${patronId}/holds/"
+    }
+
+    def 'should reject wrong number of values'() {
+        given:
+            LinkTemplate template = LinkTemplate.compile('/profiles/{patronId}/holds/{bookId}')
+        when:
+            template.expand('', patronId)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def 'should reject unclosed variable'() {
+        when:
+            LinkTemplate.compile('/profiles/{patronId/holds')
+        then:
+            thrown(IllegalArgumentException)
+    }
+}
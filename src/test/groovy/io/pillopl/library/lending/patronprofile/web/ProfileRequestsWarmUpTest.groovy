@@ -0,0 +1,20 @@
+package io.pillopl.library.lending.patronprofile.web
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+class ProfileRequestsWarmUpTest extends Specification {
+
+    ProfileRequestsWarmUp warmUp = new ProfileRequestsWarmUp(new ObjectMapper().findAndRegisterModules())
+
+    def cleanup() {
+        warmUp.close()
+    }
+
+    def 'should run the profile reads without a request or a database'() {
+        when:
+            3.times { warmUp.run() }
+        then:
+            noExceptionThrown()
+    }
+}